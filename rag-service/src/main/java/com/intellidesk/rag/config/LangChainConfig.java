@@ -1,39 +1,142 @@
 package com.intellidesk.rag.config;
 
-import dev.langchain4j.data.embedding.Embedding;
-import dev.langchain4j.data.segment.TextSegment;
+import com.intellidesk.rag.embedding.BatchingEmbeddingModel;
+import com.intellidesk.rag.embedding.CachingEmbeddingModel;
+import com.intellidesk.rag.embedding.EmbeddingRateLimiter;
+import com.intellidesk.rag.embedding.MappedEmbeddingFile;
+import com.intellidesk.rag.embedding.RateLimitedEmbeddingModel;
+import com.intellidesk.rag.store.HnswEmbeddingStore;
+import com.intellidesk.rag.store.KeywordIndex;
+import com.intellidesk.rag.store.ManagedEmbeddingStore;
+import com.intellidesk.rag.store.WeaviateManagedEmbeddingStore;
+import dev.langchain4j.model.Tokenizer;
+import dev.langchain4j.model.embedding.AllMiniLmL6V2EmbeddingModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
 import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
-import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.weaviate.WeaviateEmbeddingStore;
+import dev.langchain4j.model.openai.OpenAiModelName;
+import dev.langchain4j.model.openai.OpenAiTokenizer;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.Locale;
 
 @Configuration
 public class LangChainConfig {
 
+    // all-MiniLM-L6-v2, bundled with langchain4j-embeddings-all-minilm-l6-v2
+    private static final String LOCAL_EMBEDDING_MODEL = "all-minilm-l6-v2";
+    private static final int LOCAL_EMBEDDING_DIMENSION = 384;
+
     @Value("${openai.api-key}")
     private String openAiApiKey;
 
+    // Any OpenAI-compatible endpoint, e.g. a local inference server for offline environments
+    @Value("${openai.base-url:https://api.openai.com/v1}")
+    private String openAiBaseUrl;
+
     @Value("${openai.model}")
     private String chatModel;
 
     @Value("${openai.embedding-model}")
     private String embeddingModel;
 
+    // openai | local (in-process ONNX model, no network)
+    @Value("${rag.embedding.provider:openai}")
+    private String embeddingProvider;
+
+    @Value("${rag.embedding.local.threads:0}")
+    private int localEmbeddingThreads;
+
+    @Value("${rag.embedding.local.max-batch-size:32}")
+    private int localEmbeddingMaxBatchSize;
+
+    @Value("${rag.embedding.rate-limit.requests-per-minute:3000}")
+    private int embeddingRequestsPerMinute;
+
+    @Value("${rag.embedding.rate-limit.tokens-per-minute:1000000}")
+    private int embeddingTokensPerMinute;
+
+    @Value("${rag.embedding.rate-limit.max-retries:5}")
+    private int embeddingMaxRetries;
+
+    @Value("${rag.embedding.rate-limit.initial-backoff-ms:1000}")
+    private long embeddingInitialBackoffMillis;
+
+    @Value("${rag.embedding.max-concurrency:4}")
+    private int embeddingMaxConcurrency;
+
+    @Value("${langchain4j.embedding.dimension:1536}")
+    private int embeddingDimension;
+
+    @Value("${rag.embedding.cache.enabled:true}")
+    private boolean embeddingCacheEnabled;
+
+    @Value("${rag.embedding.cache.memory-entries:10000}")
+    private int embeddingCacheMemoryEntries;
+
+    @Value("${rag.embedding.cache.disk-entries:50000}")
+    private int embeddingCacheDiskEntries;
+
+    @Value("${rag.embedding.cache.file:${file.upload-dir}/cache/embeddings.bin}")
+    private String embeddingCacheFile;
+
     @Value("${weaviate.url}")
     private String weaviateUrl;
 
-    @Value("${weaviate.class-name}")
+    // LangChain4j's default class, which holds everything ingested before the class was configurable
+    @Value("${weaviate.class-name:Default}")
     private String weaviateClassName;
 
+    @Value("${rag.vector-store.type:weaviate}")
+    private String vectorStoreType;
+
+    @Value("${rag.vector-store.hnsw.directory:${file.upload-dir}/vector-index}")
+    private String hnswDirectory;
+
+    @Value("${rag.vector-store.hnsw.m:16}")
+    private int hnswM;
+
+    @Value("${rag.vector-store.hnsw.ef-construction:200}")
+    private int hnswEfConstruction;
+
+    @Value("${rag.vector-store.hnsw.ef-search:64}")
+    private int hnswEfSearch;
+
+    @Value("${rag.vector-store.hnsw.snapshot-interval:10000}")
+    private int hnswSnapshotInterval;
+
+    @Value("${rag.vector-store.hnsw.quantization:none}")
+    private String hnswQuantization;
+
+    @Value("${rag.vector-store.hnsw.rescore-multiplier:4}")
+    private int hnswRescoreMultiplier;
+
+    @Value("${rag.vector-store.hnsw.recall-target:0.95}")
+    private double hnswRecallTarget;
+
+    @Value("${rag.vector-store.hnsw.filter-brute-force-threshold:5000}")
+    private int hnswFilterBruteForceThreshold;
+
+    @Value("${rag.hybrid.keyword-index.directory:${file.upload-dir}/keyword-index}")
+    private String keywordIndexDirectory;
+
+    @Value("${rag.hybrid.keyword-index.k1:1.2}")
+    private double bm25K1;
+
+    @Value("${rag.hybrid.keyword-index.b:0.75}")
+    private double bm25B;
+
     @Bean
     public OpenAiChatModel chatModel() {
         return OpenAiChatModel.builder()
+                .baseUrl(openAiBaseUrl)
                 .apiKey(openAiApiKey)
                 .modelName(chatModel)
                 .timeout(Duration.ofSeconds(60))
@@ -41,19 +144,93 @@ public class LangChainConfig {
     }
 
     @Bean
-    public EmbeddingModel embeddingModel() {
-        return OpenAiEmbeddingModel.builder()
+    public OpenAiStreamingChatModel streamingChatModel() {
+        return OpenAiStreamingChatModel.builder()
+                .baseUrl(openAiBaseUrl)
                 .apiKey(openAiApiKey)
-                .modelName(embeddingModel)
+                .modelName(chatModel)
+                .timeout(Duration.ofSeconds(60))
                 .build();
     }
 
     @Bean
-    public EmbeddingStore<TextSegment> embeddingStore() {
-        return WeaviateEmbeddingStore.builder()
-                .apiKey("") // Leave empty if authentication is disabled
-                .scheme("http")
-                .host(weaviateUrl.replace("http://", "").replace("https://", ""))
-                .build();
+    public EmbeddingRateLimiter embeddingRateLimiter() {
+        return new EmbeddingRateLimiter(embeddingRequestsPerMinute, embeddingTokensPerMinute, embeddingMaxConcurrency);
+    }
+
+    @Bean
+    public EmbeddingModel embeddingModel(MeterRegistry meterRegistry) throws IOException {
+        EmbeddingModel model;
+        String modelName;
+        if (isLocalEmbedding()) {
+            // Runs on this JVM's CPUs: no network round trip and no rate limit to respect
+            model = new BatchingEmbeddingModel(new AllMiniLmL6V2EmbeddingModel(),
+                    localEmbeddingThreads, localEmbeddingMaxBatchSize, meterRegistry);
+            modelName = LOCAL_EMBEDDING_MODEL;
+        } else {
+            EmbeddingModel openAiEmbeddingModel = OpenAiEmbeddingModel.builder()
+                    .baseUrl(openAiBaseUrl)
+                    .apiKey(openAiApiKey)
+                    .modelName(embeddingModel)
+                    .timeout(Duration.ofSeconds(60))
+                    .maxRetries(1) // 429s are retried by the rate limiter so it can back off adaptively
+                    .build();
+            model = new RateLimitedEmbeddingModel(openAiEmbeddingModel,
+                    embeddingRateLimiter(), tokenizer(), embeddingMaxRetries, embeddingInitialBackoffMillis);
+            modelName = embeddingModel;
+        }
+
+        if (!embeddingCacheEnabled) {
+            return model;
+        }
+        // Cache sits in front of the limiter so hits never consume rate-limit budget
+        MappedEmbeddingFile diskCache = new MappedEmbeddingFile(
+                Paths.get(embeddingCacheFile), embeddingDimension(), embeddingCacheDiskEntries);
+        return new CachingEmbeddingModel(model, modelName, diskCache,
+                embeddingCacheMemoryEntries, meterRegistry);
+    }
+
+    private boolean isLocalEmbedding() {
+        return switch (embeddingProvider.toLowerCase(Locale.ROOT)) {
+            case "openai" -> false;
+            case "local" -> true;
+            default -> throw new IllegalArgumentException(
+                    "Unknown rag.embedding.provider '" + embeddingProvider + "', expected openai or local");
+        };
+    }
+
+    /**
+     * The local model's dimension is fixed; {@code langchain4j.embedding.dimension} describes the
+     * OpenAI model.
+     */
+    private int embeddingDimension() {
+        return isLocalEmbedding() ? LOCAL_EMBEDDING_DIMENSION : embeddingDimension;
+    }
+
+    @Bean
+    public Tokenizer tokenizer() {
+        // cl100k_base, shared by the GPT-3.5/4 chat models and the text-embedding-3 family
+        return new OpenAiTokenizer(OpenAiModelName.GPT_3_5_TURBO);
+    }
+
+    @Bean
+    public KeywordIndex keywordIndex() throws IOException {
+        return new KeywordIndex(Paths.get(keywordIndexDirectory), bm25K1, bm25B);
+    }
+
+    @Bean
+    public ManagedEmbeddingStore embeddingStore() throws IOException {
+        if ("hnsw".equalsIgnoreCase(vectorStoreType)) {
+            return new HnswEmbeddingStore(Paths.get(hnswDirectory), embeddingDimension(),
+                    hnswM, hnswEfConstruction, hnswEfSearch, hnswSnapshotInterval,
+                    hnswQuantization, hnswRescoreMultiplier, hnswRecallTarget, hnswFilterBruteForceThreshold);
+        }
+
+        String scheme = weaviateUrl.startsWith("https://") ? "https" : "http";
+        return new WeaviateManagedEmbeddingStore(
+                scheme,
+                weaviateUrl.replace("http://", "").replace("https://", ""),
+                weaviateClassName,
+                embeddingDimension());
     }
 }
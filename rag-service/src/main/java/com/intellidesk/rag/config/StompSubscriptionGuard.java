@@ -0,0 +1,121 @@
+package com.intellidesk.rag.config;
+
+import com.intellidesk.rag.service.UploadProgressPublisher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps STOMP clients on their own progress and answer topics. The simple broker matches
+ * subscriptions as Ant patterns, so without this a client subscribing to
+ * {@code /topic/upload-progress/**} would receive every user's progress.
+ *
+ * <ul>
+ *   <li>Subscriptions containing pattern characters are rejected.</li>
+ *   <li>{@code /topic/upload-progress/user/{userId}} requires the session's CONNECT frame to have
+ *   carried the same {@code X-User-Id}.</li>
+ *   <li>{@code /topic/answer-stream/{requestId}} belongs to the first session that subscribes to
+ *   it or sends a question for it, until that session disconnects.</li>
+ * </ul>
+ */
+@Component
+@Slf4j
+public class StompSubscriptionGuard implements ChannelInterceptor {
+
+    public static final String USER_ID_HEADER = "X-User-Id";
+    static final String USER_PROGRESS_PREFIX = UploadProgressPublisher.LEGACY_DESTINATION + "/user/";
+    static final String ANSWER_STREAM_PREFIX = "/topic/answer-stream/";
+
+    private static final Pattern WILDCARD = Pattern.compile("[*?{}>]");
+    private static final String USER_ID_ATTRIBUTE = StompSubscriptionGuard.class.getName() + ".userId";
+
+    // requestId -> owning session, and the reverse for cleanup on disconnect
+    private final Map<String, String> answerStreams = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> sessionStreams = new ConcurrentHashMap<>();
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+        StompCommand command = accessor.getCommand();
+        if (command == null) {
+            return message;
+        }
+        switch (command) {
+            case CONNECT, STOMP -> {
+                String userId = UploadProgressPublisher.validateUserId(accessor.getFirstNativeHeader(USER_ID_HEADER));
+                Map<String, Object> attributes = accessor.getSessionAttributes();
+                if (userId != null && attributes != null) {
+                    attributes.put(USER_ID_ATTRIBUTE, userId);
+                }
+            }
+            case SUBSCRIBE -> checkSubscription(accessor);
+            case DISCONNECT -> release(accessor.getSessionId());
+            default -> {
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Claims an answer stream for the session.
+     *
+     * @return whether the stream is the session's, i.e. no other session claimed it first
+     */
+    public boolean claimAnswerStream(String requestId, String sessionId) {
+        if (sessionId == null) {
+            return false;
+        }
+        String owner = answerStreams.computeIfAbsent(requestId, id -> {
+            sessionStreams.computeIfAbsent(sessionId, key -> ConcurrentHashMap.newKeySet()).add(id);
+            return sessionId;
+        });
+        return owner.equals(sessionId);
+    }
+
+    private void checkSubscription(StompHeaderAccessor accessor) {
+        String destination = accessor.getDestination();
+        if (destination == null) {
+            return;
+        }
+        // Ant patterns for the simple broker, ActiveMQ's '>' wildcard for the relay
+        if (WILDCARD.matcher(destination).find()) {
+            reject(accessor, "Pattern subscriptions are not allowed");
+        }
+        if (destination.startsWith(USER_PROGRESS_PREFIX)) {
+            Map<String, Object> attributes = accessor.getSessionAttributes();
+            Object userId = attributes != null ? attributes.get(USER_ID_ATTRIBUTE) : null;
+            if (!destination.substring(USER_PROGRESS_PREFIX.length()).equals(userId)) {
+                reject(accessor, "User progress topics require the same " + USER_ID_HEADER + " on CONNECT");
+            }
+        } else if (destination.startsWith(ANSWER_STREAM_PREFIX)
+                && !claimAnswerStream(destination.substring(ANSWER_STREAM_PREFIX.length()), accessor.getSessionId())) {
+            reject(accessor, "Answer stream belongs to another session");
+        }
+    }
+
+    private void reject(StompHeaderAccessor accessor, String reason) {
+        log.warn("Rejecting STOMP subscription of session {} to {}: {}",
+                accessor.getSessionId(), accessor.getDestination(), reason);
+        throw new MessageDeliveryException(reason);
+    }
+
+    private void release(String sessionId) {
+        if (sessionId == null) {
+            return;
+        }
+        Set<String> requestIds = sessionStreams.remove(sessionId);
+        if (requestIds != null) {
+            requestIds.forEach(requestId -> answerStreams.remove(requestId, sessionId));
+        }
+    }
+}
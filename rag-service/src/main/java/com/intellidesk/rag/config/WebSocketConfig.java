@@ -1,18 +1,88 @@
 package com.intellidesk.rag.config;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 
+import java.util.Locale;
+
+/**
+ * STOMP over WebSocket. By default topics are served by the in-process simple broker, which only
+ * reaches clients connected to this instance. With {@code rag.websocket.broker.type: relay} they
+ * are relayed to an external STOMP broker instead, so any replica can publish and any replica can
+ * serve the subscriber. Either way {@link StompSubscriptionGuard} checks every inbound
+ * subscription first.
+ */
 @Configuration
 @EnableWebSocketMessageBroker
+@Slf4j
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private final StompSubscriptionGuard subscriptionGuard;
+
+    @Value("${rag.websocket.broker.type:simple}")
+    private String brokerType;
+
+    @Value("${rag.websocket.broker.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${rag.websocket.broker.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${rag.websocket.broker.relay.client-login:guest}")
+    private String clientLogin;
+
+    @Value("${rag.websocket.broker.relay.client-passcode:guest}")
+    private String clientPasscode;
+
+    @Value("${rag.websocket.broker.relay.system-login:guest}")
+    private String systemLogin;
+
+    @Value("${rag.websocket.broker.relay.system-passcode:guest}")
+    private String systemPasscode;
+
+    @Value("${rag.websocket.broker.relay.virtual-host:}")
+    private String virtualHost;
+
+    @Value("${rag.websocket.broker.relay.heartbeat-ms:10000}")
+    private long heartbeatMs;
+
+    public WebSocketConfig(StompSubscriptionGuard subscriptionGuard) {
+        this.subscriptionGuard = subscriptionGuard;
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(subscriptionGuard);
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic");
+        switch (brokerType.toLowerCase(Locale.ROOT)) {
+            case "simple" -> config.enableSimpleBroker("/topic");
+            case "relay" -> {
+                var relay = config.enableStompBrokerRelay("/topic")
+                        .setRelayHost(relayHost)
+                        .setRelayPort(relayPort)
+                        .setClientLogin(clientLogin)
+                        .setClientPasscode(clientPasscode)
+                        .setSystemLogin(systemLogin)
+                        .setSystemPasscode(systemPasscode)
+                        .setSystemHeartbeatSendInterval(heartbeatMs)
+                        .setSystemHeartbeatReceiveInterval(heartbeatMs);
+                if (!virtualHost.isBlank()) {
+                    relay.setVirtualHost(virtualHost);
+                }
+                log.info("Relaying STOMP topics to external broker {}:{}", relayHost, relayPort);
+            }
+            default -> throw new IllegalArgumentException(
+                    "Unknown rag.websocket.broker.type '" + brokerType + "', expected simple or relay");
+        }
         config.setApplicationDestinationPrefixes("/app");
     }
 
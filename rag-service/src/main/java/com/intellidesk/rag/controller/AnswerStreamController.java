@@ -0,0 +1,111 @@
+package com.intellidesk.rag.controller;
+
+import com.intellidesk.rag.config.StompSubscriptionGuard;
+import com.intellidesk.rag.dto.AnswerStreamMessage;
+import com.intellidesk.rag.dto.QuestionRequest;
+import com.intellidesk.rag.dto.QuestionResponse;
+import com.intellidesk.rag.service.AnswerStreamListener;
+import com.intellidesk.rag.service.RagService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Controller;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * STOMP counterpart of {@code POST /rag/question/stream}: clients subscribe to
+ * {@code /topic/answer-stream/{requestId}} and then send the question to
+ * {@code /app/question/stream/{requestId}}, optionally with an {@code X-Tenant-Id} STOMP header.
+ * A request id belongs to the session that used it first, so other sessions can neither read nor
+ * feed its stream.
+ * Retrieval runs on a bounded pool of its own so slow questions never hold up the inbound channel
+ * that carries every session's frames; when the pool is saturated the client gets an error frame.
+ */
+@Controller
+@Slf4j
+public class AnswerStreamController {
+
+    private final RagService ragService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final StompSubscriptionGuard subscriptionGuard;
+    private final ExecutorService executor;
+
+    public AnswerStreamController(RagService ragService, SimpMessagingTemplate messagingTemplate,
+                                  StompSubscriptionGuard subscriptionGuard,
+                                  @Value("${rag.websocket.stream.concurrency:16}") int concurrency,
+                                  @Value("${rag.websocket.stream.queue-capacity:64}") int queueCapacity) {
+        this.ragService = ragService;
+        this.messagingTemplate = messagingTemplate;
+        this.subscriptionGuard = subscriptionGuard;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        int threads = Math.max(1, concurrency);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+            Thread thread = new Thread(runnable, "stomp-answer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @MessageMapping("/question/stream/{requestId}")
+    public void streamAnswer(@DestinationVariable String requestId, @Payload QuestionRequest request,
+                             @Header(value = RagController.TENANT_ID_HEADER, required = false) String tenantId,
+                             @Header(SimpMessageHeaderAccessor.SESSION_ID_HEADER) String sessionId) {
+        if (!subscriptionGuard.claimAnswerStream(requestId, sessionId)) {
+            log.warn("Ignoring question of session {} for answer stream {} owned by another session",
+                    sessionId, requestId);
+            return;
+        }
+        request.setTenantId(tenantId);
+        String destination = "/topic/answer-stream/" + requestId;
+        AnswerStreamListener listener = new AnswerStreamListener() {
+            @Override
+            public void onToken(String token) {
+                send(AnswerStreamMessage.token(requestId, token));
+            }
+
+            @Override
+            public void onComplete(QuestionResponse response) {
+                send(AnswerStreamMessage.complete(requestId, response));
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                send(AnswerStreamMessage.error(requestId, error));
+            }
+
+            private void send(AnswerStreamMessage message) {
+                try {
+                    messagingTemplate.convertAndSend(destination, message);
+                } catch (Exception e) {
+                    log.error("Failed to send answer stream frame to {}: {}", destination, e.getMessage());
+                }
+            }
+        };
+
+        try {
+            executor.execute(() -> ragService.streamAnswer(request, listener));
+        } catch (RejectedExecutionException e) {
+            log.warn("Rejecting answer stream {}: stream workers and queue are full", requestId);
+            listener.onError(new IllegalStateException("Too many concurrent questions, please retry"));
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -1,36 +1,295 @@
 package com.intellidesk.rag.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intellidesk.rag.dto.AnswerStreamMessage;
+import com.intellidesk.rag.dto.BatchQuestionRequest;
+import com.intellidesk.rag.dto.ConversationAnswerResponse;
+import com.intellidesk.rag.dto.ConversationResponse;
 import com.intellidesk.rag.dto.DocumentUploadResponse;
+import com.intellidesk.rag.dto.IngestionJobResponse;
+import com.intellidesk.rag.dto.KeywordIndexReport;
 import com.intellidesk.rag.dto.QuestionRequest;
 import com.intellidesk.rag.dto.QuestionResponse;
+import com.intellidesk.rag.dto.UploadInitiateRequest;
+import com.intellidesk.rag.dto.UploadSessionResponse;
+import com.intellidesk.rag.dto.VectorSearchReport;
+import com.intellidesk.rag.service.AnswerStreamListener;
+import com.intellidesk.rag.service.BatchAnswerService;
+import com.intellidesk.rag.service.ChunkedUploadService;
+import com.intellidesk.rag.service.ConversationService;
 import com.intellidesk.rag.service.DocumentService;
+import com.intellidesk.rag.service.IngestionJobService;
 import com.intellidesk.rag.service.RagService;
+import com.intellidesk.rag.service.TenantPolicy;
+import com.intellidesk.rag.service.VectorStoreService;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/rag")
 @RequiredArgsConstructor
+@Slf4j
 public class RagController {
 
+    private static final long STREAM_TIMEOUT_MS = 120_000;
+    // Optional uploader id; progress is then also published to /topic/upload-progress/user/{id}
+    private static final String USER_ID_HEADER = "X-User-Id";
+    // Tenant; uploads are tagged with it and questions only search its documents. Required when
+    // rag.tenancy.require-tenant-id is set
+    static final String TENANT_ID_HEADER = "X-Tenant-Id";
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     private final DocumentService documentService;
+    private final ChunkedUploadService chunkedUploadService;
+    private final IngestionJobService ingestionJobService;
     private final RagService ragService;
+    private final VectorStoreService vectorStoreService;
+    private final BatchAnswerService batchAnswerService;
+    private final ConversationService conversationService;
+    private final TenantPolicy tenantPolicy;
+    private final ObjectMapper objectMapper;
 
     @PostMapping("/documents/upload")
     public ResponseEntity<DocumentUploadResponse> uploadDocument(
-            @RequestParam("file") MultipartFile file) throws IOException {
-        return ResponseEntity.ok(documentService.uploadDocument(file));
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "priority", defaultValue = "0") int priority,
+            @RequestHeader(value = USER_ID_HEADER, required = false) String userId,
+            @RequestHeader(value = TENANT_ID_HEADER, required = false) String tenantId) throws IOException {
+        DocumentUploadResponse response = documentService.uploadDocument(file, priority, userId, tenantId);
+        // Deduplicated uploads match a completed document; everything else, including uploads
+        // matching a document that is still being ingested, is answered with its job
+        HttpStatus status = DocumentService.DEDUPLICATED.equals(response.getStatus()) ? HttpStatus.OK : HttpStatus.ACCEPTED;
+        return ResponseEntity.status(status).body(response);
+    }
+
+    @PostMapping("/documents/{documentId}/versions")
+    public ResponseEntity<DocumentUploadResponse> uploadDocumentVersion(
+            @PathVariable String documentId,
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "priority", defaultValue = "0") int priority,
+            @RequestHeader(value = USER_ID_HEADER, required = false) String userId,
+            @RequestHeader(value = TENANT_ID_HEADER, required = false) String tenantId) throws IOException {
+        DocumentUploadResponse response = documentService.uploadDocument(file, priority, documentId, userId, tenantId);
+        HttpStatus status = DocumentService.DEDUPLICATED.equals(response.getStatus()) ? HttpStatus.OK : HttpStatus.ACCEPTED;
+        return ResponseEntity.status(status).body(response);
+    }
+
+    /**
+     * Starts a resumable chunked upload; chunks are then PUT individually and the upload completed.
+     */
+    @PostMapping("/documents/uploads")
+    public ResponseEntity<UploadSessionResponse> initiateUpload(
+            @RequestBody UploadInitiateRequest request,
+            @RequestHeader(value = USER_ID_HEADER, required = false) String userId,
+            @RequestHeader(value = TENANT_ID_HEADER, required = false) String tenantId) throws IOException {
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .body(UploadSessionResponse.fromEntity(chunkedUploadService.initiate(request, userId, tenantId)));
+    }
+
+    @PutMapping(value = "/documents/uploads/{uploadId}/chunks/{index}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<UploadSessionResponse> uploadChunk(
+            @PathVariable String uploadId,
+            @PathVariable int index,
+            @RequestHeader(value = "X-Chunk-Checksum", required = false) String checksum,
+            @RequestHeader(value = TENANT_ID_HEADER, required = false) String tenantId,
+            InputStream body) throws IOException {
+        return ResponseEntity.ok(UploadSessionResponse.fromEntity(
+                chunkedUploadService.putChunk(uploadId, tenantPolicy.resolve(tenantId), index, checksum, body)));
+    }
+
+    @GetMapping("/documents/uploads/{uploadId}")
+    public ResponseEntity<UploadSessionResponse> getUpload(
+            @PathVariable String uploadId,
+            @RequestHeader(value = TENANT_ID_HEADER, required = false) String tenantId) {
+        return ResponseEntity.ok(UploadSessionResponse.fromEntity(
+                chunkedUploadService.getSession(uploadId, tenantPolicy.resolve(tenantId))));
+    }
+
+    @PostMapping("/documents/uploads/{uploadId}/complete")
+    public ResponseEntity<DocumentUploadResponse> completeUpload(
+            @PathVariable String uploadId,
+            @RequestHeader(value = TENANT_ID_HEADER, required = false) String tenantId) throws IOException {
+        DocumentUploadResponse response = chunkedUploadService.complete(uploadId, tenantPolicy.resolve(tenantId));
+        HttpStatus status = DocumentService.DEDUPLICATED.equals(response.getStatus()) ? HttpStatus.OK : HttpStatus.ACCEPTED;
+        return ResponseEntity.status(status).body(response);
+    }
+
+    @DeleteMapping("/documents/uploads/{uploadId}")
+    public ResponseEntity<Void> abortUpload(
+            @PathVariable String uploadId,
+            @RequestHeader(value = TENANT_ID_HEADER, required = false) String tenantId) throws IOException {
+        chunkedUploadService.abort(uploadId, tenantPolicy.resolve(tenantId));
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Deletes a document together with its vectors and keyword index entries.
+     */
+    @DeleteMapping("/documents/{documentId}")
+    public ResponseEntity<Void> deleteDocument(
+            @PathVariable String documentId,
+            @RequestHeader(value = TENANT_ID_HEADER, required = false) String tenantId) throws IOException {
+        documentService.deleteDocument(documentId, tenantId);
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/documents/jobs/{jobId}")
+    public ResponseEntity<IngestionJobResponse> getIngestionJob(
+            @PathVariable String jobId,
+            @RequestHeader(value = TENANT_ID_HEADER, required = false) String tenantId) {
+        return ResponseEntity.ok(IngestionJobResponse.fromEntity(
+                ingestionJobService.getJob(jobId, tenantPolicy.resolve(tenantId))));
+    }
+
+    @DeleteMapping("/documents/jobs/{jobId}")
+    public ResponseEntity<IngestionJobResponse> cancelIngestionJob(
+            @PathVariable String jobId,
+            @RequestHeader(value = TENANT_ID_HEADER, required = false) String tenantId) {
+        return ResponseEntity.ok(IngestionJobResponse.fromEntity(
+                ingestionJobService.cancel(jobId, tenantPolicy.resolve(tenantId))));
+    }
+
+    @GetMapping("/vector-store/report")
+    public ResponseEntity<VectorSearchReport> vectorSearchReport(
+            @RequestParam(value = "queries", defaultValue = "50") int queries,
+            @RequestParam(value = "k", defaultValue = "5") int k) {
+        return ResponseEntity.ok(vectorStoreService.evaluate(queries, k));
+    }
+
+    @PostMapping("/vector-store/calibrate")
+    public ResponseEntity<VectorSearchReport> calibrateVectorSearch(
+            @RequestParam(value = "queries", defaultValue = "50") int queries,
+            @RequestParam(value = "k", defaultValue = "5") int k) {
+        return ResponseEntity.ok(vectorStoreService.calibrate(queries, k));
+    }
+
+    /**
+     * Adds every stored segment the keyword index is missing; already indexed segments are skipped.
+     */
+    @PostMapping("/vector-store/keyword-index/rebuild")
+    public ResponseEntity<KeywordIndexReport> rebuildKeywordIndex() {
+        return ResponseEntity.ok(vectorStoreService.rebuildKeywordIndex());
     }
 
     @PostMapping("/question")
-    public ResponseEntity<QuestionResponse> askQuestion(@RequestBody QuestionRequest request) {
+    public ResponseEntity<QuestionResponse> askQuestion(
+            @RequestBody QuestionRequest request,
+            @RequestHeader(value = TENANT_ID_HEADER, required = false) String tenantId) {
+        request.setTenantId(tenantId);
         return ResponseEntity.ok(ragService.answerQuestion(request));
     }
 
+    /**
+     * Streams the answer as server-sent events: {@code token} events while the model generates,
+     * then one {@code complete} event with sources and confidence (or an {@code error} event).
+     */
+    @PostMapping(value = "/question/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamAnswer(
+            @RequestBody QuestionRequest request,
+            @RequestHeader(value = TENANT_ID_HEADER, required = false) String tenantId) {
+        request.setTenantId(tenantId);
+        String requestId = UUID.randomUUID().toString();
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        ragService.streamAnswer(request, new AnswerStreamListener() {
+            @Override
+            public void onToken(String token) {
+                send(AnswerStreamMessage.token(requestId, token));
+            }
+
+            @Override
+            public void onComplete(QuestionResponse response) {
+                send(AnswerStreamMessage.complete(requestId, response));
+                emitter.complete();
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                send(AnswerStreamMessage.error(requestId, error));
+                emitter.complete();
+            }
+
+            private void send(AnswerStreamMessage message) {
+                try {
+                    emitter.send(SseEmitter.event().name(message.getType()).data(message, MediaType.APPLICATION_JSON));
+                } catch (IOException | IllegalStateException e) {
+                    // Client went away; the model keeps generating but nothing more is sent
+                    log.debug("Dropping answer stream {}: {}", requestId, e.getMessage());
+                }
+            }
+        });
+        return emitter;
+    }
+
+    /**
+     * Answers a batch of questions, writing one JSON object per line as each answer completes.
+     */
+    @PostMapping(value = "/questions/batch", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> answerBatch(
+            @RequestBody BatchQuestionRequest request,
+            @RequestHeader(value = TENANT_ID_HEADER, required = false) String tenantId) {
+        // Validate up front so bad requests still get a 400 instead of a broken stream
+        batchAnswerService.validate(request.getQuestions());
+        tenantPolicy.resolve(tenantId);
+        request.getQuestions().forEach(question -> question.setTenantId(tenantId));
+        StreamingResponseBody body = out -> batchAnswerService.answerAll(request.getQuestions(), result -> {
+            synchronized (out) {
+                try {
+                    out.write(objectMapper.writeValueAsBytes(result));
+                    out.write('\n');
+                    out.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    /**
+     * Starts a conversation; follow-up questions asked in it are answered with its history.
+     */
+    @PostMapping("/conversations")
+    public ResponseEntity<ConversationResponse> startConversation(
+            @RequestHeader(value = TENANT_ID_HEADER, required = false) String tenantId) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(conversationService.create(tenantId));
+    }
+
+    @GetMapping("/conversations/{conversationId}")
+    public ResponseEntity<ConversationResponse> getConversation(
+            @PathVariable String conversationId,
+            @RequestHeader(value = TENANT_ID_HEADER, required = false) String tenantId) {
+        return ResponseEntity.ok(conversationService.getConversation(conversationId, tenantId));
+    }
+
+    @PostMapping("/conversations/{conversationId}/questions")
+    public ResponseEntity<ConversationAnswerResponse> askInConversation(
+            @PathVariable String conversationId,
+            @RequestBody QuestionRequest request,
+            @RequestHeader(value = TENANT_ID_HEADER, required = false) String tenantId) {
+        request.setTenantId(tenantId);
+        return ResponseEntity.ok(conversationService.ask(conversationId, request));
+    }
+
+    @DeleteMapping("/conversations/{conversationId}")
+    public ResponseEntity<Void> endConversation(
+            @PathVariable String conversationId,
+            @RequestHeader(value = TENANT_ID_HEADER, required = false) String tenantId) {
+        conversationService.delete(conversationId, tenantId);
+        return ResponseEntity.noContent().build();
+    }
+
     @GetMapping("/health")
     public ResponseEntity<String> health() {
         return ResponseEntity.ok("RAG Service is running");
@@ -0,0 +1,40 @@
+package com.intellidesk.rag.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AnswerStreamMessage {
+    private String requestId;
+    private String type; // "token", "complete", "error"
+    private String token;
+    private String answer;
+    private List<String> sources;
+    private Double confidence;
+    private String error;
+
+    public static AnswerStreamMessage token(String requestId, String token) {
+        return AnswerStreamMessage.builder().requestId(requestId).type("token").token(token).build();
+    }
+
+    public static AnswerStreamMessage complete(String requestId, QuestionResponse response) {
+        return AnswerStreamMessage.builder()
+                .requestId(requestId)
+                .type("complete")
+                .answer(response.getAnswer())
+                .sources(response.getSources())
+                .confidence(response.getConfidence())
+                .build();
+    }
+
+    public static AnswerStreamMessage error(String requestId, Throwable error) {
+        return AnswerStreamMessage.builder().requestId(requestId).type("error").error(error.getMessage()).build();
+    }
+}
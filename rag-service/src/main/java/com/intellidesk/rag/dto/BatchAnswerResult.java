@@ -0,0 +1,26 @@
+package com.intellidesk.rag.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One NDJSON line of a batch response; {@code index} is the position of the question in the
+ * request, since lines are written in completion order.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchAnswerResult {
+    private int index;
+    private String question;
+    private String answer;
+    private List<String> sources;
+    private Double confidence;
+    private String error;
+    private long latencyMs;
+}
@@ -0,0 +1,14 @@
+package com.intellidesk.rag.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchQuestionRequest {
+    private List<QuestionRequest> questions;
+}
@@ -0,0 +1,22 @@
+package com.intellidesk.rag.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversationAnswerResponse {
+    private String conversationId;
+    private int turn;
+    private String answer;
+    private List<String> sources;
+    private Double confidence;
+    // True when the previous turn's context was reused instead of searching again
+    private boolean contextReused;
+}
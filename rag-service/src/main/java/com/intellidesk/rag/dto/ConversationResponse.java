@@ -0,0 +1,22 @@
+package com.intellidesk.rag.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversationResponse {
+    private String conversationId;
+    // Questions answered so far, including condensed ones
+    private int turns;
+    // Whether older turns were condensed into a summary
+    private boolean condensed;
+    private LocalDateTime createdAt;
+    private LocalDateTime lastActiveAt;
+}
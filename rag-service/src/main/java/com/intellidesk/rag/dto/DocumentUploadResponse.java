@@ -1,14 +1,18 @@
 package com.intellidesk.rag.dto;
 
 import lombok.AllArgsConstructor;
+import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Data
+@Builder
 @NoArgsConstructor
 @AllArgsConstructor
 public class DocumentUploadResponse {
     private String documentId;
+    private String jobId;
+    private String status;
     private String filename;
     private Long size;
     private String message;
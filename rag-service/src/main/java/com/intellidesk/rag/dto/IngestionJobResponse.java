@@ -0,0 +1,53 @@
+package com.intellidesk.rag.dto;
+
+import com.intellidesk.rag.entity.IngestionJob;
+import com.intellidesk.rag.entity.IngestionJobStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionJobResponse {
+
+    private String jobId;
+    private String documentId;
+    private String filename;
+    private Long size;
+    private int priority;
+    private IngestionJobStatus status;
+    private int currentSegment;
+    private int totalSegments;
+    private int progressPercentage;
+    private int checkpointedSegments;
+    private String message;
+    private String error;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime completedAt;
+
+    public static IngestionJobResponse fromEntity(IngestionJob job) {
+        return IngestionJobResponse.builder()
+                .jobId(job.getId())
+                .documentId(job.getDocumentId())
+                .filename(job.getFilename())
+                .size(job.getSize())
+                .priority(job.getPriority())
+                .status(job.getStatus())
+                .currentSegment(job.getCurrentSegment())
+                .totalSegments(job.getTotalSegments())
+                .progressPercentage(job.getProgressPercentage())
+                .checkpointedSegments(job.getCheckpointedSegments())
+                .message(job.getMessage())
+                .error(job.getError())
+                .createdAt(job.getCreatedAt())
+                .startedAt(job.getStartedAt())
+                .completedAt(job.getCompletedAt())
+                .build();
+    }
+}
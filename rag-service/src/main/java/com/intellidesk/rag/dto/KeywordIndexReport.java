@@ -0,0 +1,23 @@
+package com.intellidesk.rag.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of replaying the embedding store into the keyword index. Segments that were already
+ * indexed are counted as skipped.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class KeywordIndexReport {
+
+    private long segments;
+    private long segmentsAdded;
+    private long segmentsSkipped;
+    private int indexSize;
+    private long durationMs;
+}
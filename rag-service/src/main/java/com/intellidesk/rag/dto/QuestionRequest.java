@@ -1,13 +1,23 @@
 package com.intellidesk.rag.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class QuestionRequest {
     private String question;
     private Integer maxResults;
+    // Only search these documents; all documents when empty
+    private List<String> documentIds;
+    // Search rewrites of the question as well; rag.multi-query.enabled when not set
+    private Boolean multiQuery;
+    // Taken from the X-Tenant-Id header, never from the body
+    @JsonIgnore
+    private String tenantId;
 }
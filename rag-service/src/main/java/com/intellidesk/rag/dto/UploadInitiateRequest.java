@@ -0,0 +1,18 @@
+package com.intellidesk.rag.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadInitiateRequest {
+    private String filename;
+    private Long size;
+    // Optional; the configured default is used when absent
+    private Long chunkSize;
+    private Integer priority;
+    // Set to upload a new version of an existing document
+    private String documentId;
+}
@@ -12,7 +12,7 @@ import lombok.NoArgsConstructor;
 public class UploadProgressMessage {
     private String documentId;
     private String filename;
-    private String status; // "started", "saving", "parsing", "splitting", "embedding", "completed", "failed"
+    private String status; // "started", "saving", "queued", "parsing", "splitting", "embedding", "completed", "deduplicated", "failed", "cancelled"
     private int currentSegment;
     private int totalSegments;
     private int progressPercentage;
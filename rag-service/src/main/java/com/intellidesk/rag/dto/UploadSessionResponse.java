@@ -0,0 +1,56 @@
+package com.intellidesk.rag.dto;
+
+import com.intellidesk.rag.entity.UploadSession;
+import com.intellidesk.rag.entity.UploadSessionStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSessionResponse {
+
+    private String uploadId;
+    private String filename;
+    private long size;
+    private long chunkSize;
+    private int chunkCount;
+    private int receivedChunks;
+    private List<Integer> missingChunks;
+    private UploadSessionStatus status;
+    private String documentId;
+    private String jobId;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+
+    public static UploadSessionResponse fromEntity(UploadSession session) {
+        synchronized (session) {
+            List<String> checksums = session.getChunkChecksums();
+            List<Integer> missing = IntStream.range(0, session.getChunkCount())
+                    .filter(index -> checksums.get(index) == null)
+                    .boxed()
+                    .toList();
+            return UploadSessionResponse.builder()
+                    .uploadId(session.getId())
+                    .filename(session.getFilename())
+                    .size(session.getSize())
+                    .chunkSize(session.getChunkSize())
+                    .chunkCount(session.getChunkCount())
+                    .receivedChunks(session.getChunkCount() - missing.size())
+                    .missingChunks(missing)
+                    .status(session.getStatus())
+                    .documentId(session.getDocumentId())
+                    .jobId(session.getJobId())
+                    .createdAt(session.getCreatedAt())
+                    .updatedAt(session.getUpdatedAt())
+                    .build();
+        }
+    }
+}
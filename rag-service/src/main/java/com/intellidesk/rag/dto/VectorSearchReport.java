@@ -0,0 +1,34 @@
+package com.intellidesk.rag.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Side-by-side recall@k and latency of the vector store search modes, measured against a
+ * brute-force scan. Quantized fields are null when quantization is disabled.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class VectorSearchReport {
+
+    private String quantization;
+    private int dimension;
+    private int liveVectors;
+    private int queries;
+    private int k;
+    private int efSearch;
+    private int rescoreMultiplier;
+    private double exactRecall;
+    private Double quantizedRecall;
+    private double recallTarget;
+    private boolean meetsRecallTarget;
+    private double bruteForceLatencyMicros;
+    private double exactLatencyMicros;
+    private Double quantizedLatencyMicros;
+    private long fullPrecisionBytes;
+    private long quantizedBytes;
+}
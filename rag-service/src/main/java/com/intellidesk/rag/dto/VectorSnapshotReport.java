@@ -0,0 +1,26 @@
+package com.intellidesk.rag.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of a vector snapshot export or import. On import, segments and documents that already
+ * existed are counted as skipped.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class VectorSnapshotReport {
+
+    private int version;
+    private long segments;
+    private long segmentsImported;
+    private long segmentsSkipped;
+    private long documents;
+    private long documentsImported;
+    private long bytes;
+    private long durationMs;
+}
@@ -0,0 +1,132 @@
+package com.intellidesk.rag.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Runs an in-process embedding model on a fixed set of inference threads. Callers queue their
+ * segments and wait; each inference thread takes everything that queued up while it was busy (up
+ * to about {@code maxBatchSize} segments) as one {@code embedAll} call. An idle model answers a
+ * single question immediately, a burst of questions shares inference calls, and request threads
+ * never compete with each other for the CPU.
+ */
+@Slf4j
+public class BatchingEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    private final EmbeddingModel delegate;
+    private final int maxBatchSize;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final DistributionSummary batchSizes;
+    private volatile boolean closed;
+
+    public BatchingEmbeddingModel(EmbeddingModel delegate, int threads, int maxBatchSize, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.batchSizes = DistributionSummary.builder("rag.embedding.local.batch.size")
+                .description("Segments embedded per in-process inference call")
+                .register(meterRegistry);
+
+        int threadCount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < threadCount; i++) {
+            Thread worker = new Thread(this::work, "embedding-inference-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        log.info("In-process embedding model running on {} inference threads (batches of up to {} segments)",
+                threadCount, this.maxBatchSize);
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        if (textSegments.isEmpty()) {
+            return Response.from(List.of());
+        }
+        if (closed) {
+            throw new IllegalStateException("Embedding model is shut down");
+        }
+        Request request = new Request(textSegments);
+        queue.add(request);
+        if (closed && queue.remove(request)) {
+            // Raced with close(); nothing will pick the request up any more
+            throw new IllegalStateException("Embedding model is shut down");
+        }
+        try {
+            return Response.from(request.result.join());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        workers.forEach(Thread::interrupt);
+        Request pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result.completeExceptionally(new IllegalStateException("Embedding model is shut down"));
+        }
+    }
+
+    private void work() {
+        while (!closed) {
+            List<Request> batch = new ArrayList<>();
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            int segmentCount = batch.get(0).segments.size();
+            Request next;
+            while (segmentCount < maxBatchSize && (next = queue.poll()) != null) {
+                batch.add(next);
+                segmentCount += next.segments.size();
+            }
+            embed(batch, segmentCount);
+        }
+    }
+
+    private void embed(List<Request> batch, int segmentCount) {
+        List<TextSegment> segments = new ArrayList<>(segmentCount);
+        for (Request request : batch) {
+            segments.addAll(request.segments);
+        }
+        try {
+            List<Embedding> embeddings = delegate.embedAll(segments).content();
+            batchSizes.record(segmentCount);
+            int offset = 0;
+            for (Request request : batch) {
+                request.result.complete(embeddings.subList(offset, offset + request.segments.size()));
+                offset += request.segments.size();
+            }
+        } catch (RuntimeException e) {
+            log.warn("In-process embedding of {} segments failed: {}", segmentCount, e.getMessage());
+            batch.forEach(request -> request.result.completeExceptionally(e));
+        }
+    }
+
+    private static final class Request {
+        private final List<TextSegment> segments;
+        private final CompletableFuture<List<Embedding>> result = new CompletableFuture<>();
+
+        private Request(List<TextSegment> segments) {
+            this.segments = segments;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.intellidesk.rag.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link EmbeddingModel} decorator caching vectors by SHA-256 of (model name, normalized text).
+ * Lookups go to an in-memory LRU first and then to a {@link MappedEmbeddingFile} that survives
+ * restarts; only the misses are sent to the delegate, in one {@code embedAll} call. Callers always
+ * get their own copy of a cached vector.
+ */
+@Slf4j
+public class CachingEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    private final EmbeddingModel delegate;
+    private final String modelName;
+    private final MappedEmbeddingFile diskCache;
+    private final Map<String, float[]> memoryCache;
+
+    private final Counter memoryHits;
+    private final Counter diskHits;
+    private final Counter misses;
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, String modelName, MappedEmbeddingFile diskCache,
+                                 int memoryEntries, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.modelName = modelName;
+        this.diskCache = diskCache;
+        this.memoryCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+
+        this.memoryHits = Counter.builder("rag.embedding.cache.requests")
+                .tag("result", "hit").tag("tier", "memory").register(meterRegistry);
+        this.diskHits = Counter.builder("rag.embedding.cache.requests")
+                .tag("result", "hit").tag("tier", "disk").register(meterRegistry);
+        this.misses = Counter.builder("rag.embedding.cache.requests")
+                .tag("result", "miss").tag("tier", "none").register(meterRegistry);
+        Gauge.builder("rag.embedding.cache.size", this, model -> model.memorySize())
+                .tag("tier", "memory").register(meterRegistry);
+        Gauge.builder("rag.embedding.cache.size", diskCache, MappedEmbeddingFile::size)
+                .tag("tier", "disk").register(meterRegistry);
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        List<Embedding> results = new ArrayList<>(textSegments.size());
+        // Identical texts inside one call are only sent once
+        Map<String, List<Integer>> missingPositions = new LinkedHashMap<>();
+        Map<String, byte[]> missingKeys = new LinkedHashMap<>();
+        List<TextSegment> missingSegments = new ArrayList<>();
+
+        for (int i = 0; i < textSegments.size(); i++) {
+            TextSegment segment = textSegments.get(i);
+            byte[] key = cacheKey(segment.text());
+            String hex = HexFormat.of().formatHex(key);
+
+            float[] vector = lookup(key, hex);
+            results.add(vector != null ? Embedding.from(vector.clone()) : null);
+            if (vector == null) {
+                if (!missingPositions.containsKey(hex)) {
+                    missingKeys.put(hex, key);
+                    missingSegments.add(segment);
+                }
+                missingPositions.computeIfAbsent(hex, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        if (missingSegments.isEmpty()) {
+            return Response.from(results);
+        }
+
+        misses.increment(missingSegments.size());
+        Response<List<Embedding>> response = delegate.embedAll(missingSegments);
+        List<Embedding> computed = response.content();
+
+        int index = 0;
+        for (Map.Entry<String, List<Integer>> entry : missingPositions.entrySet()) {
+            Embedding embedding = computed.get(index++);
+            store(missingKeys.get(entry.getKey()), entry.getKey(), embedding.vector().clone());
+            List<Integer> positions = entry.getValue();
+            results.set(positions.get(0), embedding);
+            for (int position : positions.subList(1, positions.size())) {
+                results.set(position, Embedding.from(embedding.vector().clone()));
+            }
+        }
+
+        return Response.from(results, response.tokenUsage());
+    }
+
+    @Override
+    public void close() throws IOException {
+        diskCache.close();
+    }
+
+    private float[] lookup(byte[] key, String hex) {
+        float[] vector;
+        synchronized (memoryCache) {
+            vector = memoryCache.get(hex);
+        }
+        if (vector != null) {
+            memoryHits.increment();
+            return vector;
+        }
+
+        vector = diskCache.get(key);
+        if (vector != null) {
+            diskHits.increment();
+            synchronized (memoryCache) {
+                memoryCache.put(hex, vector);
+            }
+        }
+        return vector;
+    }
+
+    private void store(byte[] key, String hex, float[] vector) {
+        synchronized (memoryCache) {
+            memoryCache.put(hex, vector);
+        }
+        diskCache.put(key, vector);
+    }
+
+    private int memorySize() {
+        synchronized (memoryCache) {
+            return memoryCache.size();
+        }
+    }
+
+    private byte[] cacheKey(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(modelName.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(normalize(text).getBytes(StandardCharsets.UTF_8));
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    static String normalize(String text) {
+        return Normalizer.normalize(text, Normalizer.Form.NFC).strip().replaceAll("\\s+", " ");
+    }
+}
@@ -0,0 +1,156 @@
+package com.intellidesk.rag.embedding;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token-bucket limiter for embedding calls that tracks both a requests-per-minute and a
+ * tokens-per-minute budget, combined with an adaptive (AIMD) concurrency limit: the limit is
+ * halved whenever the provider answers with a rate-limit error and grows back by one after a
+ * run of successful calls.
+ */
+@Slf4j
+public class EmbeddingRateLimiter {
+
+    private static final int SUCCESSES_BEFORE_INCREASE = 10;
+
+    private final double requestCapacity;
+    private final double tokenCapacity;
+    private final double requestsPerNano;
+    private final double tokensPerNano;
+    private final int maxConcurrency;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    private double availableRequests;
+    private double availableTokens;
+    private long lastRefill;
+    private int concurrencyLimit;
+    private int inFlight;
+    private int successStreak;
+    private long pausedUntil;
+
+    public EmbeddingRateLimiter(int requestsPerMinute, int tokensPerMinute, int maxConcurrency) {
+        this.requestCapacity = Math.max(1, requestsPerMinute);
+        this.tokenCapacity = Math.max(1, tokensPerMinute);
+        this.requestsPerNano = requestCapacity / TimeUnit.MINUTES.toNanos(1);
+        this.tokensPerNano = tokenCapacity / TimeUnit.MINUTES.toNanos(1);
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.availableRequests = requestCapacity;
+        this.availableTokens = tokenCapacity;
+        this.concurrencyLimit = this.maxConcurrency;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Blocks until a concurrency slot, one request and {@code tokens} tokens are available.
+     */
+    public void acquire(int tokens) throws InterruptedException {
+        // A request larger than the whole minute budget would otherwise wait forever
+        double needed = Math.min(tokens, tokenCapacity);
+
+        lock.lock();
+        try {
+            while (true) {
+                refill();
+                long now = System.nanoTime();
+                long waitNanos;
+
+                if (now < pausedUntil) {
+                    waitNanos = pausedUntil - now;
+                } else if (inFlight >= concurrencyLimit) {
+                    waitNanos = TimeUnit.SECONDS.toNanos(1);
+                } else if (availableRequests < 1) {
+                    waitNanos = (long) ((1 - availableRequests) / requestsPerNano);
+                } else if (availableTokens < needed) {
+                    waitNanos = (long) ((needed - availableTokens) / tokensPerNano);
+                } else {
+                    availableRequests -= 1;
+                    availableTokens -= needed;
+                    inFlight++;
+                    return;
+                }
+
+                changed.awaitNanos(Math.max(waitNanos, TimeUnit.MILLISECONDS.toNanos(1)));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases the concurrency slot of a successful call.
+     */
+    public void onSuccess() {
+        lock.lock();
+        try {
+            inFlight--;
+            if (++successStreak >= SUCCESSES_BEFORE_INCREASE && concurrencyLimit < maxConcurrency) {
+                concurrencyLimit++;
+                successStreak = 0;
+                log.debug("Embedding concurrency limit raised to {}", concurrencyLimit);
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases the concurrency slot of a call rejected with a rate-limit error, halves the
+     * concurrency limit and pauses new calls for {@code backoffMillis}.
+     */
+    public void onRateLimited(long backoffMillis) {
+        lock.lock();
+        try {
+            inFlight--;
+            successStreak = 0;
+            concurrencyLimit = Math.max(1, concurrencyLimit / 2);
+            pausedUntil = Math.max(pausedUntil, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMillis));
+            // Drain the buckets so the retry does not immediately burst again
+            availableRequests = Math.min(availableRequests, 0);
+            availableTokens = Math.min(availableTokens, 0);
+            log.warn("⚠️ Embedding provider rate limit hit, concurrency limit lowered to {}", concurrencyLimit);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases the concurrency slot of a call that failed for any other reason.
+     */
+    public void onFailure() {
+        lock.lock();
+        try {
+            inFlight--;
+            successStreak = 0;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getConcurrencyLimit() {
+        lock.lock();
+        try {
+            return concurrencyLimit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        long elapsed = now - lastRefill;
+        if (elapsed > 0) {
+            availableRequests = Math.min(requestCapacity, availableRequests + elapsed * requestsPerNano);
+            availableTokens = Math.min(tokenCapacity, availableTokens + elapsed * tokensPerNano);
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.intellidesk.rag.embedding;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Fixed-capacity ring of {@code (sha256 key, float[dimension])} records in a memory-mapped file.
+ * The file is reopened on restart and its records re-indexed; once full, the oldest record is
+ * overwritten.
+ *
+ * <pre>
+ * header (32 bytes): magic | version | dimension | capacity | size | nextSlot | reserved
+ * record:            32-byte key | crc32(key, vector) | dimension * float32
+ * </pre>
+ *
+ * <p>A record's key is cleared before its slot is overwritten and written again last, and every
+ * record carries a checksum; records torn by a crash are skipped when the file is re-indexed.
+ */
+@Slf4j
+public class MappedEmbeddingFile implements Closeable {
+
+    static final int KEY_BYTES = 32;
+
+    private static final int MAGIC = 0x49444543; // "IDEC"
+    private static final int VERSION = 2;
+    private static final int CRC_BYTES = 4;
+    private static final byte[] EMPTY_KEY = new byte[KEY_BYTES];
+    private static final int HEADER_BYTES = 32;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int dimension;
+    private final int capacity;
+    private final int recordBytes;
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    private int size;
+    private int nextSlot;
+
+    public MappedEmbeddingFile(Path path, int dimension, int requestedCapacity) throws IOException {
+        if (requestedCapacity < 1) {
+            throw new IllegalArgumentException("Embedding cache file needs room for at least one entry, got "
+                    + requestedCapacity + " (disable the cache with rag.embedding.cache.enabled instead)");
+        }
+        this.dimension = dimension;
+        this.recordBytes = KEY_BYTES + CRC_BYTES + dimension * Float.BYTES;
+        // A single mapping is limited to 2GB
+        this.capacity = (int) Math.min(requestedCapacity, (Integer.MAX_VALUE - HEADER_BYTES) / recordBytes);
+
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity * recordBytes);
+
+        if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION
+                && buffer.getInt(8) == dimension && buffer.getInt(12) == capacity) {
+            size = buffer.getInt(16);
+            nextSlot = buffer.getInt(20);
+            reindex();
+            log.info("Opened embedding cache file {} with {} entries", path, size);
+        } else {
+            // New file, or one written for another model dimension / capacity: start over
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, dimension);
+            buffer.putInt(12, capacity);
+            writeCursor();
+            log.info("Initialized embedding cache file {} (dimension {}, capacity {})", path, dimension, capacity);
+        }
+    }
+
+    public synchronized float[] get(byte[] key) {
+        Integer slot = slots.get(HexFormat.of().formatHex(key));
+        if (slot == null) {
+            return null;
+        }
+        ByteBuffer view = buffer.duplicate();
+        view.position(HEADER_BYTES + slot * recordBytes + KEY_BYTES + CRC_BYTES);
+        float[] vector = new float[dimension];
+        view.asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    public synchronized void put(byte[] key, float[] vector) {
+        if (vector.length != dimension) {
+            return;
+        }
+        String hex = HexFormat.of().formatHex(key);
+        if (slots.containsKey(hex)) {
+            return;
+        }
+
+        int slot = nextSlot;
+        int offset = HEADER_BYTES + slot * recordBytes;
+        if (size == capacity) {
+            // Ring is full: evict the record currently occupying this slot
+            byte[] evicted = new byte[KEY_BYTES];
+            buffer.get(offset, evicted);
+            slots.remove(HexFormat.of().formatHex(evicted));
+        }
+
+        // Invalidate the slot first and publish the key last, so a crash in between never pairs
+        // a key with a partly written vector
+        buffer.put(offset, EMPTY_KEY);
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset + KEY_BYTES + CRC_BYTES);
+        view.asFloatBuffer().put(vector);
+        buffer.putInt(offset + KEY_BYTES, checksum(key, offset));
+        buffer.put(offset, key);
+
+        slots.put(hex, slot);
+        nextSlot = (slot + 1) % capacity;
+        size = Math.min(size + 1, capacity);
+        writeCursor();
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private void reindex() {
+        byte[] key = new byte[KEY_BYTES];
+        int skipped = 0;
+        for (int slot = 0; slot < size; slot++) {
+            int offset = HEADER_BYTES + slot * recordBytes;
+            buffer.get(offset, key);
+            if (Arrays.equals(key, EMPTY_KEY) || buffer.getInt(offset + KEY_BYTES) != checksum(key, offset)) {
+                skipped++;
+                continue;
+            }
+            slots.put(HexFormat.of().formatHex(key), slot);
+        }
+        if (skipped > 0) {
+            log.warn("Skipped {} incomplete records of the embedding cache file", skipped);
+        }
+    }
+
+    private int checksum(byte[] key, int offset) {
+        CRC32 crc = new CRC32();
+        crc.update(key);
+        crc.update(buffer.slice(offset + KEY_BYTES + CRC_BYTES, dimension * Float.BYTES));
+        return (int) crc.getValue();
+    }
+
+    private void writeCursor() {
+        buffer.putInt(16, size);
+        buffer.putInt(20, nextSlot);
+    }
+}
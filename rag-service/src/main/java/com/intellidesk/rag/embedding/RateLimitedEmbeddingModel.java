@@ -0,0 +1,78 @@
+package com.intellidesk.rag.embedding;
+
+import dev.ai4j.openai4j.OpenAiHttpException;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.Tokenizer;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+/**
+ * {@link EmbeddingModel} decorator that routes every call through an {@link EmbeddingRateLimiter}
+ * and retries calls rejected with HTTP 429 using exponential backoff.
+ */
+@Slf4j
+public class RateLimitedEmbeddingModel implements EmbeddingModel {
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final EmbeddingModel delegate;
+    private final EmbeddingRateLimiter rateLimiter;
+    private final Tokenizer tokenizer;
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+
+    public RateLimitedEmbeddingModel(EmbeddingModel delegate, EmbeddingRateLimiter rateLimiter,
+                                     Tokenizer tokenizer, int maxRetries, long initialBackoffMillis) {
+        this.delegate = delegate;
+        this.rateLimiter = rateLimiter;
+        this.tokenizer = tokenizer;
+        this.maxRetries = maxRetries;
+        this.initialBackoffMillis = initialBackoffMillis;
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        int tokens = textSegments.stream()
+                .mapToInt(segment -> tokenizer.estimateTokenCountInText(segment.text()))
+                .sum();
+
+        long backoffMillis = initialBackoffMillis;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                rateLimiter.acquire(tokens);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for embedding rate limit", e);
+            }
+
+            try {
+                Response<List<Embedding>> response = delegate.embedAll(textSegments);
+                rateLimiter.onSuccess();
+                return response;
+            } catch (RuntimeException e) {
+                if (!isRateLimited(e) || attempt >= maxRetries) {
+                    rateLimiter.onFailure();
+                    throw e;
+                }
+                rateLimiter.onRateLimited(backoffMillis);
+                log.warn("Embedding call for {} segments rate limited (attempt {}/{}), retrying in {} ms",
+                        textSegments.size(), attempt + 1, maxRetries, backoffMillis);
+                backoffMillis = Math.min(backoffMillis * 2, 60_000);
+            }
+        }
+    }
+
+    static boolean isRateLimited(Throwable error) {
+        // Walk the cause chain; the OpenAI client may be wrapped by langchain4j's retry helper
+        for (Throwable current = error; current != null; current = current.getCause()) {
+            if (current instanceof OpenAiHttpException httpError && httpError.code() == TOO_MANY_REQUESTS) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
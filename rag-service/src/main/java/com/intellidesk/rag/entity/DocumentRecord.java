@@ -0,0 +1,43 @@
+package com.intellidesk.rag.entity;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentRecord {
+
+    private String documentId;
+    private String filename;
+    // Owning tenant, when uploaded with an X-Tenant-Id; copied onto every segment
+    private String tenantId;
+    private String contentHash;
+    private Long size;
+    private String storedPath;
+    private String jobId;
+    private Integer segmentCount;
+    private int version;
+
+    // Manifest embedded by older records; only read, and moved to the manifest file on load
+    @Builder.Default
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
+    private List<DocumentSegment> segments = new ArrayList<>();
+
+    // Other filenames the same content was uploaded under
+    @Builder.Default
+    private Set<String> aliases = new LinkedHashSet<>();
+
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
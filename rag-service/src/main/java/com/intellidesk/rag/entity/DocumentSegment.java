@@ -0,0 +1,15 @@
+package com.intellidesk.rag.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentSegment {
+
+    // SHA-256 of the segment text
+    private String fingerprint;
+    private String embeddingId;
+}
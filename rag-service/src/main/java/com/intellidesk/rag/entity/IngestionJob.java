@@ -0,0 +1,44 @@
+package com.intellidesk.rag.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionJob {
+
+    private String id;
+    private String documentId;
+    private String filename;
+    private String extension;
+    private String storedPath;
+    private Long size;
+    private String contentHash;
+    private int priority;
+    // Uploader, when known; progress is also published to the user's destination
+    private String userId;
+    // Tenant the document belongs to, attached to its segments as metadata
+    private String tenantId;
+
+    // True when this job replaces the content of an already ingested document
+    private boolean newVersion;
+
+    private IngestionJobStatus status;
+    private int currentSegment;
+    private int totalSegments;
+    private int progressPercentage;
+    // Segments embedded and stored so far, recorded in the job's checkpoint
+    private int checkpointedSegments;
+    private String message;
+    private String error;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime completedAt;
+}
@@ -0,0 +1,47 @@
+package com.intellidesk.rag.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A chunked upload in progress. Chunks are written into place in a staging file sized up front,
+ * so they may arrive in any order and be retried individually.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSession {
+
+    private String id;
+    private String filename;
+    private long size;
+    private long chunkSize;
+    private int chunkCount;
+    private int priority;
+    private String userId;
+    private String tenantId;
+
+    // Set when the upload is a new version of an existing document
+    private String targetDocumentId;
+
+    private String stagingPath;
+
+    // SHA-256 of every received chunk by index, null while the chunk is missing
+    @Builder.Default
+    private List<String> chunkChecksums = new ArrayList<>();
+
+    private UploadSessionStatus status;
+    private String documentId;
+    private String jobId;
+    private String result;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,6 @@
+package com.intellidesk.rag.entity;
+
+public enum UploadSessionStatus {
+    UPLOADING,
+    COMPLETED
+}
@@ -0,0 +1,26 @@
+package com.intellidesk.rag.event;
+
+import dev.langchain4j.data.embedding.Embedding;
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.List;
+
+/**
+ * Published after segments of a document were added to or removed from the vector store.
+ */
+@Getter
+public class DocumentIndexChangedEvent extends ApplicationEvent {
+
+    private final String documentId;
+    private final List<String> removedSegmentIds;
+    private final List<Embedding> addedEmbeddings;
+
+    public DocumentIndexChangedEvent(Object source, String documentId,
+                                     List<String> removedSegmentIds, List<Embedding> addedEmbeddings) {
+        super(source);
+        this.documentId = documentId;
+        this.removedSegmentIds = List.copyOf(removedSegmentIds);
+        this.addedEmbeddings = List.copyOf(addedEmbeddings);
+    }
+}
@@ -0,0 +1,7 @@
+package com.intellidesk.rag.exception;
+
+public class ConversationNotFoundException extends RuntimeException {
+    public ConversationNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.intellidesk.rag.exception;
+
+public class DocumentNotFoundException extends RuntimeException {
+    public DocumentNotFoundException(String message) {
+        super(message);
+    }
+}
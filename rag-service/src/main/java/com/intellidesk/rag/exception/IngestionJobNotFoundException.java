@@ -0,0 +1,7 @@
+package com.intellidesk.rag.exception;
+
+public class IngestionJobNotFoundException extends RuntimeException {
+    public IngestionJobNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,118 @@
+package com.intellidesk.rag.parsing;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Applies a {@link DocumentSplitter} to text that arrives in chunks. Text is collected into
+ * blocks that end at the first paragraph break after {@code blockChars} characters (or at a
+ * section end), and every block is split on its own. Block boundaries are counted from the text
+ * itself, so the segments, and therefore their fingerprints, do not depend on where the parser
+ * cut the text. Splitter overlap does not reach across block boundaries. Segment indexes are
+ * numbered across the whole document.
+ */
+public class IncrementalSplitter {
+
+    public static final int DEFAULT_BLOCK_CHARS = 10_000;
+
+    private static final String INDEX = "index";
+    // A blank line plus any whitespace after it, so a match is only complete once text follows
+    private static final Pattern PARAGRAPH_BREAK = Pattern.compile("\\n[ \\t\\x0B\\f\\r]*\\n\\s*");
+
+    private final DocumentSplitter splitter;
+    private final Metadata metadata;
+    private final int blockChars;
+    private final int maxParagraphChars;
+    // Text after the last paragraph break seen so far
+    private final StringBuilder pending = new StringBuilder();
+    private final StringBuilder block = new StringBuilder();
+    private int nextIndex;
+
+    public IncrementalSplitter(DocumentSplitter splitter, Metadata metadata) {
+        this(splitter, metadata, DEFAULT_BLOCK_CHARS);
+    }
+
+    public IncrementalSplitter(DocumentSplitter splitter, Metadata metadata, int blockChars) {
+        this.splitter = splitter;
+        this.metadata = metadata;
+        this.blockChars = Math.max(1, blockChars);
+        this.maxParagraphChars = this.blockChars * 4;
+    }
+
+    /**
+     * Adds the next chunk of text and returns the segments that are now final.
+     */
+    public List<TextSegment> add(String text) {
+        if (text == null || text.isEmpty()) {
+            return List.of();
+        }
+        pending.append(text);
+        List<TextSegment> segments = new ArrayList<>();
+
+        int consumed = 0;
+        Matcher matcher = PARAGRAPH_BREAK.matcher(pending);
+        while (true) {
+            boolean complete = matcher.find() && matcher.end() < pending.length();
+            // Trailing whitespace may still turn out to be the start of a paragraph break
+            int paragraphEnd = complete ? matcher.start() : stripTrailingWhitespace(pending);
+            while (paragraphEnd - consumed > maxParagraphChars) {
+                // A paragraph without breaks is cut at fixed offsets from its start
+                block.append(pending, consumed, consumed + maxParagraphChars);
+                consumed += maxParagraphChars;
+                segments.addAll(splitBlock());
+            }
+            if (!complete) {
+                break;
+            }
+            block.append(pending, consumed, matcher.end());
+            consumed = matcher.end();
+            if (block.length() >= blockChars) {
+                segments.addAll(splitBlock());
+            }
+        }
+        pending.delete(0, consumed);
+        return segments;
+    }
+
+    /**
+     * Returns the segments of the text held back, at the end of the text or of a section. Later
+     * text starts a new block; numbering continues.
+     */
+    public List<TextSegment> flush() {
+        block.append(pending);
+        pending.setLength(0);
+        return splitBlock();
+    }
+
+    private static int stripTrailingWhitespace(CharSequence text) {
+        int end = text.length();
+        while (end > 0 && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private List<TextSegment> splitBlock() {
+        String text = block.toString();
+        block.setLength(0);
+        if (text.isBlank()) {
+            return List.of();
+        }
+        List<TextSegment> segments = splitter.split(Document.from(text, metadata.copy()));
+        List<TextSegment> renumbered = new ArrayList<>(segments.size());
+        for (TextSegment segment : segments) {
+            Metadata segmentMetadata = segment.metadata().copy();
+            segmentMetadata.remove(INDEX);
+            segmentMetadata.add(INDEX, String.valueOf(nextIndex++));
+            renumbered.add(TextSegment.from(segment.text(), segmentMetadata));
+        }
+        return renumbered;
+    }
+}
@@ -0,0 +1,117 @@
+package com.intellidesk.rag.parsing;
+
+import org.apache.pdfbox.io.RandomAccessRead;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * PDFBox input over a memory-mapped file. Every instance reads through its own view of a shared
+ * mapping, so parallel page-range workers share the page cache instead of each buffering the file.
+ */
+class MappedRandomAccessRead implements RandomAccessRead {
+
+    private final ByteBuffer buffer;
+    private boolean closed;
+
+    MappedRandomAccessRead(ByteBuffer mapping) {
+        this.buffer = mapping.duplicate();
+        this.buffer.position(0);
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkOpen();
+        return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b) throws IOException {
+        return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read(byte[] b, int offset, int length) throws IOException {
+        checkOpen();
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int count = Math.min(length, buffer.remaining());
+        buffer.get(b, offset, count);
+        return count;
+    }
+
+    @Override
+    public long getPosition() throws IOException {
+        checkOpen();
+        return buffer.position();
+    }
+
+    @Override
+    public void seek(long position) throws IOException {
+        checkOpen();
+        if (position < 0) {
+            throw new IOException("Invalid position " + position);
+        }
+        buffer.position((int) Math.min(position, buffer.limit()));
+    }
+
+    @Override
+    public long length() throws IOException {
+        checkOpen();
+        return buffer.limit();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public int peek() throws IOException {
+        checkOpen();
+        return buffer.hasRemaining() ? buffer.get(buffer.position()) & 0xff : -1;
+    }
+
+    @Override
+    public void rewind(int bytes) throws IOException {
+        checkOpen();
+        buffer.position(buffer.position() - bytes);
+    }
+
+    @Override
+    public byte[] readFully(int length) throws IOException {
+        checkOpen();
+        if (length > buffer.remaining()) {
+            throw new EOFException("Premature end of buffer reached");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public boolean isEOF() throws IOException {
+        checkOpen();
+        return !buffer.hasRemaining();
+    }
+
+    @Override
+    public int available() throws IOException {
+        checkOpen();
+        return buffer.remaining();
+    }
+
+    @Override
+    public void close() {
+        // The mapping is shared and released by the garbage collector
+        closed = true;
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("RandomAccessRead already closed");
+        }
+    }
+}
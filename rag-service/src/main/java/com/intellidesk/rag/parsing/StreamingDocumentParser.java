@@ -0,0 +1,390 @@
+package com.intellidesk.rag.parsing;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentParser;
+import dev.langchain4j.data.document.parser.apache.poi.ApachePoiDocumentParser;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.ScratchFile;
+import org.apache.pdfbox.pdfparser.PDFParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Extracts document text incrementally instead of materializing one {@link Document}.
+ *
+ * <p>PDFs are parsed once over a memory mapping of the file, with temp files rather than heap
+ * for scratch data. Page ranges are copied out of that document one at a time into small
+ * standalone documents, whose text is extracted in parallel on a fork-join pool. At most
+ * {@code 2 * parallelism} ranges are in flight and results are delivered in page order, so a slow
+ * consumer (the embedding pipeline) throttles extraction. PDFBox keeps the objects it has read,
+ * so the one parsed document still grows with the file, but nothing is parsed per worker. DOCX bodies
+ * are streamed paragraph by paragraph with StAX, plain text and markdown line by line from
+ * memory-mapped windows, cutting at paragraphs and (markdown) headings. Legacy {@code .doc} falls
+ * back to the whole-document POI parser.
+ */
+@Component
+@Slf4j
+public class StreamingDocumentParser {
+
+    private static final Set<String> SUPPORTED = Set.of("pdf", "docx", "doc", "txt", "md", "markdown");
+    private static final String DOCX_BODY = "word/document.xml";
+    private static final Pattern MARKDOWN_HEADING = Pattern.compile("^ {0,3}#{1,6}(\\s|$)");
+    private static final Pattern MARKDOWN_FENCE = Pattern.compile("^ {0,3}(```|~~~)");
+    private static final long TEXT_MAP_WINDOW = 64L * 1024 * 1024;
+    private static final String WORD_NS = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+
+    private final int parallelism;
+    private final int pagesPerRange;
+    private final int docxChunkChars;
+    private final int textChunkChars;
+    private final ForkJoinPool pool;
+
+    public StreamingDocumentParser(@Value("${rag.ingestion.parsing.parallelism:0}") int parallelism,
+                                   @Value("${rag.ingestion.parsing.pages-per-range:8}") int pagesPerRange,
+                                   @Value("${rag.ingestion.parsing.docx-chunk-chars:20000}") int docxChunkChars,
+                                   @Value("${rag.ingestion.parsing.text-chunk-chars:20000}") int textChunkChars) {
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.pagesPerRange = Math.max(1, pagesPerRange);
+        this.docxChunkChars = Math.max(1000, docxChunkChars);
+        this.textChunkChars = Math.max(1000, textChunkChars);
+        this.pool = new ForkJoinPool(this.parallelism);
+    }
+
+    public boolean supports(String extension) {
+        return SUPPORTED.contains(extension.toLowerCase(Locale.ROOT));
+    }
+
+    public void parse(Path file, String extension, TextChunkConsumer consumer) throws Exception {
+        switch (extension.toLowerCase(Locale.ROOT)) {
+            case "pdf" -> parsePdf(file, consumer);
+            case "docx" -> parseDocx(file, consumer);
+            case "doc" -> parseWhole(file, new ApachePoiDocumentParser(), consumer);
+            case "txt" -> parseText(file, false, consumer);
+            case "md", "markdown" -> parseText(file, true, consumer);
+            default -> throw new IllegalArgumentException("Unsupported file type: " + extension);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    // ---- PDF -------------------------------------------------------------------------------
+
+    private void parsePdf(Path file, TextChunkConsumer consumer) throws Exception {
+        Deque<Future<String>> window = new ArrayDeque<>();
+        // Parsed once; objects are read lazily from the mapping as pages are copied out
+        try (PDDocument document = load(file, map(file))) {
+            int pages = document.getNumberOfPages();
+            int ranges = (pages + pagesPerRange - 1) / pagesPerRange;
+            log.debug("Extracting {} pages of {} in {} ranges on {} threads", pages, file.getFileName(), ranges, parallelism);
+
+            Iterator<PDPage> pageIterator = document.getPages().iterator();
+            int completedPages = 0;
+            int nextRange = 0;
+            while (nextRange < ranges || !window.isEmpty()) {
+                while (nextRange < ranges && window.size() < parallelism * 2) {
+                    // PDFBox documents are not thread-safe, so each worker gets a standalone copy of its pages
+                    int rangePages = Math.min(pagesPerRange, pages - nextRange * pagesPerRange);
+                    byte[] slice = slice(pageIterator, rangePages);
+                    window.addLast(pool.submit(() -> extractText(slice)));
+                    nextRange++;
+                }
+                String text = await(window.removeFirst());
+                completedPages = Math.min(pages, completedPages + pagesPerRange);
+                consumer.accept(text, false, completedPages, pages);
+            }
+        } finally {
+            // After a failure, let in-flight ranges finish before their results are dropped
+            for (Future<String> future : window) {
+                try {
+                    future.get();
+                } catch (Exception ignored) {
+                    // Result is discarded anyway
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the next {@code count} pages into a document of their own and serializes it, which
+     * resolves everything the pages reference while still on the calling thread.
+     */
+    private static byte[] slice(Iterator<PDPage> pages, int count) throws IOException {
+        try (PDDocument slice = new PDDocument(MemoryUsageSetting.setupTempFileOnly())) {
+            for (int i = 0; i < count && pages.hasNext(); i++) {
+                PDPage page = pages.next();
+                PDPage imported = slice.importPage(page);
+                // Resources inherited from the page tree do not come along with the page dictionary
+                if (page.getResources() != null && !page.getCOSObject().containsKey(COSName.RESOURCES)) {
+                    imported.setResources(page.getResources());
+                }
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            slice.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static String extractText(byte[] slice) throws IOException {
+        try (PDDocument document = PDDocument.load(slice, "", null, null, MemoryUsageSetting.setupTempFileOnly())) {
+            return new PDFTextStripper().getText(document);
+        }
+    }
+
+    /**
+     * Maps the whole file read-only, or returns {@code null} when it is too large for a single
+     * mapping and has to be read through buffered file I/O instead.
+     */
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            // The mapping stays valid after the channel is closed
+            return size <= Integer.MAX_VALUE ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size) : null;
+        }
+    }
+
+    private static PDDocument load(Path file, ByteBuffer mapping) throws IOException {
+        if (mapping == null) {
+            return PDDocument.load(file.toFile(), MemoryUsageSetting.setupTempFileOnly());
+        }
+        ScratchFile scratchFile = new ScratchFile(MemoryUsageSetting.setupTempFileOnly());
+        try {
+            PDFParser parser = new PDFParser(new MappedRandomAccessRead(mapping), "", scratchFile);
+            parser.parse();
+            // Closing the document releases both the parser input and the scratch file
+            return parser.getPDDocument();
+        } catch (IOException e) {
+            scratchFile.close();
+            throw e;
+        }
+    }
+
+    private static String await(Future<String> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // ---- DOCX ------------------------------------------------------------------------------
+
+    private void parseDocx(Path file, TextChunkConsumer consumer) throws Exception {
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            ZipEntry body = zip.getEntry(DOCX_BODY);
+            if (body == null) {
+                throw new IllegalArgumentException("Not a valid DOCX file: " + file.getFileName());
+            }
+            long totalBytes = Math.max(1, body.getSize());
+            try (InputStream in = zip.getInputStream(body)) {
+                XMLStreamReader reader = xmlInputFactory().createXMLStreamReader(in);
+                try {
+                    streamParagraphs(reader, totalBytes, consumer);
+                } finally {
+                    reader.close();
+                }
+            }
+        }
+    }
+
+    private void streamParagraphs(XMLStreamReader reader, long totalBytes, TextChunkConsumer consumer)
+            throws Exception {
+        StringBuilder chunk = new StringBuilder();
+        boolean inText = false;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT && WORD_NS.equals(reader.getNamespaceURI())) {
+                switch (reader.getLocalName()) {
+                    case "t" -> inText = true;
+                    case "tab" -> chunk.append('\t');
+                    case "br", "cr" -> chunk.append('\n');
+                    default -> { }
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && WORD_NS.equals(reader.getNamespaceURI())) {
+                switch (reader.getLocalName()) {
+                    case "t" -> inText = false;
+                    case "p" -> {
+                        chunk.append("\n\n");
+                        if (chunk.length() >= docxChunkChars) {
+                            consumer.accept(chunk.toString(), false, progress(reader, totalBytes), 100);
+                            chunk.setLength(0);
+                        }
+                    }
+                    default -> { }
+                }
+            } else if (inText && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA)) {
+                chunk.append(reader.getText());
+            }
+        }
+        consumer.accept(chunk.toString(), true, 100, 100);
+    }
+
+    private static int progress(XMLStreamReader reader, long totalBytes) {
+        // Character offset of the uncompressed XML approximates how far we are
+        long offset = reader.getLocation().getCharacterOffset();
+        return (int) Math.min(99, Math.max(0, offset * 100 / totalBytes));
+    }
+
+    private static XMLInputFactory xmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    // ---- text and markdown -----------------------------------------------------------------
+
+    private void parseText(Path file, boolean markdown, TextChunkConsumer consumer) throws Exception {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] offset = {0};
+            TextChunker chunker = new TextChunker(markdown, consumer,
+                    () -> (int) Math.min(99, offset[0] * 100 / Math.max(1, size)));
+            CharBuffer chars = CharBuffer.allocate(64 * 1024);
+            StringBuilder line = new StringBuilder();
+
+            // Decode straight from mapped windows of the stored file, without copying it into heap buffers
+            while (offset[0] < size) {
+                long windowSize = Math.min(TEXT_MAP_WINDOW, size - offset[0]);
+                ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset[0], windowSize);
+                boolean endOfInput = offset[0] + windowSize == size;
+                CoderResult result;
+                do {
+                    result = decoder.decode(window, chars, endOfInput);
+                    drainLines(chars, line, chunker);
+                } while (result.isOverflow());
+                // A multi-byte sequence cut by the window boundary is decoded again from the next window
+                offset[0] += window.position();
+            }
+            // Marks the end of input even when the file is empty
+            decoder.decode(ByteBuffer.allocate(0), chars, true);
+            while (decoder.flush(chars).isOverflow()) {
+                drainLines(chars, line, chunker);
+            }
+            drainLines(chars, line, chunker);
+            chunker.line(line);
+            chunker.finish();
+        }
+    }
+
+    private void drainLines(CharBuffer chars, StringBuilder line, TextChunker chunker) throws Exception {
+        chars.flip();
+        while (chars.hasRemaining()) {
+            char c = chars.get();
+            if (c == '\n') {
+                chunker.line(line);
+                line.setLength(0);
+            } else if (c != '\r') {
+                line.append(c);
+                if (line.length() >= textChunkChars) {
+                    // Pathologically long line; hand it over in pieces
+                    chunker.line(line);
+                    line.setLength(0);
+                }
+            }
+        }
+        chars.clear();
+    }
+
+    /**
+     * Collects lines into chunks of about {@code textChunkChars}, cutting at blank lines, and for
+     * markdown ends a section before every heading outside fenced code blocks.
+     */
+    private final class TextChunker {
+
+        private final boolean markdown;
+        private final TextChunkConsumer consumer;
+        private final ProgressSupplier progress;
+        private final StringBuilder chunk = new StringBuilder();
+        private boolean inFence;
+
+        private TextChunker(boolean markdown, TextChunkConsumer consumer, ProgressSupplier progress) {
+            this.markdown = markdown;
+            this.consumer = consumer;
+            this.progress = progress;
+        }
+
+        void line(CharSequence line) throws Exception {
+            if (markdown) {
+                if (MARKDOWN_FENCE.matcher(line).lookingAt()) {
+                    inFence = !inFence;
+                } else if (!inFence && MARKDOWN_HEADING.matcher(line).lookingAt() && !chunk.isEmpty()) {
+                    emit(true);
+                }
+            }
+            boolean blank = line.toString().isBlank();
+            chunk.append(line).append('\n');
+            if ((blank && chunk.length() >= textChunkChars) || chunk.length() >= textChunkChars * 4) {
+                emit(false);
+            }
+        }
+
+        void finish() throws Exception {
+            consumer.accept(chunk.toString(), true, 100, 100);
+            chunk.setLength(0);
+        }
+
+        private void emit(boolean endOfSection) throws Exception {
+            consumer.accept(chunk.toString(), endOfSection, progress.get(), 100);
+            chunk.setLength(0);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ProgressSupplier {
+        int get() throws IOException;
+    }
+
+    // ---- other formats ---------------------------------------------------------------------
+
+    private static void parseWhole(Path file, DocumentParser parser, TextChunkConsumer consumer) throws Exception {
+        Document document;
+        try (InputStream in = Files.newInputStream(file)) {
+            document = parser.parse(in);
+        }
+        consumer.accept(document.text(), true, 1, 1);
+    }
+}
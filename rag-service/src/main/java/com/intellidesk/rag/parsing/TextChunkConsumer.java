@@ -0,0 +1,16 @@
+package com.intellidesk.rag.parsing;
+
+/**
+ * Receives extracted text in document order, one chunk (e.g. a page range) at a time.
+ * A chunk marked as the end of a section (e.g. the text before a markdown heading) must not
+ * share a segment with the text that follows.
+ */
+@FunctionalInterface
+public interface TextChunkConsumer {
+
+    /**
+     * @param completedUnits pages (or other parser units) extracted so far, including this chunk
+     * @param totalUnits     total units of the document, or 0 when unknown up front
+     */
+    void accept(String text, boolean endOfSection, int completedUnits, int totalUnits) throws Exception;
+}
@@ -0,0 +1,276 @@
+package com.intellidesk.rag.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intellidesk.rag.entity.DocumentRecord;
+import com.intellidesk.rag.entity.DocumentSegment;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * File-backed registry of ingested documents, indexed by document id and by tenant and content hash.
+ * Records are stored as JSON under {@code <upload-dir>/documents}. A record's manifest, one
+ * {@code fingerprint embeddingId} line per segment, lives next to it in an append-only
+ * {@code <documentId>.<jobId>.segments} file that is streamed rather than held in memory.
+ */
+@Repository
+@RequiredArgsConstructor
+@Slf4j
+public class DocumentRepository {
+
+    private final ObjectMapper objectMapper;
+    private final Map<String, DocumentRecord> documents = new ConcurrentHashMap<>();
+    // tenant + content hash -> document id, so identical uploads of different tenants stay separate
+    private final Map<String, String> documentIdsByHash = new ConcurrentHashMap<>();
+
+    @Value("${file.upload-dir}")
+    private String uploadDir;
+
+    private Path documentsDir;
+
+    @PostConstruct
+    void load() throws IOException {
+        documentsDir = Paths.get(uploadDir, "documents");
+        Files.createDirectories(documentsDir);
+
+        try (Stream<Path> files = Files.list(documentsDir)) {
+            files.filter(path -> path.toString().endsWith(".json")).forEach(path -> {
+                try {
+                    DocumentRecord record = objectMapper.readValue(path.toFile(), DocumentRecord.class);
+                    if (moveInlineManifest(record)) {
+                        objectMapper.writeValue(path.toFile(), record);
+                    }
+                    index(record);
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable document record {}: {}", path, e.getMessage());
+                }
+            });
+        }
+        log.info("Loaded {} document records from {}", documents.size(), documentsDir);
+    }
+
+    public synchronized DocumentRecord save(DocumentRecord record) {
+        DocumentRecord previous = documents.get(record.getDocumentId());
+        if (previous != null && previous.getContentHash() != null
+                && !previous.getContentHash().equals(record.getContentHash())) {
+            documentIdsByHash.remove(hashKey(previous.getTenantId(), previous.getContentHash()), previous.getDocumentId());
+        }
+        moveInlineManifest(record);
+        index(record);
+
+        Path target = documentsDir.resolve(record.getDocumentId() + ".json");
+        Path temp = documentsDir.resolve(record.getDocumentId() + ".json.tmp");
+        try {
+            objectMapper.writeValue(temp.toFile(), record);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to persist document record " + record.getDocumentId(), e);
+        }
+        return record;
+    }
+
+    public Optional<DocumentRecord> findById(String documentId) {
+        return Optional.ofNullable(documents.get(documentId));
+    }
+
+    public List<DocumentRecord> findAll() {
+        return List.copyOf(documents.values());
+    }
+
+    public Optional<DocumentRecord> findByContentHash(String tenantId, String contentHash) {
+        return Optional.ofNullable(documentIdsByHash.get(hashKey(tenantId, contentHash))).map(documents::get);
+    }
+
+    public synchronized void delete(DocumentRecord record) {
+        documents.remove(record.getDocumentId());
+        if (record.getContentHash() != null) {
+            documentIdsByHash.remove(hashKey(record.getTenantId(), record.getContentHash()), record.getDocumentId());
+        }
+        try {
+            Files.deleteIfExists(documentsDir.resolve(record.getDocumentId() + ".json"));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete document record " + record.getDocumentId(), e);
+        }
+    }
+
+    /**
+     * Starts the manifest a job writes while it ingests a document. Entries whose vector is still
+     * being embedded are appended with a {@code null} id and filled in by {@link #publishManifest}.
+     * Any draft left by an interrupted run of the job is discarded.
+     */
+    public ManifestWriter openManifestDraft(String documentId, String jobId) {
+        try {
+            return new ManifestWriter(draftFile(documentId, jobId));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open manifest of document " + documentId, e);
+        }
+    }
+
+    /**
+     * Writes a complete manifest for a record with the given job id, e.g. one restored from a snapshot.
+     */
+    public ManifestWriter openManifest(String documentId, String jobId) {
+        try {
+            return new ManifestWriter(manifestFile(documentId, jobId));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open manifest of document " + documentId, e);
+        }
+    }
+
+    /**
+     * Turns a job's draft into the manifest a record saved with that job id refers to, taking the
+     * ids of the entries that were still being embedded from {@code embedded}, in order.
+     */
+    public void publishManifest(String documentId, String jobId, Iterator<DocumentSegment> embedded) {
+        Path draft = draftFile(documentId, jobId);
+        try (Stream<DocumentSegment> entries = readManifest(draft);
+             ManifestWriter writer = new ManifestWriter(manifestFile(documentId, jobId))) {
+            Iterator<DocumentSegment> iterator = entries.iterator();
+            while (iterator.hasNext()) {
+                DocumentSegment entry = iterator.next();
+                if (entry.getEmbeddingId() == null) {
+                    DocumentSegment stored = embedded.hasNext() ? embedded.next() : null;
+                    if (stored == null || !stored.getFingerprint().equals(entry.getFingerprint())) {
+                        throw new IllegalStateException("Stored segments of document " + documentId
+                                + " do not match its manifest");
+                    }
+                    entry = stored;
+                }
+                writer.append(entry);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write manifest of document " + documentId, e);
+        }
+        deleteQuietly(draft);
+    }
+
+    /**
+     * Streams the record's segments in document order. The stream must be closed.
+     */
+    public Stream<DocumentSegment> streamManifest(DocumentRecord record) {
+        try {
+            return readManifest(manifestFile(record.getDocumentId(), record.getJobId()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read manifest of document " + record.getDocumentId(), e);
+        }
+    }
+
+    /**
+     * Removes the manifest and any draft of the given job.
+     */
+    public void deleteManifest(String documentId, String jobId) {
+        deleteQuietly(manifestFile(documentId, jobId));
+        deleteQuietly(draftFile(documentId, jobId));
+    }
+
+    /**
+     * Moves a manifest still embedded in the record, as older records and snapshots carry it,
+     * into the record's manifest file.
+     *
+     * @return whether the record changed
+     */
+    private boolean moveInlineManifest(DocumentRecord record) {
+        if (record.getSegments() == null || record.getSegments().isEmpty()) {
+            return false;
+        }
+        try (ManifestWriter writer = new ManifestWriter(manifestFile(record.getDocumentId(), record.getJobId()))) {
+            for (DocumentSegment segment : record.getSegments()) {
+                writer.append(segment);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write manifest of document " + record.getDocumentId(), e);
+        }
+        record.setSegments(new ArrayList<>());
+        return true;
+    }
+
+    private static Stream<DocumentSegment> readManifest(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return Stream.empty();
+        }
+        return Files.lines(file)
+                .map(line -> line.split(" "))
+                .filter(parts -> parts.length == 2)
+                .map(parts -> new DocumentSegment(parts[0], ManifestWriter.PENDING.equals(parts[1]) ? null : parts[1]));
+    }
+
+    private Path manifestFile(String documentId, String jobId) {
+        return documentsDir.resolve(jobId == null ? documentId + ".segments" : documentId + "." + jobId + ".segments");
+    }
+
+    private Path draftFile(String documentId, String jobId) {
+        return documentsDir.resolve(documentId + "." + jobId + ".segments.draft");
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete {}: {}", file, e.getMessage());
+        }
+    }
+
+    private void index(DocumentRecord record) {
+        documents.put(record.getDocumentId(), record);
+        if (record.getContentHash() != null) {
+            documentIdsByHash.put(hashKey(record.getTenantId(), record.getContentHash()), record.getDocumentId());
+        }
+    }
+
+    private static String hashKey(String tenantId, String contentHash) {
+        return tenantId == null ? contentHash : tenantId + "/" + contentHash;
+    }
+
+    /**
+     * Appends manifest lines through a buffer; {@link #close()} syncs the file.
+     */
+    public static final class ManifestWriter implements Closeable {
+
+        private static final String PENDING = "-";
+
+        private final FileOutputStream file;
+        private final Writer out;
+
+        private ManifestWriter(Path path) throws IOException {
+            this.file = new FileOutputStream(path.toFile());
+            this.out = new BufferedWriter(new OutputStreamWriter(file, StandardCharsets.UTF_8), 1 << 16);
+        }
+
+        public void append(DocumentSegment segment) throws IOException {
+            out.write(segment.getFingerprint());
+            out.write(' ');
+            out.write(segment.getEmbeddingId() != null ? segment.getEmbeddingId() : PENDING);
+            out.write('\n');
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (file) {
+                out.flush();
+                file.getFD().sync();
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.intellidesk.rag.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intellidesk.rag.entity.DocumentSegment;
+import com.intellidesk.rag.entity.IngestionJob;
+import com.intellidesk.rag.entity.IngestionJobStatus;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * File-backed store for ingestion jobs. Each job is kept as a JSON document under
+ * {@code <upload-dir>/jobs} so queued and running work survives a restart of the service. Running
+ * jobs also keep an append-only checkpoint of the segments they already embedded and stored.
+ */
+@Repository
+@RequiredArgsConstructor
+@Slf4j
+public class IngestionJobRepository {
+
+    private final ObjectMapper objectMapper;
+    private final Map<String, IngestionJob> jobs = new ConcurrentHashMap<>();
+
+    @Value("${file.upload-dir}")
+    private String uploadDir;
+
+    private Path jobsDir;
+
+    @PostConstruct
+    void load() throws IOException {
+        jobsDir = Paths.get(uploadDir, "jobs");
+        Files.createDirectories(jobsDir);
+
+        try (Stream<Path> files = Files.list(jobsDir)) {
+            files.filter(path -> path.toString().endsWith(".json")).forEach(path -> {
+                try {
+                    IngestionJob job = objectMapper.readValue(path.toFile(), IngestionJob.class);
+                    jobs.put(job.getId(), job);
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable ingestion job file {}: {}", path, e.getMessage());
+                }
+            });
+        }
+        log.info("Loaded {} ingestion jobs from {}", jobs.size(), jobsDir);
+    }
+
+    public IngestionJob save(IngestionJob job) {
+        jobs.put(job.getId(), job);
+        Path target = jobsDir.resolve(job.getId() + ".json");
+        Path temp = jobsDir.resolve(job.getId() + ".json.tmp");
+        try {
+            // Write and rename under one lock: concurrent saves of a job share the temp file
+            synchronized (job) {
+                objectMapper.writeValue(temp.toFile(), job);
+                // Atomic rename so a crash never leaves a half-written job file behind
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to persist ingestion job " + job.getId(), e);
+        }
+        return job;
+    }
+
+    /**
+     * Appends segments whose vectors are durably stored to the job's checkpoint file. The write is
+     * synced, so after a crash the file lists every batch that was committed before it.
+     */
+    public void appendCheckpoint(String jobId, List<DocumentSegment> segments) {
+        StringBuilder lines = new StringBuilder();
+        for (DocumentSegment segment : segments) {
+            lines.append(segment.getFingerprint()).append(' ').append(segment.getEmbeddingId()).append('\n');
+        }
+        try {
+            Files.writeString(checkpointFile(jobId), lines, StandardOpenOption.CREATE, StandardOpenOption.APPEND,
+                    StandardOpenOption.DSYNC);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to checkpoint ingestion job " + jobId, e);
+        }
+    }
+
+    public List<DocumentSegment> loadCheckpoint(String jobId) {
+        try (Stream<DocumentSegment> segments = streamCheckpoint(jobId)) {
+            return segments.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Reads the job's checkpoint lazily, in the order the segments were stored. The stream must be closed.
+     */
+    public Stream<DocumentSegment> streamCheckpoint(String jobId) {
+        Path file = checkpointFile(jobId);
+        if (!Files.exists(file)) {
+            return Stream.empty();
+        }
+        try {
+            // A line torn by a crash is incomplete and simply ignored
+            return Files.lines(file)
+                    .map(line -> line.split(" "))
+                    .filter(parts -> parts.length == 2 && parts[0].length() == 64 && !parts[1].isEmpty())
+                    .map(parts -> new DocumentSegment(parts[0], parts[1]));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read checkpoint of ingestion job " + jobId, e);
+        }
+    }
+
+    public void deleteCheckpoint(String jobId) {
+        try {
+            Files.deleteIfExists(checkpointFile(jobId));
+        } catch (IOException e) {
+            log.warn("Failed to delete checkpoint of ingestion job {}: {}", jobId, e.getMessage());
+        }
+    }
+
+    public Optional<IngestionJob> findById(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    public List<IngestionJob> findByStatusIn(Collection<IngestionJobStatus> statuses) {
+        return jobs.values().stream()
+                .filter(job -> statuses.contains(job.getStatus()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Forgets jobs that finished before {@code cutoff}, together with their files.
+     *
+     * @return the number of jobs removed
+     */
+    public int deleteFinishedBefore(LocalDateTime cutoff) {
+        int removed = 0;
+        for (IngestionJob job : jobs.values()) {
+            if (job.getStatus() == null || !job.getStatus().isTerminal()
+                    || job.getCompletedAt() == null || !job.getCompletedAt().isBefore(cutoff)) {
+                continue;
+            }
+            synchronized (job) {
+                jobs.remove(job.getId());
+                try {
+                    Files.deleteIfExists(jobsDir.resolve(job.getId() + ".json"));
+                } catch (IOException e) {
+                    log.warn("Failed to delete ingestion job file {}: {}", job.getId(), e.getMessage());
+                }
+            }
+            deleteCheckpoint(job.getId());
+            removed++;
+        }
+        return removed;
+    }
+
+    private Path checkpointFile(String jobId) {
+        return jobsDir.resolve(jobId + ".checkpoint");
+    }
+}
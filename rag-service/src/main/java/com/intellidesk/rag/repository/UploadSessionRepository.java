@@ -0,0 +1,91 @@
+package com.intellidesk.rag.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intellidesk.rag.entity.UploadSession;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * File-backed store for chunked upload sessions, kept as JSON under {@code <upload-dir>/upload-sessions}
+ * so an interrupted upload can be resumed after a restart of the service.
+ */
+@Repository
+@RequiredArgsConstructor
+@Slf4j
+public class UploadSessionRepository {
+
+    private final ObjectMapper objectMapper;
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    @Value("${file.upload-dir}")
+    private String uploadDir;
+
+    private Path sessionsDir;
+
+    @PostConstruct
+    void load() throws IOException {
+        sessionsDir = Paths.get(uploadDir, "upload-sessions");
+        Files.createDirectories(sessionsDir);
+
+        try (Stream<Path> files = Files.list(sessionsDir)) {
+            files.filter(path -> path.toString().endsWith(".json")).forEach(path -> {
+                try {
+                    UploadSession session = objectMapper.readValue(path.toFile(), UploadSession.class);
+                    sessions.put(session.getId(), session);
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable upload session file {}: {}", path, e.getMessage());
+                }
+            });
+        }
+        log.info("Loaded {} upload sessions from {}", sessions.size(), sessionsDir);
+    }
+
+    public UploadSession save(UploadSession session) {
+        sessions.put(session.getId(), session);
+        Path target = sessionsDir.resolve(session.getId() + ".json");
+        Path temp = sessionsDir.resolve(session.getId() + ".json.tmp");
+        try {
+            // Write and rename under one lock: parallel chunk PUTs save the session through the same temp file
+            synchronized (session) {
+                objectMapper.writeValue(temp.toFile(), session);
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to persist upload session " + session.getId(), e);
+        }
+        return session;
+    }
+
+    public Optional<UploadSession> findById(String id) {
+        return Optional.ofNullable(sessions.get(id));
+    }
+
+    public List<UploadSession> findAll() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    public void delete(UploadSession session) {
+        sessions.remove(session.getId());
+        try {
+            Files.deleteIfExists(sessionsDir.resolve(session.getId() + ".json"));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete upload session " + session.getId(), e);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.intellidesk.rag.service;
+
+import com.intellidesk.rag.dto.QuestionResponse;
+
+/**
+ * Receives a streamed answer: tokens as the model produces them, then exactly one of
+ * {@link #onComplete} or {@link #onError}.
+ */
+public interface AnswerStreamListener {
+
+    void onToken(String token);
+
+    void onComplete(QuestionResponse response);
+
+    void onError(Throwable error);
+}
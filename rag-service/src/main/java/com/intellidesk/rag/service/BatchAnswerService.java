@@ -0,0 +1,180 @@
+package com.intellidesk.rag.service;
+
+import com.intellidesk.rag.dto.BatchAnswerResult;
+import com.intellidesk.rag.dto.QuestionRequest;
+import com.intellidesk.rag.dto.QuestionResponse;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Answers many questions in one go: all questions are embedded with a single {@code embedAll}
+ * call, retrievals run concurrently and chat model calls are limited to
+ * {@code rag.batch.llm-concurrency} at a time. Results are handed out as they complete.
+ */
+@Service
+@Slf4j
+public class BatchAnswerService {
+
+    private final RagService ragService;
+    private final EmbeddingModel embeddingModel;
+    private final PipelineMetrics pipelineMetrics;
+    private final int maxQuestions;
+    private final Semaphore generationPermits;
+    private final ExecutorService executor;
+
+    public BatchAnswerService(RagService ragService, EmbeddingModel embeddingModel, PipelineMetrics pipelineMetrics,
+                              @Value("${rag.batch.max-questions:500}") int maxQuestions,
+                              @Value("${rag.batch.retrieval-concurrency:16}") int retrievalConcurrency,
+                              @Value("${rag.batch.llm-concurrency:8}") int llmConcurrency) {
+        this.ragService = ragService;
+        this.embeddingModel = embeddingModel;
+        this.pipelineMetrics = pipelineMetrics;
+        this.maxQuestions = maxQuestions;
+        this.generationPermits = new Semaphore(Math.max(1, llmConcurrency), true);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, retrievalConcurrency), runnable -> {
+            Thread thread = new Thread(runnable, "batch-answer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void validate(List<QuestionRequest> questions) {
+        if (questions == null || questions.isEmpty()) {
+            throw new IllegalArgumentException("At least one question is required");
+        }
+        if (questions.size() > maxQuestions) {
+            throw new IllegalArgumentException("A batch may contain at most " + maxQuestions + " questions");
+        }
+        for (int i = 0; i < questions.size(); i++) {
+            QuestionRequest request = questions.get(i);
+            if (request == null || request.getQuestion() == null || request.getQuestion().isBlank()) {
+                throw new IllegalArgumentException("Question " + i + " must not be empty");
+            }
+        }
+    }
+
+    /**
+     * Blocks until every question is answered; {@code sink} is called once per question, from
+     * worker threads, in completion order. When {@code sink} throws (typically because the client
+     * went away) the remaining questions are abandoned without calling the chat model and the
+     * exception is rethrown.
+     */
+    public void answerAll(List<QuestionRequest> questions, Consumer<BatchAnswerResult> sink) {
+        validate(questions);
+        long start = System.nanoTime();
+
+        // Keyword legs start first so they overlap the embedding call
+        List<RagService.PendingRetrieval> pending = new ArrayList<>(questions.size());
+        for (QuestionRequest request : questions) {
+            pending.add(ragService.startRetrieval(request));
+        }
+        List<TextSegment> questionSegments = pending.stream().map(p -> TextSegment.from(p.question())).toList();
+        List<Embedding> embeddings = pipelineMetrics.queryStage("embed")
+                .observe(() -> embeddingModel.embedAll(questionSegments).content());
+        log.info("Embedded {} batch questions in {} ms", questions.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        AtomicReference<RuntimeException> sinkFailure = new AtomicReference<>();
+        // Workers cancel the other tasks while this thread may still be adding them
+        List<CompletableFuture<Void>> tasks = Collections.synchronizedList(new ArrayList<>(questions.size()));
+        for (int i = 0; i < questions.size(); i++) {
+            int index = i;
+            tasks.add(CompletableFuture.runAsync(() -> {
+                BatchAnswerResult result = answer(index, pending.get(index), embeddings.get(index), start, sinkFailure);
+                if (result == null) {
+                    return;
+                }
+                try {
+                    sink.accept(result);
+                } catch (RuntimeException e) {
+                    if (sinkFailure.compareAndSet(null, e)) {
+                        // Tasks still queued never start; running ones stop before generating
+                        tasks.forEach(task -> task.cancel(false));
+                    }
+                }
+            }, executor));
+        }
+        try {
+            CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new)).join();
+        } catch (CancellationException | CompletionException e) {
+            if (sinkFailure.get() == null) {
+                throw e;
+            }
+        }
+        if (sinkFailure.get() != null) {
+            pending.forEach(RagService.PendingRetrieval::cancel);
+            log.warn("Abandoned batch of {} questions after {} ms: {}", questions.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), sinkFailure.get().getMessage());
+            throw sinkFailure.get();
+        }
+        log.info("Answered batch of {} questions in {} ms", questions.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * @return the result, or {@code null} when the batch was abandoned before this question was
+     * answered
+     */
+    private BatchAnswerResult answer(int index, RagService.PendingRetrieval pending, Embedding embedding,
+                                     long batchStart, AtomicReference<RuntimeException> abandoned) {
+        BatchAnswerResult.BatchAnswerResultBuilder result = BatchAnswerResult.builder()
+                .index(index)
+                .question(pending.question());
+        if (abandoned.get() != null) {
+            return null;
+        }
+        try {
+            RagService.Retrieval retrieval = ragService.completeRetrieval(pending, embedding);
+            QuestionResponse response;
+            if (retrieval.needsGeneration()) {
+                generationPermits.acquire();
+                try {
+                    if (abandoned.get() != null) {
+                        return null;
+                    }
+                    response = ragService.generate(retrieval);
+                } finally {
+                    generationPermits.release();
+                }
+            } else {
+                response = ragService.generate(retrieval);
+            }
+            result.answer(response.getAnswer())
+                    .sources(response.getSources())
+                    .confidence(response.getConfidence());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.error("Interrupted");
+        } catch (Exception e) {
+            log.warn("Batch question {} failed: {}", index, e.getMessage());
+            result.error(e.getMessage());
+        }
+        return result.latencyMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - batchStart)).build();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
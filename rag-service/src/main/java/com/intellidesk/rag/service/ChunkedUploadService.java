@@ -0,0 +1,296 @@
+package com.intellidesk.rag.service;
+
+import com.intellidesk.rag.dto.DocumentUploadResponse;
+import com.intellidesk.rag.dto.UploadInitiateRequest;
+import com.intellidesk.rag.entity.UploadSession;
+import com.intellidesk.rag.entity.UploadSessionStatus;
+import com.intellidesk.rag.exception.UploadSessionNotFoundException;
+import com.intellidesk.rag.repository.UploadSessionRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Resumable uploads for documents too large for a single request: the client initiates a
+ * session, PUTs fixed-size chunks (each verified against its SHA-256) in any order and as often
+ * as needed, and completes the session once every chunk is in. Only then is the assembled file
+ * handed to {@link DocumentService} for deduplication and ingestion.
+ */
+@Service
+@Slf4j
+public class ChunkedUploadService {
+
+    private static final long HASH_WINDOW_BYTES = 64L * 1024 * 1024;
+
+    private final UploadSessionRepository sessionRepository;
+    private final DocumentService documentService;
+    private final Path stagingDir;
+    private final long defaultChunkSize;
+    private final long maxChunkSize;
+    private final long maxFileSize;
+    private final Duration sessionTtl;
+    // Chunk writes share a session's lock; completion and abort take it exclusively
+    private final Map<String, ReadWriteLock> sessionLocks = new ConcurrentHashMap<>();
+
+    public ChunkedUploadService(UploadSessionRepository sessionRepository,
+                                DocumentService documentService,
+                                @Value("${rag.upload.chunked.staging-dir:./uploads/staging}") String stagingDir,
+                                @Value("${rag.upload.chunked.chunk-size:8MB}") DataSize defaultChunkSize,
+                                @Value("${rag.upload.chunked.max-chunk-size:64MB}") DataSize maxChunkSize,
+                                @Value("${rag.upload.chunked.max-file-size:4GB}") DataSize maxFileSize,
+                                @Value("${rag.upload.chunked.session-ttl-hours:24}") long sessionTtlHours) {
+        this.sessionRepository = sessionRepository;
+        this.documentService = documentService;
+        this.stagingDir = Paths.get(stagingDir);
+        this.defaultChunkSize = defaultChunkSize.toBytes();
+        this.maxChunkSize = maxChunkSize.toBytes();
+        this.maxFileSize = maxFileSize.toBytes();
+        this.sessionTtl = Duration.ofHours(sessionTtlHours);
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        Files.createDirectories(stagingDir);
+        expireSessions();
+    }
+
+    public UploadSession initiate(UploadInitiateRequest request, String userId, String tenantId) throws IOException {
+        String filename = request.getFilename();
+        documentService.validateUpload(filename, request.getDocumentId(), tenantId);
+        UploadProgressPublisher.validateUserId(userId);
+        if (filename.contains("/") || filename.contains("\\")) {
+            throw new IllegalArgumentException("Filename must not contain a path: " + filename);
+        }
+        long size = request.getSize() != null ? request.getSize() : -1;
+        if (size <= 0 || size > maxFileSize) {
+            throw new IllegalArgumentException("Size must be between 1 and " + maxFileSize + " bytes");
+        }
+        long chunkSize = request.getChunkSize() != null ? request.getChunkSize() : defaultChunkSize;
+        if (chunkSize <= 0 || chunkSize > maxChunkSize) {
+            throw new IllegalArgumentException("Chunk size must be between 1 and " + maxChunkSize + " bytes");
+        }
+        long chunkCount = (size + chunkSize - 1) / chunkSize;
+        if (chunkCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many chunks, use a larger chunk size");
+        }
+        expireSessions();
+
+        String id = UUID.randomUUID().toString();
+        Path stagingPath = stagingDir.resolve(id + ".part");
+        // Sized up front so chunks can be written into place in any order
+        try (RandomAccessFile staging = new RandomAccessFile(stagingPath.toFile(), "rw")) {
+            staging.setLength(size);
+        }
+
+        UploadSession session = UploadSession.builder()
+                .id(id)
+                .filename(filename)
+                .size(size)
+                .chunkSize(chunkSize)
+                .chunkCount((int) chunkCount)
+                .priority(request.getPriority() != null ? request.getPriority() : 0)
+                .targetDocumentId(request.getDocumentId())
+                .userId(userId)
+                .tenantId(tenantId)
+                .stagingPath(stagingPath.toString())
+                .chunkChecksums(new ArrayList<>(Collections.nCopies((int) chunkCount, null)))
+                .status(UploadSessionStatus.UPLOADING)
+                .createdAt(LocalDateTime.now())
+                .updatedAt(LocalDateTime.now())
+                .build();
+        sessionRepository.save(session);
+        log.info("📤 Started chunked upload {} for '{}' ({} bytes in {} chunks)", id, filename, size, chunkCount);
+        return session;
+    }
+
+    /**
+     * Writes chunk {@code index} into the staging file. The chunk only counts as received when
+     * its length and SHA-256 match; a failed or corrupted chunk can simply be sent again.
+     */
+    public UploadSession putChunk(String uploadId, String tenantId, int index, String checksum, InputStream body)
+            throws IOException {
+        UploadSession session = getSession(uploadId, tenantId);
+        if (index < 0 || index >= session.getChunkCount()) {
+            throw new IllegalArgumentException("Chunk index must be between 0 and " + (session.getChunkCount() - 1));
+        }
+        if (checksum == null || checksum.isBlank()) {
+            throw new IllegalArgumentException("Missing chunk checksum (SHA-256, hex)");
+        }
+
+        Lock lock = lock(uploadId).readLock();
+        lock.lock();
+        try {
+            if (session.getStatus() != UploadSessionStatus.UPLOADING) {
+                throw new IllegalArgumentException("Upload " + uploadId + " is already completed");
+            }
+            long offset = index * session.getChunkSize();
+            long expected = Math.min(session.getChunkSize(), session.getSize() - offset);
+            MessageDigest digest = sha256();
+            try (ReadableByteChannel source = new DigestingChannel(Channels.newChannel(body), digest);
+                 FileChannel staging = FileChannel.open(Paths.get(session.getStagingPath()), StandardOpenOption.WRITE)) {
+                long written = 0;
+                long transferred;
+                while (written < expected
+                        && (transferred = staging.transferFrom(source, offset + written, expected - written)) > 0) {
+                    written += transferred;
+                }
+                if (written != expected || source.read(ByteBuffer.allocate(1)) != -1) {
+                    throw new IllegalArgumentException("Chunk " + index + " must be exactly " + expected + " bytes");
+                }
+            }
+
+            String actual = HexFormat.of().formatHex(digest.digest());
+            if (!actual.equalsIgnoreCase(checksum.trim())) {
+                log.warn("Chunk {} of upload {} failed checksum verification", index, uploadId);
+                throw new IllegalArgumentException("Checksum mismatch for chunk " + index);
+            }
+
+            synchronized (session) {
+                session.getChunkChecksums().set(index, actual);
+                session.setUpdatedAt(LocalDateTime.now());
+            }
+            sessionRepository.save(session);
+        } finally {
+            lock.unlock();
+        }
+        log.debug("Received chunk {}/{} of upload {}", index + 1, session.getChunkCount(), uploadId);
+        return session;
+    }
+
+    /**
+     * Looks up a session as seen by a tenant; another tenant's session is reported as missing.
+     *
+     * @param tenantId the resolved tenant of the request, {@code null} for unscoped access
+     */
+    public UploadSession getSession(String uploadId, String tenantId) {
+        return sessionRepository.findById(uploadId)
+                .filter(session -> tenantId == null || tenantId.equals(session.getTenantId()))
+                .orElseThrow(() -> new UploadSessionNotFoundException("Upload session not found: " + uploadId));
+    }
+
+    /**
+     * Verifies that every chunk arrived and submits the assembled file for ingestion. Completing
+     * an already completed upload returns the original outcome.
+     */
+    public DocumentUploadResponse complete(String uploadId, String tenantId) throws IOException {
+        UploadSession session = getSession(uploadId, tenantId);
+        Lock lock = lock(uploadId).writeLock();
+        lock.lock();
+        try {
+            if (session.getStatus() == UploadSessionStatus.COMPLETED) {
+                return DocumentUploadResponse.builder()
+                        .documentId(session.getDocumentId())
+                        .jobId(session.getJobId())
+                        .status(session.getResult())
+                        .filename(session.getFilename())
+                        .size(session.getSize())
+                        .message("Upload already completed")
+                        .build();
+            }
+            long missing = session.getChunkChecksums().stream().filter(checksum -> checksum == null).count();
+            if (missing > 0) {
+                throw new IllegalArgumentException("Upload " + uploadId + " is missing " + missing + " chunks");
+            }
+
+            Path staging = Paths.get(session.getStagingPath());
+            String contentHash = hash(staging);
+            DocumentUploadResponse response = documentService.uploadAssembledFile(staging, session.getFilename(),
+                    session.getSize(), contentHash, session.getPriority(), session.getTargetDocumentId(),
+                    session.getUserId(), session.getTenantId());
+
+            session.setStatus(UploadSessionStatus.COMPLETED);
+            session.setDocumentId(response.getDocumentId());
+            session.setJobId(response.getJobId());
+            session.setResult(response.getStatus());
+            session.setUpdatedAt(LocalDateTime.now());
+            sessionRepository.save(session);
+            log.info("✅ Completed chunked upload {} as document {}", uploadId, response.getDocumentId());
+            return response;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void abort(String uploadId, String tenantId) throws IOException {
+        UploadSession session = getSession(uploadId, tenantId);
+        Lock lock = lock(uploadId).writeLock();
+        lock.lock();
+        try {
+            if (session.getStatus() == UploadSessionStatus.UPLOADING) {
+                Files.deleteIfExists(Paths.get(session.getStagingPath()));
+            }
+            sessionRepository.delete(session);
+        } finally {
+            lock.unlock();
+            sessionLocks.remove(uploadId);
+        }
+        log.info("🗑️  Aborted chunked upload {}", uploadId);
+    }
+
+    /**
+     * Drops sessions that saw no activity within the TTL together with their staging files.
+     */
+    private void expireSessions() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(sessionTtl);
+        for (UploadSession session : sessionRepository.findAll()) {
+            if (session.getUpdatedAt() != null && session.getUpdatedAt().isBefore(cutoff)) {
+                try {
+                    abort(session.getId(), null);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Failed to expire upload session {}: {}", session.getId(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    private ReadWriteLock lock(String uploadId) {
+        return sessionLocks.computeIfAbsent(uploadId, id -> new ReentrantReadWriteLock());
+    }
+
+    private String hash(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += HASH_WINDOW_BYTES) {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(HASH_WINDOW_BYTES, size - position)));
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
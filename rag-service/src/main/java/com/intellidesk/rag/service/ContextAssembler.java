@@ -0,0 +1,207 @@
+package com.intellidesk.rag.service;
+
+import com.intellidesk.rag.store.SegmentFilter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.model.Tokenizer;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns retrieved segments into the prompt context: drops vector matches below
+ * {@code langchain4j.retrieval.min-score} (keyword-only matches have no similarity and are kept on
+ * their rank), stitches neighbouring segments of the same document version together (removing the
+ * splitter's overlap), drops text already contained in another block and packs the blocks, best
+ * ranked first, into a token budget.
+ */
+@Component
+@Slf4j
+public class ContextAssembler {
+
+    public static final String DOCUMENT_ID = SegmentFilter.DOCUMENT_ID;
+    // Heading of the section a segment belongs to, when the format has headings
+    public static final String SECTION = "section";
+    public static final String INDEX = "index";
+    // Ingestion job that split the segment; indexes are only comparable within one job
+    public static final String JOB_ID = "job_id";
+
+    /**
+     * One contiguous piece of context, made of one or more stored segments.
+     *
+     * @param rank       best fused rank of its segments
+     * @param similarity best vector relevance score of its segments, {@code null} when they were
+     *                   only found by keyword
+     */
+    public record Block(String text, double rank, Double similarity, List<String> segmentIds) {
+    }
+
+    public record Context(String text, List<Block> blocks, int tokens) {
+
+        public boolean isEmpty() {
+            return blocks.isEmpty();
+        }
+    }
+
+    // Overlaps shorter than this are treated as coincidence rather than splitter overlap
+    private static final int MIN_OVERLAP = 10;
+    private static final String SEPARATOR = "\n\n";
+
+    private final Tokenizer tokenizer;
+    private final double minScore;
+    private final int maxTokens;
+    private final DistributionSummary contextTokens;
+
+    public ContextAssembler(Tokenizer tokenizer, MeterRegistry meterRegistry,
+                            @Value("${langchain4j.retrieval.min-score:0.7}") double minScore,
+                            @Value("${rag.context.max-tokens:3000}") int maxTokens) {
+        this.tokenizer = tokenizer;
+        this.minScore = minScore;
+        this.maxTokens = Math.max(1, maxTokens);
+        this.contextTokens = DistributionSummary.builder("rag.context.tokens")
+                .description("Tokens of retrieved context sent to the chat model")
+                .register(meterRegistry);
+    }
+
+    public double getMinScore() {
+        return minScore;
+    }
+
+    public Context assemble(List<RetrievedSegment> matches) {
+        List<RetrievedSegment> relevant = matches.stream()
+                .filter(match -> match.segment() != null)
+                .filter(match -> !match.hasSimilarity() || match.similarity() >= minScore)
+                .toList();
+
+        List<Block> blocks = dropContained(mergeNeighbours(relevant));
+        blocks.sort(Comparator.comparingDouble(Block::rank).reversed());
+
+        List<Block> packed = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        int separatorTokens = tokenizer.estimateTokenCountInText(SEPARATOR);
+        int used = 0;
+        for (Block block : blocks) {
+            int tokens = tokenizer.estimateTokenCountInText(block.text()) + (packed.isEmpty() ? 0 : separatorTokens);
+            if (used + tokens > maxTokens) {
+                // A smaller block further down may still fit
+                continue;
+            }
+            if (!packed.isEmpty()) {
+                text.append(SEPARATOR);
+            }
+            text.append(block.text());
+            packed.add(block);
+            used += tokens;
+        }
+
+        contextTokens.record(used);
+        log.debug("Assembled context: {} matches -> {} above min score -> {} blocks, {} packed in {} tokens",
+                matches.size(), relevant.size(), blocks.size(), packed.size(), used);
+        return new Context(text.toString(), packed, used);
+    }
+
+    /**
+     * Joins segments that are neighbours in the same document and were split by the same
+     * ingestion job. Segments reused from an earlier version keep that version's positions, so
+     * they are never joined with segments of another job; segments without position metadata
+     * (ingested before it was recorded) stay separate blocks.
+     */
+    private List<Block> mergeNeighbours(List<RetrievedSegment> matches) {
+        Map<String, List<RetrievedSegment>> bySplit = new LinkedHashMap<>();
+        List<Block> blocks = new ArrayList<>();
+        for (RetrievedSegment match : matches) {
+            Metadata metadata = match.segment().metadata();
+            String documentId = metadata.get(DOCUMENT_ID);
+            String jobId = metadata.get(JOB_ID);
+            if (documentId == null || jobId == null || index(match) < 0) {
+                blocks.add(new Block(match.segment().text(), match.rank(), match.similarity(), List.of(match.id())));
+            } else {
+                bySplit.computeIfAbsent(documentId + "/" + jobId, key -> new ArrayList<>()).add(match);
+            }
+        }
+
+        for (List<RetrievedSegment> splitMatches : bySplit.values()) {
+            splitMatches.sort(Comparator.comparingInt(ContextAssembler::index));
+            StringBuilder text = null;
+            double rank = 0;
+            Double similarity = null;
+            List<String> ids = null;
+            int lastIndex = Integer.MIN_VALUE;
+            for (RetrievedSegment match : splitMatches) {
+                int index = index(match);
+                if (text != null && index == lastIndex + 1) {
+                    appendWithoutOverlap(text, match.segment().text());
+                    ids.add(match.id());
+                    rank = Math.max(rank, match.rank());
+                    similarity = best(similarity, match.similarity());
+                } else {
+                    if (text != null) {
+                        blocks.add(new Block(text.toString(), rank, similarity, ids));
+                    }
+                    text = new StringBuilder(match.segment().text());
+                    rank = match.rank();
+                    similarity = match.similarity();
+                    ids = new ArrayList<>(List.of(match.id()));
+                }
+                lastIndex = index;
+            }
+            if (text != null) {
+                blocks.add(new Block(text.toString(), rank, similarity, ids));
+            }
+        }
+        return blocks;
+    }
+
+    private static Double best(Double current, Double candidate) {
+        if (current == null) {
+            return candidate;
+        }
+        return candidate == null ? current : Math.max(current, candidate);
+    }
+
+    private static List<Block> dropContained(List<Block> blocks) {
+        List<Block> kept = new ArrayList<>(blocks.size());
+        for (int i = 0; i < blocks.size(); i++) {
+            Block block = blocks.get(i);
+            boolean contained = false;
+            for (int j = 0; j < blocks.size() && !contained; j++) {
+                Block other = blocks.get(j);
+                // Of two identical texts the first one is kept
+                contained = i != j && other.text().contains(block.text())
+                        && (other.text().length() > block.text().length() || j < i);
+            }
+            if (!contained) {
+                kept.add(block);
+            }
+        }
+        return kept;
+    }
+
+    private static void appendWithoutOverlap(StringBuilder text, String next) {
+        String current = text.toString();
+        int maxOverlap = Math.min(current.length(), next.length());
+        for (int overlap = maxOverlap; overlap >= MIN_OVERLAP; overlap--) {
+            if (current.regionMatches(current.length() - overlap, next, 0, overlap)) {
+                text.append(next, overlap, next.length());
+                return;
+            }
+        }
+        text.append(' ').append(next);
+    }
+
+    private static int index(RetrievedSegment match) {
+        String index = match.segment().metadata().get(INDEX);
+        try {
+            return index != null ? Integer.parseInt(index) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package com.intellidesk.rag.service;
+
+import com.intellidesk.rag.dto.ConversationAnswerResponse;
+import com.intellidesk.rag.dto.ConversationResponse;
+import com.intellidesk.rag.dto.QuestionRequest;
+import com.intellidesk.rag.dto.QuestionResponse;
+import com.intellidesk.rag.event.DocumentIndexChangedEvent;
+import com.intellidesk.rag.exception.ConversationNotFoundException;
+import com.intellidesk.rag.store.SegmentFilter;
+import com.intellidesk.rag.store.Vectors;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.model.Tokenizer;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.openai.OpenAiChatModel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multi-turn conversations on top of {@link RagService}. Each conversation keeps its recent
+ * turns, a summary of older ones and the context retrieved for its last search in memory.
+ *
+ * <p>A follow-up question is searched together with the question before it, so "and for
+ * contractors?" still finds the right documents. When that search would land within
+ * {@code rag.conversation.reuse-similarity} of the previous one, the previous context is reused
+ * and nothing is searched. Once the history outgrows {@code rag.conversation.history-max-tokens},
+ * all but the most recent turns are condensed into the summary by the chat model.
+ *
+ * <p>Conversations expire {@code rag.conversation.ttl-minutes} after their last use, and the
+ * least recently used ones are evicted beyond {@code rag.conversation.max-sessions}.
+ */
+@Service
+@Slf4j
+public class ConversationService {
+
+    private final RagService ragService;
+    private final EmbeddingModel embeddingModel;
+    private final OpenAiChatModel chatModel;
+    private final ContextAssembler contextAssembler;
+    private final Tokenizer tokenizer;
+    private final PipelineMetrics pipelineMetrics;
+    private final TenantPolicy tenantPolicy;
+    private final int maxSessions;
+    private final long ttlNanos;
+    private final double reuseSimilarity;
+    private final int historyMaxTokens;
+    private final int keepRecentTurns;
+    private final Map<String, Conversation> conversations = new LinkedHashMap<>(16, 0.75f, true);
+    // Bumped on every index change so contexts retrieved from a stale index are not kept for reuse
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Counter reusedContexts;
+    private final Counter retrievedContexts;
+    private final Counter condensations;
+    private final DistributionSummary historyTokens;
+
+    public ConversationService(RagService ragService,
+                               EmbeddingModel embeddingModel,
+                               OpenAiChatModel chatModel,
+                               ContextAssembler contextAssembler,
+                               Tokenizer tokenizer,
+                               PipelineMetrics pipelineMetrics,
+                               TenantPolicy tenantPolicy,
+                               MeterRegistry meterRegistry,
+                               @Value("${rag.conversation.max-sessions:10000}") int maxSessions,
+                               @Value("${rag.conversation.ttl-minutes:30}") long ttlMinutes,
+                               @Value("${rag.conversation.reuse-similarity:0.9}") double reuseSimilarity,
+                               @Value("${rag.conversation.history-max-tokens:1500}") int historyMaxTokens,
+                               @Value("${rag.conversation.keep-recent-turns:2}") int keepRecentTurns) {
+        this.ragService = ragService;
+        this.embeddingModel = embeddingModel;
+        this.chatModel = chatModel;
+        this.contextAssembler = contextAssembler;
+        this.tokenizer = tokenizer;
+        this.pipelineMetrics = pipelineMetrics;
+        this.tenantPolicy = tenantPolicy;
+        this.maxSessions = Math.max(1, maxSessions);
+        this.ttlNanos = TimeUnit.MINUTES.toNanos(ttlMinutes);
+        this.reuseSimilarity = reuseSimilarity;
+        this.historyMaxTokens = Math.max(1, historyMaxTokens);
+        this.keepRecentTurns = Math.max(0, keepRecentTurns);
+
+        this.reusedContexts = Counter.builder("rag.conversation.retrievals").tag("result", "reused")
+                .description("Conversation turns by whether the previous context was reused")
+                .register(meterRegistry);
+        this.retrievedContexts = Counter.builder("rag.conversation.retrievals").tag("result", "retrieved")
+                .description("Conversation turns by whether the previous context was reused")
+                .register(meterRegistry);
+        this.condensations = Counter.builder("rag.conversation.condensations")
+                .description("Conversation histories condensed into a summary")
+                .register(meterRegistry);
+        this.historyTokens = DistributionSummary.builder("rag.conversation.history.tokens")
+                .description("Tokens of conversation history sent to the chat model")
+                .register(meterRegistry);
+        Gauge.builder("rag.conversation.sessions", this, ConversationService::size).register(meterRegistry);
+    }
+
+    public ConversationResponse create(String tenantId) {
+        Conversation conversation = new Conversation(UUID.randomUUID().toString(), tenantPolicy.resolve(tenantId));
+        synchronized (conversations) {
+            evictExpired(conversation.lastUsedAt);
+            conversations.put(conversation.id, conversation);
+            Iterator<Conversation> eldest = conversations.values().iterator();
+            while (conversations.size() > maxSessions && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        log.info("Started conversation {}", conversation.id);
+        return toResponse(conversation);
+    }
+
+    public ConversationResponse getConversation(String conversationId, String tenantId) {
+        Conversation conversation = find(conversationId, tenantId);
+        synchronized (conversation) {
+            return toResponse(conversation);
+        }
+    }
+
+    public void delete(String conversationId, String tenantId) {
+        find(conversationId, tenantId);
+        synchronized (conversations) {
+            conversations.remove(conversationId);
+        }
+        log.info("Ended conversation {}", conversationId);
+    }
+
+    /**
+     * Answers the next question of a conversation. Questions of one conversation are answered one
+     * at a time, in the order they arrive.
+     */
+    public ConversationAnswerResponse ask(String conversationId, QuestionRequest request) {
+        String question = request.getQuestion();
+        if (question == null || question.isBlank()) {
+            throw new IllegalArgumentException("Question must not be empty");
+        }
+        Conversation conversation = find(conversationId, request.getTenantId());
+
+        synchronized (conversation) {
+            int maxResults = request.getMaxResults() != null ? request.getMaxResults() : 5;
+            SegmentFilter filter = SegmentFilter.of(request.getDocumentIds(), conversation.tenantId);
+            String query = conversation.lastQuestion == null ? question : conversation.lastQuestion + "\n" + question;
+            Embedding queryEmbedding = pipelineMetrics.queryStage("embed")
+                    .observe(() -> embeddingModel.embed(query).content());
+            float[] normalizedQuery = Vectors.normalize(queryEmbedding.vector());
+
+            ContextAssembler.Context context;
+            RetrievedContext previous = conversation.retrieved;
+            boolean reused = previous != null && previous.reusableFor(normalizedQuery, maxResults, filter, reuseSimilarity);
+            if (reused) {
+                context = previous.context();
+                reusedContexts.increment();
+            } else {
+                long generationAtRetrieval = generation.get();
+                QuestionRequest retrievalRequest = new QuestionRequest(query, maxResults, request.getDocumentIds(),
+                        request.getMultiQuery(), conversation.tenantId);
+                List<RetrievedSegment> matches =
+                        ragService.search(ragService.startRetrieval(retrievalRequest), queryEmbedding);
+                context = contextAssembler.assemble(matches);
+                retrievedContexts.increment();
+
+                RetrievedContext retrieved = new RetrievedContext(normalizedQuery, maxResults, filter, context,
+                        segmentIds(context), RetrievedSegment.weakestCosine(matches));
+                synchronized (conversations) {
+                    conversation.retrieved = generation.get() == generationAtRetrieval ? retrieved : null;
+                }
+            }
+
+            String history = condense(conversation);
+            String answer = context.isEmpty() && history.isEmpty()
+                    ? RagService.NO_CONTEXT_ANSWER
+                    : ragService.generate(buildPrompt(history, context.text(), question));
+
+            conversation.turns.add(new Turn(question, answer));
+            conversation.lastQuestion = question;
+            conversation.turnCount++;
+            conversation.lastActiveAt = LocalDateTime.now();
+            log.info("Answered turn {} of conversation {} ({} context)", conversation.turnCount, conversationId,
+                    reused ? "reused" : "retrieved");
+
+            QuestionResponse response = ragService.toResponse(context, answer);
+            return ConversationAnswerResponse.builder()
+                    .conversationId(conversationId)
+                    .turn(conversation.turnCount)
+                    .answer(response.getAnswer())
+                    .sources(response.getSources())
+                    .confidence(response.getConfidence())
+                    .contextReused(reused)
+                    .build();
+        }
+    }
+
+    @EventListener
+    public void onDocumentIndexChanged(DocumentIndexChangedEvent event) {
+        Set<String> removed = new HashSet<>(event.getRemovedSegmentIds());
+        List<float[]> added = new ArrayList<>(event.getAddedEmbeddings().size());
+        for (Embedding embedding : event.getAddedEmbeddings()) {
+            added.add(Vectors.normalize(embedding.vector()));
+        }
+
+        synchronized (conversations) {
+            generation.incrementAndGet();
+            for (Conversation conversation : conversations.values()) {
+                RetrievedContext retrieved = conversation.retrieved;
+                if (retrieved != null && retrieved.isAffected(removed, added)) {
+                    conversation.retrieved = null;
+                }
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (conversations) {
+            return conversations.size();
+        }
+    }
+
+    /**
+     * Keeps the history within its token budget and returns it as prompt text. Older turns are
+     * summarized first; if the recent turns alone are still too long, the oldest are dropped.
+     */
+    private String condense(Conversation conversation) {
+        String history = formatHistory(conversation);
+        if (tokenizer.estimateTokenCountInText(history) > historyMaxTokens) {
+            List<Turn> older = conversation.turns.subList(0,
+                    conversation.turns.size() - Math.min(keepRecentTurns, conversation.turns.size()));
+            if (!older.isEmpty()) {
+                try {
+                    conversation.summary = summarize(conversation.summary, older);
+                    condensations.increment();
+                } catch (RuntimeException e) {
+                    // The older turns are dropped either way; the previous summary stays
+                    log.warn("Condensing conversation {} failed: {}", conversation.id, e.getMessage());
+                }
+                older.clear();
+                conversation.condensed = true;
+                history = formatHistory(conversation);
+            }
+            while (tokenizer.estimateTokenCountInText(history) > historyMaxTokens && !conversation.turns.isEmpty()) {
+                conversation.turns.remove(0);
+                history = formatHistory(conversation);
+            }
+            if (tokenizer.estimateTokenCountInText(history) > historyMaxTokens) {
+                log.warn("Summary of conversation {} exceeds the history budget, discarding it", conversation.id);
+                conversation.summary = null;
+                history = "";
+            }
+        }
+        historyTokens.record(history.isEmpty() ? 0 : tokenizer.estimateTokenCountInText(history));
+        return history;
+    }
+
+    private String summarize(String summary, List<Turn> turns) {
+        StringBuilder transcript = new StringBuilder();
+        if (summary != null) {
+            transcript.append("Summary of the earlier conversation: ").append(summary).append("\n\n");
+        }
+        appendTurns(transcript, turns);
+        // Leave room for the recent turns next to the summary; roughly 0.75 words per token
+        int maxWords = Math.max(20, historyMaxTokens * 3 / 8);
+        String prompt = String.format(
+                """
+                Condense the following conversation between a user and an assistant into a summary of
+                at most %d words. Keep the facts, names and numbers the user may refer back to.
+
+                %s
+
+                Summary:
+                """,
+                maxWords,
+                transcript
+        );
+        return pipelineMetrics.queryStage("condense").observe(() -> chatModel.generate(prompt).trim());
+    }
+
+    private static String formatHistory(Conversation conversation) {
+        StringBuilder history = new StringBuilder();
+        if (conversation.summary != null) {
+            history.append("Summary of the earlier conversation: ").append(conversation.summary).append("\n\n");
+        }
+        appendTurns(history, conversation.turns);
+        return history.toString().trim();
+    }
+
+    private static void appendTurns(StringBuilder text, List<Turn> turns) {
+        for (Turn turn : turns) {
+            text.append("User: ").append(turn.question()).append('\n')
+                    .append("Assistant: ").append(turn.answer()).append("\n\n");
+        }
+    }
+
+    private String buildPrompt(String history, String context, String question) {
+        return String.format(
+                """
+                You are a helpful AI assistant for IntelliDesk.
+                Answer the user's latest question based on the provided context and the conversation so far.
+                If they don't contain enough information, say so clearly.
+
+                Context:
+                %s
+
+                Conversation so far:
+                %s
+
+                Question: %s
+
+                Answer:
+                """,
+                context,
+                history.isEmpty() ? "(none)" : history,
+                question
+        );
+    }
+
+    private Conversation find(String conversationId, String tenantId) {
+        tenantPolicy.resolve(tenantId);
+        long now = System.nanoTime();
+        synchronized (conversations) {
+            evictExpired(now);
+            Conversation conversation = conversations.get(conversationId); // refreshes LRU position
+            // Another tenant's conversation is reported as missing rather than forbidden
+            if (conversation == null || !Objects.equals(conversation.tenantId, tenantId)) {
+                throw new ConversationNotFoundException("Conversation not found: " + conversationId);
+            }
+            conversation.lastUsedAt = now;
+            return conversation;
+        }
+    }
+
+    /**
+     * Conversations are kept in last-use order, so the expired ones are at the front.
+     */
+    private void evictExpired(long now) {
+        Iterator<Conversation> iterator = conversations.values().iterator();
+        while (iterator.hasNext()) {
+            Conversation conversation = iterator.next();
+            if (now - conversation.lastUsedAt <= ttlNanos) {
+                break;
+            }
+            iterator.remove();
+            log.debug("Conversation {} expired", conversation.id);
+        }
+    }
+
+    private static ConversationResponse toResponse(Conversation conversation) {
+        return ConversationResponse.builder()
+                .conversationId(conversation.id)
+                .turns(conversation.turnCount)
+                .condensed(conversation.condensed)
+                .createdAt(conversation.createdAt)
+                .lastActiveAt(conversation.lastActiveAt)
+                .build();
+    }
+
+    private static Set<String> segmentIds(ContextAssembler.Context context) {
+        Set<String> ids = new HashSet<>();
+        context.blocks().forEach(block -> ids.addAll(block.segmentIds()));
+        return ids;
+    }
+
+    private static final class Conversation {
+        private final String id;
+        private final String tenantId;
+        private final LocalDateTime createdAt = LocalDateTime.now();
+        private final List<Turn> turns = new ArrayList<>();
+        // Guarded by the conversations lock
+        private long lastUsedAt = System.nanoTime();
+        private LocalDateTime lastActiveAt = createdAt;
+        private String lastQuestion;
+        private String summary;
+        private boolean condensed;
+        private int turnCount;
+        // Written under the conversations lock, read without it
+        private volatile RetrievedContext retrieved;
+
+        private Conversation(String id, String tenantId) {
+            this.id = id;
+            this.tenantId = tenantId;
+        }
+    }
+
+    private record Turn(String question, String answer) {
+    }
+
+    /**
+     * The context of a conversation's last search.
+     *
+     * @param minSimilarity cosine similarity of the weakest vector match (-1 without any); new
+     *                      segments scoring at least this high would have changed the context
+     */
+    private record RetrievedContext(float[] query, int maxResults, SegmentFilter filter,
+                                    ContextAssembler.Context context, Set<String> segmentIds, double minSimilarity) {
+
+        boolean reusableFor(float[] otherQuery, int otherMaxResults, SegmentFilter otherFilter, double threshold) {
+            return !context.isEmpty()
+                    && maxResults == otherMaxResults
+                    && filter.equals(otherFilter)
+                    && Vectors.dot(query, otherQuery) >= threshold;
+        }
+
+        boolean isAffected(Set<String> removed, List<float[]> added) {
+            for (String segmentId : segmentIds) {
+                if (removed.contains(segmentId)) {
+                    return true;
+                }
+            }
+            for (float[] vector : added) {
+                if (Vectors.dot(query, vector) >= minSimilarity) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
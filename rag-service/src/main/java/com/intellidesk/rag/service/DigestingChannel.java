@@ -0,0 +1,43 @@
+package com.intellidesk.rag.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+
+/**
+ * Feeds every byte read from the wrapped channel into a digest, so content can be hashed in the
+ * same pass that writes it to disk.
+ */
+final class DigestingChannel implements ReadableByteChannel {
+
+    private final ReadableByteChannel delegate;
+    private final MessageDigest digest;
+
+    DigestingChannel(ReadableByteChannel delegate, MessageDigest digest) {
+        this.delegate = delegate;
+        this.digest = digest;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        int start = dst.position();
+        int read = delegate.read(dst);
+        if (read > 0) {
+            ByteBuffer view = dst.duplicate();
+            view.position(start).limit(start + read);
+            digest.update(view);
+        }
+        return read;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return delegate.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
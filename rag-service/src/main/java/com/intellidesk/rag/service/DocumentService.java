@@ -1,185 +1,775 @@
 package com.intellidesk.rag.service;
 
-import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.DocumentParser;
-import dev.langchain4j.data.document.DocumentSplitter;
-import dev.langchain4j.data.document.parser.apache.pdfbox.ApachePdfBoxDocumentParser;
-import dev.langchain4j.data.document.parser.apache.poi.ApachePoiDocumentParser;
+import dev.langchain4j.data.document.Metadata;
 import dev.langchain4j.data.document.splitter.DocumentSplitters;
-import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.store.embedding.EmbeddingStore;
 import com.intellidesk.rag.dto.DocumentUploadResponse;
 import com.intellidesk.rag.dto.UploadProgressMessage;
+import com.intellidesk.rag.entity.DocumentRecord;
+import com.intellidesk.rag.entity.DocumentSegment;
+import com.intellidesk.rag.entity.IngestionJob;
+import com.intellidesk.rag.entity.IngestionJobStatus;
+import com.intellidesk.rag.event.DocumentIndexChangedEvent;
+import com.intellidesk.rag.exception.DocumentNotFoundException;
+import com.intellidesk.rag.exception.IngestionQueueFullException;
+import com.intellidesk.rag.parsing.IncrementalSplitter;
+import com.intellidesk.rag.parsing.StreamingDocumentParser;
+import com.intellidesk.rag.repository.DocumentRepository;
+import com.intellidesk.rag.store.KeywordIndex;
+import com.intellidesk.rag.store.ManagedEmbeddingStore;
+import com.intellidesk.rag.store.SegmentFilter;
+import io.micrometer.observation.Observation;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class DocumentService {
 
-    private final EmbeddingModel embeddingModel;
-    private final EmbeddingStore<TextSegment> embeddingStore;
-    private final SimpMessagingTemplate messagingTemplate;
+    public static final String DEDUPLICATED = "DEDUPLICATED";
+    private static final long TRANSFER_CHUNK_BYTES = 8L * 1024 * 1024;
+    private static final Pattern HEADING = Pattern.compile("^\\s*#{1,6}\\s+(.+?)[\\s#]*$", Pattern.MULTILINE);
+    private static final int MAX_SECTION_LENGTH = 200;
+    private static final int REMOVE_BATCH_SIZE = 1000;
+
+    private final ManagedEmbeddingStore embeddingStore;
+    private final KeywordIndex keywordIndex;
+    private final UploadProgressPublisher progressPublisher;
+    private final SegmentBatcher segmentBatcher;
+    private final EmbeddingPipeline embeddingPipeline;
+    private final IngestionJobService ingestionJobService;
+    private final DocumentRepository documentRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final StreamingDocumentParser parser;
+    private final PipelineMetrics pipelineMetrics;
+    private final TenantPolicy tenantPolicy;
+    private final Object registrationLock = new Object();
 
     @Value("${file.upload-dir}")
     private String uploadDir;
 
-    public DocumentUploadResponse uploadDocument(MultipartFile file) throws IOException {
+    @Value("${file.allowed-extensions:pdf,doc,docx,txt,md}")
+    private List<String> allowedExtensions;
+
+    public DocumentUploadResponse uploadDocument(MultipartFile file, int priority, String userId, String tenantId)
+            throws IOException {
+        return uploadDocument(file, priority, null, userId, tenantId);
+    }
+
+    /**
+     * Uploads a new document, or, when {@code targetDocumentId} is given, a new version of an
+     * existing one. New versions only embed segments that did not exist in the previous version
+     * and remove the vectors of segments that disappeared. Documents uploaded with a tenant id are
+     * only deduplicated against, and only versioned by, the same tenant.
+     */
+    public DocumentUploadResponse uploadDocument(MultipartFile file, int priority, String targetDocumentId,
+                                                 String userId, String tenantId) throws IOException {
+        long size = file.getSize();
+        UploadTarget target = prepareUpload(file.getOriginalFilename(), size, targetDocumentId, userId, tenantId);
+
+        // Save file on the request thread; the multipart stream is gone once the request ends
+        log.info("💾 Saving file: {}", target.filename());
+        sendProgress(target.userId(), target.documentId(), target.filename(), "saving", 0, 0, 0, "Saving file...");
+        String contentHash = pipelineMetrics.ingestionStage("save")
+                .observeChecked(() -> persist(file, target.filePath()));
+        log.info("✅ File saved successfully: {} (sha256 {})", target.filePath().getFileName(), contentHash);
+
+        return register(target, size, contentHash, priority, null);
+    }
+
+    /**
+     * Registers a file assembled from a chunked upload. The file is moved into the upload
+     * directory; if the ingestion queue is full it is moved back so completion can be retried.
+     */
+    public DocumentUploadResponse uploadAssembledFile(Path assembled, String filename, long size, String contentHash,
+                                                      int priority, String targetDocumentId, String userId,
+                                                      String tenantId) throws IOException {
+        UploadTarget target = prepareUpload(filename, size, targetDocumentId, userId, tenantId);
+        Files.move(assembled, target.filePath(), StandardCopyOption.REPLACE_EXISTING);
+        log.info("✅ Assembled upload stored: {} (sha256 {})", target.filePath().getFileName(), contentHash);
+
+        return register(target, size, contentHash, priority, assembled);
+    }
+
+    /**
+     * Checks an upload before any content is transferred.
+     */
+    public void validateUpload(String filename, String targetDocumentId, String tenantId) {
+        tenantId = tenantPolicy.resolve(tenantId);
+        if (filename == null || filename.isEmpty()) {
+            throw new IllegalArgumentException("Invalid filename");
+        }
+        String extension = getFileExtension(filename);
+        if (!isAllowedExtension(extension)) {
+            throw new IllegalArgumentException("File type not allowed: " + extension);
+        }
+        if (targetDocumentId != null) {
+            findDocument(targetDocumentId, tenantId);
+        }
+    }
+
+    private UploadTarget prepareUpload(String filename, long size, String targetDocumentId, String userId,
+                                       String tenantId) throws IOException {
         // Validate file
-        String filename = file.getOriginalFilename();
-        String documentId = UUID.randomUUID().toString();
+        UploadProgressPublisher.validateUserId(userId);
+        tenantId = tenantPolicy.resolve(tenantId);
+        DocumentRecord previousVersion = null;
+        if (targetDocumentId != null) {
+            previousVersion = findDocument(targetDocumentId, tenantId);
+            // A new version stays with the tenant of the document
+            tenantId = previousVersion.getTenantId();
+        }
+        String documentId = previousVersion != null ? previousVersion.getDocumentId() : UUID.randomUUID().toString();
         
-        log.info("📤 Starting upload for file: {} (size: {} bytes)", filename, file.getSize());
+        log.info("📤 Starting upload for file: {} (size: {} bytes)", filename, size);
         
         // Send WebSocket notification - upload started
-        sendProgress(documentId, filename, "started", 0, 0, 0, "Upload started");
+        sendProgress(userId, documentId, filename, "started", 0, 0, 0, "Upload started");
         
         if (filename == null || filename.isEmpty()) {
             log.error("❌ Upload failed: Invalid filename");
-            sendProgress(documentId, filename, "failed", 0, 0, 0, "Invalid filename");
+            sendProgress(userId, documentId, filename, "failed", 0, 0, 0, "Invalid filename");
             throw new IllegalArgumentException("Invalid filename");
         }
 
         String extension = getFileExtension(filename);
         if (!isAllowedExtension(extension)) {
             log.error("❌ Upload failed for {}: File type '{}' not allowed", filename, extension);
-            sendProgress(documentId, filename, "failed", 0, 0, 0, "File type not allowed: " + extension);
+            sendProgress(userId, documentId, filename, "failed", 0, 0, 0, "File type not allowed: " + extension);
             throw new IllegalArgumentException("File type not allowed: " + extension);
         }
 
-        try {
-            // Save file
-            log.info("💾 Saving file: {}", filename);
-            sendProgress(documentId, filename, "saving", 0, 0, 0, "Saving file...");
-            
-            Path uploadPath = Paths.get(uploadDir);
-            if (!Files.exists(uploadPath)) {
-                Files.createDirectories(uploadPath);
+        Path uploadPath = Paths.get(uploadDir);
+        if (!Files.exists(uploadPath)) {
+            Files.createDirectories(uploadPath);
+        }
+
+        String storedFilename = previousVersion != null
+                ? documentId + "_v" + (previousVersion.getVersion() + 1) + "_" + filename
+                : documentId + "_" + filename;
+        return new UploadTarget(documentId, previousVersion, filename, extension, uploadPath.resolve(storedFilename),
+                userId, tenantId);
+    }
+
+    /**
+     * Looks up a document, treating documents of another tenant as nonexistent. Without a tenant
+     * id, which {@link TenantPolicy} only lets through when unscoped access is allowed, every
+     * document is visible.
+     */
+    private DocumentRecord findDocument(String documentId, String tenantId) {
+        return documentRepository.findById(documentId)
+                .filter(record -> tenantId == null || tenantId.equals(record.getTenantId()))
+                .orElseThrow(() -> new DocumentNotFoundException("Document not found: " + documentId));
+    }
+
+    /**
+     * Removes a document: its vectors, keyword index entries, stored file and registry entry.
+     * Refused while the document has an ingestion job in progress.
+     */
+    public void deleteDocument(String documentId, String tenantId) throws IOException {
+        tenantId = tenantPolicy.resolve(tenantId);
+        DocumentRecord record;
+        synchronized (registrationLock) {
+            record = findDocument(documentId, tenantId);
+            boolean ingesting = ingestionJobService.findUnfinishedJobs().stream()
+                    .anyMatch(job -> documentId.equals(job.getDocumentId()));
+            if (ingesting) {
+                throw new IllegalArgumentException("Document " + documentId
+                        + " is being ingested; cancel its job before deleting it");
             }
+            documentRepository.delete(record);
+        }
+
+        int removed;
+        try (Stream<DocumentSegment> manifest = documentRepository.streamManifest(record)) {
+            removed = removeVectors(documentId, manifest.map(DocumentSegment::getEmbeddingId));
+        }
+        documentRepository.deleteManifest(documentId, record.getJobId());
+        if (record.getStoredPath() != null) {
+            Files.deleteIfExists(Paths.get(record.getStoredPath()));
+        }
+        log.info("🗑️  Deleted document {} ('{}') with {} segments", documentId, record.getFilename(), removed);
+    }
 
-            String storedFilename = documentId + "_" + filename;
-            Path filePath = uploadPath.resolve(storedFilename);
-            Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
-            log.info("✅ File saved successfully: {}", storedFilename);
+    /**
+     * Removes the given vectors of a document in batches, so a large manifest is never held in
+     * memory as a whole.
+     *
+     * @return the number of vectors removed
+     */
+    private int removeVectors(String documentId, Stream<String> ids) {
+        int[] removed = {0};
+        List<String> batch = new ArrayList<>(REMOVE_BATCH_SIZE);
+        Runnable flush = () -> {
+            List<String> segmentIds = List.copyOf(batch);
+            batch.clear();
+            embeddingStore.removeAll(segmentIds);
+            keywordIndex.removeAll(segmentIds);
+            eventPublisher.publishEvent(new DocumentIndexChangedEvent(this, documentId, segmentIds, List.of()));
+            removed[0] += segmentIds.size();
+        };
+        ids.forEach(id -> {
+            batch.add(id);
+            if (batch.size() == REMOVE_BATCH_SIZE) {
+                flush.run();
+            }
+        });
+        if (!batch.isEmpty()) {
+            flush.run();
+        }
+        return removed[0];
+    }
+
+    /**
+     * Deduplicates a stored upload against existing documents and queues it for ingestion.
+     *
+     * @param returnTo where to move the stored file if the queue rejects it, or {@code null} to delete it
+     */
+    private DocumentUploadResponse register(UploadTarget target, long size, String contentHash, int priority,
+                                            Path returnTo) throws IOException {
+        String documentId = target.documentId();
+        String filename = target.filename();
+        DocumentRecord previousVersion = target.previousVersion();
+        Path filePath = target.filePath();
+
+        IngestionJob job = IngestionJob.builder()
+                .id(UUID.randomUUID().toString())
+                .documentId(documentId)
+                .filename(filename)
+                .extension(target.extension())
+                .storedPath(filePath.toString())
+                .size(size)
+                .contentHash(contentHash)
+                .priority(priority)
+                .newVersion(previousVersion != null)
+                .userId(target.userId())
+                .tenantId(target.tenantId())
+                .build();
+
+        DocumentRecord existing;
+        IngestionJob inFlight = null;
+        synchronized (registrationLock) {
+            if (previousVersion != null) {
+                // A new version is only a no-op when it matches the current version of the same document
+                existing = contentHash.equals(previousVersion.getContentHash()) ? previousVersion : null;
+            } else {
+                existing = documentRepository.findByContentHash(target.tenantId(), contentHash).orElse(null);
+            }
+            if (existing != null) {
+                IngestionJob existingJob = ingestionJobService.findJob(existing.getJobId()).orElse(null);
+                if (existingJob != null && !existingJob.getStatus().isTerminal()) {
+                    // The matching document is still ingesting, and is removed again if that fails
+                    inFlight = existingJob;
+                } else if (!isIngested(existing, existingJob)) {
+                    // Left behind by an ingestion that never completed; its content is not searchable
+                    log.warn("Dropping document {} whose ingestion did not complete", existing.getDocumentId());
+                    if (previousVersion == null) {
+                        documentRepository.delete(existing);
+                        documentRepository.deleteManifest(existing.getDocumentId(), existing.getJobId());
+                        if (existing.getStoredPath() != null) {
+                            Files.deleteIfExists(Paths.get(existing.getStoredPath()));
+                        }
+                    }
+                    existing = null;
+                }
+            }
+            if (existing == null) {
+                // Saved together with its job id and queued under the lock, so an identical upload
+                // never sees a record without the job that is ingesting it
+                if (previousVersion == null) {
+                    documentRepository.save(DocumentRecord.builder()
+                            .documentId(documentId)
+                            .filename(filename)
+                            .tenantId(target.tenantId())
+                            .contentHash(contentHash)
+                            .size(size)
+                            .storedPath(filePath.toString())
+                            .jobId(job.getId())
+                            .version(1)
+                            .createdAt(LocalDateTime.now())
+                            .updatedAt(LocalDateTime.now())
+                            .build());
+                }
+                // Announced before submitting, so it cannot reach clients after the worker's first update
+                sendProgress(target.userId(), documentId, filename, "queued", 0, 0, 0, "Queued for processing");
+                try {
+                    ingestionJobService.submit(job, this::processJob, this::discard);
+                } catch (IngestionQueueFullException e) {
+                    if (returnTo != null) {
+                        Files.move(filePath, returnTo, StandardCopyOption.REPLACE_EXISTING);
+                    } else {
+                        Files.deleteIfExists(filePath);
+                    }
+                    if (previousVersion == null) {
+                        documentRepository.findById(documentId).ifPresent(documentRepository::delete);
+                    }
+                    sendProgress(target.userId(), documentId, filename, "failed", 0, 0, 0, e.getMessage());
+                    throw e;
+                }
+            } else if (!existing.getFilename().equals(filename)) {
+                // Same bytes under a new name: remember the alias instead of re-processing
+                existing.getAliases().add(filename);
+                existing.setUpdatedAt(LocalDateTime.now());
+                documentRepository.save(existing);
+            }
+        }
+
+        if (existing == null) {
+            return DocumentUploadResponse.builder()
+                    .documentId(documentId)
+                    .jobId(job.getId())
+                    .status(IngestionJobStatus.QUEUED.name())
+                    .filename(filename)
+                    .size(size)
+                    .message(job.isNewVersion()
+                            ? "New document version uploaded and queued for incremental processing"
+                            : "Document uploaded and queued for processing")
+                    .build();
+        }
+
+        Files.deleteIfExists(filePath);
+        if (inFlight != null) {
+            log.info("♻️  Skipping '{}': identical content is being ingested as document {} (job {})",
+                    filename, existing.getDocumentId(), inFlight.getId());
+            sendProgress(target.userId(), existing.getDocumentId(), filename,
+                    inFlight.getStatus() == IngestionJobStatus.QUEUED ? "queued" : "embedding",
+                    inFlight.getCurrentSegment(),
+                    inFlight.getTotalSegments(), inFlight.getProgressPercentage(),
+                    "Identical document is already being processed");
+
+            return DocumentUploadResponse.builder()
+                    .documentId(existing.getDocumentId())
+                    .jobId(inFlight.getId())
+                    .status(inFlight.getStatus().name())
+                    .filename(filename)
+                    .size(size)
+                    .message("Identical document is already being processed as '" + existing.getFilename()
+                            + "'; follow its job for the outcome")
+                    .build();
+        }
+        log.info("♻️  Skipping '{}': identical content already ingested as document {}",
+                filename, existing.getDocumentId());
+        sendProgress(target.userId(), existing.getDocumentId(), filename, "deduplicated", 0, 0, 100,
+                "Identical document already ingested, no processing needed");
+
+        return DocumentUploadResponse.builder()
+                .documentId(existing.getDocumentId())
+                .jobId(existing.getJobId())
+                .status(DEDUPLICATED)
+                .filename(filename)
+                .size(size)
+                .message("Identical document already ingested as '" + existing.getFilename() + "'")
+                .segmentsCreated(0)
+                .build();
+    }
+
+    /**
+     * Whether the record's content is searchable: {@link #completeRecord} sets the segment count
+     * once ingestion has completed.
+     */
+    private static boolean isIngested(DocumentRecord record, IngestionJob job) {
+        return record.getSegmentCount() != null || (job != null && job.getStatus() == IngestionJobStatus.COMPLETED);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinishedJobs() {
+        for (IngestionJob job : ingestionJobService.findUnfinishedJobs()) {
+            if (!Files.exists(Paths.get(job.getStoredPath()))) {
+                log.warn("Cannot resume ingestion job {}: stored file {} is missing", job.getId(), job.getStoredPath());
+                continue;
+            }
+            try {
+                log.info("🔁 Resuming ingestion job {} for '{}'", job.getId(), job.getFilename());
+                ingestionJobService.submit(job, this::processJob, this::discard);
+            } catch (IngestionQueueFullException e) {
+                log.warn("Cannot resume ingestion job {}: {}", job.getId(), e.getMessage());
+            }
+        }
+    }
+
+    private void processJob(IngestionJob job) throws Exception {
+        Observation observation = pipelineMetrics.ingestion(job);
+        observation.observeChecked(() -> ingest(job, observation));
+    }
 
-            // Parse document
+    private void ingest(IngestionJob job, Observation observation) throws Exception {
+        String documentId = job.getDocumentId();
+        String filename = job.getFilename();
+
+        try {
+            // Parse, split and embed as one stream: segments start embedding while later pages
+            // are still being extracted
             log.info("📄 Parsing document: {}", filename);
-            sendProgress(documentId, filename, "parsing", 0, 0, 10, "Parsing document...");
-            
-            Document document = parseDocument(file.getInputStream(), extension);
-            log.info("✅ Document parsed successfully");
-            
-            // Split into segments
-            log.info("✂️  Splitting document into segments...");
-            sendProgress(documentId, filename, "splitting", 0, 0, 20, "Splitting into segments...");
-            
-            DocumentSplitter splitter = DocumentSplitters.recursive(500, 50);
-            List<TextSegment> segments = splitter.split(document);
-            log.info("✅ Document split into {} segments", segments.size());
-
-            // Generate embeddings and store
-            log.info("🧠 Generating embeddings and storing in vector database...");
-            sendProgress(documentId, filename, "embedding", 0, segments.size(), 30, 
-                        "Generating embeddings for " + segments.size() + " segments...");
-            
-            int processedSegments = 0;
-            for (TextSegment segment : segments) {
-                Embedding embedding = embeddingModel.embed(segment).content();
-                embeddingStore.add(embedding, segment);
-                processedSegments++;
-                
-                // Calculate progress (30% to 100% range for embedding phase)
-                int progressPercentage = 30 + (processedSegments * 70 / segments.size());
-                
-                // Send WebSocket update every 10 segments or at completion
-                if (processedSegments % 10 == 0 || processedSegments == segments.size()) {
-                    sendProgress(documentId, filename, "embedding", 
-                                processedSegments, segments.size(), progressPercentage,
-                                "Processing segment " + processedSegments + " of " + segments.size());
+            sendProgress(job, "parsing", 0, 0, 10, "Parsing document...");
+
+            // Only segments whose fingerprint is not part of the current version need embedding
+            DocumentRecord record = documentRepository.findById(documentId).orElse(null);
+            Map<String, Deque<String>> previousIds = new HashMap<>();
+            if (record != null && !job.getId().equals(record.getJobId())) {
+                try (Stream<DocumentSegment> manifest = documentRepository.streamManifest(record)) {
+                    manifest.forEach(previous -> previousIds
+                            .computeIfAbsent(previous.getFingerprint(), key -> new ArrayDeque<>())
+                            .add(previous.getEmbeddingId()));
+                }
+            }
+            // Vectors an interrupted earlier run of this job stored and checkpointed
+            Map<String, Deque<String>> checkpointedIds = new HashMap<>();
+            List<DocumentSegment> resumed = ingestionJobService.loadCheckpoint(job);
+            for (DocumentSegment stored : resumed) {
+                checkpointedIds.computeIfAbsent(stored.getFingerprint(), key -> new ArrayDeque<>())
+                        .add(stored.getEmbeddingId());
+            }
+            if (!resumed.isEmpty()) {
+                log.info("🔁 Resuming job {} from checkpoint: {} segments already embedded", job.getId(), resumed.size());
+            }
+
+            // Copied onto every segment, so retrieval can stitch neighbouring segments back together
+            // and restrict searches to documents or a tenant
+            Metadata metadata = new Metadata();
+            metadata.add(ContextAssembler.DOCUMENT_ID, documentId);
+            metadata.add(ContextAssembler.JOB_ID, job.getId());
+            if (job.getTenantId() != null) {
+                metadata.add(SegmentFilter.TENANT_ID, job.getTenantId());
+            }
+            boolean[] sectionStart = {true};
+            IncrementalSplitter splitter = new IncrementalSplitter(DocumentSplitters.recursive(500, 50), metadata);
+
+            int[] segmentCount = new int[1];
+            int[] newSegmentCount = new int[1];
+            // Vectors stored by this run; their ids are also appended to the job's checkpoint
+            AtomicInteger embedded = new AtomicInteger();
+            int[] parseProgress = {10};
+            // Parsing, splitting and embedding interleave, so parse and split time is summed up
+            long[] splitNanos = {0};
+            long[] callbackNanos = {0};
+            SegmentBatcher.Accumulator batches = segmentBatcher.accumulator();
+
+            // The manifest goes to disk as segments are split; ids of new segments are filled in
+            // from the checkpoint once they are all stored
+            try (DocumentRepository.ManifestWriter manifest = documentRepository.openManifestDraft(documentId, job.getId());
+                 EmbeddingPipeline.Session session = embeddingPipeline.open((batch, embeddings) -> {
+                List<String> ids = pipelineMetrics.ingestionStage("store").observe(() -> {
+                    List<String> stored = embeddingStore.addAll(embeddings, batch);
+                    keywordIndex.addAll(stored, batch);
+                    return stored;
+                });
+                List<DocumentSegment> committed = new ArrayList<>(batch.size());
+                for (int i = 0; i < batch.size(); i++) {
+                    committed.add(new DocumentSegment(fingerprint(batch.get(i).text()), ids.get(i)));
+                }
+                try {
+                    ingestionJobService.checkpoint(job, committed);
+                } catch (RuntimeException e) {
+                    // Rollback only finds checkpointed vectors
+                    embeddingStore.removeAll(ids);
+                    keywordIndex.removeAll(ids);
+                    throw e;
+                }
+                eventPublisher.publishEvent(new DocumentIndexChangedEvent(this, documentId, List.of(), embeddings));
+                int processed = embedded.addAndGet(ids.size());
+
+                // Send WebSocket update once per stored batch
+                sendProgress(job, "embedding",
+                            processed, newSegmentCount[0], parseProgress[0],
+                            "Processed " + processed + " of " + newSegmentCount[0] + " segments");
+
+                log.info("⏳ Progress: {}/{} segments processed", processed, newSegmentCount[0]);
+            })) {
+                SegmentHandler handleSegment = segment -> {
+                    String fingerprint = fingerprint(segment.text());
+                    Deque<String> candidates = previousIds.get(fingerprint);
+                    String reusedId = candidates != null ? candidates.poll() : null;
+                    if (reusedId == null) {
+                        // Embedded by the interrupted run; no need to embed it again
+                        Deque<String> checkpointed = checkpointedIds.get(fingerprint);
+                        reusedId = checkpointed != null ? checkpointed.poll() : null;
+                    }
+                    manifest.append(new DocumentSegment(fingerprint, reusedId));
+                    segmentCount[0]++;
+                    if (reusedId == null) {
+                        newSegmentCount[0]++;
+                        int tokens = segmentBatcher.estimateTokens(segment);
+                        pipelineMetrics.recordEmbeddingTokens(tokens);
+                        List<TextSegment> full = batches.add(segment, tokens);
+                        if (full != null) {
+                            session.submit(full);
+                        }
+                    }
+                };
+
+                long parseStart = System.nanoTime();
+                parser.parse(Paths.get(job.getStoredPath()), job.getExtension(), (text, endOfSection, completed, total) -> {
+                    long callbackStart = System.nanoTime();
+                    ingestionJobService.checkCancelled(job);
+                    if (sectionStart[0]) {
+                        // Nothing is held back at a section start, so later splits see the new heading
+                        metadata.remove(ContextAssembler.SECTION);
+                        String heading = heading(text);
+                        if (heading != null) {
+                            metadata.add(ContextAssembler.SECTION, heading);
+                        }
+                        sectionStart[0] = false;
+                    }
+                    long splitStart = System.nanoTime();
+                    List<TextSegment> split = new ArrayList<>(splitter.add(text));
+                    if (endOfSection) {
+                        split.addAll(splitter.flush());
+                    }
+                    splitNanos[0] += System.nanoTime() - splitStart;
+                    for (TextSegment segment : split) {
+                        handleSegment.accept(segment);
+                    }
+                    if (endOfSection) {
+                        sectionStart[0] = true;
+                    }
+                    // Parsing drives overall progress (10% to 95%); embedding trails it by a bounded window
+                    parseProgress[0] = total > 0 ? 10 + (int) (85L * completed / total) : parseProgress[0];
+                    sendProgress(job, "embedding", embedded.get(), newSegmentCount[0], parseProgress[0],
+                            "Parsed " + completed + (total > 0 ? " of " + total : "") + ", "
+                                    + segmentCount[0] + " segments so far");
+                    callbackNanos[0] += System.nanoTime() - callbackStart;
+                });
+                long parseNanos = System.nanoTime() - parseStart - callbackNanos[0];
+                long splitStart = System.nanoTime();
+                List<TextSegment> remaining = splitter.flush();
+                splitNanos[0] += System.nanoTime() - splitStart;
+                pipelineMetrics.recordIngestionStage("parse", parseNanos);
+                pipelineMetrics.recordIngestionStage("split", splitNanos[0]);
+                observation.highCardinalityKeyValue("parse.ms", String.valueOf(TimeUnit.NANOSECONDS.toMillis(parseNanos)));
+                observation.highCardinalityKeyValue("split.ms", String.valueOf(TimeUnit.NANOSECONDS.toMillis(splitNanos[0])));
+                for (TextSegment segment : remaining) {
+                    handleSegment.accept(segment);
                 }
-                
-                // Log progress every 50 segments
-                if (processedSegments % 50 == 0) {
-                    log.info("⏳ Progress: {}/{} segments processed ({}%)", 
-                            processedSegments, segments.size(), 
-                            (processedSegments * 100 / segments.size()));
+                List<TextSegment> last = batches.flush();
+                if (last != null) {
+                    session.submit(last);
                 }
+                ingestionJobService.checkCancelled(job);
+                session.finish();
+            }
+            log.info("✅ Document parsed and embedded: {} segments", segmentCount[0]);
+
+            // Vectors embedded by this run follow the resumed ones in the checkpoint, in manifest order
+            try (Stream<DocumentSegment> checkpoint = ingestionJobService.streamCheckpoint(job)) {
+                documentRepository.publishManifest(documentId, job.getId(), checkpoint.skip(resumed.size()).iterator());
             }
 
-            log.info("✅ SUCCESS: Uploaded and processed document '{}' with {} segments", filename, segments.size());
+            // Leftover checkpointed vectors belong to segments that no longer exist
+            List<String> removedIds = Stream.concat(previousIds.values().stream(), checkpointedIds.values().stream())
+                    .flatMap(Deque::stream)
+                    .toList();
+            int totalSegments = newSegmentCount[0];
+            pipelineMetrics.recordSegments(totalSegments, segmentCount[0] - totalSegments, removedIds.size());
+            observation.highCardinalityKeyValue("segments", String.valueOf(segmentCount[0]));
+            log.info("🔍 {} new or changed segments, {} unchanged, {} removed",
+                    totalSegments, segmentCount[0] - totalSegments, removedIds.size());
+
+            // New vectors are in place, so segments that disappeared can go
+            if (!removedIds.isEmpty()) {
+                embeddingStore.removeAll(removedIds);
+                keywordIndex.removeAll(removedIds);
+                log.info("🗑️  Removed {} obsolete segments of document {}", removedIds.size(), documentId);
+            }
+
+            completeRecord(job, record, segmentCount[0]);
+            eventPublisher.publishEvent(new DocumentIndexChangedEvent(this, documentId, removedIds, List.of()));
+
+            log.info("✅ SUCCESS: Uploaded and processed document '{}' with {} segments", filename, segmentCount[0]);
             
             // Send completion notification
-            sendProgress(documentId, filename, "completed", segments.size(), segments.size(), 100, 
-                        "Document processed successfully with " + segments.size() + " segments");
-
-            return new DocumentUploadResponse(
-                    documentId,
-                    filename,
-                    file.getSize(),
-                    "Document uploaded and processed successfully",
-                    segments.size()
-            );
+            sendProgress(job, "completed", totalSegments, totalSegments, 100, 
+                        "Document processed successfully with " + segmentCount[0] + " segments ("
+                                + totalSegments + " embedded, " + removedIds.size() + " removed)");
         } catch (Exception e) {
-            log.error("❌ FAILED: Error processing document '{}': {}", filename, e.getMessage(), e);
-            sendProgress(documentId, filename, "failed", 0, 0, 0, 
-                        "Error: " + e.getMessage());
+            if (ingestionJobService.isShuttingDown()) {
+                // Leave everything in place; the job is resumed on the next start
+                throw e;
+            }
+            rollback(job);
+            if (e instanceof CancellationException) {
+                sendProgress(job.getUserId(), documentId, filename, "cancelled", job.getCurrentSegment(), job.getTotalSegments(),
+                        job.getProgressPercentage(), "Processing cancelled");
+            } else {
+                log.error("❌ FAILED: Error processing document '{}': {}", filename, e.getMessage(), e);
+                sendProgress(job.getUserId(), documentId, filename, "failed", 0, 0, 0, 
+                            "Error: " + e.getMessage());
+            }
             throw e;
         }
     }
+
+    /**
+     * Cleans up after a job that was cancelled before it started, like a failed one.
+     */
+    private void discard(IngestionJob job) {
+        rollback(job);
+        sendProgress(job.getUserId(), job.getDocumentId(), job.getFilename(), "cancelled", 0, 0, 0,
+                "Processing cancelled");
+    }
+
+    private void completeRecord(IngestionJob job, DocumentRecord record, int segmentCount) throws IOException {
+        if (record == null) {
+            // Registry entry was lost (e.g. deleted while the job was queued); recreate it
+            record = DocumentRecord.builder()
+                    .documentId(job.getDocumentId())
+                    .tenantId(job.getTenantId())
+                    .createdAt(LocalDateTime.now())
+                    .build();
+        }
+        String previousPath = record.getStoredPath();
+        String previousJobId = record.getJobId();
+
+        record.setFilename(job.getFilename());
+        record.setContentHash(job.getContentHash());
+        record.setSize(job.getSize());
+        record.setStoredPath(job.getStoredPath());
+        record.setJobId(job.getId());
+        record.setSegmentCount(segmentCount);
+        record.setVersion(job.isNewVersion() ? record.getVersion() + 1 : Math.max(record.getVersion(), 1));
+        record.setUpdatedAt(LocalDateTime.now());
+        documentRepository.save(record);
+
+        if (!job.getId().equals(previousJobId)) {
+            documentRepository.deleteManifest(job.getDocumentId(), previousJobId);
+        }
+        if (previousPath != null && !previousPath.equals(job.getStoredPath())) {
+            Files.deleteIfExists(Paths.get(previousPath));
+        }
+    }
+
+    /**
+     * Removes the vectors the job stored, all of which are in its checkpoint, and its manifest.
+     */
+    private void rollback(IngestionJob job) {
+        try (Stream<DocumentSegment> checkpoint = ingestionJobService.streamCheckpoint(job)) {
+            int removed = removeVectors(job.getDocumentId(), checkpoint.map(DocumentSegment::getEmbeddingId));
+            if (removed > 0) {
+                log.info("Rolled back {} vectors of job {}", removed, job.getId());
+            }
+        } catch (Exception e) {
+            log.warn("Failed to roll back the vectors of job {}: {}", job.getId(), e.getMessage());
+        }
+        documentRepository.deleteManifest(job.getDocumentId(), job.getId());
+        if (!job.isNewVersion()) {
+            // Forget the content hash so the same file can be uploaded again
+            documentRepository.findById(job.getDocumentId()).ifPresent(documentRepository::delete);
+        }
+        // For a new version the current one stays authoritative; only the rejected upload goes away
+        try {
+            Files.deleteIfExists(Paths.get(job.getStoredPath()));
+        } catch (IOException e) {
+            log.warn("Failed to delete stored file {}: {}", job.getStoredPath(), e.getMessage());
+        }
+    }
+
+    private void sendProgress(IngestionJob job, String status,
+                              int currentSegment, int totalSegments, int progressPercentage,
+                              String message) {
+        ingestionJobService.updateProgress(job, currentSegment, totalSegments, progressPercentage, message);
+        sendProgress(job.getUserId(), job.getDocumentId(), job.getFilename(), status,
+                currentSegment, totalSegments, progressPercentage, message);
+    }
     
-    private void sendProgress(String documentId, String filename, String status, 
+    private void sendProgress(String userId, String documentId, String filename, String status, 
                               int currentSegment, int totalSegments, int progressPercentage, 
                               String message) {
-        try {
-            UploadProgressMessage progressMessage = UploadProgressMessage.builder()
-                    .documentId(documentId)
-                    .filename(filename)
-                    .status(status)
-                    .currentSegment(currentSegment)
-                    .totalSegments(totalSegments)
-                    .progressPercentage(progressPercentage)
-                    .message(message)
-                    .build();
-            
-            messagingTemplate.convertAndSend("/topic/upload-progress", progressMessage);
-            log.debug("WebSocket progress sent: {} - {}", status, message);
-        } catch (Exception e) {
-            log.warn("Failed to send WebSocket progress update: {}", e.getMessage());
+        UploadProgressMessage progressMessage = UploadProgressMessage.builder()
+                .documentId(documentId)
+                .filename(filename)
+                .status(status)
+                .currentSegment(currentSegment)
+                .totalSegments(totalSegments)
+                .progressPercentage(progressPercentage)
+                .message(message)
+                .build();
+        progressPublisher.publish(userId, progressMessage);
+    }
+
+    private record UploadTarget(String documentId, DocumentRecord previousVersion, String filename,
+                                String extension, Path filePath, String userId, String tenantId) {
+    }
+
+    @FunctionalInterface
+    private interface SegmentHandler {
+        void accept(TextSegment segment) throws Exception;
+    }
+
+    /**
+     * The markdown heading a section opens with, if any.
+     */
+    private static String heading(String text) {
+        Matcher matcher = HEADING.matcher(text);
+        if (!matcher.find() || !text.substring(0, matcher.start()).isBlank()) {
+            return null;
         }
+        String heading = matcher.group(1).trim();
+        return heading.length() > MAX_SECTION_LENGTH ? heading.substring(0, MAX_SECTION_LENGTH) : heading;
     }
 
-    private Document parseDocument(InputStream inputStream, String extension) throws IOException {
-        DocumentParser parser;
-        
-        switch (extension.toLowerCase()) {
-            case "pdf":
-                parser = new ApachePdfBoxDocumentParser();
-                break;
-            case "doc":
-            case "docx":
-                parser = new ApachePoiDocumentParser();
-                break;
-            default:
-                throw new IllegalArgumentException("Unsupported file type: " + extension);
+    private String fingerprint(String text) {
+        return HexFormat.of().formatHex(sha256().digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Writes the upload with a single read of the multipart stream, letting the file channel pull
+     * the bytes directly and hashing them on the way through. The stored file is never read back,
+     * which matters when the upload directory is on a network filesystem.
+     */
+    private String persist(MultipartFile file, Path target) throws IOException {
+        MessageDigest digest = sha256();
+        try (ReadableByteChannel source = new DigestingChannel(Channels.newChannel(file.getInputStream()), digest);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            long transferred;
+            while ((transferred = out.transferFrom(source, position, TRANSFER_CHUNK_BYTES)) > 0) {
+                position += transferred;
+            }
         }
+        return HexFormat.of().formatHex(digest.digest());
+    }
 
-        return parser.parse(inputStream);
+    private MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
 
     private String getFileExtension(String filename) {
@@ -188,6 +778,7 @@ public class DocumentService {
     }
 
     private boolean isAllowedExtension(String extension) {
-        return List.of("pdf", "doc", "docx", "txt").contains(extension.toLowerCase());
+        return allowedExtensions.stream().anyMatch(allowed -> allowed.trim().equalsIgnoreCase(extension))
+                && parser.supports(extension);
     }
 }
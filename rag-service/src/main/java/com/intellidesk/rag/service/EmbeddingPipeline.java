@@ -0,0 +1,128 @@
+package com.intellidesk.rag.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import io.micrometer.observation.Observation;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pipelined embedding stage: keeps up to {@code max-in-flight} batches embedding concurrently
+ * while handing finished batches to the caller strictly in submission order, so stores and
+ * progress reporting see a deterministic sequence.
+ */
+@Component
+@Slf4j
+public class EmbeddingPipeline {
+
+    @FunctionalInterface
+    public interface BatchConsumer {
+        void accept(List<TextSegment> batch, List<Embedding> embeddings) throws Exception;
+    }
+
+    private final EmbeddingModel embeddingModel;
+    private final PipelineMetrics pipelineMetrics;
+    private final int maxInFlight;
+    private final ExecutorService executor;
+
+    public EmbeddingPipeline(EmbeddingModel embeddingModel, PipelineMetrics pipelineMetrics,
+                             @Value("${rag.embedding.max-concurrency:4}") int maxInFlight) {
+        this.embeddingModel = embeddingModel;
+        this.pipelineMetrics = pipelineMetrics;
+        this.maxInFlight = Math.max(1, maxInFlight);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.maxInFlight, runnable -> {
+            Thread thread = new Thread(runnable, "embedding-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public Session open(BatchConsumer consumer) {
+        return new Session(consumer);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public final class Session implements AutoCloseable {
+
+        private final BatchConsumer consumer;
+        private final Deque<PendingBatch> pending = new ArrayDeque<>();
+
+        private Session(BatchConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        /**
+         * Starts embedding {@code batch}, blocking while the in-flight window is full.
+         */
+        public void submit(List<TextSegment> batch) throws Exception {
+            while (pending.size() >= maxInFlight) {
+                completeHead();
+            }
+            // Hand over anything that already finished so stores keep pace with embedding
+            while (!pending.isEmpty() && pending.peekFirst().future.isDone()) {
+                completeHead();
+            }
+
+            // Worker threads do not inherit the caller's observation, so the span is parented explicitly
+            Observation parent = pipelineMetrics.currentObservation();
+            CompletableFuture<List<Embedding>> future = CompletableFuture.supplyAsync(
+                    () -> pipelineMetrics.ingestionStage("embed")
+                            .parentObservation(parent)
+                            .observe(() -> embeddingModel.embedAll(batch).content()),
+                    executor);
+            pending.addLast(new PendingBatch(batch, future));
+        }
+
+        /**
+         * Waits for all submitted batches and delivers them to the consumer.
+         */
+        public void finish() throws Exception {
+            while (!pending.isEmpty()) {
+                completeHead();
+            }
+        }
+
+        @Override
+        public void close() {
+            // Abandon whatever is still running, e.g. after a failure or cancellation
+            pending.forEach(batch -> batch.future.cancel(true));
+            pending.clear();
+        }
+
+        private void completeHead() throws Exception {
+            PendingBatch head = pending.removeFirst();
+            List<Embedding> embeddings;
+            try {
+                embeddings = head.future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception exception) {
+                    throw exception;
+                }
+                throw e;
+            }
+            consumer.accept(head.batch, embeddings);
+        }
+    }
+
+    private record PendingBatch(List<TextSegment> batch, CompletableFuture<List<Embedding>> future) {
+    }
+}
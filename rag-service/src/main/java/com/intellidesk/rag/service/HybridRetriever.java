@@ -0,0 +1,119 @@
+package com.intellidesk.rag.service;
+
+import com.intellidesk.rag.store.KeywordIndex;
+import com.intellidesk.rag.store.SegmentFilter;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keyword leg of hybrid retrieval: runs BM25 searches off the request thread so they overlap
+ * with the question embedding and vector search, and merges both rankings with reciprocal rank
+ * fusion ({@code sum 1 / (rrfK + rank)}).
+ */
+@Component
+@Slf4j
+public class HybridRetriever {
+
+    private final KeywordIndex keywordIndex;
+    private final boolean enabled;
+    private final int rrfK;
+    private final int candidateMultiplier;
+    private final ExecutorService executor;
+
+    public HybridRetriever(KeywordIndex keywordIndex,
+                           @Value("${rag.hybrid.enabled:true}") boolean enabled,
+                           @Value("${rag.hybrid.rrf-k:60}") int rrfK,
+                           @Value("${rag.hybrid.candidate-multiplier:3}") int candidateMultiplier) {
+        this.keywordIndex = keywordIndex;
+        this.enabled = enabled;
+        this.rrfK = rrfK;
+        this.candidateMultiplier = Math.max(1, candidateMultiplier);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "keyword-search-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Number of candidates each leg should return so fusion has something to re-rank.
+     */
+    public int candidates(int maxResults) {
+        return enabled ? maxResults * candidateMultiplier : maxResults;
+    }
+
+    public CompletableFuture<List<KeywordIndex.Match>> searchAsync(String question, int maxResults,
+                                                                   SegmentFilter filter) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        return CompletableFuture.supplyAsync(() -> keywordIndex.search(question, candidates(maxResults), filter), executor)
+                .exceptionally(e -> {
+                    // The vector leg alone still produces an answer
+                    log.warn("Keyword search failed: {}", e.getMessage());
+                    return List.of();
+                });
+    }
+
+    /**
+     * Fuses both rankings by reciprocal rank. Every result keeps the scores of the legs that found
+     * it; keyword-only matches have no similarity rather than a made-up one.
+     */
+    public List<RetrievedSegment> fuse(List<EmbeddingMatch<TextSegment>> vectorMatches,
+                                       List<KeywordIndex.Match> keywordMatches, int maxResults) {
+        Map<String, Double> fused = new LinkedHashMap<>();
+        Map<String, TextSegment> segments = new HashMap<>();
+        Map<String, Double> similarities = new HashMap<>();
+        Map<String, Double> keywordScores = new HashMap<>();
+        for (int rank = 0; rank < vectorMatches.size(); rank++) {
+            EmbeddingMatch<TextSegment> match = vectorMatches.get(rank);
+            fused.merge(match.embeddingId(), 1.0 / (rrfK + rank + 1), Double::sum);
+            segments.put(match.embeddingId(), match.embedded());
+            similarities.put(match.embeddingId(), match.score());
+        }
+        for (int rank = 0; rank < keywordMatches.size(); rank++) {
+            KeywordIndex.Match match = keywordMatches.get(rank);
+            fused.merge(match.id(), 1.0 / (rrfK + rank + 1), Double::sum);
+            segments.putIfAbsent(match.id(), match.segment());
+            keywordScores.put(match.id(), match.score());
+        }
+
+        List<String> ranked = new ArrayList<>(fused.keySet());
+        ranked.sort(Comparator.comparingDouble((String id) -> fused.get(id)).reversed());
+        List<RetrievedSegment> results = new ArrayList<>(Math.min(maxResults, ranked.size()));
+        for (String id : ranked) {
+            if (results.size() >= maxResults) {
+                break;
+            }
+            results.add(new RetrievedSegment(id, segments.get(id), similarities.get(id), keywordScores.get(id),
+                    fused.get(id)));
+        }
+        return results;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,281 @@
+package com.intellidesk.rag.service;
+
+import com.intellidesk.rag.entity.DocumentSegment;
+import com.intellidesk.rag.entity.IngestionJob;
+import com.intellidesk.rag.entity.IngestionJobStatus;
+import com.intellidesk.rag.exception.IngestionJobNotFoundException;
+import com.intellidesk.rag.exception.IngestionQueueFullException;
+import com.intellidesk.rag.repository.IngestionJobRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Runs document ingestion off the request thread on a bounded, prioritized worker pool
+ * and keeps the persistent job state in {@link IngestionJobRepository} up to date.
+ */
+@Service
+@Slf4j
+public class IngestionJobService {
+
+    @FunctionalInterface
+    public interface JobWork {
+        void run(IngestionJob job) throws Exception;
+    }
+
+    private final IngestionJobRepository jobRepository;
+    private final int queueCapacity;
+    private final Duration jobRetention;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Set<String> cancellationRequests = ConcurrentHashMap.newKeySet();
+
+    public IngestionJobService(IngestionJobRepository jobRepository,
+                               @Value("${rag.ingestion.workers:2}") int workers,
+                               @Value("${rag.ingestion.queue-capacity:100}") int queueCapacity,
+                               @Value("${rag.ingestion.job-retention-hours:72}") long jobRetentionHours) {
+        this.jobRepository = jobRepository;
+        this.queueCapacity = queueCapacity;
+        this.jobRetention = Duration.ofHours(Math.max(0, jobRetentionHours));
+        pruneFinishedJobs();
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "ingestion-worker-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Queues the job.
+     *
+     * @param discard undoes what was set up for the job when it is cancelled before its work
+     *                starts; cancellation of running work is left to the work itself
+     */
+    public IngestionJob submit(IngestionJob job, JobWork work, Consumer<IngestionJob> discard) {
+        // PriorityBlockingQueue is unbounded, so the capacity limit is enforced here
+        if (executor.getQueue().size() >= queueCapacity) {
+            throw new IngestionQueueFullException(
+                    "Ingestion queue is full (" + queueCapacity + " jobs waiting), try again later");
+        }
+
+        pruneFinishedJobs();
+        job.setStatus(IngestionJobStatus.QUEUED);
+        if (job.getCreatedAt() == null) {
+            job.setCreatedAt(LocalDateTime.now());
+        }
+        jobRepository.save(job);
+
+        executor.execute(new PrioritizedTask(job, work, discard, sequence.incrementAndGet()));
+        log.info("📥 Queued ingestion job {} for '{}' (priority {}, queue depth {})",
+                job.getId(), job.getFilename(), job.getPriority(), executor.getQueue().size());
+        return job;
+    }
+
+    /**
+     * Looks up a job as seen by a tenant; another tenant's job is reported as missing.
+     *
+     * @param tenantId the resolved tenant of the request, {@code null} for unscoped access
+     */
+    public IngestionJob getJob(String jobId, String tenantId) {
+        return jobRepository.findById(jobId)
+                .filter(job -> tenantId == null || tenantId.equals(job.getTenantId()))
+                .orElseThrow(() -> new IngestionJobNotFoundException("Ingestion job not found: " + jobId));
+    }
+
+    public Optional<IngestionJob> findJob(String jobId) {
+        return jobId != null ? jobRepository.findById(jobId) : Optional.empty();
+    }
+
+    public List<IngestionJob> findUnfinishedJobs() {
+        return jobRepository.findByStatusIn(List.of(IngestionJobStatus.QUEUED, IngestionJobStatus.RUNNING));
+    }
+
+    public IngestionJob cancel(String jobId, String tenantId) {
+        IngestionJob job = getJob(jobId, tenantId);
+        if (job.getStatus().isTerminal()) {
+            return job;
+        }
+
+        PrioritizedTask queued = executor.getQueue().stream()
+                .map(PrioritizedTask.class::cast)
+                .filter(task -> task.job.getId().equals(jobId))
+                .findFirst()
+                .orElse(null);
+        if (queued != null && executor.getQueue().remove(queued)) {
+            discard(queued);
+            log.info("🛑 Cancelled queued ingestion job {}", jobId);
+            return queued.job;
+        }
+        // Already picked up by a worker; it stops at the next checkpoint
+        cancellationRequests.add(jobId);
+        job.setMessage("Cancellation requested");
+        jobRepository.save(job);
+        log.info("🛑 Cancellation requested for running ingestion job {}", jobId);
+        return job;
+    }
+
+    /**
+     * Called by job work between units of work; aborts the job if a cancellation was requested.
+     */
+    public void checkCancelled(IngestionJob job) {
+        if (cancellationRequests.contains(job.getId())) {
+            throw new CancellationException("Ingestion job " + job.getId() + " was cancelled");
+        }
+    }
+
+    public void updateProgress(IngestionJob job, int currentSegment, int totalSegments,
+                               int progressPercentage, String message) {
+        synchronized (job) {
+            job.setCurrentSegment(currentSegment);
+            job.setTotalSegments(totalSegments);
+            job.setProgressPercentage(progressPercentage);
+            job.setMessage(message);
+        }
+        jobRepository.save(job);
+    }
+
+    /**
+     * Records segments whose vectors were stored, so an interrupted job can resume from the last
+     * committed batch instead of embedding everything again.
+     */
+    public void checkpoint(IngestionJob job, List<DocumentSegment> segments) {
+        jobRepository.appendCheckpoint(job.getId(), segments);
+        synchronized (job) {
+            job.setCheckpointedSegments(job.getCheckpointedSegments() + segments.size());
+        }
+    }
+
+    public List<DocumentSegment> loadCheckpoint(IngestionJob job) {
+        return jobRepository.loadCheckpoint(job.getId());
+    }
+
+    public Stream<DocumentSegment> streamCheckpoint(IngestionJob job) {
+        return jobRepository.streamCheckpoint(job.getId());
+    }
+
+    public boolean isShuttingDown() {
+        return executor.isShutdown();
+    }
+
+    private void runJob(PrioritizedTask task) {
+        IngestionJob job = task.job;
+        if (cancellationRequests.remove(job.getId())) {
+            // Cancelled between leaving the queue and starting
+            discard(task);
+            return;
+        }
+
+        job.setStatus(IngestionJobStatus.RUNNING);
+        job.setStartedAt(LocalDateTime.now());
+        jobRepository.save(job);
+
+        try {
+            task.work.run(job);
+            job.setStatus(IngestionJobStatus.COMPLETED);
+            job.setCompletedAt(LocalDateTime.now());
+            jobRepository.save(job);
+            jobRepository.deleteCheckpoint(job.getId());
+        } catch (CancellationException e) {
+            markCancelled(job);
+            log.info("🛑 Ingestion job {} cancelled while running", job.getId());
+        } catch (Exception e) {
+            if (isShuttingDown()) {
+                // Interrupted by shutdown: keep the job RUNNING on disk so it is resumed on restart
+                log.warn("Ingestion job {} interrupted by shutdown", job.getId());
+                return;
+            }
+            job.setStatus(IngestionJobStatus.FAILED);
+            job.setError(e.getMessage());
+            job.setCompletedAt(LocalDateTime.now());
+            jobRepository.save(job);
+            jobRepository.deleteCheckpoint(job.getId());
+            log.error("❌ Ingestion job {} failed: {}", job.getId(), e.getMessage(), e);
+        } finally {
+            cancellationRequests.remove(job.getId());
+        }
+    }
+
+    /**
+     * Drops finished jobs older than {@code rag.ingestion.job-retention-hours}, so job files and
+     * checkpoints do not pile up under the upload directory.
+     */
+    private void pruneFinishedJobs() {
+        int removed = jobRepository.deleteFinishedBefore(LocalDateTime.now().minus(jobRetention));
+        if (removed > 0) {
+            log.info("🧹 Removed {} finished ingestion jobs older than {} hours", removed, jobRetention.toHours());
+        }
+    }
+
+    /**
+     * Cancels a job whose work never ran. The discard callback still sees the job's checkpoint,
+     * which a resumed job may have.
+     */
+    private void discard(PrioritizedTask task) {
+        try {
+            task.discard.accept(task.job);
+        } catch (RuntimeException e) {
+            log.warn("Failed to clean up cancelled ingestion job {}: {}", task.job.getId(), e.getMessage());
+        }
+        markCancelled(task.job);
+    }
+
+    private void markCancelled(IngestionJob job) {
+        job.setStatus(IngestionJobStatus.CANCELLED);
+        job.setMessage("Ingestion cancelled");
+        job.setCompletedAt(LocalDateTime.now());
+        jobRepository.save(job);
+        jobRepository.deleteCheckpoint(job.getId());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        // Unfinished jobs stay QUEUED/RUNNING on disk and are resumed on the next start
+        executor.shutdownNow();
+    }
+
+    private final class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+
+        private final IngestionJob job;
+        private final JobWork work;
+        private final Consumer<IngestionJob> discard;
+        private final long order;
+
+        private PrioritizedTask(IngestionJob job, JobWork work, Consumer<IngestionJob> discard, long order) {
+            this.job = job;
+            this.work = work;
+            this.discard = discard;
+            this.order = order;
+        }
+
+        @Override
+        public void run() {
+            runJob(this);
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            // Higher priority first, FIFO within the same priority
+            int byPriority = Integer.compare(other.job.getPriority(), job.getPriority());
+            return byPriority != 0 ? byPriority : Long.compare(order, other.order);
+        }
+    }
+}
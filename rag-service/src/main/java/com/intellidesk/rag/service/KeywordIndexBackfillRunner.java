@@ -0,0 +1,44 @@
+package com.intellidesk.rag.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Brings the keyword index up to date with the embedding store once the context is up, so
+ * documents ingested before hybrid search was enabled are found by keyword too. Runs in the
+ * background; until it finishes those documents are only reachable through vector search.
+ */
+@Component
+@Slf4j
+public class KeywordIndexBackfillRunner implements ApplicationRunner {
+
+    private final VectorStoreService vectorStoreService;
+    private final boolean enabled;
+
+    public KeywordIndexBackfillRunner(VectorStoreService vectorStoreService,
+                                      @Value("${rag.hybrid.enabled:true}") boolean hybridEnabled,
+                                      @Value("${rag.hybrid.keyword-index.backfill-on-start:true}") boolean backfillOnStart) {
+        this.vectorStoreService = vectorStoreService;
+        this.enabled = hybridEnabled && backfillOnStart;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                vectorStoreService.rebuildKeywordIndex();
+            } catch (RuntimeException e) {
+                log.warn("Keyword index backfill failed, retry with POST /rag/vector-store/keyword-index/rebuild: {}",
+                        e.getMessage(), e);
+            }
+        }, "keyword-index-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -0,0 +1,351 @@
+package com.intellidesk.rag.service;
+
+import com.intellidesk.rag.store.ManagedEmbeddingStore;
+import com.intellidesk.rag.store.SegmentFilter;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Multi-query leg of retrieval: rewrites a question into a few variants (rule-based, plus
+ * optional LLM paraphrases), embeds the variants in one call and searches all of them
+ * concurrently. Matches are merged by segment id, keeping the best score.
+ *
+ * <p>The original question is searched on the caller's thread, like a search without
+ * expansion, so it never waits for a pool, and before the chat model's rewrites are awaited. LLM rewrites run on their own small pool, and variant
+ * embeddings and search legs on another; both have bounded queues and drop work they cannot
+ * queue. Everything else after the question arrives is bounded by
+ * {@code rag.multi-query.deadline-ms}: rewrites, variant embeddings and search legs that are not
+ * done by then are dropped and their threads interrupted.
+ */
+@Component
+@Slf4j
+public class MultiQueryRetriever {
+
+    private static final Pattern QUESTION_LEAD = Pattern.compile(
+            "^(what|who|whom|where|when|which|why|how)"
+                    + "(\\s+(is|are|was|were|do|does|did|can|could|should|would|will|much|many))?"
+                    + "(\\s+(i|we|you|they|the|a|an|my|our))?\\s+",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern TRAILING_PUNCTUATION = Pattern.compile("[\\s?!.]+$");
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}]+(?:[-_/.][\\p{L}\\p{N}]+)*");
+    private static final Pattern IDENTIFIER = Pattern.compile("\\b[\\p{L}\\p{N}]+(?:[-_/.][\\p{L}\\p{N}]+)+\\b");
+    private static final Pattern LIST_MARKER = Pattern.compile("^\\s*(?:[-*•]|\\d+[.)])\\s*");
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "how", "i", "in", "is", "it",
+            "of", "on", "or", "that", "the", "this", "to", "was", "what", "when", "where", "which", "who",
+            "why", "with", "do", "does", "can", "my", "our", "we", "you");
+
+    private final ManagedEmbeddingStore embeddingStore;
+    private final EmbeddingModel embeddingModel;
+    private final OpenAiChatModel chatModel;
+    private final boolean enabled;
+    private final int maxVariants;
+    private final int llmRewrites;
+    private final long deadlineNanos;
+    private final ThreadPoolExecutor executor;
+    private final ThreadPoolExecutor rewriteExecutor;
+    private final Counter completedLegs;
+    private final Counter timedOutLegs;
+    private final Counter failedLegs;
+    private final Counter rejectedLegs;
+
+    public MultiQueryRetriever(ManagedEmbeddingStore embeddingStore,
+                               EmbeddingModel embeddingModel,
+                               OpenAiChatModel chatModel,
+                               MeterRegistry meterRegistry,
+                               @Value("${rag.multi-query.enabled:false}") boolean enabled,
+                               @Value("${rag.multi-query.rule-variants:3}") int maxVariants,
+                               @Value("${rag.multi-query.llm-rewrites:0}") int llmRewrites,
+                               @Value("${rag.multi-query.deadline-ms:400}") long deadlineMs,
+                               @Value("${rag.multi-query.threads:0}") int threads,
+                               @Value("${rag.multi-query.rewrite-threads:2}") int rewriteThreads,
+                               @Value("${rag.multi-query.queue-capacity:64}") int queueCapacity) {
+        this.embeddingStore = embeddingStore;
+        this.embeddingModel = embeddingModel;
+        this.chatModel = chatModel;
+        this.enabled = enabled;
+        this.maxVariants = Math.max(0, maxVariants);
+        this.llmRewrites = Math.max(0, llmRewrites);
+        this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, deadlineMs));
+
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors() * 2;
+        this.executor = boundedPool("multi-query-", poolSize, queueCapacity);
+        this.rewriteExecutor = boundedPool("multi-query-rewrite-", rewriteThreads, queueCapacity);
+
+        this.completedLegs = legCounter(meterRegistry, "completed");
+        this.timedOutLegs = legCounter(meterRegistry, "timed_out");
+        this.failedLegs = legCounter(meterRegistry, "failed");
+        this.rejectedLegs = legCounter(meterRegistry, "rejected");
+    }
+
+    /**
+     * Fixed pool whose queue rejects work once full, so a burst of questions cannot pile up
+     * tasks that are past their deadline before they start.
+     */
+    private static ThreadPoolExecutor boundedPool(String namePrefix, int threads, int queueCapacity) {
+        AtomicInteger threadCount = new AtomicInteger();
+        int poolSize = Math.max(1, threads);
+        return new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+                    Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    private static Counter legCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("rag.retrieval.multi-query.legs")
+                .description("Multi-query search legs by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts expanding a question; LLM rewrites, if configured, are generated while the caller
+     * embeds the original question. The deadline starts now.
+     */
+    public Expansion expand(String question) {
+        long deadline = System.nanoTime() + deadlineNanos;
+        Future<List<String>> rewrites = CompletableFuture.completedFuture(List.of());
+        if (llmRewrites > 0) {
+            try {
+                rewrites = rewriteExecutor.submit(() -> rewrite(question));
+            } catch (RejectedExecutionException e) {
+                log.debug("Rewrite pool is saturated, searching without LLM rewrites");
+            }
+        }
+        List<String> ruleVariants = ruleVariants(question);
+        return new Expansion(question, ruleVariants.subList(0, Math.min(maxVariants, ruleVariants.size())),
+                rewrites, deadline);
+    }
+
+    /**
+     * Searches the original question and its variants concurrently and merges the results,
+     * best score first. The original question's matches are always part of the result.
+     */
+    public List<EmbeddingMatch<TextSegment>> search(Expansion expansion, Embedding questionEmbedding, int maxResults,
+                                                    double minScore, SegmentFilter filter) {
+        // Variant legs are started by the embedding tasks as soon as their vectors exist
+        VariantLegs variantLegs = new VariantLegs();
+        Set<String> seen = new LinkedHashSet<>();
+        seen.add(normalize(expansion.question()));
+        List<Future<?>> embedded = new ArrayList<>();
+        embedVariants(expansion.ruleVariants(), seen, variantLegs, embedded, maxResults, minScore, filter);
+
+        // The original question goes first, without waiting for the chat model's rewrites
+        List<List<EmbeddingMatch<TextSegment>>> results = new ArrayList<>();
+        results.add(embeddingStore.findRelevant(questionEmbedding, maxResults, minScore, filter));
+        completedLegs.increment();
+
+        embedVariants(await(expansion.llmRewrites(), expansion.deadline(), List.of()), seen, variantLegs, embedded,
+                maxResults, minScore, filter);
+        for (Future<?> task : embedded) {
+            await(task, expansion.deadline(), null);
+        }
+        List<Future<List<EmbeddingMatch<TextSegment>>>> legs = variantLegs.close();
+        for (Future<List<EmbeddingMatch<TextSegment>>> leg : legs) {
+            try {
+                results.add(leg.get(Math.max(0, expansion.deadline() - System.nanoTime()), TimeUnit.NANOSECONDS));
+                completedLegs.increment();
+            } catch (TimeoutException e) {
+                leg.cancel(true);
+                timedOutLegs.increment();
+            } catch (ExecutionException e) {
+                failedLegs.increment();
+            } catch (InterruptedException e) {
+                leg.cancel(true);
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.debug("Multi-query retrieval used {} of {} legs", results.size(), legs.size() + 1);
+        return merge(results, maxResults);
+    }
+
+    /**
+     * Embeds the variants not seen yet on the pool, starting a search leg for each.
+     */
+    private void embedVariants(List<String> variants, Set<String> seen, VariantLegs variantLegs,
+                               List<Future<?>> embedded, int maxResults, double minScore, SegmentFilter filter) {
+        List<TextSegment> segments = variants.stream()
+                .filter(seen::add)
+                .map(TextSegment::from)
+                .toList();
+        if (segments.isEmpty()) {
+            return;
+        }
+        try {
+            embedded.add(executor.submit(() -> {
+                for (Embedding embedding : embeddingModel.embedAll(segments).content()) {
+                    variantLegs.start(() -> embeddingStore.findRelevant(embedding, maxResults, minScore, filter));
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            rejectedLegs.increment(segments.size());
+        }
+    }
+
+    /**
+     * Deterministic rewrites: the question without its interrogative lead, its content words,
+     * and its identifiers split into their parts.
+     */
+    List<String> ruleVariants(String question) {
+        Set<String> variants = new LinkedHashSet<>();
+        String statement = TRAILING_PUNCTUATION.matcher(QUESTION_LEAD.matcher(question.trim()).replaceFirst(""))
+                .replaceAll("");
+        variants.add(normalize(statement));
+
+        List<String> keywords = new ArrayList<>();
+        Matcher words = WORD.matcher(question.toLowerCase(Locale.ROOT));
+        while (words.find()) {
+            if (!STOP_WORDS.contains(words.group())) {
+                keywords.add(words.group());
+            }
+        }
+        variants.add(String.join(" ", keywords));
+
+        if (IDENTIFIER.matcher(question).find()) {
+            variants.add(normalize(IDENTIFIER.matcher(question)
+                    .replaceAll(match -> match.group().replaceAll("[-_/.]", " "))));
+        }
+
+        variants.remove(normalize(question));
+        variants.remove("");
+        return new ArrayList<>(variants);
+    }
+
+    private List<String> rewrite(String question) {
+        String prompt = String.format(
+                """
+                Rewrite the following question in %d different ways for a document search.
+                Keep the meaning, vary the wording. Answer with one rewrite per line and nothing else.
+
+                Question: %s
+                """,
+                llmRewrites,
+                question
+        );
+        List<String> rewrites = new ArrayList<>();
+        for (String line : chatModel.generate(prompt).split("\\R")) {
+            String rewrite = normalize(LIST_MARKER.matcher(line).replaceFirst(""));
+            if (!rewrite.isEmpty() && rewrites.size() < llmRewrites) {
+                rewrites.add(rewrite);
+            }
+        }
+        return rewrites;
+    }
+
+    private static List<EmbeddingMatch<TextSegment>> merge(List<List<EmbeddingMatch<TextSegment>>> results,
+                                                           int maxResults) {
+        Map<String, EmbeddingMatch<TextSegment>> best = new LinkedHashMap<>();
+        for (List<EmbeddingMatch<TextSegment>> matches : results) {
+            for (EmbeddingMatch<TextSegment> match : matches) {
+                best.merge(match.embeddingId(), match, (a, b) -> a.score() >= b.score() ? a : b);
+            }
+        }
+        return best.values().stream()
+                .sorted(Comparator.comparingDouble((EmbeddingMatch<TextSegment> match) -> match.score()).reversed())
+                .limit(maxResults)
+                .toList();
+    }
+
+    private static <T> T await(Future<T> future, long deadline, T fallback) {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            return fallback;
+        } catch (ExecutionException e) {
+            log.warn("Multi-query expansion step failed: {}", e.getCause().getMessage());
+            return fallback;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return fallback;
+        }
+    }
+
+    private static String normalize(String text) {
+        return text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+        rewriteExecutor.shutdownNow();
+    }
+
+    /**
+     * Search legs of the variants, started from the embedding task. Once the caller has stopped
+     * collecting them, late legs are no longer started.
+     */
+    private final class VariantLegs {
+
+        private final List<Future<List<EmbeddingMatch<TextSegment>>>> legs = new ArrayList<>();
+        private boolean closed;
+
+        synchronized void start(Callable<List<EmbeddingMatch<TextSegment>>> search) {
+            if (closed) {
+                return;
+            }
+            try {
+                legs.add(executor.submit(search));
+            } catch (RejectedExecutionException e) {
+                rejectedLegs.increment();
+            }
+        }
+
+        synchronized List<Future<List<EmbeddingMatch<TextSegment>>>> close() {
+            closed = true;
+            return List.copyOf(legs);
+        }
+    }
+
+    /**
+     * A question's variants, some possibly still being generated, and its retrieval deadline
+     * ({@link System#nanoTime()} based).
+     */
+    public record Expansion(String question, List<String> ruleVariants,
+                            Future<List<String>> llmRewrites, long deadline) {
+
+        /**
+         * Stops generating rewrites nobody will use.
+         */
+        public void cancel() {
+            llmRewrites.cancel(true);
+        }
+    }
+}
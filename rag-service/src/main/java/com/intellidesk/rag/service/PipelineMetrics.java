@@ -0,0 +1,142 @@
+package com.intellidesk.rag.service;
+
+import com.intellidesk.rag.entity.IngestionJob;
+import dev.langchain4j.model.output.TokenUsage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stage-level instrumentation of ingestion and question answering. Every stage is a Micrometer
+ * {@link Observation}, which yields both a timer ({@value #INGESTION_STAGE} or
+ * {@value #QUERY_STAGE}, tagged with the stage) and a span exported to Zipkin/Jaeger under the
+ * current request or ingestion job.
+ *
+ * <p>Parsing and splitting run page by page inside one stream, interleaved with embedding, so
+ * they are timed cumulatively per document and recorded into the same timer without a span of
+ * their own.
+ */
+@Component
+public class PipelineMetrics {
+
+    public static final String INGESTION = "rag.ingestion";
+    public static final String INGESTION_STAGE = "rag.ingestion.stage";
+    public static final String QUERY_STAGE = "rag.query.stage";
+
+    private static final String STAGE = "stage";
+
+    private final ObservationRegistry observationRegistry;
+    private final MeterRegistry meterRegistry;
+    private final Counter embeddedSegments;
+    private final Counter reusedSegments;
+    private final Counter removedSegments;
+    private final Counter embeddingTokens;
+    private final Counter promptTokens;
+    private final Counter completionTokens;
+
+    public PipelineMetrics(ObservationRegistry observationRegistry, MeterRegistry meterRegistry) {
+        this.observationRegistry = observationRegistry;
+        this.meterRegistry = meterRegistry;
+        this.embeddedSegments = segmentCounter(meterRegistry, "embedded");
+        this.reusedSegments = segmentCounter(meterRegistry, "reused");
+        this.removedSegments = segmentCounter(meterRegistry, "removed");
+        this.embeddingTokens = Counter.builder("rag.ingestion.tokens")
+                .description("Tokens of new segments sent to the embedding model")
+                .register(meterRegistry);
+        this.promptTokens = chatTokenCounter(meterRegistry, "prompt");
+        this.completionTokens = chatTokenCounter(meterRegistry, "completion");
+    }
+
+    private static Counter segmentCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("rag.ingestion.segments")
+                .description("Segments of ingested documents by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static Counter chatTokenCounter(MeterRegistry meterRegistry, String type) {
+        return Counter.builder("rag.query.tokens")
+                .description("Chat model tokens used for answers, as reported by the model")
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+
+    /**
+     * The whole ingestion of one document; stages observed while it is open nest under it.
+     */
+    public Observation ingestion(IngestionJob job) {
+        String extension = job.getExtension() != null ? job.getExtension().toLowerCase(Locale.ROOT) : "none";
+        return Observation.createNotStarted(INGESTION, observationRegistry)
+                .contextualName("ingest document")
+                .lowCardinalityKeyValue("extension", extension)
+                .highCardinalityKeyValue("document.id", job.getDocumentId())
+                .highCardinalityKeyValue("job.id", job.getId());
+    }
+
+    /**
+     * One of save, parse, split, embed or store.
+     */
+    public Observation ingestionStage(String stage) {
+        return stage(INGESTION_STAGE, "ingestion " + stage, stage);
+    }
+
+    /**
+     * One of embed, retrieve, prompt or generate (condense for conversation summaries).
+     */
+    public Observation queryStage(String stage) {
+        return stage(QUERY_STAGE, "query " + stage, stage);
+    }
+
+    /**
+     * Records time spent in a stage that was measured piecewise rather than observed.
+     */
+    public void recordIngestionStage(String stage, long nanos) {
+        // Same name and tags as the observed stages, so they share one timer family
+        Timer.builder(INGESTION_STAGE)
+                .tag(STAGE, stage)
+                .tag("error", "none")
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordSegments(int embedded, int reused, int removed) {
+        embeddedSegments.increment(embedded);
+        reusedSegments.increment(reused);
+        removedSegments.increment(removed);
+    }
+
+    public void recordEmbeddingTokens(int tokens) {
+        embeddingTokens.increment(tokens);
+    }
+
+    /**
+     * Counts the tokens of a chat model call; models that do not report usage are skipped.
+     */
+    public void recordChatTokens(TokenUsage usage) {
+        if (usage == null) {
+            return;
+        }
+        if (usage.inputTokenCount() != null) {
+            promptTokens.increment(usage.inputTokenCount());
+        }
+        if (usage.outputTokenCount() != null) {
+            completionTokens.increment(usage.outputTokenCount());
+        }
+    }
+
+    public Observation currentObservation() {
+        return observationRegistry.getCurrentObservation();
+    }
+
+    private Observation stage(String name, String contextualName, String stage) {
+        return Observation.createNotStarted(name, observationRegistry)
+                .contextualName(contextualName)
+                .lowCardinalityKeyValue(STAGE, stage);
+    }
+}
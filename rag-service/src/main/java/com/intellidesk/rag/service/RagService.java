@@ -2,17 +2,33 @@ package com.intellidesk.rag.service;
 
 import com.intellidesk.rag.dto.QuestionRequest;
 import com.intellidesk.rag.dto.QuestionResponse;
+import com.intellidesk.rag.store.KeywordIndex;
+import com.intellidesk.rag.store.ManagedEmbeddingStore;
+import com.intellidesk.rag.store.SegmentFilter;
 import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
 import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.StreamingResponseHandler;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import dev.langchain4j.model.output.Response;
 import dev.langchain4j.store.embedding.EmbeddingMatch;
-import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 @Service
@@ -21,48 +37,220 @@ import java.util.stream.Collectors;
 public class RagService {
 
     private final EmbeddingModel embeddingModel;
-    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final ManagedEmbeddingStore embeddingStore;
     private final OpenAiChatModel chatModel;
+    private final OpenAiStreamingChatModel streamingChatModel;
+    private final SemanticAnswerCache answerCache;
+    private final HybridRetriever hybridRetriever;
+    private final MultiQueryRetriever multiQueryRetriever;
+    private final ContextAssembler contextAssembler;
+    private final MeterRegistry meterRegistry;
+    private final PipelineMetrics pipelineMetrics;
+    private final TenantPolicy tenantPolicy;
+
+    static final String NO_CONTEXT_ANSWER = "I don't have enough information to answer this question.";
 
     public QuestionResponse answerQuestion(QuestionRequest request) {
+        long start = System.nanoTime();
+        Retrieval retrieval = retrieve(request);
+        QuestionResponse response = generate(retrieval);
+        // Without streaming the first token reaches the user together with the last one
+        recordTimeToFirstToken("blocking", retrieval.cached() != null, start);
+        return response;
+    }
+
+    /**
+     * Answers like {@link #answerQuestion} but hands tokens to the listener as the model emits
+     * them. Retrieval runs on the calling thread; tokens arrive on the HTTP client's threads.
+     */
+    public void streamAnswer(QuestionRequest request, AnswerStreamListener listener) {
+        long start = System.nanoTime();
+        Retrieval retrieval;
+        try {
+            retrieval = retrieve(request);
+        } catch (RuntimeException e) {
+            listener.onError(e);
+            return;
+        }
+
+        if (retrieval.cached() != null || retrieval.context().isEmpty()) {
+            QuestionResponse response = retrieval.cached() != null
+                    ? retrieval.cached()
+                    : new QuestionResponse(NO_CONTEXT_ANSWER, List.of(), 0.0);
+            recordTimeToFirstToken("stream", retrieval.cached() != null, start);
+            listener.onToken(response.getAnswer());
+            listener.onComplete(response);
+            return;
+        }
+
+        long generationStart = System.nanoTime();
+        AtomicBoolean firstToken = new AtomicBoolean(true);
+        // Tokens arrive on other threads, so the stage is started and stopped by hand
+        Observation generation = pipelineMetrics.queryStage("generate").start();
+        streamingChatModel.generate(retrieval.prompt(), new StreamingResponseHandler<AiMessage>() {
+            @Override
+            public void onNext(String token) {
+                if (firstToken.compareAndSet(true, false)) {
+                    recordTimeToFirstToken("stream", false, start);
+                }
+                listener.onToken(token);
+            }
+
+            @Override
+            public void onComplete(Response<AiMessage> response) {
+                Duration llmLatency = Duration.ofNanos(System.nanoTime() - generationStart);
+                generation.stop();
+                pipelineMetrics.recordChatTokens(response.tokenUsage());
+                try {
+                    listener.onComplete(complete(retrieval, response.content().text(), llmLatency));
+                } catch (RuntimeException e) {
+                    listener.onError(e);
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                log.error("Streaming answer failed: {}", error.getMessage());
+                generation.error(error);
+                generation.stop();
+                listener.onError(error);
+            }
+        });
+    }
+
+    private Retrieval retrieve(QuestionRequest request) {
+        PendingRetrieval pending = startRetrieval(request);
+
+        // Generate embedding for the question
+        Embedding questionEmbedding = pipelineMetrics.queryStage("embed")
+                .observe(() -> embeddingModel.embed(pending.question()).content());
+        return completeRetrieval(pending, questionEmbedding);
+    }
+
+    /**
+     * Validates the question and starts the keyword leg, which then runs while the caller
+     * embeds the question.
+     */
+    PendingRetrieval startRetrieval(QuestionRequest request) {
         String question = request.getQuestion();
+        if (question == null || question.isBlank()) {
+            throw new IllegalArgumentException("Question must not be empty");
+        }
         int maxResults = request.getMaxResults() != null ? request.getMaxResults() : 5;
+        SegmentFilter filter = SegmentFilter.of(request.getDocumentIds(), tenantPolicy.resolve(request.getTenantId()));
+        long cacheGeneration = answerCache.generation();
+        boolean multiQuery = request.getMultiQuery() != null ? request.getMultiQuery() : multiQueryRetriever.isEnabled();
 
-        // Generate embedding for the question
-        Embedding questionEmbedding = embeddingModel.embed(question).content();
-
-        // Find relevant segments
-        List<EmbeddingMatch<TextSegment>> relevantSegments = 
-                embeddingStore.findRelevant(questionEmbedding, maxResults);
-
-        if (relevantSegments.isEmpty()) {
-            return new QuestionResponse(
-                    "I don't have enough information to answer this question.",
-                    List.of(),
-                    0.0
-            );
+        // Keyword leg and question rewrites run while the question is embedded and searched
+        CompletableFuture<List<KeywordIndex.Match>> keywordMatches =
+                hybridRetriever.searchAsync(question, maxResults, filter);
+        MultiQueryRetriever.Expansion expansion = multiQuery ? multiQueryRetriever.expand(question) : null;
+        return new PendingRetrieval(question, maxResults, filter, cacheGeneration, keywordMatches, expansion);
+    }
+
+    Retrieval completeRetrieval(PendingRetrieval pending, Embedding questionEmbedding) {
+        String question = pending.question();
+        int maxResults = pending.maxResults();
+        SegmentFilter filter = pending.filter();
+        long cacheGeneration = pending.cacheGeneration();
+
+        // Near-duplicate questions are answered from the cache without searching or calling the LLM
+        Optional<QuestionResponse> cached = answerCache.lookup(questionEmbedding, maxResults, filter);
+        if (cached.isPresent()) {
+            log.info("Answered question from semantic cache");
+            pending.cancel();
+            return new Retrieval(questionEmbedding, maxResults, filter, List.of(), null, null, cached.get(), 0L);
         }
 
-        // Build context from relevant segments
-        String context = relevantSegments.stream()
-                .map(match -> match.embedded().text())
-                .collect(Collectors.joining("\n\n"));
+        List<RetrievedSegment> relevantSegments = search(pending, questionEmbedding);
+
+        return pipelineMetrics.queryStage("prompt").observe(() -> {
+            // Build context from relevant segments, without overlaps and within the token budget
+            ContextAssembler.Context context = contextAssembler.assemble(relevantSegments);
+
+            // Build prompt
+            String prompt = buildPrompt(question, context.text());
+            return new Retrieval(questionEmbedding, maxResults, filter, relevantSegments, context, prompt, null,
+                    cacheGeneration);
+        });
+    }
+
+    /**
+     * Finds the segments relevant to a started retrieval, bypassing the answer cache. The filter
+     * is applied inside the search, not to its results.
+     */
+    List<RetrievedSegment> search(PendingRetrieval pending, Embedding questionEmbedding) {
+        return pipelineMetrics.queryStage("retrieve").observe(() -> {
+            int candidates = hybridRetriever.candidates(pending.maxResults());
+            List<EmbeddingMatch<TextSegment>> vectorMatches = pending.expansion() != null
+                    ? multiQueryRetriever.search(pending.expansion(), questionEmbedding, candidates,
+                            contextAssembler.getMinScore(), pending.filter())
+                    : embeddingStore.findRelevant(questionEmbedding, candidates, contextAssembler.getMinScore(),
+                            pending.filter());
+            return hybridRetriever.fuse(vectorMatches, pending.keywordMatches().join(), pending.maxResults());
+        });
+    }
 
-        // Build prompt
-        String prompt = buildPrompt(question, context);
+    /**
+     * Produces the answer for a completed retrieval, calling the chat model only when the answer
+     * is neither cached nor trivially "no context".
+     */
+    QuestionResponse generate(Retrieval retrieval) {
+        if (retrieval.cached() != null) {
+            return retrieval.cached();
+        }
+        if (retrieval.context().isEmpty()) {
+            return new QuestionResponse(NO_CONTEXT_ANSWER, List.of(), 0.0);
+        }
 
         // Generate answer using LLM
-        String answer = chatModel.generate(prompt);
+        long generationStart = System.nanoTime();
+        String answer = generate(retrieval.prompt());
+        Duration llmLatency = Duration.ofNanos(System.nanoTime() - generationStart);
+
+        return complete(retrieval, answer, llmLatency);
+    }
+
+    /**
+     * Calls the chat model as the generate stage and counts the tokens it reports.
+     */
+    String generate(String prompt) {
+        return pipelineMetrics.queryStage("generate").observe(() -> {
+            Response<AiMessage> response = chatModel.generate(UserMessage.from(prompt));
+            pipelineMetrics.recordChatTokens(response.tokenUsage());
+            return response.content().text();
+        });
+    }
+
+    private QuestionResponse complete(Retrieval retrieval, String answer, Duration llmLatency) {
+        QuestionResponse response = toResponse(retrieval.context(), answer);
+        List<String> segmentIds = retrieval.context().blocks().stream()
+                .flatMap(block -> block.segmentIds().stream())
+                .toList();
+        // A new segment outscoring the weakest retrieved one would have changed the context
+        answerCache.put(retrieval.questionEmbedding(), retrieval.maxResults(), retrieval.filter(), segmentIds,
+                RetrievedSegment.weakestCosine(retrieval.matches()), response, llmLatency, retrieval.cacheGeneration());
+        return response;
+    }
+
+    /**
+     * Wraps an answer with the sources and average similarity of the context it was generated from.
+     * Blocks found only by keyword have no similarity and do not count towards it.
+     */
+    QuestionResponse toResponse(ContextAssembler.Context context, String answer) {
+        List<ContextAssembler.Block> blocks = context.blocks();
 
         // Extract sources
-        List<String> sources = relevantSegments.stream()
-                .map(match -> match.embedded().text().substring(0, 
-                        Math.min(100, match.embedded().text().length())) + "...")
+        List<String> sources = blocks.stream()
+                .map(block -> block.text().substring(0, 
+                        Math.min(100, block.text().length())) + "...")
                 .collect(Collectors.toList());
 
         // Calculate average confidence score
-        double confidence = relevantSegments.stream()
-                .mapToDouble(EmbeddingMatch::score)
+        double confidence = blocks.stream()
+                .map(ContextAssembler.Block::similarity)
+                .filter(Objects::nonNull)
+                .mapToDouble(Double::doubleValue)
                 .average()
                 .orElse(0.0);
 
@@ -71,6 +259,16 @@ public class RagService {
         return new QuestionResponse(answer, sources, confidence);
     }
 
+    private void recordTimeToFirstToken(String mode, boolean cached, long startNanos) {
+        Timer.builder("rag.answer.time.to.first.token")
+                .description("Time from receiving a question until the first answer token is available")
+                .tag("mode", mode)
+                .tag("cached", String.valueOf(cached))
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
     private String buildPrompt(String question, String context) {
         return String.format(
                 """
@@ -89,4 +287,29 @@ public class RagService {
                 question
         );
     }
+
+    record PendingRetrieval(String question, int maxResults, SegmentFilter filter, long cacheGeneration,
+                            CompletableFuture<List<KeywordIndex.Match>> keywordMatches,
+                            MultiQueryRetriever.Expansion expansion) {
+
+        /**
+         * Stops waiting for the legs started ahead of the search.
+         */
+        void cancel() {
+            keywordMatches.cancel(false);
+            if (expansion != null) {
+                expansion.cancel();
+            }
+        }
+    }
+
+    record Retrieval(Embedding questionEmbedding, int maxResults, SegmentFilter filter,
+                     List<RetrievedSegment> matches,
+                     ContextAssembler.Context context, String prompt, QuestionResponse cached,
+                     long cacheGeneration) {
+
+        boolean needsGeneration() {
+            return cached == null && !context.isEmpty();
+        }
+    }
 }
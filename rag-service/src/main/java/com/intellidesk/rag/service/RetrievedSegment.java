@@ -0,0 +1,33 @@
+package com.intellidesk.rag.service;
+
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.List;
+
+/**
+ * A segment chosen by hybrid retrieval, together with which search found it.
+ *
+ * @param similarity   relevance score of the vector search ({@code (cosine + 1) / 2}), or
+ *                     {@code null} when only the keyword search found the segment
+ * @param keywordScore BM25 score, or {@code null} when only the vector search found the segment
+ * @param rank         reciprocal rank fusion score the results are ordered by
+ */
+public record RetrievedSegment(String id, TextSegment segment, Double similarity, Double keywordScore, double rank) {
+
+    public boolean hasSimilarity() {
+        return similarity != null;
+    }
+
+    /**
+     * Cosine similarity of the weakest vector match, the bar a new segment has to clear to
+     * change these results. {@code -1} when no vector match was retrieved, since any addition
+     * may then change them.
+     */
+    public static double weakestCosine(List<RetrievedSegment> segments) {
+        return segments.stream()
+                .filter(RetrievedSegment::hasSimilarity)
+                .mapToDouble(segment -> 2 * segment.similarity() - 1)
+                .min()
+                .orElse(-1);
+    }
+}
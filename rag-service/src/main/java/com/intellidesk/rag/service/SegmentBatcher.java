@@ -0,0 +1,80 @@
+package com.intellidesk.rag.service;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.Tokenizer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Groups text segments into embedding batches bounded both by segment count
+ * and by an estimated token budget, so one {@code embedAll} call never
+ * exceeds the provider's per-request limits.
+ */
+@Component
+public class SegmentBatcher {
+
+    private final Tokenizer tokenizer;
+    private final int maxSegments;
+    private final int maxTokens;
+
+    public SegmentBatcher(Tokenizer tokenizer,
+                          @Value("${rag.ingestion.batch.max-segments:64}") int maxSegments,
+                          @Value("${rag.ingestion.batch.max-tokens:8000}") int maxTokens) {
+        this.tokenizer = tokenizer;
+        this.maxSegments = Math.max(1, maxSegments);
+        this.maxTokens = Math.max(1, maxTokens);
+    }
+
+    /**
+     * Starts grouping segments that arrive one at a time.
+     */
+    public Accumulator accumulator() {
+        return new Accumulator();
+    }
+
+    public int estimateTokens(TextSegment segment) {
+        return tokenizer.estimateTokenCountInText(segment.text());
+    }
+
+    public final class Accumulator {
+
+        private List<TextSegment> current = new ArrayList<>();
+        private int currentTokens;
+
+        private Accumulator() {
+        }
+
+        /**
+         * Adds a segment and returns the previous batch if this segment did not fit into it.
+         */
+        public List<TextSegment> add(TextSegment segment, int tokens) {
+            List<TextSegment> full = null;
+            // Close the current batch when adding this segment would overflow either bound.
+            // A single oversized segment still gets its own batch rather than being dropped.
+            if (!current.isEmpty() && (current.size() >= maxSegments || currentTokens + tokens > maxTokens)) {
+                full = current;
+                current = new ArrayList<>();
+                currentTokens = 0;
+            }
+            current.add(segment);
+            currentTokens += tokens;
+            return full;
+        }
+
+        /**
+         * Returns the last, possibly partial batch, or null if nothing is pending.
+         */
+        public List<TextSegment> flush() {
+            if (current.isEmpty()) {
+                return null;
+            }
+            List<TextSegment> last = current;
+            current = new ArrayList<>();
+            currentTokens = 0;
+            return last;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.intellidesk.rag.service;
+
+import com.intellidesk.rag.dto.QuestionResponse;
+import com.intellidesk.rag.event.DocumentIndexChangedEvent;
+import com.intellidesk.rag.store.SegmentFilter;
+import com.intellidesk.rag.store.Vectors;
+import dev.langchain4j.data.embedding.Embedding;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves answers to questions whose embedding is within a cosine similarity threshold of an
+ * earlier question asked with the same result count and filter. Entries expire after a TTL, are evicted least-recently-used beyond the size
+ * bound, and are invalidated when the segments they were answered from are removed or a document
+ * gains segments that would have ranked among their sources.
+ */
+@Component
+@Slf4j
+public class SemanticAnswerCache {
+
+    private final boolean enabled;
+    private final double similarityThreshold;
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final Map<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong ids = new AtomicLong();
+    // Bumped on every invalidation so answers computed from a stale retrieval are not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter invalidations;
+    private final Timer savedLlmLatency;
+
+    public SemanticAnswerCache(MeterRegistry meterRegistry,
+                               @Value("${rag.answer-cache.enabled:true}") boolean enabled,
+                               @Value("${rag.answer-cache.similarity-threshold:0.95}") double similarityThreshold,
+                               @Value("${rag.answer-cache.ttl-minutes:60}") long ttlMinutes,
+                               @Value("${rag.answer-cache.max-entries:1000}") int maxEntries) {
+        this.enabled = enabled;
+        this.similarityThreshold = similarityThreshold;
+        this.ttlNanos = TimeUnit.MINUTES.toNanos(ttlMinutes);
+        this.maxEntries = maxEntries;
+
+        this.hits = Counter.builder("rag.answer.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("rag.answer.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.invalidations = Counter.builder("rag.answer.cache.invalidations").register(meterRegistry);
+        this.savedLlmLatency = Timer.builder("rag.answer.cache.saved.llm.latency")
+                .description("LLM generation time avoided by serving cached answers")
+                .register(meterRegistry);
+        Gauge.builder("rag.answer.cache.size", this, SemanticAnswerCache::size).register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long generation() {
+        return generation.get();
+    }
+
+    public Optional<QuestionResponse> lookup(Embedding questionEmbedding, int maxResults, SegmentFilter filter) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        float[] query = Vectors.normalize(questionEmbedding.vector());
+        long now = System.nanoTime();
+
+        Entry best = null;
+        double bestSimilarity = similarityThreshold;
+        synchronized (entries) {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (now - entry.createdAt > ttlNanos) {
+                    iterator.remove();
+                    continue;
+                }
+                if (entry.maxResults != maxResults || !entry.filter.equals(filter)) {
+                    continue;
+                }
+                double similarity = Vectors.dot(query, entry.question);
+                if (similarity >= bestSimilarity) {
+                    bestSimilarity = similarity;
+                    best = entry;
+                }
+            }
+            if (best != null) {
+                entries.get(best.id); // refresh LRU position
+            }
+        }
+
+        if (best == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        savedLlmLatency.record(best.llmNanos, TimeUnit.NANOSECONDS);
+        log.debug("Answer cache hit (similarity {})", bestSimilarity);
+        QuestionResponse cached = best.response;
+        return Optional.of(new QuestionResponse(cached.getAnswer(), List.copyOf(cached.getSources()),
+                cached.getConfidence()));
+    }
+
+    /**
+     * Caches an answer unless the index changed since {@code generationAtRetrieval}.
+     *
+     * @param minSimilarity cosine similarity of the weakest retrieved segment; new segments scoring
+     *                      at least this high invalidate the entry
+     */
+    public void put(Embedding questionEmbedding, int maxResults, SegmentFilter filter, List<String> segmentIds,
+                    double minSimilarity, QuestionResponse response, Duration llmLatency, long generationAtRetrieval) {
+        if (!enabled) {
+            return;
+        }
+        Entry entry = new Entry(ids.incrementAndGet(), Vectors.normalize(questionEmbedding.vector()), maxResults,
+                filter, new HashSet<>(segmentIds), minSimilarity, response, llmLatency.toNanos(), System.nanoTime());
+        synchronized (entries) {
+            if (generation.get() != generationAtRetrieval) {
+                return;
+            }
+            entries.put(entry.id, entry);
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (entries.size() > maxEntries && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    @EventListener
+    public void onDocumentIndexChanged(DocumentIndexChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        Set<String> removed = new HashSet<>(event.getRemovedSegmentIds());
+        List<float[]> added = new ArrayList<>(event.getAddedEmbeddings().size());
+        for (Embedding embedding : event.getAddedEmbeddings()) {
+            added.add(Vectors.normalize(embedding.vector()));
+        }
+
+        int invalidated = 0;
+        synchronized (entries) {
+            generation.incrementAndGet();
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (isAffected(entry, removed, added)) {
+                    iterator.remove();
+                    invalidated++;
+                }
+            }
+        }
+        if (invalidated > 0) {
+            invalidations.increment(invalidated);
+            log.info("Invalidated {} cached answers after changes to document {}", invalidated, event.getDocumentId());
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static boolean isAffected(Entry entry, Set<String> removed, List<float[]> added) {
+        for (String segmentId : entry.segmentIds) {
+            if (removed.contains(segmentId)) {
+                return true;
+            }
+        }
+        for (float[] vector : added) {
+            if (Vectors.dot(entry.question, vector) >= entry.minSimilarity) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record Entry(long id, float[] question, int maxResults, SegmentFilter filter, Set<String> segmentIds,
+                         double minSimilarity, QuestionResponse response, long llmNanos, long createdAt) {
+    }
+}
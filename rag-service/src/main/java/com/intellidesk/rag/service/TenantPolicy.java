@@ -0,0 +1,33 @@
+package com.intellidesk.rag.service;
+
+import com.intellidesk.rag.store.SegmentFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides how far a request reaches across tenants. With {@code rag.tenancy.require-tenant-id}
+ * every request must carry an {@code X-Tenant-Id}; otherwise a request without one is unscoped
+ * and sees the documents of all tenants, which only suits single-tenant deployments.
+ */
+@Component
+public class TenantPolicy {
+
+    private final boolean requireTenantId;
+
+    public TenantPolicy(@Value("${rag.tenancy.require-tenant-id:false}") boolean requireTenantId) {
+        this.requireTenantId = requireTenantId;
+    }
+
+    /**
+     * Validates the tenant id of a request.
+     *
+     * @return the tenant id, or {@code null} for unscoped access when that is allowed
+     */
+    public String resolve(String tenantId) {
+        SegmentFilter.validateTenantId(tenantId);
+        if (tenantId == null && requireTenantId) {
+            throw new IllegalArgumentException("X-Tenant-Id header is required");
+        }
+        return tenantId;
+    }
+}
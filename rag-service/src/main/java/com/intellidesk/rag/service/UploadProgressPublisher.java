@@ -0,0 +1,179 @@
+package com.intellidesk.rag.service;
+
+import com.intellidesk.rag.dto.UploadProgressMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Publishes upload progress to per-document and per-user destinations instead of one shared
+ * topic, coalescing updates so each document emits at most one message per interval. The latest
+ * pending update is sent when its interval ends, and final states go out immediately.
+ *
+ * <ul>
+ *   <li>{@code /topic/upload-progress/document/{documentId}}</li>
+ *   <li>{@code /topic/upload-progress/user/{userId}} when the upload carried an {@code X-User-Id}</li>
+ *   <li>{@code /topic/upload-progress} only when the legacy broadcast is enabled</li>
+ * </ul>
+ */
+@Component
+@Slf4j
+public class UploadProgressPublisher {
+
+    public static final String LEGACY_DESTINATION = "/topic/upload-progress";
+
+    private static final Set<String> FINAL_STATUSES = Set.of("completed", "deduplicated", "failed", "cancelled");
+    private static final Pattern USER_ID = Pattern.compile("[A-Za-z0-9._@-]{1,128}");
+    private static final long IDLE_SWEEP_SECONDS = 60;
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final long minIntervalNanos;
+    private final boolean legacyTopic;
+    private final Map<String, DocumentProgress> documents = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final Counter sent;
+    private final Counter coalesced;
+
+    public UploadProgressPublisher(SimpMessagingTemplate messagingTemplate,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${rag.progress.min-interval-ms:500}") long minIntervalMs,
+                                   @Value("${rag.progress.legacy-topic:false}") boolean legacyTopic) {
+        this.messagingTemplate = messagingTemplate;
+        this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, minIntervalMs));
+        this.legacyTopic = legacyTopic;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "upload-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::sweepIdle, IDLE_SWEEP_SECONDS, IDLE_SWEEP_SECONDS, TimeUnit.SECONDS);
+        this.sent = Counter.builder("rag.upload.progress.messages")
+                .description("Upload progress updates by delivery outcome")
+                .tag("result", "sent")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("rag.upload.progress.messages")
+                .description("Upload progress updates by delivery outcome")
+                .tag("result", "coalesced")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Rejects user ids that cannot safely be used as a destination segment.
+     */
+    public static String validateUserId(String userId) {
+        if (userId != null && !USER_ID.matcher(userId).matches()) {
+            throw new IllegalArgumentException("Invalid X-User-Id header");
+        }
+        return userId;
+    }
+
+    public void publish(String userId, UploadProgressMessage message) {
+        String documentId = message.getDocumentId();
+        if (documentId == null) {
+            send(userId, message);
+            return;
+        }
+
+        if (FINAL_STATUSES.contains(message.getStatus())) {
+            DocumentProgress progress = documents.remove(documentId);
+            if (progress == null) {
+                send(userId, message);
+                return;
+            }
+            synchronized (progress) {
+                // Supersedes whatever is still waiting for its interval
+                if (progress.pending != null) {
+                    progress.pending = null;
+                    coalesced.increment();
+                }
+                send(userId, message);
+            }
+            return;
+        }
+
+        DocumentProgress progress = documents.computeIfAbsent(documentId, id -> new DocumentProgress());
+        synchronized (progress) {
+            long now = System.nanoTime();
+            long wait = progress.lastSent + minIntervalNanos - now;
+            if (progress.pending == null && (!progress.sentAny || wait <= 0)) {
+                progress.sentAny = true;
+                progress.lastSent = now;
+                send(userId, message);
+                return;
+            }
+            if (progress.pending == null) {
+                scheduler.schedule(() -> flush(progress), wait, TimeUnit.NANOSECONDS);
+            } else {
+                coalesced.increment();
+            }
+            progress.pending = message;
+            progress.pendingUserId = userId;
+        }
+    }
+
+    private void flush(DocumentProgress progress) {
+        synchronized (progress) {
+            if (progress.pending != null) {
+                progress.lastSent = System.nanoTime();
+                send(progress.pendingUserId, progress.pending);
+                progress.pending = null;
+            }
+        }
+    }
+
+    private void send(String userId, UploadProgressMessage message) {
+        try {
+            if (message.getDocumentId() != null) {
+                messagingTemplate.convertAndSend(LEGACY_DESTINATION + "/document/" + message.getDocumentId(), message);
+            }
+            if (userId != null) {
+                messagingTemplate.convertAndSend(LEGACY_DESTINATION + "/user/" + userId, message);
+            }
+            if (legacyTopic) {
+                messagingTemplate.convertAndSend(LEGACY_DESTINATION, message);
+            }
+            sent.increment();
+            log.debug("WebSocket progress sent: {} - {}", message.getStatus(), message.getMessage());
+        } catch (Exception e) {
+            log.warn("Failed to send WebSocket progress update: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Forgets documents that never reported a final state (e.g. abandoned by a shutdown).
+     */
+    private void sweepIdle() {
+        long cutoff = System.nanoTime() - TimeUnit.SECONDS.toNanos(IDLE_SWEEP_SECONDS) - minIntervalNanos;
+        documents.forEach((documentId, progress) -> {
+            synchronized (progress) {
+                if (progress.pending == null && progress.lastSent - cutoff < 0) {
+                    documents.remove(documentId, progress);
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private static final class DocumentProgress {
+        private boolean sentAny;
+        private long lastSent;
+        private UploadProgressMessage pending;
+        private String pendingUserId;
+    }
+}
@@ -0,0 +1,58 @@
+package com.intellidesk.rag.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Paths;
+
+/**
+ * Command-line entry point for vector snapshots, run once the context is up:
+ * {@code --rag.snapshot.import-from=<file>} warm-starts this instance from a snapshot,
+ * {@code --rag.snapshot.export-to=<file>} writes one, and {@code --rag.snapshot.exit=true} stops
+ * the service afterwards instead of serving requests.
+ */
+@Component
+@Slf4j
+public class VectorSnapshotRunner implements ApplicationRunner {
+
+    private final VectorSnapshotService snapshotService;
+    private final ConfigurableApplicationContext context;
+    private final String importFrom;
+    private final String exportTo;
+    private final boolean exit;
+
+    public VectorSnapshotRunner(VectorSnapshotService snapshotService,
+                                ConfigurableApplicationContext context,
+                                @Value("${rag.snapshot.import-from:}") String importFrom,
+                                @Value("${rag.snapshot.export-to:}") String exportTo,
+                                @Value("${rag.snapshot.exit:false}") boolean exit) {
+        this.snapshotService = snapshotService;
+        this.context = context;
+        this.importFrom = importFrom;
+        this.exportTo = exportTo;
+        this.exit = exit;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        if (importFrom.isBlank() && exportTo.isBlank()) {
+            return;
+        }
+        // A failure here fails startup, so a replica never serves with a half-imported index
+        if (!importFrom.isBlank()) {
+            snapshotService.importSnapshot(Paths.get(importFrom));
+        }
+        if (!exportTo.isBlank()) {
+            snapshotService.exportSnapshot(Paths.get(exportTo));
+        }
+        if (exit) {
+            log.info("Vector snapshot done, shutting down");
+            System.exit(SpringApplication.exit(context, () -> 0));
+        }
+    }
+}
@@ -0,0 +1,515 @@
+package com.intellidesk.rag.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intellidesk.rag.dto.VectorSnapshotReport;
+import com.intellidesk.rag.entity.DocumentRecord;
+import com.intellidesk.rag.entity.DocumentSegment;
+import com.intellidesk.rag.event.DocumentIndexChangedEvent;
+import com.intellidesk.rag.repository.DocumentRepository;
+import com.intellidesk.rag.store.KeywordIndex;
+import com.intellidesk.rag.store.ManagedEmbeddingStore;
+import com.intellidesk.rag.store.SegmentFilter;
+import com.intellidesk.rag.store.StoredSegment;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Exports the vector store to, and imports it from, a binary snapshot holding every segment with
+ * its id, text, metadata and embedding plus the document records referring to them and their
+ * manifests, so a new environment can start without embedding anything again.
+ *
+ * <pre>
+ * header:    int magic | int version | long created (epoch millis)
+ * section:   byte type | int length | int crc32 | payload
+ * DOCUMENTS: int count | count x DocumentRecord JSON
+ * MANIFEST:  documentId | int count | count x (fingerprint | embeddingId)
+ * SEGMENTS:  int count | int dimension | ids | texts | metadata | count x dimension floats
+ * END:       long segments | long documents
+ * </pre>
+ *
+ * Segment sections hold up to {@code rag.snapshot.batch-size} segments stored column by column,
+ * the vectors as one contiguous float block. A document's manifest follows in consecutive
+ * sections of up to the same number of entries. Version 1 snapshots, whose records still embed
+ * their manifest, are imported as well. Imports check every section, the END totals and the
+ * embedding dimension against the store before writing anything, then add the segments in bulk
+ * under their original ids, skipping ids that already exist, so an interrupted import can simply
+ * be run again. Uploaded files are not part of the snapshot.
+ */
+@Service
+@Slf4j
+public class VectorSnapshotService {
+
+    static final int MAGIC = 0x49445653; // "IDVS"
+    static final int VERSION = 2;
+
+    private static final byte END = 0;
+    private static final byte DOCUMENTS = 1;
+    private static final byte SEGMENTS = 2;
+    private static final byte MANIFEST = 3;
+    private static final int MAX_SECTION_BYTES = 256 * 1024 * 1024;
+    private static final int DOCUMENTS_PER_SECTION = 1000;
+
+    private final ManagedEmbeddingStore embeddingStore;
+    private final KeywordIndex keywordIndex;
+    private final DocumentRepository documentRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+
+    public VectorSnapshotService(ManagedEmbeddingStore embeddingStore,
+                                 KeywordIndex keywordIndex,
+                                 DocumentRepository documentRepository,
+                                 ApplicationEventPublisher eventPublisher,
+                                 ObjectMapper objectMapper,
+                                 @Value("${rag.snapshot.batch-size:1000}") int batchSize) {
+        this.embeddingStore = embeddingStore;
+        this.keywordIndex = keywordIndex;
+        this.documentRepository = documentRepository;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Writes a snapshot to {@code file}, replacing it only once the snapshot is complete.
+     */
+    public VectorSnapshotReport exportSnapshot(Path file) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        Files.createDirectories(absolute.getParent());
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        VectorSnapshotReport report;
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            report = exportSnapshot(out);
+        }
+        Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return report;
+    }
+
+    /**
+     * Writes a snapshot to {@code target}; the stream is flushed but not closed.
+     */
+    public VectorSnapshotReport exportSnapshot(OutputStream target) throws IOException {
+        long start = System.nanoTime();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(target, 1 << 16));
+        AtomicLong bytes = new AtomicLong(16);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(System.currentTimeMillis());
+
+        // Records first: every segment they refer to is then still present in the scan below
+        List<DocumentRecord> records = documentRepository.findAll();
+        for (int from = 0; from < records.size(); from += DOCUMENTS_PER_SECTION) {
+            List<DocumentRecord> section = records.subList(from, Math.min(records.size(), from + DOCUMENTS_PER_SECTION));
+            bytes.addAndGet(writeSection(out, DOCUMENTS, encodeDocuments(section)));
+        }
+        for (DocumentRecord record : records) {
+            bytes.addAndGet(writeManifest(out, record));
+        }
+
+        AtomicLong segments = new AtomicLong();
+        try {
+            embeddingStore.forEachBatch(batchSize, batch -> {
+                try {
+                    bytes.addAndGet(writeSection(out, SEGMENTS, encodeSegments(batch)));
+                    segments.addAndGet(batch.size());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        ByteArrayOutputStream end = new ByteArrayOutputStream();
+        DataOutputStream endOut = new DataOutputStream(end);
+        endOut.writeLong(segments.get());
+        endOut.writeLong(records.size());
+        bytes.addAndGet(writeSection(out, END, end.toByteArray()));
+        out.flush();
+
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.info("Exported vector snapshot: {} segments, {} documents, {} bytes in {} ms",
+                segments.get(), records.size(), bytes.get(), durationMs);
+        return VectorSnapshotReport.builder()
+                .version(VERSION)
+                .segments(segments.get())
+                .documents(records.size())
+                .bytes(bytes.get())
+                .durationMs(durationMs)
+                .build();
+    }
+
+    public VectorSnapshotReport importSnapshot(Path file) throws IOException {
+        long start = System.nanoTime();
+        // A corrupt or truncated snapshot is rejected before anything is written
+        List<byte[]> documentSections = verify(file);
+        long documents = 0;
+        Map<String, DocumentRecord> newRecords = new LinkedHashMap<>();
+        for (byte[] payload : documentSections) {
+            for (DocumentRecord record : decodeDocuments(payload)) {
+                documents++;
+                if (documentRepository.findById(record.getDocumentId()).isEmpty()) {
+                    newRecords.put(record.getDocumentId(), record);
+                }
+            }
+        }
+
+        long segments = 0;
+        long segmentsImported = 0;
+        DocumentRepository.ManifestWriter manifest = null;
+        String manifestDocumentId = null;
+        try (DataInputStream in = open(file)) {
+            readHeader(in);
+            Section section;
+            while ((section = readSection(in)).type() != END) {
+                if (section.type() == SEGMENTS) {
+                    List<StoredSegment> batch = decodeSegments(section.payload());
+                    segments += batch.size();
+                    segmentsImported += importBatch(batch);
+                } else if (section.type() == MANIFEST) {
+                    ByteBuffer payload = ByteBuffer.wrap(section.payload());
+                    String documentId = readString(payload);
+                    DocumentRecord record = newRecords.get(documentId);
+                    if (record == null) {
+                        continue;
+                    }
+                    if (!documentId.equals(manifestDocumentId)) {
+                        if (manifest != null) {
+                            manifest.close();
+                        }
+                        manifest = documentRepository.openManifest(documentId, record.getJobId());
+                        manifestDocumentId = documentId;
+                    }
+                    int count = payload.getInt();
+                    for (int i = 0; i < count; i++) {
+                        manifest.append(new DocumentSegment(readString(payload), readString(payload)));
+                    }
+                }
+            }
+        } finally {
+            if (manifest != null) {
+                manifest.close();
+            }
+        }
+
+        // Records last, so none is visible before the segments and manifest it refers to
+        for (DocumentRecord record : newRecords.values()) {
+            documentRepository.save(record);
+        }
+        long documentsImported = newRecords.size();
+
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.info("Imported vector snapshot {}: {} of {} segments and {} of {} documents in {} ms",
+                file, segmentsImported, segments, documentsImported, documents, durationMs);
+        return VectorSnapshotReport.builder()
+                .version(VERSION)
+                .segments(segments)
+                .segmentsImported(segmentsImported)
+                .segmentsSkipped(segments - segmentsImported)
+                .documents(documents)
+                .documentsImported(documentsImported)
+                .bytes(Files.size(file))
+                .durationMs(durationMs)
+                .build();
+    }
+
+    private int importBatch(List<StoredSegment> batch) {
+        Set<String> added = new HashSet<>(embeddingStore.importAll(batch));
+        if (added.isEmpty()) {
+            return 0;
+        }
+
+        List<String> keywordIds = new ArrayList<>();
+        List<TextSegment> keywordSegments = new ArrayList<>();
+        Map<String, List<Embedding>> addedByDocument = new LinkedHashMap<>();
+        for (StoredSegment segment : batch) {
+            if (!added.contains(segment.id())) {
+                continue;
+            }
+            String documentId = null;
+            if (segment.segment() != null) {
+                keywordIds.add(segment.id());
+                keywordSegments.add(segment.segment());
+                documentId = segment.segment().metadata().get(SegmentFilter.DOCUMENT_ID);
+            }
+            addedByDocument.computeIfAbsent(documentId, key -> new ArrayList<>()).add(segment.embedding());
+        }
+        keywordIndex.addAll(keywordIds, keywordSegments);
+        addedByDocument.forEach((documentId, embeddings) ->
+                eventPublisher.publishEvent(new DocumentIndexChangedEvent(this, documentId, List.of(), embeddings)));
+        return added.size();
+    }
+
+    /**
+     * Reads the whole snapshot once, checking every section and the END totals.
+     *
+     * @return the document sections, which are small enough to keep until the segments are in
+     */
+    private List<byte[]> verify(Path file) throws IOException {
+        List<byte[]> documentSections = new ArrayList<>();
+        long segments = 0;
+        long documents = 0;
+        int dimension = -1;
+        try (DataInputStream in = open(file)) {
+            readHeader(in);
+            Section section;
+            while ((section = readSection(in)).type() != END) {
+                ByteBuffer payload = ByteBuffer.wrap(section.payload());
+                if (section.type() == DOCUMENTS) {
+                    documents += payload.getInt();
+                    documentSections.add(section.payload());
+                } else if (section.type() == MANIFEST) {
+                    readString(payload);
+                    payload.getInt();
+                } else if (section.type() == SEGMENTS) {
+                    segments += payload.getInt();
+                    int sectionDimension = payload.getInt();
+                    if (dimension >= 0 && sectionDimension != dimension) {
+                        throw new IllegalArgumentException("Snapshot mixes embedding dimensions "
+                                + dimension + " and " + sectionDimension);
+                    }
+                    dimension = sectionDimension;
+                } else {
+                    throw new IllegalArgumentException("Unknown snapshot section type " + section.type());
+                }
+            }
+            ByteBuffer end = ByteBuffer.wrap(section.payload());
+            if (end.getLong() != segments || end.getLong() != documents) {
+                throw new IllegalArgumentException("Snapshot is incomplete: section totals do not match its trailer");
+            }
+            if (dimension >= 0 && dimension != embeddingStore.dimension()) {
+                throw new IllegalArgumentException("Snapshot holds " + dimension + "-dimensional embeddings, but the "
+                        + "vector store expects " + embeddingStore.dimension());
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Snapshot section is malformed", e);
+        }
+        return documentSections;
+    }
+
+    private static DataInputStream open(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+    }
+
+    private static void readHeader(DataInputStream in) throws IOException {
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a vector snapshot");
+            }
+            int version = in.readInt();
+            if (version < 1 || version > VERSION) {
+                throw new IllegalArgumentException("Unsupported vector snapshot version " + version
+                        + ", expected at most " + VERSION);
+            }
+            in.readLong(); // created
+        } catch (EOFException e) {
+            throw new IllegalArgumentException("Not a vector snapshot", e);
+        }
+    }
+
+    private static long writeSection(DataOutputStream out, byte type, byte[] payload) throws IOException {
+        out.writeByte(type);
+        out.writeInt(payload.length);
+        out.writeInt(crc32(payload));
+        out.write(payload);
+        return 9L + payload.length;
+    }
+
+    private static Section readSection(DataInputStream in) throws IOException {
+        try {
+            byte type = in.readByte();
+            int length = in.readInt();
+            int crc = in.readInt();
+            if (length < 0 || length > MAX_SECTION_BYTES) {
+                throw new IllegalArgumentException("Snapshot section has invalid length " + length);
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            if (crc32(payload) != crc) {
+                throw new IllegalArgumentException("Snapshot section checksum mismatch");
+            }
+            return new Section(type, payload);
+        } catch (EOFException e) {
+            throw new IllegalArgumentException("Snapshot is truncated", e);
+        }
+    }
+
+    /**
+     * Writes the record's manifest as consecutive sections of up to {@code batchSize} entries.
+     */
+    private long writeManifest(DataOutputStream out, DocumentRecord record) throws IOException {
+        long bytes = 0;
+        List<DocumentSegment> entries = new ArrayList<>(batchSize);
+        try (Stream<DocumentSegment> manifest = documentRepository.streamManifest(record)) {
+            Iterator<DocumentSegment> iterator = manifest.iterator();
+            while (iterator.hasNext()) {
+                entries.add(iterator.next());
+                if (entries.size() == batchSize || !iterator.hasNext()) {
+                    bytes += writeSection(out, MANIFEST, encodeManifest(record.getDocumentId(), entries));
+                    entries.clear();
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static byte[] encodeManifest(String documentId, List<DocumentSegment> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, documentId);
+        out.writeInt(entries.size());
+        for (DocumentSegment entry : entries) {
+            writeString(out, entry.getFingerprint());
+            writeString(out, entry.getEmbeddingId());
+        }
+        return bytes.toByteArray();
+    }
+
+    private byte[] encodeDocuments(List<DocumentRecord> records) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(records.size());
+        for (DocumentRecord record : records) {
+            byte[] json = objectMapper.writeValueAsBytes(record);
+            out.writeInt(json.length);
+            out.write(json);
+        }
+        return bytes.toByteArray();
+    }
+
+    private List<DocumentRecord> decodeDocuments(byte[] payload) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        int count = in.getInt();
+        List<DocumentRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] json = new byte[in.getInt()];
+            in.get(json);
+            records.add(objectMapper.readValue(json, DocumentRecord.class));
+        }
+        return records;
+    }
+
+    private static byte[] encodeSegments(List<StoredSegment> batch) throws IOException {
+        int dimension = batch.get(0).embedding().vector().length;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(batch.size());
+        out.writeInt(dimension);
+        for (StoredSegment segment : batch) {
+            writeString(out, segment.id());
+        }
+        for (StoredSegment segment : batch) {
+            out.writeBoolean(segment.segment() != null);
+            if (segment.segment() != null) {
+                writeString(out, segment.segment().text());
+            }
+        }
+        for (StoredSegment segment : batch) {
+            Map<String, ?> metadata = segment.segment() != null ? segment.segment().metadata().asMap() : Map.of();
+            out.writeInt(metadata.size());
+            for (Map.Entry<String, ?> entry : metadata.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, String.valueOf(entry.getValue()));
+            }
+        }
+
+        ByteBuffer vectors = ByteBuffer.allocate(batch.size() * dimension * Float.BYTES);
+        for (StoredSegment segment : batch) {
+            float[] vector = segment.embedding().vector();
+            if (vector.length != dimension) {
+                throw new IllegalStateException("Segment " + segment.id() + " has dimension " + vector.length
+                        + ", expected " + dimension);
+            }
+            vectors.asFloatBuffer().put(vector);
+            vectors.position(vectors.position() + dimension * Float.BYTES);
+        }
+        out.write(vectors.array());
+        return bytes.toByteArray();
+    }
+
+    private static List<StoredSegment> decodeSegments(byte[] payload) {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        int count = in.getInt();
+        int dimension = in.getInt();
+        String[] ids = new String[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = readString(in);
+        }
+        String[] texts = new String[count];
+        for (int i = 0; i < count; i++) {
+            texts[i] = in.get() != 0 ? readString(in) : null;
+        }
+        List<Map<String, String>> metadata = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int entries = in.getInt();
+            Map<String, String> values = new LinkedHashMap<>();
+            for (int j = 0; j < entries; j++) {
+                values.put(readString(in), readString(in));
+            }
+            metadata.add(values);
+        }
+
+        List<StoredSegment> segments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            float[] vector = new float[dimension];
+            in.asFloatBuffer().get(vector);
+            in.position(in.position() + dimension * Float.BYTES);
+            TextSegment segment = texts[i] != null ? TextSegment.from(texts[i], Metadata.from(metadata.get(i))) : null;
+            segments.add(new StoredSegment(ids[i], Embedding.from(vector), segment));
+        }
+        return segments;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int crc32(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private record Section(byte type, byte[] payload) {
+    }
+}
@@ -0,0 +1,81 @@
+package com.intellidesk.rag.service;
+
+import com.intellidesk.rag.dto.KeywordIndexReport;
+import com.intellidesk.rag.dto.VectorSearchReport;
+import com.intellidesk.rag.store.HnswEmbeddingStore;
+import com.intellidesk.rag.store.KeywordIndex;
+import com.intellidesk.rag.store.ManagedEmbeddingStore;
+import com.intellidesk.rag.store.StoredSegment;
+import dev.langchain4j.data.segment.TextSegment;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class VectorStoreService {
+
+    private static final int MAX_EVALUATION_QUERIES = 1000;
+    private static final int REBUILD_BATCH_SIZE = 500;
+
+    private final ManagedEmbeddingStore embeddingStore;
+    private final KeywordIndex keywordIndex;
+
+    public VectorSearchReport evaluate(int queries, int k) {
+        return hnswStore().evaluate(validQueries(queries), validK(k));
+    }
+
+    public VectorSearchReport calibrate(int queries, int k) {
+        return hnswStore().calibrate(validQueries(queries), validK(k));
+    }
+
+    /**
+     * Streams every stored segment into the keyword index, adding the ones it is missing: segments
+     * ingested before hybrid search existed, or restored without their keyword journal.
+     */
+    public KeywordIndexReport rebuildKeywordIndex() {
+        long start = System.nanoTime();
+        long[] counts = new long[2];
+        embeddingStore.forEachBatch(REBUILD_BATCH_SIZE, batch -> {
+            List<String> ids = batch.stream().map(StoredSegment::id).toList();
+            List<TextSegment> segments = batch.stream().map(StoredSegment::segment).toList();
+            counts[0] += batch.size();
+            counts[1] += keywordIndex.addMissing(ids, segments);
+        });
+        KeywordIndexReport report = KeywordIndexReport.builder()
+                .segments(counts[0])
+                .segmentsAdded(counts[1])
+                .segmentsSkipped(counts[0] - counts[1])
+                .indexSize(keywordIndex.size())
+                .durationMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+                .build();
+        log.info("Keyword index rebuilt from the embedding store: {} of {} segments added in {} ms",
+                report.getSegmentsAdded(), report.getSegments(), report.getDurationMs());
+        return report;
+    }
+
+    private HnswEmbeddingStore hnswStore() {
+        if (embeddingStore instanceof HnswEmbeddingStore hnsw) {
+            return hnsw;
+        }
+        throw new IllegalArgumentException("Search quality reports require rag.vector-store.type=hnsw");
+    }
+
+    private static int validQueries(int queries) {
+        if (queries < 1 || queries > MAX_EVALUATION_QUERIES) {
+            throw new IllegalArgumentException("queries must be between 1 and " + MAX_EVALUATION_QUERIES);
+        }
+        return queries;
+    }
+
+    private static int validK(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        return k;
+    }
+}
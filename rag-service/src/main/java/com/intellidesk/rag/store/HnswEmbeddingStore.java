@@ -0,0 +1,946 @@
+package com.intellidesk.rag.store;
+
+import com.intellidesk.rag.dto.VectorSearchReport;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * In-process {@link ManagedEmbeddingStore} backed by an HNSW graph (Malkov &amp; Yashunin).
+ *
+ * <p>Vectors are normalized and kept off-heap in a memory-mapped file ({@code vectors.bin}).
+ * Segment texts and removals are written to an append-only journal ({@code segments.log}) that is
+ * the source of truth on restart; the graph itself is snapshotted periodically to
+ * {@code graph.bin} and nodes added after the last snapshot are re-inserted on load. Removed
+ * segments stay in the graph as navigation-only tombstones: searches walk through them but never
+ * count them towards the {@code ef} best candidates, so deletions do not crowd out live results.
+ * Once at least {@value #COMPACTION_MIN_TOMBSTONES} tombstones outnumber the live segments, the
+ * live vectors and journal entries are rewritten under dense ordinals and the graph is rebuilt.
+ *
+ * <p>With quantization enabled, searches walk the graph using compact {@link QuantizedVectors}
+ * kept on the heap and only rescore the best {@code k * rescoreMultiplier} candidates against the
+ * full-precision vectors, so the mapped file is touched for a handful of pages per query.
+ *
+ * <p>Filtered searches are restricted to the nodes of the requested documents/tenant, tracked in
+ * per-value bitsets built from segment metadata. The graph is still traversed through all nodes,
+ * but only allowed nodes enter the result set; when the filter leaves at most
+ * {@code filterBruteForceThreshold} nodes they are simply scanned exactly.
+ */
+@Slf4j
+public class HnswEmbeddingStore implements ManagedEmbeddingStore, AutoCloseable {
+
+    private static final int GRAPH_MAGIC = 0x49444847; // "IDHG"
+    private static final int GRAPH_VERSION = 1;
+    static final int COMPACTION_MIN_TOMBSTONES = 1024;
+    // Present once compacted files are complete; a restart then finishes moving them into place
+    private static final String COMPACTION_MARKER = "compaction.commit";
+
+    private final Path directory;
+    private final int dimension;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final int efSearch;
+    private final int snapshotInterval;
+    private final double levelMultiplier;
+    private final double recallTarget;
+    private final int filterBruteForceThreshold;
+    private volatile int rescoreMultiplier;
+    private final Random random = new Random();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private MappedVectorStorage vectors;
+    private final SegmentJournal journal;
+    private QuantizedVectors quantized;
+
+    private final List<String> ids = new ArrayList<>();
+    private final List<TextSegment> segments = new ArrayList<>();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    // metadata value -> live nodes carrying it, for filtered searches
+    private final Map<String, BitSet> nodesByDocument = new HashMap<>();
+    private final Map<String, BitSet> nodesByTenant = new HashMap<>();
+    // node -> level -> neighbour ordinals
+    private final List<int[][]> links = new ArrayList<>();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private int nodesSinceSnapshot;
+
+    public HnswEmbeddingStore(Path directory, int dimension, int m, int efConstruction, int efSearch,
+                              int snapshotInterval, String quantization, int rescoreMultiplier,
+                              double recallTarget, int filterBruteForceThreshold) throws IOException {
+        this.directory = directory;
+        this.dimension = dimension;
+        this.m = Math.max(2, m);
+        this.maxM0 = this.m * 2;
+        this.efConstruction = Math.max(this.m, efConstruction);
+        this.efSearch = Math.max(1, efSearch);
+        this.snapshotInterval = Math.max(1, snapshotInterval);
+        this.levelMultiplier = 1 / Math.log(this.m);
+        this.rescoreMultiplier = Math.max(1, rescoreMultiplier);
+        this.recallTarget = recallTarget;
+        this.filterBruteForceThreshold = Math.max(0, filterBruteForceThreshold);
+
+        Files.createDirectories(directory);
+        finishCompaction(directory);
+        this.vectors = new MappedVectorStorage(directory.resolve("vectors.bin"), dimension);
+        this.journal = new SegmentJournal(directory.resolve("segments.log"));
+        this.quantized = new QuantizedVectors(QuantizedVectors.Mode.parse(quantization), dimension);
+        load();
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), Collections.singletonList(null));
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        return addAll(List.of(embedding), List.of(textSegment)).get(0);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return addAll(embeddings, Collections.nCopies(embeddings.size(), null));
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> textSegments) {
+        List<String> newIds = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            newIds.add(UUID.randomUUID().toString());
+        }
+        addAll(newIds, embeddings, textSegments);
+        return newIds;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore) {
+        return findRelevant(referenceEmbedding, maxResults, minScore, SegmentFilter.NONE);
+    }
+
+    @Override
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore,
+                                                          SegmentFilter filter) {
+        float[] query = Vectors.normalize(referenceEmbedding.vector());
+
+        lock.readLock().lock();
+        try {
+            BitSet allowed = filter.isEmpty() ? null : allowedNodes(filter);
+            List<Candidate> found;
+            if (allowed != null && allowed.cardinality() <= filterBruteForceThreshold) {
+                // Few enough nodes that an exact scan beats walking the graph around the rest
+                found = bruteForce(query, allowed.stream().toArray(), maxResults);
+            } else if (quantized.enabled()) {
+                found = searchQuantized(query, maxResults, rescoreMultiplier, allowed);
+            } else {
+                found = searchExact(query, maxResults, allowed);
+            }
+
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+            for (Candidate candidate : found) {
+                if (matches.size() >= maxResults) {
+                    break;
+                }
+                double score = RelevanceScore.fromCosineSimilarity(candidate.similarity);
+                if (score < minScore) {
+                    break; // sorted by similarity, nothing better follows
+                }
+                matches.add(new EmbeddingMatch<>(score, ids.get(candidate.node),
+                        Embedding.from(vectors.read(candidate.node)), segments.get(candidate.node)));
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> idsToRemove) {
+        lock.writeLock().lock();
+        try {
+            for (String id : idsToRemove) {
+                Integer ordinal = ordinals.remove(id);
+                if (ordinal != null) {
+                    markDeleted(ordinal);
+                    journal.appendRemove(id);
+                }
+            }
+            journal.sync();
+            if (compactionDue()) {
+                compact();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to journal removal of " + idsToRemove.size() + " segments", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Measures recall@k and latency of the graph search (full precision and, when enabled,
+     * quantized with rescoring) against a brute-force scan, using perturbed copies of stored
+     * vectors as queries.
+     */
+    public VectorSearchReport evaluate(int queryCount, int k) {
+        return evaluate(queryCount, k, rescoreMultiplier);
+    }
+
+    /**
+     * Raises the rescore multiplier until quantized search meets the configured recall target
+     * (or the largest multiplier is reached) and keeps the chosen value for subsequent searches.
+     */
+    public VectorSearchReport calibrate(int queryCount, int k) {
+        VectorSearchReport report = evaluate(queryCount, k, rescoreMultiplier);
+        if (!quantized.enabled()) {
+            return report;
+        }
+        for (int multiplier : new int[]{1, 2, 3, 4, 6, 8, 12, 16, 24, 32}) {
+            report = evaluate(queryCount, k, multiplier);
+            if (report.isMeetsRecallTarget()) {
+                break;
+            }
+        }
+        rescoreMultiplier = report.getRescoreMultiplier();
+        log.info("Calibrated HNSW rescore multiplier to {} (recall@{} {} vs target {})",
+                rescoreMultiplier, k, report.getQuantizedRecall(), recallTarget);
+        return report;
+    }
+
+    @Override
+    public void forEachBatch(int batchSize, Consumer<List<StoredSegment>> consumer) {
+        int limit = Math.max(1, batchSize);
+        int next = 0;
+        while (true) {
+            List<StoredSegment> batch = new ArrayList<>(limit);
+            // Locked per batch so a long export does not hold up ingestion
+            lock.readLock().lock();
+            try {
+                for (; next < ids.size() && batch.size() < limit; next++) {
+                    if (!deleted.get(next)) {
+                        batch.add(new StoredSegment(ids.get(next), Embedding.from(vectors.read(next)), segments.get(next)));
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            consumer.accept(batch);
+        }
+    }
+
+    @Override
+    public List<String> importAll(List<StoredSegment> stored) {
+        lock.writeLock().lock();
+        try {
+            List<StoredSegment> fresh = stored.stream()
+                    .filter(segment -> !ordinals.containsKey(segment.id()))
+                    .toList();
+            if (!fresh.isEmpty()) {
+                addAll(fresh.stream().map(StoredSegment::id).toList(),
+                        fresh.stream().map(StoredSegment::embedding).toList(),
+                        fresh.stream().map(StoredSegment::segment).toList());
+            }
+            return fresh.stream().map(StoredSegment::id).toList();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ordinals.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            snapshot();
+            vectors.close();
+            journal.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void addAll(List<String> newIds, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (newIds.size() != embeddings.size() || embeddings.size() != textSegments.size()) {
+            throw new IllegalArgumentException("ids, embeddings and segments must have the same size");
+        }
+
+        lock.writeLock().lock();
+        try {
+            int first = ids.size();
+            for (int i = 0; i < embeddings.size(); i++) {
+                float[] vector = embeddings.get(i).vector();
+                if (vector.length != dimension) {
+                    throw new IllegalArgumentException("Expected embedding dimension " + dimension
+                            + " but got " + vector.length);
+                }
+                float[] normalized = Vectors.normalize(vector);
+                vectors.write(first + i, normalized);
+                quantized.add(first + i, normalized);
+            }
+            // Vectors must be durable before the journal references them
+            vectors.force();
+
+            for (int i = 0; i < newIds.size(); i++) {
+                int ordinal = first + i;
+                String id = newIds.get(i);
+                journal.appendAdd(ordinal, id, textSegments.get(i));
+                register(ordinal, id, textSegments.get(i));
+            }
+            journal.sync();
+
+            for (int i = 0; i < newIds.size(); i++) {
+                insert(first + i);
+            }
+
+            nodesSinceSnapshot += newIds.size();
+            if (nodesSinceSnapshot >= snapshotInterval) {
+                snapshot();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to persist " + newIds.size() + " segments", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void register(int ordinal, String id, TextSegment segment) {
+        ids.add(id);
+        segments.add(segment);
+        Integer previous = ordinals.put(id, ordinal);
+        if (previous != null) {
+            // Re-adding an id replaces the old vector
+            markDeleted(previous);
+        }
+        if (segment != null) {
+            addToIndex(nodesByDocument, segment.metadata().get(SegmentFilter.DOCUMENT_ID), ordinal);
+            addToIndex(nodesByTenant, segment.metadata().get(SegmentFilter.TENANT_ID), ordinal);
+        }
+    }
+
+    private void markDeleted(int ordinal) {
+        deleted.set(ordinal);
+        TextSegment segment = segments.get(ordinal);
+        if (segment != null) {
+            removeFromIndex(nodesByDocument, segment.metadata().get(SegmentFilter.DOCUMENT_ID), ordinal);
+            removeFromIndex(nodesByTenant, segment.metadata().get(SegmentFilter.TENANT_ID), ordinal);
+        }
+    }
+
+    private static void addToIndex(Map<String, BitSet> index, String value, int ordinal) {
+        if (value != null) {
+            index.computeIfAbsent(value, key -> new BitSet()).set(ordinal);
+        }
+    }
+
+    private static void removeFromIndex(Map<String, BitSet> index, String value, int ordinal) {
+        BitSet nodes = value != null ? index.get(value) : null;
+        if (nodes != null) {
+            nodes.clear(ordinal);
+            if (nodes.isEmpty()) {
+                index.remove(value);
+            }
+        }
+    }
+
+    /**
+     * Live nodes matching the filter.
+     */
+    private BitSet allowedNodes(SegmentFilter filter) {
+        BitSet allowed = null;
+        if (!filter.documentIds().isEmpty()) {
+            allowed = new BitSet();
+            for (String documentId : filter.documentIds()) {
+                BitSet nodes = nodesByDocument.get(documentId);
+                if (nodes != null) {
+                    allowed.or(nodes);
+                }
+            }
+        }
+        if (filter.tenantId() != null) {
+            BitSet tenantNodes = nodesByTenant.getOrDefault(filter.tenantId(), new BitSet());
+            if (allowed == null) {
+                allowed = (BitSet) tenantNodes.clone();
+            } else {
+                allowed.and(tenantNodes);
+            }
+        }
+        return allowed;
+    }
+
+    // ---- HNSW graph ------------------------------------------------------------------------
+
+    private void insert(int node) {
+        float[] vector = vectors.read(node);
+        NodeScorer scorer = other -> vectors.dot(other, vector);
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+
+        int[][] nodeLinks = new int[level + 1][];
+        for (int lc = 0; lc <= level; lc++) {
+            nodeLinks[lc] = new int[0];
+        }
+        links.add(nodeLinks);
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        int entry = entryPoint;
+        for (int lc = maxLevel; lc > level; lc--) {
+            entry = greedyClosest(scorer, entry, lc);
+        }
+
+        for (int lc = Math.min(level, maxLevel); lc >= 0; lc--) {
+            List<Candidate> found = searchLayer(scorer, entry, efConstruction, lc, null, false);
+            int[] selected = selectNeighbours(found, m);
+            nodeLinks[lc] = selected;
+            int maxConnections = lc == 0 ? maxM0 : m;
+            for (int neighbour : selected) {
+                connect(neighbour, node, lc, maxConnections);
+            }
+            entry = found.get(0).node;
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    private void connect(int node, int newNeighbour, int level, int maxConnections) {
+        int[] current = links.get(node)[level];
+        int[] extended = new int[current.length + 1];
+        System.arraycopy(current, 0, extended, 0, current.length);
+        extended[current.length] = newNeighbour;
+
+        if (extended.length <= maxConnections) {
+            links.get(node)[level] = extended;
+            return;
+        }
+
+        // Too many links: keep the best ones as seen from this node
+        List<Candidate> candidates = new ArrayList<>(extended.length);
+        for (int neighbour : extended) {
+            candidates.add(new Candidate(neighbour, vectors.dot(node, neighbour)));
+        }
+        candidates.sort(Candidate.BY_SIMILARITY_DESC);
+        links.get(node)[level] = selectNeighbours(candidates, maxConnections);
+    }
+
+    /**
+     * Neighbour selection heuristic: prefer candidates that are closer to the base element than to
+     * any already selected neighbour, then fill up with the nearest remaining ones.
+     */
+    private int[] selectNeighbours(List<Candidate> candidatesByDistance, int count) {
+        List<Integer> selected = new ArrayList<>(count);
+        List<Integer> skipped = new ArrayList<>();
+        for (Candidate candidate : candidatesByDistance) {
+            if (selected.size() >= count) {
+                break;
+            }
+            boolean diverse = true;
+            for (int chosen : selected) {
+                if (vectors.dot(candidate.node, chosen) > candidate.similarity) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate.node);
+            } else {
+                skipped.add(candidate.node);
+            }
+        }
+        for (int i = 0; i < skipped.size() && selected.size() < count; i++) {
+            selected.add(skipped.get(i));
+        }
+        return selected.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private List<Candidate> searchExact(float[] query, int k, BitSet allowed) {
+        if (entryPoint < 0) {
+            return List.of();
+        }
+        NodeScorer scorer = node -> vectors.dot(node, query);
+        return searchLayer(scorer, descend(scorer), Math.max(efSearch, k), 0, allowed, true);
+    }
+
+    /**
+     * Walks the graph on quantized codes, then rescores the best live candidates exactly.
+     */
+    private List<Candidate> searchQuantized(float[] query, int k, int multiplier, BitSet allowed) {
+        if (entryPoint < 0) {
+            return List.of();
+        }
+        QuantizedVectors.EncodedQuery encoded = quantized.encode(query);
+        NodeScorer scorer = node -> quantized.similarity(node, encoded);
+        int candidateCount = k * multiplier;
+        List<Candidate> approximate = searchLayer(scorer, descend(scorer), Math.max(efSearch, candidateCount), 0,
+                allowed, true);
+
+        List<Candidate> rescored = new ArrayList<>(Math.min(candidateCount, approximate.size()));
+        for (Candidate candidate : approximate) {
+            if (rescored.size() >= candidateCount) {
+                break;
+            }
+            rescored.add(new Candidate(candidate.node, vectors.dot(candidate.node, query)));
+        }
+        rescored.sort(Candidate.BY_SIMILARITY_DESC);
+        return rescored;
+    }
+
+    private int descend(NodeScorer scorer) {
+        int entry = entryPoint;
+        for (int lc = maxLevel; lc > 0; lc--) {
+            entry = greedyClosest(scorer, entry, lc);
+        }
+        return entry;
+    }
+
+    private int greedyClosest(NodeScorer scorer, int entry, int level) {
+        int best = entry;
+        float bestSimilarity = scorer.score(entry);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int neighbour : links.get(best)[level]) {
+                float similarity = scorer.score(neighbour);
+                if (similarity > bestSimilarity) {
+                    bestSimilarity = similarity;
+                    best = neighbour;
+                    improved = true;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Beam search on one layer; returns up to {@code ef} nodes sorted by descending similarity.
+     * Every node is used for navigation, but only allowed nodes (all when {@code allowed} is
+     * {@code null}) and, with {@code liveOnly}, no tombstones are returned.
+     */
+    private List<Candidate> searchLayer(NodeScorer scorer, int entry, int ef, int level, BitSet allowed,
+                                        boolean liveOnly) {
+        BitSet visited = new BitSet(ids.size());
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(Candidate.BY_SIMILARITY_DESC);
+        PriorityQueue<Candidate> results = new PriorityQueue<>(Candidate.BY_SIMILARITY_DESC.reversed());
+
+        Candidate start = new Candidate(entry, scorer.score(entry));
+        visited.set(entry);
+        candidates.add(start);
+        if (eligible(entry, allowed, liveOnly)) {
+            results.add(start);
+        }
+
+        while (!candidates.isEmpty()) {
+            Candidate current = candidates.poll();
+            if (results.size() >= ef && current.similarity < results.peek().similarity) {
+                break;
+            }
+            for (int neighbour : links.get(current.node)[level]) {
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                float similarity = scorer.score(neighbour);
+                if (results.size() < ef || similarity > results.peek().similarity) {
+                    Candidate next = new Candidate(neighbour, similarity);
+                    candidates.add(next);
+                    if (eligible(neighbour, allowed, liveOnly)) {
+                        results.add(next);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(Candidate.BY_SIMILARITY_DESC);
+        return sorted;
+    }
+
+    private boolean eligible(int node, BitSet allowed, boolean liveOnly) {
+        return (allowed == null || allowed.get(node)) && !(liveOnly && deleted.get(node));
+    }
+
+    // ---- evaluation ------------------------------------------------------------------------
+
+    private VectorSearchReport evaluate(int queryCount, int k, int multiplier) {
+        lock.readLock().lock();
+        try {
+            int[] live = ordinals.values().stream().mapToInt(Integer::intValue).sorted().toArray();
+            Random sampler = new Random(42);
+            List<float[]> queries = new ArrayList<>(queryCount);
+            for (int q = 0; q < queryCount && live.length > 0; q++) {
+                float[] vector = vectors.read(live[sampler.nextInt(live.length)]);
+                for (int i = 0; i < vector.length; i++) {
+                    vector[i] += (float) (sampler.nextGaussian() * 0.5 / Math.sqrt(dimension));
+                }
+                queries.add(Vectors.normalize(vector));
+            }
+
+            long bruteForceNanos = 0;
+            long exactNanos = 0;
+            long quantizedNanos = 0;
+            double exactHits = 0;
+            double quantizedHits = 0;
+            int expected = 0;
+            for (float[] query : queries) {
+                long start = System.nanoTime();
+                List<Integer> truth = bruteForce(query, live, k).stream().map(Candidate::node).toList();
+                bruteForceNanos += System.nanoTime() - start;
+                expected += truth.size();
+
+                start = System.nanoTime();
+                exactHits += overlap(truth, searchExact(query, k, null), k);
+                exactNanos += System.nanoTime() - start;
+
+                if (quantized.enabled()) {
+                    start = System.nanoTime();
+                    quantizedHits += overlap(truth, searchQuantized(query, k, multiplier, null), k);
+                    quantizedNanos += System.nanoTime() - start;
+                }
+            }
+
+            int samples = Math.max(1, queries.size());
+            double exactRecall = expected == 0 ? 1.0 : exactHits / expected;
+            Double quantizedRecall = !quantized.enabled() ? null : expected == 0 ? 1.0 : quantizedHits / expected;
+            double effectiveRecall = quantizedRecall != null ? quantizedRecall : exactRecall;
+            return VectorSearchReport.builder()
+                    .quantization(quantized.mode().name().toLowerCase(Locale.ROOT))
+                    .dimension(dimension)
+                    .liveVectors(live.length)
+                    .queries(queries.size())
+                    .k(k)
+                    .efSearch(efSearch)
+                    .rescoreMultiplier(multiplier)
+                    .exactRecall(exactRecall)
+                    .quantizedRecall(quantizedRecall)
+                    .recallTarget(recallTarget)
+                    .meetsRecallTarget(effectiveRecall >= recallTarget)
+                    .bruteForceLatencyMicros(bruteForceNanos / 1000.0 / samples)
+                    .exactLatencyMicros(exactNanos / 1000.0 / samples)
+                    .quantizedLatencyMicros(quantized.enabled() ? quantizedNanos / 1000.0 / samples : null)
+                    .fullPrecisionBytes((long) ids.size() * dimension * Float.BYTES)
+                    .quantizedBytes(quantized.memoryBytes())
+                    .build();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Exact top {@code k} of the given nodes, sorted by descending similarity.
+     */
+    private List<Candidate> bruteForce(float[] query, int[] nodes, int k) {
+        PriorityQueue<Candidate> best = new PriorityQueue<>(Candidate.BY_SIMILARITY_DESC.reversed());
+        for (int node : nodes) {
+            best.add(new Candidate(node, vectors.dot(node, query)));
+            if (best.size() > k) {
+                best.poll();
+            }
+        }
+        List<Candidate> sorted = new ArrayList<>(best);
+        sorted.sort(Candidate.BY_SIMILARITY_DESC);
+        return sorted;
+    }
+
+    private int overlap(List<Integer> truth, List<Candidate> found, int k) {
+        int hits = 0;
+        int taken = 0;
+        for (Candidate candidate : found) {
+            if (taken >= k) {
+                break;
+            }
+            if (truth.contains(candidate.node)) {
+                hits++;
+            }
+            taken++;
+        }
+        return hits;
+    }
+
+    // ---- persistence -----------------------------------------------------------------------
+
+    private void load() throws IOException {
+        journal.replay(new SegmentJournal.Replay() {
+            @Override
+            public void onAdd(int ordinal, String id, TextSegment segment) {
+                if (ordinal != ids.size()) {
+                    throw new IllegalStateException("Journal out of sequence at ordinal " + ordinal);
+                }
+                register(ordinal, id, segment);
+            }
+
+            @Override
+            public void onRemove(String id) {
+                Integer ordinal = ordinals.remove(id);
+                if (ordinal != null) {
+                    markDeleted(ordinal);
+                }
+            }
+        });
+        if (compactionDue()) {
+            // Rebuilds the graph anyway, so the snapshot is not worth loading
+            compact();
+            return;
+        }
+
+        if (quantized.enabled()) {
+            for (int node = 0; node < ids.size(); node++) {
+                quantized.add(node, vectors.read(node));
+            }
+        }
+
+        int restored = loadSnapshot();
+        for (int node = restored; node < ids.size(); node++) {
+            insert(node);
+        }
+        if (restored < ids.size()) {
+            snapshot();
+        }
+        log.info("Loaded HNSW index from {}: {} live segments, {} graph nodes ({} restored from snapshot)",
+                directory, ordinals.size(), ids.size(), restored);
+    }
+
+    private int loadSnapshot() {
+        Path graphFile = directory.resolve("graph.bin");
+        if (!Files.exists(graphFile)) {
+            return 0;
+        }
+
+        CRC32 crc = new CRC32();
+        // Checksum sits above the buffer so it covers exactly the bytes consumed
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(graphFile)), crc))) {
+            if (in.readInt() != GRAPH_MAGIC || in.readInt() != GRAPH_VERSION
+                    || in.readInt() != dimension || in.readInt() != m) {
+                log.warn("HNSW snapshot {} was written with different settings, rebuilding graph", graphFile);
+                return 0;
+            }
+            int nodeCount = in.readInt();
+            int snapshotEntryPoint = in.readInt();
+            int snapshotMaxLevel = in.readInt();
+            if (nodeCount > ids.size()) {
+                log.warn("HNSW snapshot {} is ahead of the journal, rebuilding graph", graphFile);
+                return 0;
+            }
+
+            List<int[][]> snapshotLinks = new ArrayList<>(nodeCount);
+            for (int node = 0; node < nodeCount; node++) {
+                int[][] nodeLinks = new int[in.readInt()][];
+                for (int level = 0; level < nodeLinks.length; level++) {
+                    int[] neighbours = new int[in.readInt()];
+                    for (int i = 0; i < neighbours.length; i++) {
+                        neighbours[i] = in.readInt();
+                    }
+                    nodeLinks[level] = neighbours;
+                }
+                snapshotLinks.add(nodeLinks);
+            }
+
+            long expectedCrc = crc.getValue();
+            if (in.readLong() != expectedCrc) {
+                log.warn("HNSW snapshot {} failed its checksum, rebuilding graph", graphFile);
+                return 0;
+            }
+
+            links.addAll(snapshotLinks);
+            entryPoint = snapshotEntryPoint;
+            maxLevel = snapshotMaxLevel;
+            return nodeCount;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not read HNSW snapshot {}, rebuilding graph: {}", graphFile, e.getMessage());
+            links.clear();
+            entryPoint = -1;
+            maxLevel = -1;
+            return 0;
+        }
+    }
+
+    private boolean compactionDue() {
+        int tombstones = ids.size() - ordinals.size();
+        return tombstones >= COMPACTION_MIN_TOMBSTONES && tombstones > ordinals.size();
+    }
+
+    /**
+     * Drops tombstones: the live vectors and journal entries are written to new files under
+     * ordinals 0..n-1, committed by a marker file and moved into place, then the graph is rebuilt
+     * from scratch. Runs under the write lock.
+     */
+    private void compact() throws IOException {
+        long start = System.nanoTime();
+        int tombstones = ids.size() - ordinals.size();
+        List<String> liveIds = new ArrayList<>(ordinals.size());
+        List<TextSegment> liveSegments = new ArrayList<>(ordinals.size());
+        Path compactedVectors = directory.resolve("vectors.bin.compact");
+        Files.deleteIfExists(compactedVectors);
+        try (MappedVectorStorage target = new MappedVectorStorage(compactedVectors, dimension)) {
+            for (int node = 0; node < ids.size(); node++) {
+                if (!deleted.get(node)) {
+                    target.write(liveIds.size(), vectors.read(node));
+                    liveIds.add(ids.get(node));
+                    liveSegments.add(segments.get(node));
+                }
+            }
+        }
+        Path compactedJournal = directory.resolve("segments.log.compact");
+        SegmentJournal.write(compactedJournal, liveIds, liveSegments);
+        Files.write(directory.resolve(COMPACTION_MARKER), new byte[0]);
+
+        vectors.close();
+        Files.deleteIfExists(directory.resolve("graph.bin"));
+        Files.move(compactedVectors, directory.resolve("vectors.bin"), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        vectors = new MappedVectorStorage(directory.resolve("vectors.bin"), dimension);
+        journal.replaceWith(compactedJournal);
+        Files.delete(directory.resolve(COMPACTION_MARKER));
+
+        ids.clear();
+        segments.clear();
+        ordinals.clear();
+        deleted.clear();
+        nodesByDocument.clear();
+        nodesByTenant.clear();
+        links.clear();
+        entryPoint = -1;
+        maxLevel = -1;
+        quantized = new QuantizedVectors(quantized.mode(), dimension);
+        for (int node = 0; node < liveIds.size(); node++) {
+            register(node, liveIds.get(node), liveSegments.get(node));
+            quantized.add(node, vectors.read(node));
+        }
+        for (int node = 0; node < liveIds.size(); node++) {
+            insert(node);
+        }
+        snapshot();
+        log.info("Compacted HNSW index in {}: dropped {} removed segments, rebuilt {} nodes in {} ms",
+                directory, tombstones, liveIds.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Completes a compaction interrupted after its marker was written, or discards the files of
+     * one interrupted before.
+     */
+    private static void finishCompaction(Path directory) throws IOException {
+        Path marker = directory.resolve(COMPACTION_MARKER);
+        Path compactedVectors = directory.resolve("vectors.bin.compact");
+        Path compactedJournal = directory.resolve("segments.log.compact");
+        if (!Files.exists(marker)) {
+            Files.deleteIfExists(compactedVectors);
+            Files.deleteIfExists(compactedJournal);
+            return;
+        }
+        Files.deleteIfExists(directory.resolve("graph.bin"));
+        if (Files.exists(compactedVectors)) {
+            Files.move(compactedVectors, directory.resolve("vectors.bin"), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        if (Files.exists(compactedJournal)) {
+            Files.move(compactedJournal, directory.resolve("segments.log"), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.delete(marker);
+        log.warn("Finished an interrupted HNSW compaction in {}", directory);
+    }
+
+    private void snapshot() throws IOException {
+        Path graphFile = directory.resolve("graph.bin");
+        Path temp = directory.resolve("graph.bin.tmp");
+
+        try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(GRAPH_MAGIC);
+            out.writeInt(GRAPH_VERSION);
+            out.writeInt(dimension);
+            out.writeInt(m);
+            out.writeInt(links.size());
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+            for (int[][] nodeLinks : links) {
+                out.writeInt(nodeLinks.length);
+                for (int[] neighbours : nodeLinks) {
+                    out.writeInt(neighbours.length);
+                    for (int neighbour : neighbours) {
+                        out.writeInt(neighbour);
+                    }
+                }
+            }
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temp, graphFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        nodesSinceSnapshot = 0;
+        log.debug("Wrote HNSW snapshot with {} nodes", links.size());
+    }
+
+    @FunctionalInterface
+    private interface NodeScorer {
+        float score(int node);
+    }
+
+    private record Candidate(int node, float similarity) {
+        static final Comparator<Candidate> BY_SIMILARITY_DESC =
+                Comparator.comparingDouble(Candidate::similarity).reversed();
+    }
+}
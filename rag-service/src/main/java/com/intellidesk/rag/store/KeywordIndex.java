@@ -0,0 +1,347 @@
+package com.intellidesk.rag.store;
+
+import dev.langchain4j.data.segment.TextSegment;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process inverted index scoring segments with Okapi BM25. Keyed by the same ids as the
+ * embedding store so results can be fused with vector matches. Additions and removals go to a
+ * {@link SegmentJournal} that is replayed on start; removed segments become tombstones that
+ * searches skip. Once at least {@value #COMPACTION_MIN_TOMBSTONES} tombstones outnumber the live
+ * segments, the journal is rewritten from the live segments and the postings are rebuilt, so
+ * neither the log nor the posting lists grow with every re-versioned document.
+ *
+ * <p>Identifier-like tokens such as {@code EMP-10442} or {@code POL/2023/17} are indexed both
+ * whole and by their parts, so verbatim codes match exactly.
+ */
+@Slf4j
+public class KeywordIndex implements Closeable {
+
+    public record Match(String id, TextSegment segment, double score) {
+    }
+
+    private static final Pattern TOKEN = Pattern.compile("[\\p{L}\\p{N}]+(?:[-_/.][\\p{L}\\p{N}]+)*");
+    private static final Pattern PART_SEPARATOR = Pattern.compile("[-_/.]");
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "how", "i", "in", "is", "it",
+            "of", "on", "or", "that", "the", "this", "to", "was", "what", "when", "where", "which", "who",
+            "why", "with", "do", "does", "can", "my", "our", "we", "you");
+    static final int COMPACTION_MIN_TOMBSTONES = 1024;
+
+    private final Path directory;
+    private final double k1;
+    private final double b;
+    private final SegmentJournal journal;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final List<String> ids = new ArrayList<>();
+    private final List<TextSegment> segments = new ArrayList<>();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    private final Map<String, Postings> postings = new HashMap<>();
+    private int[] lengths = new int[1024];
+    private long liveTokens;
+
+    public KeywordIndex(Path directory, double k1, double b) throws IOException {
+        this.k1 = k1;
+        this.b = b;
+        this.directory = directory;
+        Files.createDirectories(directory);
+        this.journal = new SegmentJournal(directory.resolve("segments.log"));
+
+        journal.replay(new SegmentJournal.Replay() {
+            @Override
+            public void onAdd(int ordinal, String id, TextSegment segment) {
+                index(id, segment);
+            }
+
+            @Override
+            public void onRemove(String id) {
+                unindex(id);
+            }
+        });
+        compactIfNeeded();
+        log.info("Loaded keyword index from {}: {} live segments, {} terms", directory, ordinals.size(), postings.size());
+    }
+
+    public void addAll(List<String> newIds, List<TextSegment> newSegments) {
+        if (newIds.size() != newSegments.size()) {
+            throw new IllegalArgumentException("ids and segments must have the same size");
+        }
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < newIds.size(); i++) {
+                journal.appendAdd(ids.size(), newIds.get(i), newSegments.get(i));
+                index(newIds.get(i), newSegments.get(i));
+            }
+            journal.sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to journal " + newIds.size() + " keyword index entries", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Like {@link #addAll}, but skips ids that are already indexed and bare embeddings without a
+     * segment, so the store can be replayed into the index any number of times.
+     *
+     * @return how many segments were added
+     */
+    public int addMissing(List<String> candidateIds, List<TextSegment> candidateSegments) {
+        if (candidateIds.size() != candidateSegments.size()) {
+            throw new IllegalArgumentException("ids and segments must have the same size");
+        }
+        lock.writeLock().lock();
+        try {
+            int added = 0;
+            for (int i = 0; i < candidateIds.size(); i++) {
+                String id = candidateIds.get(i);
+                TextSegment segment = candidateSegments.get(i);
+                if (segment != null && !ordinals.containsKey(id)) {
+                    journal.appendAdd(ids.size(), id, segment);
+                    index(id, segment);
+                    added++;
+                }
+            }
+            if (added > 0) {
+                journal.sync();
+            }
+            return added;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to journal " + candidateIds.size() + " keyword index entries", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeAll(Collection<String> idsToRemove) {
+        lock.writeLock().lock();
+        try {
+            for (String id : idsToRemove) {
+                if (unindex(id)) {
+                    journal.appendRemove(id);
+                }
+            }
+            journal.sync();
+            compactIfNeeded();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to journal removal of " + idsToRemove.size() + " keyword index entries", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Match> search(String query, int maxResults) {
+        return search(query, maxResults, SegmentFilter.NONE);
+    }
+
+    /**
+     * BM25 search over the segments matching {@code filter}; other segments are never scored.
+     */
+    public List<Match> search(String query, int maxResults, SegmentFilter filter) {
+        List<String> terms = tokenize(query);
+        lock.readLock().lock();
+        try {
+            int liveDocs = ordinals.size();
+            if (liveDocs == 0 || terms.isEmpty()) {
+                return List.of();
+            }
+            double averageLength = (double) liveTokens / liveDocs;
+
+            Map<Integer, Double> scores = new HashMap<>();
+            for (String term : terms.stream().distinct().toList()) {
+                Postings list = postings.get(term);
+                if (list == null || list.liveDocs == 0) {
+                    continue;
+                }
+                double idf = Math.log(1 + (liveDocs - list.liveDocs + 0.5) / (list.liveDocs + 0.5));
+                for (int i = 0; i < list.size; i++) {
+                    int doc = list.docs[i];
+                    if (deleted.get(doc) || !filter.matches(segments.get(doc))) {
+                        continue;
+                    }
+                    int tf = list.freqs[i];
+                    double norm = k1 * (1 - b + b * lengths[doc] / averageLength);
+                    scores.merge(doc, idf * tf * (k1 + 1) / (tf + norm), Double::sum);
+                }
+            }
+
+            PriorityQueue<Map.Entry<Integer, Double>> best =
+                    new PriorityQueue<>(Map.Entry.comparingByValue());
+            for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+                best.add(entry);
+                if (best.size() > maxResults) {
+                    best.poll();
+                }
+            }
+            List<Match> matches = new ArrayList<>(best.size());
+            while (!best.isEmpty()) {
+                Map.Entry<Integer, Double> entry = best.poll();
+                matches.add(new Match(ids.get(entry.getKey()), segments.get(entry.getKey()), entry.getValue()));
+            }
+            Collections.reverse(matches);
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ordinals.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            journal.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        Matcher matcher = TOKEN.matcher(text.toLowerCase(Locale.ROOT));
+        while (matcher.find()) {
+            String token = matcher.group();
+            if (!STOP_WORDS.contains(token)) {
+                tokens.add(token);
+            }
+            if (PART_SEPARATOR.matcher(token).find()) {
+                for (String part : PART_SEPARATOR.split(token)) {
+                    if (!STOP_WORDS.contains(part)) {
+                        tokens.add(part);
+                    }
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private void index(String id, TextSegment segment) {
+        if (segment == null) {
+            return;
+        }
+        unindex(id);
+        int doc = ids.size();
+        ids.add(id);
+        segments.add(segment);
+        ordinals.put(id, doc);
+
+        List<String> tokens = tokenize(segment.text());
+        if (doc >= lengths.length) {
+            lengths = Arrays.copyOf(lengths, lengths.length * 2);
+        }
+        lengths[doc] = tokens.size();
+        liveTokens += tokens.size();
+
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String token : tokens) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+        frequencies.forEach((term, frequency) ->
+                postings.computeIfAbsent(term, key -> new Postings()).add(doc, frequency));
+    }
+
+    private boolean unindex(String id) {
+        Integer doc = ordinals.remove(id);
+        if (doc == null) {
+            return false;
+        }
+        deleted.set(doc);
+        liveTokens -= lengths[doc];
+        for (String term : tokenize(segments.get(doc).text()).stream().distinct().toList()) {
+            Postings list = postings.get(term);
+            if (list != null) {
+                list.liveDocs--;
+            }
+        }
+        // The text is no longer needed once document frequencies are updated
+        segments.set(doc, null);
+        return true;
+    }
+
+    /**
+     * Rewrites the journal from the live segments and re-indexes them under dense ordinals once
+     * tombstones outnumber them. A crash before the new journal is moved into place leaves the old
+     * one intact.
+     */
+    private void compactIfNeeded() throws IOException {
+        int tombstones = ids.size() - ordinals.size();
+        if (tombstones < COMPACTION_MIN_TOMBSTONES || tombstones <= ordinals.size()) {
+            return;
+        }
+        List<String> liveIds = new ArrayList<>(ordinals.size());
+        List<TextSegment> liveSegments = new ArrayList<>(ordinals.size());
+        for (int doc = 0; doc < ids.size(); doc++) {
+            if (!deleted.get(doc)) {
+                liveIds.add(ids.get(doc));
+                liveSegments.add(segments.get(doc));
+            }
+        }
+        Path compacted = directory.resolve("segments.log.compact");
+        SegmentJournal.write(compacted, liveIds, liveSegments);
+        journal.replaceWith(compacted);
+
+        ids.clear();
+        segments.clear();
+        ordinals.clear();
+        deleted.clear();
+        postings.clear();
+        lengths = new int[Math.max(1024, liveIds.size())];
+        liveTokens = 0;
+        for (int i = 0; i < liveIds.size(); i++) {
+            index(liveIds.get(i), liveSegments.get(i));
+        }
+        log.info("Compacted keyword index in {}: dropped {} removed segments, {} live", directory, tombstones,
+                liveIds.size());
+    }
+
+    private static class Postings {
+        private int[] docs = new int[4];
+        private int[] freqs = new int[4];
+        private int size;
+        private int liveDocs;
+
+        void add(int doc, int frequency) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            docs[size] = doc;
+            freqs[size] = frequency;
+            size++;
+            liveDocs++;
+        }
+    }
+}
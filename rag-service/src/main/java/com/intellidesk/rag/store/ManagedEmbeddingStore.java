@@ -0,0 +1,47 @@
+package com.intellidesk.rag.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * {@link EmbeddingStore} that also supports the maintenance operations document versioning
+ * needs, which the LangChain4j store contract does not cover.
+ */
+public interface ManagedEmbeddingStore extends EmbeddingStore<TextSegment> {
+
+    /**
+     * Dimension of the embeddings the store holds and accepts.
+     */
+    int dimension();
+
+    /**
+     * Removes the embeddings with the given ids; unknown ids are ignored.
+     */
+    void removeAll(Collection<String> ids);
+
+    /**
+     * Like {@link #findRelevant(Embedding, int, double)}, but only considers segments that match
+     * {@code filter}.
+     */
+    List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore,
+                                                   SegmentFilter filter);
+
+    /**
+     * Hands every stored segment to {@code consumer}, in batches of up to {@code batchSize}.
+     * Segments added or removed while this runs may or may not be included.
+     */
+    void forEachBatch(int batchSize, Consumer<List<StoredSegment>> consumer);
+
+    /**
+     * Adds segments under the ids they already have, skipping ids the store already holds.
+     *
+     * @return the ids that were added
+     */
+    List<String> importAll(List<StoredSegment> segments);
+}
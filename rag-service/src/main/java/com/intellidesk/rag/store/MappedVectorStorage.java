@@ -0,0 +1,105 @@
+package com.intellidesk.rag.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Off-heap float vector storage: fixed-size records addressed by ordinal in a file that is
+ * memory-mapped in chunks (a single mapping is limited to 2GB). Reads use absolute accessors and
+ * are safe to run concurrently; writes must be serialized by the caller.
+ */
+class MappedVectorStorage implements Closeable {
+
+    private static final long TARGET_CHUNK_BYTES = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final int dimension;
+    private final int vectorsPerChunk;
+    private final long chunkBytes;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private final List<FloatBuffer> floatViews = new ArrayList<>();
+
+    MappedVectorStorage(Path path, int dimension) throws IOException {
+        this.dimension = dimension;
+        this.vectorsPerChunk = (int) Math.max(1, TARGET_CHUNK_BYTES / ((long) dimension * Float.BYTES));
+        this.chunkBytes = (long) vectorsPerChunk * dimension * Float.BYTES;
+        this.channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long existingChunks = (channel.size() + chunkBytes - 1) / chunkBytes;
+        for (int i = 0; i < existingChunks; i++) {
+            mapChunk();
+        }
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    void write(int ordinal, float[] vector) throws IOException {
+        int chunk = ordinal / vectorsPerChunk;
+        while (chunks.size() <= chunk) {
+            mapChunk();
+        }
+        FloatBuffer view = floatViews.get(chunk);
+        int base = (ordinal % vectorsPerChunk) * dimension;
+        for (int i = 0; i < dimension; i++) {
+            view.put(base + i, vector[i]);
+        }
+    }
+
+    float[] read(int ordinal) {
+        FloatBuffer view = floatViews.get(ordinal / vectorsPerChunk);
+        int base = (ordinal % vectorsPerChunk) * dimension;
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = view.get(base + i);
+        }
+        return vector;
+    }
+
+    float dot(int ordinal, float[] query) {
+        FloatBuffer view = floatViews.get(ordinal / vectorsPerChunk);
+        int base = (ordinal % vectorsPerChunk) * dimension;
+        float sum = 0f;
+        for (int i = 0; i < dimension; i++) {
+            sum += view.get(base + i) * query[i];
+        }
+        return sum;
+    }
+
+    float dot(int ordinal, int otherOrdinal) {
+        FloatBuffer view = floatViews.get(ordinal / vectorsPerChunk);
+        FloatBuffer otherView = floatViews.get(otherOrdinal / vectorsPerChunk);
+        int base = (ordinal % vectorsPerChunk) * dimension;
+        int otherBase = (otherOrdinal % vectorsPerChunk) * dimension;
+        float sum = 0f;
+        for (int i = 0; i < dimension; i++) {
+            sum += view.get(base + i) * otherView.get(otherBase + i);
+        }
+        return sum;
+    }
+
+    void force() {
+        chunks.forEach(MappedByteBuffer::force);
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private void mapChunk() throws IOException {
+        MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunks.size() * chunkBytes, chunkBytes);
+        chunks.add(chunk);
+        floatViews.add(chunk.asFloatBuffer());
+    }
+}
@@ -0,0 +1,130 @@
+package com.intellidesk.rag.store;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Compact on-heap copies of the (normalized) vectors used for the candidate phase of a search.
+ * {@code INT8} keeps one signed byte per dimension plus a per-vector scale (4x smaller than
+ * float32); {@code BINARY} keeps one sign bit per dimension (32x smaller) and estimates cosine
+ * similarity from the Hamming distance. Full-precision vectors stay in {@link MappedVectorStorage}
+ * for rescoring.
+ */
+class QuantizedVectors {
+
+    enum Mode {
+        NONE, INT8, BINARY;
+
+        static Mode parse(String value) {
+            return value == null || value.isBlank() ? NONE : Mode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    record EncodedQuery(float[] vector, long[] bits) {
+    }
+
+    private final Mode mode;
+    private final int dimension;
+    private final int words;
+
+    private byte[] codes = new byte[0];
+    private float[] scales = new float[0];
+    private long[] bits = new long[0];
+    private int size;
+
+    QuantizedVectors(Mode mode, int dimension) {
+        this.mode = mode;
+        this.dimension = dimension;
+        this.words = (dimension + 63) / 64;
+    }
+
+    Mode mode() {
+        return mode;
+    }
+
+    boolean enabled() {
+        return mode != Mode.NONE;
+    }
+
+    void add(int ordinal, float[] vector) {
+        if (!enabled()) {
+            return;
+        }
+        ensureCapacity(ordinal + 1);
+
+        if (mode == Mode.INT8) {
+            float maxAbs = 0f;
+            for (float value : vector) {
+                maxAbs = Math.max(maxAbs, Math.abs(value));
+            }
+            float scale = maxAbs == 0f ? 0f : maxAbs / 127f;
+            int base = ordinal * dimension;
+            for (int i = 0; i < dimension; i++) {
+                codes[base + i] = scale == 0f ? 0 : (byte) Math.round(vector[i] / scale);
+            }
+            scales[ordinal] = scale;
+        } else {
+            int base = ordinal * words;
+            Arrays.fill(bits, base, base + words, 0L);
+            for (int i = 0; i < dimension; i++) {
+                if (vector[i] > 0) {
+                    bits[base + (i >> 6)] |= 1L << (i & 63);
+                }
+            }
+        }
+        size = Math.max(size, ordinal + 1);
+    }
+
+    EncodedQuery encode(float[] query) {
+        if (mode != Mode.BINARY) {
+            // INT8 scoring is asymmetric: the float query is multiplied with the byte codes
+            return new EncodedQuery(query, null);
+        }
+        long[] queryBits = new long[words];
+        for (int i = 0; i < dimension; i++) {
+            if (query[i] > 0) {
+                queryBits[i >> 6] |= 1L << (i & 63);
+            }
+        }
+        return new EncodedQuery(query, queryBits);
+    }
+
+    float similarity(int ordinal, EncodedQuery query) {
+        if (mode == Mode.INT8) {
+            int base = ordinal * dimension;
+            float[] vector = query.vector();
+            float sum = 0f;
+            for (int i = 0; i < dimension; i++) {
+                sum += vector[i] * codes[base + i];
+            }
+            return sum * scales[ordinal];
+        }
+
+        int base = ordinal * words;
+        int hamming = 0;
+        for (int w = 0; w < words; w++) {
+            hamming += Long.bitCount(bits[base + w] ^ query.bits()[w]);
+        }
+        // Sign-random-projection estimate of the angle between the vectors
+        return (float) Math.cos(Math.PI * hamming / dimension);
+    }
+
+    long memoryBytes() {
+        return switch (mode) {
+            case INT8 -> (long) size * dimension + (long) size * Float.BYTES;
+            case BINARY -> (long) size * words * Long.BYTES;
+            case NONE -> 0L;
+        };
+    }
+
+    private void ensureCapacity(int count) {
+        if (mode == Mode.INT8 && (long) count * dimension > codes.length) {
+            int capacity = Math.max(count, scales.length * 2);
+            codes = Arrays.copyOf(codes, Math.multiplyExact(capacity, dimension));
+            scales = Arrays.copyOf(scales, capacity);
+        } else if (mode == Mode.BINARY && (long) count * words > bits.length) {
+            int capacity = Math.max(count, bits.length / words * 2);
+            bits = Arrays.copyOf(bits, Math.multiplyExact(capacity, words));
+        }
+    }
+}
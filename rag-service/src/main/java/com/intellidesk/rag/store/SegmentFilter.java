@@ -0,0 +1,64 @@
+package com.intellidesk.rag.store;
+
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Restricts a search to the segments of some documents and/or one tenant, matched against the
+ * metadata ingestion attaches to every segment. Stores apply it while searching, so the result
+ * still holds up to {@code maxResults} matching segments.
+ *
+ * @param documentIds documents to search, or empty for all
+ * @param tenantId    tenant to search, or {@code null} for all (unscoped requests, see
+ *                    {@code rag.tenancy.require-tenant-id})
+ */
+public record SegmentFilter(Set<String> documentIds, String tenantId) {
+
+    public static final String DOCUMENT_ID = "document_id";
+    public static final String TENANT_ID = "tenant_id";
+
+    public static final SegmentFilter NONE = new SegmentFilter(Set.of(), null);
+
+    private static final Pattern TENANT = Pattern.compile("[A-Za-z0-9._@-]{1,128}");
+
+    public SegmentFilter {
+        documentIds = documentIds == null ? Set.of() : Set.copyOf(documentIds);
+    }
+
+    public static SegmentFilter of(Collection<String> documentIds, String tenantId) {
+        if ((documentIds == null || documentIds.isEmpty()) && tenantId == null) {
+            return NONE;
+        }
+        return new SegmentFilter(documentIds == null ? Set.of() : Set.copyOf(documentIds), tenantId);
+    }
+
+    /**
+     * Rejects tenant ids that are not plain identifiers.
+     */
+    public static String validateTenantId(String tenantId) {
+        if (tenantId != null && !TENANT.matcher(tenantId).matches()) {
+            throw new IllegalArgumentException("Invalid X-Tenant-Id header");
+        }
+        return tenantId;
+    }
+
+    public boolean isEmpty() {
+        return documentIds.isEmpty() && tenantId == null;
+    }
+
+    public boolean matches(TextSegment segment) {
+        if (isEmpty()) {
+            return true;
+        }
+        if (segment == null) {
+            return false;
+        }
+        if (!documentIds.isEmpty() && !documentIds.contains(segment.metadata().get(DOCUMENT_ID))) {
+            return false;
+        }
+        return tenantId == null || tenantId.equals(segment.metadata().get(TENANT_ID));
+    }
+}
@@ -0,0 +1,217 @@
+package com.intellidesk.rag.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of segment additions and removals. Every record carries its length and a CRC32,
+ * so a record torn by a crash is detected on replay and truncated away. Owners compact it by
+ * {@linkplain #write writing} the live segments to a new file and {@linkplain #replaceWith swapping}
+ * that in.
+ *
+ * <pre>
+ * record:  int length | int crc32 | payload
+ * ADD:     byte 1 | int ordinal | id | text? | metadata entries
+ * REMOVE:  byte 2 | id
+ * </pre>
+ */
+@Slf4j
+class SegmentJournal implements Closeable {
+
+    interface Replay {
+        void onAdd(int ordinal, String id, TextSegment segment);
+
+        void onRemove(String id);
+    }
+
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+
+    private final Path path;
+    private FileChannel channel;
+
+    SegmentJournal(Path path) throws IOException {
+        this.path = path;
+        this.channel = open(path);
+    }
+
+    /**
+     * Writes a complete journal holding only the given segments, added under ordinals 0..n-1, and
+     * syncs it. Whatever {@code target} held before is replaced.
+     */
+    static void write(Path target, List<String> ids, List<TextSegment> segments) throws IOException {
+        try (SegmentJournal journal = new SegmentJournal(target)) {
+            journal.channel.truncate(0);
+            for (int i = 0; i < ids.size(); i++) {
+                journal.appendAdd(i, ids.get(i), segments.get(i));
+            }
+        }
+    }
+
+    /**
+     * Atomically replaces this journal with {@code compacted}, typically produced by
+     * {@link #write}; further records are appended to the new file.
+     */
+    void replaceWith(Path compacted) throws IOException {
+        channel.close();
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = open(path);
+        channel.position(channel.size());
+    }
+
+    /**
+     * Replays all intact records and truncates a trailing partial record, if any.
+     */
+    void replay(Replay replay) throws IOException {
+        long validLength = 0;
+        long fileSize = channel.size();
+        channel.position(0);
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(channel)));
+        try {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                int crc = in.readInt();
+                if (length <= 0 || length > fileSize - validLength - 8) {
+                    log.warn("Invalid journal record length at offset {}, discarding the rest of the journal", validLength);
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                if (crc != crc32(payload)) {
+                    log.warn("Corrupt journal record at offset {}, discarding the rest of the journal", validLength);
+                    break;
+                }
+                apply(payload, replay);
+                validLength += 8 + length;
+            }
+        } catch (EOFException e) {
+            log.warn("Truncated journal record at offset {}, discarding it", validLength);
+        }
+
+        if (channel.size() > validLength) {
+            channel.truncate(validLength);
+        }
+        channel.position(validLength);
+    }
+
+    void appendAdd(int ordinal, String id, TextSegment segment) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(ADD);
+        out.writeInt(ordinal);
+        writeString(out, id);
+        out.writeBoolean(segment != null);
+        if (segment != null) {
+            writeString(out, segment.text());
+            Map<String, ?> metadata = segment.metadata().asMap();
+            out.writeInt(metadata.size());
+            for (Map.Entry<String, ?> entry : metadata.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, String.valueOf(entry.getValue()));
+            }
+        }
+        append(bytes.toByteArray());
+    }
+
+    void appendRemove(String id) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(REMOVE);
+        writeString(out, id);
+        append(bytes.toByteArray());
+    }
+
+    void sync() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync();
+        channel.close();
+    }
+
+    private void append(byte[] payload) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+        record.putInt(payload.length);
+        record.putInt(crc32(payload));
+        record.put(payload);
+        record.flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private void apply(byte[] payload, Replay replay) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        if (type == ADD) {
+            int ordinal = in.readInt();
+            String id = readString(in);
+            TextSegment segment = null;
+            if (in.readBoolean()) {
+                String text = readString(in);
+                int entries = in.readInt();
+                Map<String, String> metadata = new LinkedHashMap<>();
+                for (int i = 0; i < entries; i++) {
+                    metadata.put(readString(in), readString(in));
+                }
+                segment = TextSegment.from(text, Metadata.from(metadata));
+            }
+            replay.onAdd(ordinal, id, segment);
+        } else if (type == REMOVE) {
+            replay.onRemove(readString(in));
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        // Length-prefixed UTF-8; DataOutputStream.writeUTF is limited to 64KB
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int crc32(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
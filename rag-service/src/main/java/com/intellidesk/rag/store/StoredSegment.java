@@ -0,0 +1,12 @@
+package com.intellidesk.rag.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+
+/**
+ * A segment as kept in a {@link ManagedEmbeddingStore}, under its store id.
+ *
+ * @param segment the segment text and metadata, or {@code null} for a bare embedding
+ */
+public record StoredSegment(String id, Embedding embedding, TextSegment segment) {
+}
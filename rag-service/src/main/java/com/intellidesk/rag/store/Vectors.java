@@ -0,0 +1,35 @@
+package com.intellidesk.rag.store;
+
+/**
+ * Small vector helpers shared by the stores and the answer caches, which all compare unit
+ * vectors by their dot product.
+ */
+public final class Vectors {
+
+    private Vectors() {
+    }
+
+    public static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length && i < b.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * A unit-length copy of {@code vector}; the zero vector stays zero.
+     */
+    public static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = norm == 0 ? 0f : (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+}
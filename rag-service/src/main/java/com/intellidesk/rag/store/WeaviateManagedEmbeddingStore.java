@@ -0,0 +1,457 @@
+package com.intellidesk.rag.store;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Weaviate-backed {@link ManagedEmbeddingStore}, talking to Weaviate's REST and GraphQL APIs
+ * directly.
+ *
+ * <p>Every object keeps its segment text and each metadata entry ({@code document_id},
+ * {@code tenant_id}, ...) as top-level text properties. Writes and imports use the batch API,
+ * which keeps the objects' ids; imports first look up which ids the class already holds and
+ * leave those objects alone. Deletions go through the batch API too, a thousand ids per
+ * request. Searches are GraphQL {@code nearVector} queries, and filtered searches pass the
+ * {@link SegmentFilter} as a {@code where} filter, so Weaviate returns up to {@code maxResults}
+ * matching segments itself.
+ *
+ * <p>Objects written by earlier versions through the LangChain4j store keep their metadata
+ * nested under {@code _metadata}, which where-filters cannot reach. Exports still read them;
+ * exporting a snapshot, dropping the class and importing the snapshot rewrites them in the
+ * top-level layout.
+ */
+@Slf4j
+public class WeaviateManagedEmbeddingStore implements ManagedEmbeddingStore {
+
+    // Below Weaviate's default QUERY_MAXIMUM_RESULTS, which also caps a batch delete and an id lookup
+    private static final int ID_BATCH_SIZE = 1000;
+    private static final String TEXT_PROPERTY = "text";
+    private static final String ADDITIONAL = "_additional";
+    private static final Pattern PROPERTY_NAME = Pattern.compile("[_A-Za-z][_0-9A-Za-z]*");
+    private static final Pattern PRIMITIVE_TYPE = Pattern.compile("(text|string|int|number|boolean|date|uuid)(\\[])?");
+
+    private final String baseUrl;
+    private final String objectClass;
+    private final int dimension;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // Properties the class has; searches may only select and filter on existing ones
+    private final Set<String> properties = ConcurrentHashMap.newKeySet();
+    private volatile boolean schemaLoaded;
+
+    public WeaviateManagedEmbeddingStore(String scheme, String host, String objectClass, int dimension) {
+        this.baseUrl = scheme + "://" + host;
+        this.objectClass = objectClass;
+        this.dimension = dimension;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        return addAll(List.of(embedding)).get(0);
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        write(List.of(new StoredSegment(id, embedding, null)));
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        return addAll(List.of(embedding), List.of(textSegment)).get(0);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return addAll(embeddings, null);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (textSegments != null && textSegments.size() != embeddings.size()) {
+            throw new IllegalArgumentException("Got " + embeddings.size() + " embeddings but "
+                    + textSegments.size() + " segments");
+        }
+        // Random ids: text-derived ids would be shared by identical segments of different
+        // documents, so removing one document's segment would remove the other's too
+        List<StoredSegment> segments = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            segments.add(new StoredSegment(UUID.randomUUID().toString(), embeddings.get(i),
+                    textSegments != null ? textSegments.get(i) : null));
+        }
+        write(segments);
+        return segments.stream().map(StoredSegment::id).toList();
+    }
+
+    @Override
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore) {
+        return findRelevant(referenceEmbedding, maxResults, minScore, SegmentFilter.NONE);
+    }
+
+    @Override
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore,
+                                                          SegmentFilter filter) {
+        Set<String> known = properties();
+        if (known.isEmpty()) {
+            // Nothing was written to the class yet
+            return List.of();
+        }
+        if ((!filter.documentIds().isEmpty() && !known.contains(SegmentFilter.DOCUMENT_ID))
+                || (filter.tenantId() != null && !known.contains(SegmentFilter.TENANT_ID))) {
+            // No object carries the property the filter requires
+            return List.of();
+        }
+
+        StringBuilder query = new StringBuilder("{ Get { ").append(objectClass).append("(nearVector: {vector: [");
+        float[] vector = referenceEmbedding.vector();
+        for (int i = 0; i < vector.length; i++) {
+            query.append(i > 0 ? "," : "").append(vector[i]);
+        }
+        query.append(']');
+        if (minScore > 0) {
+            // Weaviate's certainty is (cosine + 1) / 2, the same scale as relevance scores
+            query.append(", certainty: ").append(minScore);
+        }
+        query.append("}, limit: ").append(maxResults);
+        if (!filter.isEmpty()) {
+            query.append(", where: ").append(where(filter));
+        }
+        query.append(") { ");
+        known.forEach(property -> query.append(property).append(' '));
+        query.append(ADDITIONAL).append(" { id certainty vector } } } }");
+
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("query", query.toString());
+        JsonNode result = send(HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/v1/graphql"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString())), "search");
+        if (result.hasNonNull("errors")) {
+            throw new IllegalStateException("Weaviate search failed: " + result.get("errors"));
+        }
+
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+        for (JsonNode object : result.path("data").path("Get").path(objectClass)) {
+            ObjectNode objectProperties = object.deepCopy();
+            JsonNode additional = objectProperties.remove(ADDITIONAL);
+            TextSegment segment = null;
+            if (objectProperties.hasNonNull(TEXT_PROPERTY)) {
+                Map<String, String> metadata = new LinkedHashMap<>();
+                collectMetadata(objectProperties, metadata);
+                segment = TextSegment.from(objectProperties.get(TEXT_PROPERTY).asText(), Metadata.from(metadata));
+            }
+            matches.add(new EmbeddingMatch<>(additional.path("certainty").asDouble(), additional.path("id").asText(),
+                    Embedding.from(toVector(additional.path("vector"))), segment));
+        }
+        return matches;
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        List<String> remaining = new ArrayList<>(ids);
+        for (int from = 0; from < remaining.size(); from += ID_BATCH_SIZE) {
+            List<String> batch = remaining.subList(from, Math.min(from + ID_BATCH_SIZE, remaining.size()));
+            ObjectNode body = objectMapper.createObjectNode();
+            ObjectNode match = body.putObject("match");
+            match.put("class", objectClass);
+            ObjectNode where = match.putObject("where");
+            where.putArray("path").add("id");
+            where.put("operator", "ContainsAny");
+            ArrayNode values = where.putArray("valueTextArray");
+            batch.forEach(values::add);
+
+            // Ids that are already gone simply do not match, which is what we want
+            JsonNode result = send(HttpRequest.newBuilder()
+                    .uri(URI.create(baseUrl + "/v1/batch/objects"))
+                    .header("Content-Type", "application/json")
+                    .method("DELETE", HttpRequest.BodyPublishers.ofString(body.toString())), "batch delete");
+            long failed = result.path("results").path("failed").asLong();
+            if (failed > 0) {
+                throw new IllegalStateException("Weaviate batch delete failed for " + failed + " of " + batch.size()
+                        + " objects: " + result.path("results").path("objects"));
+            }
+        }
+        log.debug("Removed {} objects from Weaviate class {}", ids.size(), objectClass);
+    }
+
+    @Override
+    public void forEachBatch(int batchSize, Consumer<List<StoredSegment>> consumer) {
+        String after = null;
+        while (true) {
+            String uri = baseUrl + "/v1/objects?class=" + encode(objectClass) + "&include=vector&limit="
+                    + Math.max(1, batchSize) + (after != null ? "&after=" + encode(after) : "");
+            JsonNode page = send(HttpRequest.newBuilder().uri(URI.create(uri)).GET(), "list objects");
+            List<StoredSegment> batch = new ArrayList<>();
+            for (JsonNode object : page.path("objects")) {
+                batch.add(toStoredSegment(object));
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            consumer.accept(batch);
+            after = batch.get(batch.size() - 1).id();
+        }
+    }
+
+    @Override
+    public List<String> importAll(List<StoredSegment> segments) {
+        if (segments.isEmpty()) {
+            return List.of();
+        }
+        // The batch API would overwrite an existing object with the same id
+        Set<String> existing = existingIds(segments.stream().map(StoredSegment::id).toList());
+        List<StoredSegment> missing = segments.stream()
+                .filter(segment -> !existing.contains(segment.id()))
+                .toList();
+        List<String> imported = missing.isEmpty() ? List.of() : write(missing);
+        log.debug("Imported {} objects into Weaviate class {}, {} already present",
+                imported.size(), objectClass, segments.size() - missing.size());
+        return imported;
+    }
+
+    /**
+     * Those of the ids that objects of the class already have.
+     */
+    private Set<String> existingIds(List<String> ids) {
+        Set<String> existing = new HashSet<>();
+        if (properties().isEmpty()) {
+            // Nothing was written to the class yet
+            return existing;
+        }
+        for (int from = 0; from < ids.size(); from += ID_BATCH_SIZE) {
+            List<String> batch = ids.subList(from, Math.min(from + ID_BATCH_SIZE, ids.size()));
+            String values = String.join(", ", batch.stream().map(this::quote).toList());
+            ObjectNode body = objectMapper.createObjectNode();
+            body.put("query", "{ Get { " + objectClass + "(limit: " + batch.size()
+                    + ", where: {path: [\"id\"], operator: ContainsAny, valueTextArray: [" + values + "]}) { "
+                    + ADDITIONAL + " { id } } } }");
+            JsonNode result = send(HttpRequest.newBuilder()
+                    .uri(URI.create(baseUrl + "/v1/graphql"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body.toString())), "id lookup");
+            if (result.hasNonNull("errors")) {
+                throw new IllegalStateException("Weaviate id lookup failed: " + result.get("errors"));
+            }
+            for (JsonNode object : result.path("data").path("Get").path(objectClass)) {
+                existing.add(object.path(ADDITIONAL).path("id").asText());
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * Upserts the segments through the batch API, text and metadata as top-level properties.
+     *
+     * @return the ids written
+     */
+    private List<String> write(List<StoredSegment> segments) {
+        ObjectNode body = objectMapper.createObjectNode();
+        ArrayNode objects = body.putArray("objects");
+        Set<String> written = new HashSet<>();
+        for (StoredSegment segment : segments) {
+            // Weaviate accepts any length, but vectors of another model would never match a query
+            if (segment.embedding().vector().length != dimension) {
+                throw new IllegalArgumentException("Expected embedding dimension " + dimension + " but got "
+                        + segment.embedding().vector().length);
+            }
+            ObjectNode object = objects.addObject();
+            object.put("class", objectClass);
+            object.put("id", segment.id());
+            ArrayNode vector = object.putArray("vector");
+            for (float value : segment.embedding().vector()) {
+                vector.add(value);
+            }
+            ObjectNode objectProperties = object.putObject("properties");
+            if (segment.segment() != null) {
+                objectProperties.put(TEXT_PROPERTY, segment.segment().text());
+                written.add(TEXT_PROPERTY);
+                segment.segment().metadata().asMap().forEach((key, value) -> {
+                    if (!PROPERTY_NAME.matcher(key).matches() || TEXT_PROPERTY.equals(key)) {
+                        throw new IllegalArgumentException("Metadata key '" + key
+                                + "' cannot be stored as a Weaviate property");
+                    }
+                    objectProperties.put(key, String.valueOf(value));
+                    written.add(key);
+                });
+            }
+        }
+
+        JsonNode results = send(HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/v1/batch/objects"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString())), "batch write");
+        List<String> ids = new ArrayList<>(segments.size());
+        for (JsonNode result : results) {
+            JsonNode errors = result.path("result").path("errors");
+            if (!errors.isMissingNode() && !errors.isNull()) {
+                throw new IllegalStateException("Weaviate write of " + result.path("id").asText() + " failed: " + errors);
+            }
+            ids.add(result.path("id").asText());
+        }
+        // Auto-schema has created any property that was new
+        properties.addAll(written);
+        return ids;
+    }
+
+    /**
+     * The class's properties, read from the schema once and then kept up to date by writes.
+     */
+    private Set<String> properties() {
+        if (!schemaLoaded) {
+            HttpResponse<String> response = exchange(HttpRequest.newBuilder()
+                    .uri(URI.create(baseUrl + "/v1/schema/" + encode(objectClass))).GET(), "read schema");
+            if (response.statusCode() != 404) {
+                for (JsonNode property : parse(checked(response, "read schema"), "read schema").path("properties")) {
+                    String name = property.path("name").asText();
+                    String dataType = property.path("dataType").path(0).asText();
+                    // Only primitive properties can be selected without a sub-selection; this
+                    // skips the nested _metadata object of the old layout
+                    if (PROPERTY_NAME.matcher(name).matches() && PRIMITIVE_TYPE.matcher(dataType).matches()) {
+                        properties.add(name);
+                    }
+                }
+            }
+            schemaLoaded = true;
+        }
+        return properties;
+    }
+
+    /**
+     * GraphQL where-filter for the segment filter. String values are written as JSON strings,
+     * which are valid GraphQL string literals.
+     */
+    private String where(SegmentFilter filter) {
+        List<String> conditions = new ArrayList<>();
+        if (!filter.documentIds().isEmpty()) {
+            List<String> documents = filter.documentIds().stream()
+                    .map(documentId -> equal(SegmentFilter.DOCUMENT_ID, documentId))
+                    .toList();
+            conditions.add(documents.size() == 1 ? documents.get(0) : combine("Or", documents));
+        }
+        if (filter.tenantId() != null) {
+            conditions.add(equal(SegmentFilter.TENANT_ID, filter.tenantId()));
+        }
+        return conditions.size() == 1 ? conditions.get(0) : combine("And", conditions);
+    }
+
+    private String equal(String property, String value) {
+        return "{path: [\"" + property + "\"], operator: Equal, valueText: " + quote(value) + "}";
+    }
+
+    private static String combine(String operator, List<String> operands) {
+        return "{operator: " + operator + ", operands: [" + String.join(", ", operands) + "]}";
+    }
+
+    private String quote(String value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private StoredSegment toStoredSegment(JsonNode object) {
+        JsonNode properties = object.path("properties");
+        TextSegment segment = null;
+        if (properties.hasNonNull(TEXT_PROPERTY)) {
+            Map<String, String> metadata = new LinkedHashMap<>();
+            collectMetadata(properties, metadata);
+            segment = TextSegment.from(properties.get(TEXT_PROPERTY).asText(), Metadata.from(metadata));
+        }
+        return new StoredSegment(object.path("id").asText(), Embedding.from(toVector(object.path("vector"))), segment);
+    }
+
+    private static float[] toVector(JsonNode vectorNode) {
+        float[] vector = new float[vectorNode.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) vectorNode.get(i).asDouble();
+        }
+        return vector;
+    }
+
+    /**
+     * Reads top-level properties and, for objects in the old layout, nested ones.
+     */
+    private static void collectMetadata(JsonNode properties, Map<String, String> metadata) {
+        Iterator<Map.Entry<String, JsonNode>> fields = properties.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode value = field.getValue();
+            if (value.isObject()) {
+                collectMetadata(value, metadata);
+            } else if (value.isValueNode() && !value.isNull() && !TEXT_PROPERTY.equals(field.getKey())) {
+                metadata.put(field.getKey(), value.asText());
+            }
+        }
+    }
+
+    private JsonNode send(HttpRequest.Builder request, String operation) {
+        return parse(checked(exchange(request, operation), operation), operation);
+    }
+
+    private HttpResponse<String> exchange(HttpRequest.Builder request, String operation) {
+        try {
+            return httpClient.send(request.timeout(Duration.ofSeconds(60)).build(), HttpResponse.BodyHandlers.ofString());
+        } catch (IOException e) {
+            throw new IllegalStateException("Weaviate " + operation + " failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during Weaviate " + operation, e);
+        }
+    }
+
+    private static HttpResponse<String> checked(HttpResponse<String> response, String operation) {
+        if (response.statusCode() >= 300) {
+            throw new IllegalStateException("Weaviate " + operation + " failed with HTTP "
+                    + response.statusCode() + ": " + response.body());
+        }
+        return response;
+    }
+
+    private JsonNode parse(HttpResponse<String> response, String operation) {
+        try {
+            return objectMapper.readTree(response.body());
+        } catch (IOException e) {
+            throw new IllegalStateException("Weaviate " + operation + " returned invalid JSON", e);
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,86 @@
+package com.intellidesk.rag.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StompSubscriptionGuardTest {
+
+    private final StompSubscriptionGuard guard = new StompSubscriptionGuard();
+    private final Map<String, Object> aliceAttributes = new HashMap<>();
+    private final Map<String, Object> bobAttributes = new HashMap<>();
+
+    @Test
+    void rejectsPatternSubscriptions() {
+        connect("alice", aliceAttributes, "alice");
+
+        assertThatThrownBy(() -> subscribe("alice", aliceAttributes, "/topic/upload-progress/**"))
+                .isInstanceOf(MessageDeliveryException.class);
+        assertThatThrownBy(() -> subscribe("alice", aliceAttributes, "/topic/answer-stream/*"))
+                .isInstanceOf(MessageDeliveryException.class);
+        assertThatThrownBy(() -> subscribe("alice", aliceAttributes, "/topic/upload-progress/user/{id}"))
+                .isInstanceOf(MessageDeliveryException.class);
+    }
+
+    @Test
+    void onlyLetsASessionFollowTheUserItConnectedAs() {
+        connect("alice", aliceAttributes, "alice");
+        connect("bob", bobAttributes, null);
+
+        assertThatCode(() -> subscribe("alice", aliceAttributes, "/topic/upload-progress/user/alice"))
+                .doesNotThrowAnyException();
+        assertThatThrownBy(() -> subscribe("alice", aliceAttributes, "/topic/upload-progress/user/bob"))
+                .isInstanceOf(MessageDeliveryException.class);
+        assertThatThrownBy(() -> subscribe("bob", bobAttributes, "/topic/upload-progress/user/alice"))
+                .isInstanceOf(MessageDeliveryException.class);
+    }
+
+    @Test
+    void keepsAnAnswerStreamWithTheFirstSessionUntilItDisconnects() {
+        assertThatCode(() -> subscribe("alice", aliceAttributes, "/topic/answer-stream/r-1"))
+                .doesNotThrowAnyException();
+        assertThatThrownBy(() -> subscribe("bob", bobAttributes, "/topic/answer-stream/r-1"))
+                .isInstanceOf(MessageDeliveryException.class);
+        assertThat(guard.claimAnswerStream("r-1", "bob")).isFalse();
+        assertThat(guard.claimAnswerStream("r-1", "alice")).isTrue();
+
+        guard.preSend(frame(StompCommand.DISCONNECT, "alice", aliceAttributes), null);
+
+        assertThat(guard.claimAnswerStream("r-1", "bob")).isTrue();
+    }
+
+    private void connect(String sessionId, Map<String, Object> attributes, String userId) {
+        StompHeaderAccessor accessor = accessor(StompCommand.CONNECT, sessionId, attributes);
+        if (userId != null) {
+            accessor.setNativeHeader(StompSubscriptionGuard.USER_ID_HEADER, userId);
+        }
+        guard.preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), null);
+    }
+
+    private void subscribe(String sessionId, Map<String, Object> attributes, String destination) {
+        StompHeaderAccessor accessor = accessor(StompCommand.SUBSCRIBE, sessionId, attributes);
+        accessor.setDestination(destination);
+        guard.preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), null);
+    }
+
+    private static Message<byte[]> frame(StompCommand command, String sessionId, Map<String, Object> attributes) {
+        return MessageBuilder.createMessage(new byte[0], accessor(command, sessionId, attributes).getMessageHeaders());
+    }
+
+    private static StompHeaderAccessor accessor(StompCommand command, String sessionId, Map<String, Object> attributes) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        accessor.setSessionId(sessionId);
+        accessor.setSessionAttributes(attributes);
+        return accessor;
+    }
+}
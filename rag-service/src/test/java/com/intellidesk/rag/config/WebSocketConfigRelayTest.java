@@ -0,0 +1,160 @@
+package com.intellidesk.rag.config;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.TransportConnector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.stomp.StompBrokerRelayMessageHandler;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs {@code rag.websocket.broker.type: relay} against an embedded ActiveMQ STOMP connector.
+ */
+class WebSocketConfigRelayTest {
+
+    private static final String SESSION = "client-session";
+    // Same shape as the progress topics, '/' separators included
+    private static final String DESTINATION = "/topic/upload-progress/user-1";
+
+    private BrokerService broker;
+    private int port;
+
+    @BeforeEach
+    void startBroker() throws Exception {
+        broker = new BrokerService();
+        broker.setBrokerName("relay-test");
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        TransportConnector connector = broker.addConnector("stomp://localhost:0");
+        broker.start();
+        broker.waitUntilStarted();
+        port = connector.getConnectUri().getPort();
+    }
+
+    @AfterEach
+    void stopBroker() throws Exception {
+        broker.stop();
+        broker.waitUntilStopped();
+    }
+
+    @Test
+    void relaysTopicMessagesPublishedByTheApplicationToSubscribedClients() throws Exception {
+        WebSocketConfig config = relayConfig();
+        BlockingQueue<Message<?>> toClients = new LinkedBlockingQueue<>();
+        ExecutorSubscribableChannel clientOutbound = new ExecutorSubscribableChannel();
+        clientOutbound.subscribe(toClients::add);
+        RelayRegistry registry = new RelayRegistry(new ExecutorSubscribableChannel(), clientOutbound);
+        config.configureMessageBroker(registry);
+
+        StompBrokerRelayMessageHandler relay = registry.relay(new ExecutorSubscribableChannel());
+        assertThat(relay).isNotNull();
+        assertThat(relay.getRelayPort()).isEqualTo(port);
+        relay.start();
+        try {
+            awaitBroker(relay);
+
+            StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+            connect.setAcceptVersion("1.2");
+            connect.setHeartbeat(0, 0);
+            relay.handleMessage(frame(connect, ""));
+            assertThat(next(toClients, StompCommand.CONNECTED)).isNotNull();
+
+            StompHeaderAccessor subscribe = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+            subscribe.setDestination(DESTINATION);
+            subscribe.setSubscriptionId("sub-0");
+            subscribe.setReceipt("subscribed");
+            relay.handleMessage(frame(subscribe, ""));
+            assertThat(next(toClients, StompCommand.RECEIPT)).isNotNull();
+
+            // Published the way SimpMessagingTemplate does: no session, so over the system connection
+            SimpMessageHeaderAccessor publish = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            publish.setDestination(DESTINATION);
+            relay.handleMessage(MessageBuilder.createMessage("{\"progress\":42}".getBytes(StandardCharsets.UTF_8),
+                    publish.getMessageHeaders()));
+
+            Message<?> delivered = next(toClients, StompCommand.MESSAGE);
+            assertThat(delivered).isNotNull();
+            StompHeaderAccessor headers = StompHeaderAccessor.wrap(delivered);
+            assertThat(headers.getSessionId()).isEqualTo(SESSION);
+            assertThat(headers.getDestination()).isEqualTo(DESTINATION);
+            assertThat(new String((byte[]) delivered.getPayload(), StandardCharsets.UTF_8)).isEqualTo("{\"progress\":42}");
+        } finally {
+            relay.stop();
+        }
+    }
+
+    private WebSocketConfig relayConfig() {
+        WebSocketConfig config = new WebSocketConfig(new StompSubscriptionGuard());
+        ReflectionTestUtils.setField(config, "brokerType", "relay");
+        ReflectionTestUtils.setField(config, "relayHost", "localhost");
+        ReflectionTestUtils.setField(config, "relayPort", port);
+        ReflectionTestUtils.setField(config, "clientLogin", "guest");
+        ReflectionTestUtils.setField(config, "clientPasscode", "guest");
+        ReflectionTestUtils.setField(config, "systemLogin", "guest");
+        ReflectionTestUtils.setField(config, "systemPasscode", "guest");
+        ReflectionTestUtils.setField(config, "virtualHost", "");
+        ReflectionTestUtils.setField(config, "heartbeatMs", 10_000L);
+        return config;
+    }
+
+    private static void awaitBroker(StompBrokerRelayMessageHandler relay) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!relay.isBrokerAvailable() && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(relay.isBrokerAvailable()).as("system session connected").isTrue();
+    }
+
+    private static Message<byte[]> frame(StompHeaderAccessor accessor, String body) {
+        accessor.setSessionId(SESSION);
+        return MessageBuilder.createMessage(body.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+    }
+
+    /**
+     * The next frame of the given command sent to clients within ten seconds, or {@code null}.
+     */
+    private static Message<?> next(BlockingQueue<Message<?>> toClients, StompCommand command)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            Message<?> message = toClients.poll(remaining, TimeUnit.NANOSECONDS);
+            if (message != null && StompHeaderAccessor.wrap(message).getCommand() == command) {
+                return message;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Exposes the relay handler the registry builds from the configuration under test.
+     */
+    private static final class RelayRegistry extends MessageBrokerRegistry {
+
+        private RelayRegistry(SubscribableChannel clientInboundChannel, MessageChannel clientOutboundChannel) {
+            super(clientInboundChannel, clientOutboundChannel);
+        }
+
+        private StompBrokerRelayMessageHandler relay(SubscribableChannel brokerChannel) {
+            return getStompBrokerRelay(brokerChannel);
+        }
+    }
+}
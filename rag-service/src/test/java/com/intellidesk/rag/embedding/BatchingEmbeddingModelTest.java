@@ -0,0 +1,167 @@
+package com.intellidesk.rag.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BatchingEmbeddingModelTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+    private final GatedModel delegate = new GatedModel();
+    private BatchingEmbeddingModel model;
+
+    @AfterEach
+    void shutdown() {
+        delegate.release.countDown();
+        model.close();
+        callers.shutdownNow();
+    }
+
+    @Test
+    void coalescesQueuedCallsIntoBatchesOfAtMostMaxBatchSize() throws Exception {
+        model = new BatchingEmbeddingModel(delegate, 1, 4, meterRegistry);
+        CompletableFuture<List<Embedding>> busy = embed(0);
+        assertThat(delegate.started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        List<CompletableFuture<List<Embedding>>> queued = List.of(embed(11, 12), embed(21, 22), embed(31, 32));
+        awaitQueued(3);
+        delegate.release.countDown();
+
+        assertThat(values(busy.get(5, TimeUnit.SECONDS))).containsExactly(0f);
+        for (int i = 0; i < queued.size(); i++) {
+            int base = (i + 1) * 10;
+            // Each caller gets its own slice, in the order it sent its segments
+            assertThat(values(queued.get(i).get(5, TimeUnit.SECONDS))).containsExactly(base + 1f, base + 2f);
+        }
+        assertThat(delegate.calls).extracting(List::size).containsExactly(1, 4, 2);
+        assertThat(meterRegistry.get("rag.embedding.local.batch.size").summary().count()).isEqualTo(3);
+    }
+
+    @Test
+    void failsEveryCallerInAFailedBatch() throws Exception {
+        model = new BatchingEmbeddingModel(delegate, 1, 8, meterRegistry);
+        CompletableFuture<List<Embedding>> busy = embed(0);
+        assertThat(delegate.started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        delegate.failing = true;
+        CompletableFuture<List<Embedding>> first = embed(1);
+        CompletableFuture<List<Embedding>> second = embed(2, 3);
+        awaitQueued(2);
+        delegate.release.countDown();
+
+        assertThat(values(busy.get(5, TimeUnit.SECONDS))).containsExactly(0f);
+        for (CompletableFuture<List<Embedding>> caller : List.of(first, second)) {
+            assertThatThrownBy(() -> caller.get(5, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("model crashed");
+        }
+        assertThat(delegate.calls).hasSize(2);
+    }
+
+    @Test
+    void closeFailsQueuedCallsAndLetsTheRunningBatchFinish() throws Exception {
+        model = new BatchingEmbeddingModel(delegate, 1, 8, meterRegistry);
+        CompletableFuture<List<Embedding>> busy = embed(0);
+        assertThat(delegate.started.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<List<Embedding>> queued = embed(1);
+        awaitQueued(1);
+
+        model.close();
+        delegate.release.countDown();
+
+        assertThatThrownBy(() -> queued.get(5, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("shut down");
+        assertThat(values(busy.get(5, TimeUnit.SECONDS))).containsExactly(0f);
+        assertThatThrownBy(() -> model.embedAll(List.of(TextSegment.from("2"))))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(delegate.calls).hasSize(1);
+    }
+
+    private CompletableFuture<List<Embedding>> embed(int... values) {
+        List<TextSegment> segments = Arrays.stream(values)
+                .mapToObj(value -> TextSegment.from(String.valueOf(value)))
+                .toList();
+        return CompletableFuture.supplyAsync(() -> model.embedAll(segments).content(), callers);
+    }
+
+    /**
+     * Waits until {@code count} requests sit in the model's queue behind the running batch.
+     */
+    private void awaitQueued(int count) throws Exception {
+        Field field = BatchingEmbeddingModel.class.getDeclaredField("queue");
+        field.setAccessible(true);
+        Queue<?> queue = (Queue<?>) field.get(model);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (queue.size() < count) {
+            assertThat(System.nanoTime()).as("requests queued in time").isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static List<Float> values(List<Embedding> embeddings) {
+        return embeddings.stream().map(embedding -> embedding.vector()[0]).toList();
+    }
+
+    /**
+     * Stub model that holds its first call until released and embeds every segment as the
+     * one-dimensional vector of its number; later calls fail while {@code failing} is set.
+     * Interrupts from {@link BatchingEmbeddingModel#close()} are ignored, as by a native inference
+     * call.
+     */
+    private static final class GatedModel implements EmbeddingModel {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final List<List<String>> calls = new CopyOnWriteArrayList<>();
+        private volatile boolean failing;
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+            calls.add(textSegments.stream().map(TextSegment::text).toList());
+            if (calls.size() == 1) {
+                started.countDown();
+                awaitRelease();
+            } else if (failing) {
+                throw new IllegalStateException("model crashed");
+            }
+            return Response.from(textSegments.stream()
+                    .map(segment -> Embedding.from(new float[]{Float.parseFloat(segment.text())}))
+                    .toList());
+        }
+
+        private void awaitRelease() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    release.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
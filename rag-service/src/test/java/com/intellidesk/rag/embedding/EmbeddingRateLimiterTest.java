@@ -0,0 +1,116 @@
+package com.intellidesk.rag.embedding;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmbeddingRateLimiterTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @Test
+    void blocksOnceTheTokenBudgetIsSpent() throws Exception {
+        EmbeddingRateLimiter limiter = new EmbeddingRateLimiter(1000, 1000, 4);
+
+        limiter.acquire(600);
+        Future<?> second = executor.submit(() -> acquire(limiter, 600));
+
+        assertThatThrownBy(() -> second.get(300, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+        second.cancel(true);
+    }
+
+    @Test
+    void blocksOnceTheRequestBudgetIsSpent() throws Exception {
+        EmbeddingRateLimiter limiter = new EmbeddingRateLimiter(2, 1_000_000, 4);
+
+        limiter.acquire(1);
+        limiter.onSuccess();
+        limiter.acquire(1);
+        limiter.onSuccess();
+        Future<?> third = executor.submit(() -> acquire(limiter, 1));
+
+        assertThatThrownBy(() -> third.get(300, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+        third.cancel(true);
+    }
+
+    @Test
+    void requestsLargerThanTheTokenBudgetStillGoThrough() throws Exception {
+        EmbeddingRateLimiter limiter = new EmbeddingRateLimiter(1000, 100, 4);
+
+        CompletableFuture.runAsync(() -> acquire(limiter, 10_000), executor).get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void limitsConcurrentCallsAndReleasesSlotsOnCompletion() throws Exception {
+        EmbeddingRateLimiter limiter = new EmbeddingRateLimiter(10_000, 1_000_000, 2);
+
+        limiter.acquire(1);
+        limiter.acquire(1);
+        Future<?> third = executor.submit(() -> acquire(limiter, 1));
+        assertThatThrownBy(() -> third.get(200, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+
+        limiter.onSuccess();
+        third.get(2, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void halvesTheConcurrencyLimitOnRateLimitsAndGrowsItBackAdditively() throws Exception {
+        EmbeddingRateLimiter limiter = new EmbeddingRateLimiter(60_000, 1_000_000, 8);
+
+        limiter.acquire(1);
+        limiter.onRateLimited(0);
+        assertThat(limiter.getConcurrencyLimit()).isEqualTo(4);
+        limiter.acquire(1);
+        limiter.onRateLimited(0);
+        assertThat(limiter.getConcurrencyLimit()).isEqualTo(2);
+
+        for (int i = 0; i < 9; i++) {
+            limiter.acquire(1);
+            limiter.onSuccess();
+        }
+        assertThat(limiter.getConcurrencyLimit()).isEqualTo(2);
+        limiter.acquire(1);
+        limiter.onSuccess();
+        assertThat(limiter.getConcurrencyLimit()).isEqualTo(3);
+    }
+
+    @Test
+    void neverLowersTheConcurrencyLimitBelowOne() throws Exception {
+        EmbeddingRateLimiter limiter = new EmbeddingRateLimiter(60_000, 1_000_000, 2);
+
+        for (int i = 0; i < 3; i++) {
+            limiter.acquire(1);
+            limiter.onRateLimited(0);
+        }
+
+        assertThat(limiter.getConcurrencyLimit()).isEqualTo(1);
+    }
+
+    @Test
+    void pausesNewCallsAfterARateLimit() throws Exception {
+        EmbeddingRateLimiter limiter = new EmbeddingRateLimiter(60_000, 1_000_000, 4);
+
+        limiter.acquire(1);
+        limiter.onRateLimited(500);
+        long start = System.nanoTime();
+        limiter.acquire(1);
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(400);
+    }
+
+    private static void acquire(EmbeddingRateLimiter limiter, int tokens) {
+        try {
+            limiter.acquire(tokens);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
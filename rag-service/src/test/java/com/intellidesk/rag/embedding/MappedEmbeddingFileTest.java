@@ -0,0 +1,56 @@
+package com.intellidesk.rag.embedding;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MappedEmbeddingFileTest {
+
+    private static final int DIMENSION = 4;
+    private static final int HEADER_BYTES = 32;
+    private static final int RECORD_BYTES = MappedEmbeddingFile.KEY_BYTES + 4 + DIMENSION * Float.BYTES;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void rejectsAFileWithoutRoomForAnEntry() {
+        assertThatThrownBy(() -> new MappedEmbeddingFile(directory.resolve("cache.bin"), DIMENSION, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void skipsARecordTornByACrashWhenReopened() throws IOException {
+        Path path = directory.resolve("cache.bin");
+        try (MappedEmbeddingFile file = new MappedEmbeddingFile(path, DIMENSION, 8)) {
+            file.put(key(1), new float[]{1, 2, 3, 4});
+            file.put(key(2), new float[]{5, 6, 7, 8});
+        }
+        // Key published, but the crash hit before the second record's vector was fully written
+        try (RandomAccessFile raw = new RandomAccessFile(path.toFile(), "rw")) {
+            raw.seek(HEADER_BYTES + RECORD_BYTES + MappedEmbeddingFile.KEY_BYTES + 4 + Float.BYTES);
+            raw.writeFloat(0);
+        }
+
+        try (MappedEmbeddingFile reopened = new MappedEmbeddingFile(path, DIMENSION, 8)) {
+            assertThat(reopened.get(key(1))).containsExactly(1, 2, 3, 4);
+            assertThat(reopened.get(key(2))).isNull();
+            // The lost entry is simply cached again
+            reopened.put(key(2), new float[]{5, 6, 7, 8});
+            assertThat(reopened.get(key(2))).containsExactly(5, 6, 7, 8);
+        }
+    }
+
+    private static byte[] key(int value) {
+        byte[] key = new byte[MappedEmbeddingFile.KEY_BYTES];
+        Arrays.fill(key, (byte) value);
+        return key;
+    }
+}
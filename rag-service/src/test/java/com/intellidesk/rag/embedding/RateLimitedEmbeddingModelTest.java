@@ -0,0 +1,99 @@
+package com.intellidesk.rag.embedding;
+
+import dev.ai4j.openai4j.OpenAiHttpException;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.openai.OpenAiTokenizer;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RateLimitedEmbeddingModelTest {
+
+    private static final List<TextSegment> SEGMENTS = List.of(TextSegment.from("first"), TextSegment.from("second"));
+
+    private final EmbeddingRateLimiter rateLimiter = new EmbeddingRateLimiter(60_000, 1_000_000, 8);
+
+    @Test
+    void retriesRateLimitedCallsAndLowersConcurrency() {
+        FailingModel delegate = new FailingModel(2, () -> new OpenAiHttpException(429, "Too Many Requests"));
+        RateLimitedEmbeddingModel model = model(delegate, 3);
+
+        Response<List<Embedding>> response = model.embedAll(SEGMENTS);
+
+        assertThat(response.content()).hasSize(2);
+        assertThat(delegate.calls.get()).isEqualTo(3);
+        assertThat(rateLimiter.getConcurrencyLimit()).isEqualTo(2);
+    }
+
+    @Test
+    void recognisesRateLimitsWrappedByTheClient() {
+        FailingModel delegate = new FailingModel(1,
+                () -> new RuntimeException(new OpenAiHttpException(429, "Too Many Requests")));
+
+        model(delegate, 3).embedAll(SEGMENTS);
+
+        assertThat(delegate.calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void givesUpAfterTheConfiguredRetries() {
+        FailingModel delegate = new FailingModel(Integer.MAX_VALUE, () -> new OpenAiHttpException(429, "Too Many Requests"));
+
+        assertThatThrownBy(() -> model(delegate, 2).embedAll(SEGMENTS)).isInstanceOf(OpenAiHttpException.class);
+        assertThat(delegate.calls.get()).isEqualTo(3);
+    }
+
+    @Test
+    void doesNotRetryOtherErrorsEvenWhenTheyMentionRateLimits() {
+        FailingModel delegate = new FailingModel(1,
+                () -> new OpenAiHttpException(400, "Invalid input: '429 rate limit' is not a model"));
+
+        assertThatThrownBy(() -> model(delegate, 3).embedAll(SEGMENTS)).isInstanceOf(OpenAiHttpException.class);
+        assertThat(delegate.calls.get()).isEqualTo(1);
+        assertThat(rateLimiter.getConcurrencyLimit()).isEqualTo(8);
+    }
+
+    @Test
+    void classifiesOnlyHttp429AsRateLimited() {
+        assertThat(RateLimitedEmbeddingModel.isRateLimited(new OpenAiHttpException(429, ""))).isTrue();
+        assertThat(RateLimitedEmbeddingModel.isRateLimited(new OpenAiHttpException(500, "rate limit"))).isFalse();
+        assertThat(RateLimitedEmbeddingModel.isRateLimited(new IllegalStateException("HTTP 429"))).isFalse();
+    }
+
+    private RateLimitedEmbeddingModel model(EmbeddingModel delegate, int maxRetries) {
+        return new RateLimitedEmbeddingModel(delegate, rateLimiter, new OpenAiTokenizer("gpt-3.5-turbo"),
+                maxRetries, 1);
+    }
+
+    /**
+     * Stub model that fails its first {@code failures} calls and then embeds every segment as a
+     * one-dimensional vector.
+     */
+    private static final class FailingModel implements EmbeddingModel {
+
+        private final int failures;
+        private final Supplier<RuntimeException> error;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private FailingModel(int failures, Supplier<RuntimeException> error) {
+            this.failures = failures;
+            this.error = error;
+        }
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+            if (calls.incrementAndGet() <= failures) {
+                throw error.get();
+            }
+            return Response.from(textSegments.stream().map(segment -> Embedding.from(new float[]{1f})).toList());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.intellidesk.rag.parsing;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IncrementalSplitterTest {
+
+    private static final int BLOCK_CHARS = 600;
+
+    private final Random random = new Random(11);
+
+    @Test
+    void segmentsDoNotDependOnWhereTheParserCutTheText() {
+        String text = document(120);
+        List<TextSegment> reference = split(List.of(text));
+
+        for (int attempt = 0; attempt < 20; attempt++) {
+            List<TextSegment> segments = split(randomCuts(text));
+
+            assertThat(segments).extracting(TextSegment::text)
+                    .containsExactlyElementsOf(reference.stream().map(TextSegment::text).toList());
+            assertThat(segments).extracting(segment -> segment.metadata().get("index"))
+                    .containsExactlyElementsOf(reference.stream().map(s -> s.metadata().get("index")).toList());
+        }
+    }
+
+    @Test
+    void cutsParagraphsWithoutBreaksAtFixedOffsets() {
+        String text = "word ".repeat(2000) + "\n\nlast paragraph";
+        List<TextSegment> reference = split(List.of(text));
+
+        for (int attempt = 0; attempt < 10; attempt++) {
+            assertThat(split(randomCuts(text))).extracting(TextSegment::text)
+                    .containsExactlyElementsOf(reference.stream().map(TextSegment::text).toList());
+        }
+    }
+
+    @Test
+    void keepsEveryParagraphAndNumbersSegmentsAcrossFlushes() {
+        IncrementalSplitter splitter = new IncrementalSplitter(DocumentSplitters.recursive(200, 20), new Metadata(),
+                BLOCK_CHARS);
+        List<TextSegment> segments = new ArrayList<>(splitter.add("First section paragraph.\n\n"));
+        segments.addAll(splitter.flush());
+        segments.addAll(splitter.add("Second section paragraph."));
+        segments.addAll(splitter.flush());
+
+        assertThat(segments).extracting(TextSegment::text)
+                .containsExactly("First section paragraph.", "Second section paragraph.");
+        assertThat(segments).extracting(segment -> segment.metadata().get("index")).containsExactly("0", "1");
+    }
+
+    private static List<TextSegment> split(List<String> chunks) {
+        IncrementalSplitter splitter = new IncrementalSplitter(DocumentSplitters.recursive(200, 20), new Metadata(),
+                BLOCK_CHARS);
+        List<TextSegment> segments = new ArrayList<>();
+        for (String chunk : chunks) {
+            segments.addAll(splitter.add(chunk));
+        }
+        segments.addAll(splitter.flush());
+        return segments;
+    }
+
+    private List<String> randomCuts(String text) {
+        List<String> chunks = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = Math.min(text.length(), start + 1 + random.nextInt(400));
+            chunks.add(text.substring(start, end));
+            start = end;
+        }
+        return chunks;
+    }
+
+    private String document(int paragraphs) {
+        StringBuilder text = new StringBuilder();
+        for (int p = 0; p < paragraphs; p++) {
+            int sentences = 1 + random.nextInt(6);
+            for (int s = 0; s < sentences; s++) {
+                text.append("Paragraph ").append(p).append(" sentence ").append(s)
+                        .append(" talks about leave, travel and expenses.");
+                text.append(random.nextInt(4) == 0 ? "\n" : " ");
+            }
+            text.append(random.nextBoolean() ? "\n\n" : "\n  \n\n");
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,87 @@
+package com.intellidesk.rag.parsing;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreamingDocumentParserTest {
+
+    private final StreamingDocumentParser parser = new StreamingDocumentParser(3, 4, 1000, 1000);
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void shutdown() {
+        parser.shutdown();
+    }
+
+    @Test
+    void extractsPdfPageRangesInOrderWithTheSameTextAsAWholeDocumentPass() throws Exception {
+        Path file = pdf(23);
+        List<String> chunks = new ArrayList<>();
+        List<Integer> progress = new ArrayList<>();
+
+        parser.parse(file, "pdf", (text, endOfSection, completed, total) -> {
+            chunks.add(text);
+            progress.add(completed);
+            assertThat(total).isEqualTo(23);
+        });
+
+        String whole;
+        try (PDDocument document = PDDocument.load(file.toFile())) {
+            whole = new PDFTextStripper().getText(document);
+        }
+        assertThat(String.join("", chunks)).isEqualTo(whole);
+        assertThat(chunks).hasSize(6);
+        assertThat(progress).containsExactly(4, 8, 12, 16, 20, 23);
+    }
+
+    @Test
+    void streamsMarkdownSectionsAtHeadings() throws Exception {
+        Path file = directory.resolve("notes.md");
+        Files.writeString(file, "# Leave\nTwelve weeks.\n\n```\n# not a heading\n```\n# Travel\nBook early.\n");
+        List<String> sections = new ArrayList<>();
+
+        parser.parse(file, "md", (text, endOfSection, completed, total) -> {
+            if (endOfSection) {
+                sections.add(text);
+            }
+        });
+
+        assertThat(sections).containsExactly("# Leave\nTwelve weeks.\n\n```\n# not a heading\n```\n",
+                "# Travel\nBook early.\n\n");
+    }
+
+    private Path pdf(int pages) throws IOException {
+        Path file = directory.resolve("document.pdf");
+        try (PDDocument document = new PDDocument()) {
+            for (int i = 1; i <= pages; i++) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, 12);
+                    content.newLineAtOffset(72, 700);
+                    content.showText("Page " + i + " covers policy section " + i + ".");
+                    content.endText();
+                }
+            }
+            document.save(file.toFile());
+        }
+        return file;
+    }
+}
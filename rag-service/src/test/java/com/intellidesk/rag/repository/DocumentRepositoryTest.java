@@ -0,0 +1,95 @@
+package com.intellidesk.rag.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intellidesk.rag.entity.DocumentRecord;
+import com.intellidesk.rag.entity.DocumentSegment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DocumentRepositoryTest {
+
+    private static final String A = "a".repeat(64);
+    private static final String B = "b".repeat(64);
+    private static final String C = "c".repeat(64);
+
+    @TempDir
+    Path uploadDir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private DocumentRepository repository;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        repository = open();
+    }
+
+    @Test
+    void publishesTheDraftWithTheIdsOfTheSegmentsEmbeddedMeanwhile() throws IOException {
+        try (DocumentRepository.ManifestWriter draft = repository.openManifestDraft("doc", "job")) {
+            draft.append(new DocumentSegment(A, "reused"));
+            draft.append(new DocumentSegment(B, null));
+            draft.append(new DocumentSegment(C, null));
+        }
+
+        repository.publishManifest("doc", "job",
+                List.of(new DocumentSegment(B, "b1"), new DocumentSegment(C, "c1")).iterator());
+        DocumentRecord record = repository.save(DocumentRecord.builder().documentId("doc").jobId("job").build());
+
+        assertThat(manifest(record)).containsExactly(
+                new DocumentSegment(A, "reused"), new DocumentSegment(B, "b1"), new DocumentSegment(C, "c1"));
+        assertThat(uploadDir.resolve("documents/doc.job.segments.draft")).doesNotExist();
+    }
+
+    @Test
+    void refusesToPublishWhenTheEmbeddedSegmentsDoNotMatchTheDraft() throws IOException {
+        try (DocumentRepository.ManifestWriter draft = repository.openManifestDraft("doc", "job")) {
+            draft.append(new DocumentSegment(A, null));
+        }
+        Iterator<DocumentSegment> embedded = List.of(new DocumentSegment(B, "b1")).iterator();
+
+        assertThatThrownBy(() -> repository.publishManifest("doc", "job", embedded))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void movesManifestsEmbeddedInOlderRecordsToTheirOwnFile() throws Exception {
+        Path file = uploadDir.resolve("documents/doc.json");
+        Files.writeString(file, """
+                {"documentId":"doc","jobId":"job","segmentCount":2,
+                 "segments":[{"fingerprint":"%s","embeddingId":"a1"},{"fingerprint":"%s","embeddingId":"b1"}]}
+                """.formatted(A, B));
+
+        DocumentRecord record = open().findById("doc").orElseThrow();
+
+        assertThat(record.getSegments()).isEmpty();
+        assertThat(Files.readString(file)).doesNotContain("segments");
+        assertThat(manifest(record)).containsExactly(new DocumentSegment(A, "a1"), new DocumentSegment(B, "b1"));
+    }
+
+    private DocumentRepository open() throws Exception {
+        DocumentRepository opened = new DocumentRepository(objectMapper);
+        Field field = DocumentRepository.class.getDeclaredField("uploadDir");
+        field.setAccessible(true);
+        field.set(opened, uploadDir.toString());
+        opened.load();
+        return opened;
+    }
+
+    private List<DocumentSegment> manifest(DocumentRecord record) {
+        try (Stream<DocumentSegment> segments = repository.streamManifest(record)) {
+            return segments.toList();
+        }
+    }
+}
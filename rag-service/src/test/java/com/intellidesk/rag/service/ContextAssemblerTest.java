@@ -0,0 +1,80 @@
+package com.intellidesk.rag.service;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.openai.OpenAiTokenizer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContextAssemblerTest {
+
+    private final ContextAssembler assembler = new ContextAssembler(new OpenAiTokenizer("gpt-3.5-turbo"),
+            new SimpleMeterRegistry(), 0.7, 3000);
+
+    @Test
+    void dropsWeakVectorMatchesButKeepsKeywordOnlyMatchesOnTheirRank() {
+        ContextAssembler.Context context = assembler.assemble(List.of(
+                new RetrievedSegment("weak", segment("weak vector match", null, null, -1), 0.6, null, 0.02),
+                new RetrievedSegment("keyword", segment("EMP-10442 record", null, null, -1), null, 9.0, 0.01)));
+
+        assertThat(context.blocks()).extracting(ContextAssembler.Block::segmentIds)
+                .containsExactly(List.of("keyword"));
+        assertThat(context.blocks().get(0).similarity()).isNull();
+    }
+
+    @Test
+    void stitchesNeighboursOfTheSameIngestionWithoutTheirOverlap() {
+        ContextAssembler.Context context = assembler.assemble(List.of(
+                match("second", segment("overlapping tail, then the second part", "doc", "job-1", 4), 0.8),
+                match("first", segment("The first part ends with overlapping tail,", "doc", "job-1", 3), 0.9)));
+
+        assertThat(context.blocks()).hasSize(1);
+        assertThat(context.text()).isEqualTo("The first part ends with overlapping tail, then the second part");
+        assertThat(context.blocks().get(0).segmentIds()).containsExactly("first", "second");
+        assertThat(context.blocks().get(0).similarity()).isEqualTo(0.9);
+    }
+
+    @Test
+    void neverStitchesSegmentsReusedFromAnotherVersion() {
+        // Position 7 of the old version and position 8 of the new one are not neighbours
+        ContextAssembler.Context context = assembler.assemble(List.of(
+                match("reused", segment("unchanged paragraph from version one", "doc", "job-1", 7), 0.9),
+                match("new", segment("rewritten paragraph of version two", "doc", "job-2", 8), 0.8)));
+
+        assertThat(context.blocks()).hasSize(2);
+        assertThat(context.blocks()).extracting(ContextAssembler.Block::segmentIds)
+                .containsExactly(List.of("reused"), List.of("new"));
+    }
+
+    @Test
+    void ordersBlocksByFusedRank() {
+        ContextAssembler.Context context = assembler.assemble(List.of(
+                new RetrievedSegment("vector", segment("only found by vector", null, null, -1), 0.95, null, 0.016),
+                new RetrievedSegment("both", segment("found by both searches", null, null, -1), 0.75, 3.0, 0.032)));
+
+        assertThat(context.blocks()).extracting(ContextAssembler.Block::segmentIds)
+                .containsExactly(List.of("both"), List.of("vector"));
+    }
+
+    private static RetrievedSegment match(String id, TextSegment segment, double similarity) {
+        return new RetrievedSegment(id, segment, similarity, null, similarity / 10);
+    }
+
+    private static TextSegment segment(String text, String documentId, String jobId, int index) {
+        Metadata metadata = new Metadata();
+        if (documentId != null) {
+            metadata.add(ContextAssembler.DOCUMENT_ID, documentId);
+        }
+        if (jobId != null) {
+            metadata.add(ContextAssembler.JOB_ID, jobId);
+        }
+        if (index >= 0) {
+            metadata.add(ContextAssembler.INDEX, String.valueOf(index));
+        }
+        return TextSegment.from(text, metadata);
+    }
+}
@@ -0,0 +1,112 @@
+package com.intellidesk.rag.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmbeddingPipelineTest {
+
+    private final StubEmbeddingModel model = new StubEmbeddingModel();
+    private final EmbeddingPipeline pipeline = new EmbeddingPipeline(model,
+            new PipelineMetrics(ObservationRegistry.create(), new SimpleMeterRegistry()), 3);
+
+    @AfterEach
+    void shutdown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    void deliversBatchesInSubmissionOrderWhenLaterOnesFinishFirst() throws Exception {
+        List<String> delivered = new ArrayList<>();
+
+        try (EmbeddingPipeline.Session session = pipeline.open((batch, embeddings) -> {
+            assertThat(embeddings).hasSameSizeAs(batch);
+            for (int i = 0; i < batch.size(); i++) {
+                // The stub encodes each segment's text in its vector
+                assertThat(embeddings.get(i).vector()[0]).isEqualTo(Float.parseFloat(batch.get(i).text().split(":")[1]));
+                delivered.add(batch.get(i).text());
+            }
+        })) {
+            // Earlier batches are slower, so they finish after the ones submitted behind them
+            for (int batch = 0; batch < 8; batch++) {
+                session.submit(List.of(segment(batch, 80 - batch * 10, 2 * batch),
+                        segment(batch, 80 - batch * 10, 2 * batch + 1)));
+            }
+            session.finish();
+        }
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            expected.add("segment " + (i / 2) + " " + (80 - (i / 2) * 10) + ":" + i);
+        }
+        assertThat(delivered).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void keepsAtMostMaxInFlightBatchesEmbedding() throws Exception {
+        try (EmbeddingPipeline.Session session = pipeline.open((batch, embeddings) -> {
+        })) {
+            for (int batch = 0; batch < 12; batch++) {
+                session.submit(List.of(segment(batch, 20, batch)));
+            }
+            session.finish();
+        }
+
+        assertThat(model.maxConcurrent.get()).isBetween(2, 3);
+    }
+
+    @Test
+    void surfacesEmbeddingFailuresToTheCaller() {
+        assertThatThrownBy(() -> {
+            try (EmbeddingPipeline.Session session = pipeline.open((batch, embeddings) -> {
+            })) {
+                session.submit(List.of(TextSegment.from("fail")));
+                session.finish();
+            }
+        }).isInstanceOf(IllegalStateException.class).hasMessage("embedding failed");
+    }
+
+    private static TextSegment segment(int batch, int delayMillis, int value) {
+        return TextSegment.from("segment " + batch + " " + delayMillis + ":" + value);
+    }
+
+    /**
+     * Local stand-in for the embedding provider: sleeps for the delay named in the first segment
+     * and returns the number after the colon of every segment as a one-dimensional vector.
+     */
+    private static final class StubEmbeddingModel implements EmbeddingModel {
+
+        private final AtomicInteger concurrent = new AtomicInteger();
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+            if (textSegments.get(0).text().equals("fail")) {
+                throw new IllegalStateException("embedding failed");
+            }
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(Long.parseLong(textSegments.get(0).text().split("[ :]")[2]));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                concurrent.decrementAndGet();
+            }
+            return Response.from(textSegments.stream()
+                    .map(segment -> Embedding.from(new float[]{Float.parseFloat(segment.text().split(":")[1])}))
+                    .toList());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.intellidesk.rag.service;
+
+import com.intellidesk.rag.store.KeywordIndex;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class HybridRetrieverTest {
+
+    private final HybridRetriever retriever = new HybridRetriever(null, true, 60, 3);
+
+    @AfterEach
+    void shutdown() {
+        retriever.shutdown();
+    }
+
+    @Test
+    void ranksSegmentsFoundByBothLegsFirst() {
+        List<EmbeddingMatch<TextSegment>> vector = List.of(vectorMatch("a", 0.9), vectorMatch("b", 0.85),
+                vectorMatch("c", 0.8));
+        List<KeywordIndex.Match> keyword = List.of(keywordMatch("c", 7.0), keywordMatch("d", 5.0));
+
+        List<RetrievedSegment> fused = retriever.fuse(vector, keyword, 4);
+
+        // c: 1/63 + 1/61, a: 1/61, b: 1/62, d: 1/62 (ties keep vector order)
+        assertThat(fused).extracting(RetrievedSegment::id).containsExactly("c", "a", "b", "d");
+        assertThat(fused.get(0).rank()).isEqualTo(1.0 / 63 + 1.0 / 61);
+    }
+
+    @Test
+    void keepsEachLegsScoresInsteadOfInventingASimilarity() {
+        List<RetrievedSegment> fused = retriever.fuse(List.of(vectorMatch("a", 0.9), vectorMatch("c", 0.8)),
+                List.of(keywordMatch("c", 7.0), keywordMatch("d", 5.0)), 3);
+
+        assertThat(fused).extracting(RetrievedSegment::id).containsExactly("c", "a", "d");
+        assertThat(fused.get(0).similarity()).isEqualTo(0.8);
+        assertThat(fused.get(0).keywordScore()).isEqualTo(7.0);
+        assertThat(fused.get(1).keywordScore()).isNull();
+        assertThat(fused.get(2).hasSimilarity()).isFalse();
+        assertThat(fused.get(2).keywordScore()).isEqualTo(5.0);
+        // Only real vector similarities bound cache invalidation, (0.8 * 2) - 1
+        assertThat(RetrievedSegment.weakestCosine(fused)).isCloseTo(0.6, within(1e-9));
+        assertThat(RetrievedSegment.weakestCosine(fused.subList(2, 3))).isEqualTo(-1);
+    }
+
+    @Test
+    void keepsTheVectorRankingWhenTheKeywordLegFoundNothing() {
+        List<EmbeddingMatch<TextSegment>> vector = List.of(vectorMatch("a", 0.9), vectorMatch("b", 0.85),
+                vectorMatch("c", 0.8));
+
+        assertThat(retriever.fuse(vector, List.of(), 2)).extracting(RetrievedSegment::id)
+                .containsExactly("a", "b");
+    }
+
+    private static EmbeddingMatch<TextSegment> vectorMatch(String id, double score) {
+        return new EmbeddingMatch<>(score, id, null, TextSegment.from("segment " + id));
+    }
+
+    private static KeywordIndex.Match keywordMatch(String id, double score) {
+        return new KeywordIndex.Match(id, TextSegment.from("segment " + id), score);
+    }
+}
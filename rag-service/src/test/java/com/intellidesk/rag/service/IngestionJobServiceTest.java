@@ -0,0 +1,115 @@
+package com.intellidesk.rag.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intellidesk.rag.entity.IngestionJob;
+import com.intellidesk.rag.entity.IngestionJobStatus;
+import com.intellidesk.rag.exception.IngestionJobNotFoundException;
+import com.intellidesk.rag.repository.IngestionJobRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IngestionJobServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private IngestionJobService service;
+    private final List<String> ran = new CopyOnWriteArrayList<>();
+    private final List<String> discarded = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        IngestionJobRepository repository = new IngestionJobRepository(new ObjectMapper().findAndRegisterModules());
+        Field field = IngestionJobRepository.class.getDeclaredField("uploadDir");
+        field.setAccessible(true);
+        field.set(repository, uploadDir.toString());
+        Method load = IngestionJobRepository.class.getDeclaredMethod("load");
+        load.setAccessible(true);
+        load.invoke(repository);
+        service = new IngestionJobService(repository, 1, 10, 72);
+    }
+
+    @AfterEach
+    void shutdown() {
+        service.shutdown();
+    }
+
+    @Test
+    void discardsAJobCancelledWhileQueued() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        service.submit(job("busy"), job -> {
+            started.countDown();
+            release.await();
+        }, job -> discarded.add(job.getId()));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        service.submit(job("queued"), job -> ran.add(job.getId()), job -> discarded.add(job.getId()));
+
+        IngestionJob cancelled = service.cancel("queued", null);
+        release.countDown();
+
+        assertThat(cancelled.getStatus()).isEqualTo(IngestionJobStatus.CANCELLED);
+        assertThat(discarded).containsExactly("queued");
+        assertThat(ran).isEmpty();
+    }
+
+    @Test
+    void leavesCancellingRunningWorkToTheWork() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        service.submit(job("running"), job -> {
+            started.countDown();
+            try {
+                while (true) {
+                    service.checkCancelled(job);
+                    Thread.sleep(5);
+                }
+            } finally {
+                finished.countDown();
+            }
+        }, job -> discarded.add(job.getId()));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        service.cancel("running", null);
+
+        assertThat(finished.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(discarded).isEmpty();
+    }
+
+    @Test
+    void hidesAnotherTenantsJob() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        IngestionJob job = job("acme-job");
+        job.setTenantId("acme");
+        service.submit(job, work -> release.await(), discarded -> {
+        });
+
+        try {
+            assertThatThrownBy(() -> service.getJob("acme-job", "globex"))
+                    .isInstanceOf(IngestionJobNotFoundException.class);
+            assertThatThrownBy(() -> service.cancel("acme-job", "globex"))
+                    .isInstanceOf(IngestionJobNotFoundException.class);
+            assertThat(service.getJob("acme-job", "acme").getStatus()).isNotEqualTo(IngestionJobStatus.CANCELLED);
+            assertThat(service.getJob("acme-job", null).getId()).isEqualTo("acme-job");
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private static IngestionJob job(String id) {
+        return IngestionJob.builder().id(id).documentId("doc-" + id).filename(id + ".txt").build();
+    }
+}
@@ -0,0 +1,143 @@
+package com.intellidesk.rag.service;
+
+import com.intellidesk.rag.store.HnswEmbeddingStore;
+import com.intellidesk.rag.store.SegmentFilter;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MultiQueryRetrieverTest {
+
+    private static final Embedding QUESTION = Embedding.from(new float[]{1, 0});
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private SlowVariantStore store;
+    private MultiQueryRetriever retriever;
+
+    @AfterEach
+    void shutdown() throws IOException {
+        retriever.shutdown();
+        store.close();
+    }
+
+    @Test
+    void returnsTheOriginalMatchesAndInterruptsLegsPastTheDeadline() throws Exception {
+        store = new SlowVariantStore(directory, true);
+        retriever = retriever(50, 4, 64);
+
+        long start = System.nanoTime();
+        List<EmbeddingMatch<TextSegment>> matches = retriever.search(expansion(50, "first", "second"), QUESTION,
+                3, 0, null);
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2_000);
+        assertThat(matches).extracting(EmbeddingMatch::embeddingId).containsExactly("original");
+        assertThat(store.interrupted.await(2, TimeUnit.SECONDS)).as("variant legs interrupted").isTrue();
+        assertThat(legs("timed_out")).isEqualTo(2);
+    }
+
+    @Test
+    void searchesTheOriginalQuestionBeforeWaitingForRewrites() throws Exception {
+        store = new SlowVariantStore(directory, false);
+        retriever = retriever(300, 4, 64);
+        MultiQueryRetriever.Expansion expansion = new MultiQueryRetriever.Expansion("question", List.of("first"),
+                new CompletableFuture<>(), System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300));
+
+        long start = System.nanoTime();
+        List<EmbeddingMatch<TextSegment>> matches = retriever.search(expansion, QUESTION, 3, 0, null);
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(store.originalSearched - start)).isLessThan(150);
+        assertThat(matches).extracting(EmbeddingMatch::embeddingId).containsExactly("original", "variant");
+    }
+
+    @Test
+    void dropsVariantLegsThePoolCannotQueue() throws Exception {
+        store = new SlowVariantStore(directory, false);
+        // One thread busy with the embedding task and a one-slot queue: only one leg fits
+        retriever = retriever(2_000, 1, 1);
+
+        List<EmbeddingMatch<TextSegment>> matches = retriever.search(expansion(2_000, "first", "second", "third"),
+                QUESTION, 5, 0, null);
+
+        assertThat(matches).extracting(EmbeddingMatch::embeddingId).containsExactly("original", "variant");
+        assertThat(legs("rejected")).isEqualTo(2);
+        assertThat(legs("completed")).isEqualTo(2);
+    }
+
+    private MultiQueryRetriever retriever(long deadlineMs, int threads, int queueCapacity) {
+        return new MultiQueryRetriever(store, new VariantEmbeddingModel(), null, meterRegistry,
+                true, 3, 0, deadlineMs, threads, 1, queueCapacity);
+    }
+
+    private double legs(String result) {
+        return meterRegistry.get("rag.retrieval.multi-query.legs").tag("result", result).counter().count();
+    }
+
+    private static MultiQueryRetriever.Expansion expansion(long deadlineMs, String... variants) {
+        return new MultiQueryRetriever.Expansion("question", List.of(variants),
+                CompletableFuture.completedFuture(List.of()),
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMs));
+    }
+
+    /**
+     * Embeds every variant away from the question's vector.
+     */
+    private static final class VariantEmbeddingModel implements EmbeddingModel {
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+            return Response.from(textSegments.stream().map(segment -> Embedding.from(new float[]{0, 1})).toList());
+        }
+    }
+
+    /**
+     * Answers the question's vector at once; variant searches either hang until interrupted or
+     * answer with a single match.
+     */
+    private static final class SlowVariantStore extends HnswEmbeddingStore {
+
+        private final boolean hang;
+        private final CountDownLatch interrupted = new CountDownLatch(2);
+        private volatile long originalSearched;
+
+        SlowVariantStore(Path directory, boolean hang) throws IOException {
+            super(directory, 2, 16, 200, 64, 10_000, "none", 4, 0.9, 0);
+            this.hang = hang;
+        }
+
+        @Override
+        public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults,
+                                                              double minScore, SegmentFilter filter) {
+            if (referenceEmbedding.vector()[0] == 1) {
+                originalSearched = System.nanoTime();
+                return List.of(new EmbeddingMatch<>(0.9, "original", referenceEmbedding, TextSegment.from("a")));
+            }
+            if (hang) {
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return List.of();
+            }
+            return List.of(new EmbeddingMatch<>(0.5, "variant", referenceEmbedding, TextSegment.from("b")));
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.intellidesk.rag.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intellidesk.rag.dto.VectorSnapshotReport;
+import com.intellidesk.rag.entity.DocumentRecord;
+import com.intellidesk.rag.entity.DocumentSegment;
+import com.intellidesk.rag.repository.DocumentRepository;
+import com.intellidesk.rag.store.HnswEmbeddingStore;
+import com.intellidesk.rag.store.KeywordIndex;
+import com.intellidesk.rag.store.SegmentFilter;
+import com.intellidesk.rag.store.StoredSegment;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Exports a populated store and imports the snapshot into an empty environment.
+ */
+class VectorSnapshotServiceTest {
+
+    private static final String A = "a".repeat(64);
+    private static final String B = "b".repeat(64);
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final List<Closeable> opened = new ArrayList<>();
+
+    @AfterEach
+    void close() throws IOException {
+        for (Closeable closeable : opened) {
+            closeable.close();
+        }
+    }
+
+    @Test
+    void importsWhatWasExportedAndSkipsItTheSecondTime() throws Exception {
+        Environment source = environment("source");
+        List<TextSegment> segments = List.of(segment("refunds take five days"), segment("invoices are monthly"));
+        List<String> ids = source.store.addAll(List.of(Embedding.from(new float[]{1, 0}),
+                Embedding.from(new float[]{0, 1})), segments);
+        source.keywordIndex.addAll(ids, segments);
+        try (DocumentRepository.ManifestWriter manifest = source.repository.openManifest("doc", "job")) {
+            manifest.append(new DocumentSegment(A, ids.get(0)));
+            manifest.append(new DocumentSegment(B, ids.get(1)));
+        }
+        source.repository.save(DocumentRecord.builder().documentId("doc").jobId("job").filename("faq.txt")
+                .segmentCount(2).build());
+        Path snapshot = directory.resolve("export.snapshot");
+        source.snapshots.exportSnapshot(snapshot);
+
+        Environment target = environment("target");
+        VectorSnapshotReport first = target.snapshots.importSnapshot(snapshot);
+        VectorSnapshotReport second = target.snapshots.importSnapshot(snapshot);
+
+        assertThat(first.getSegmentsImported()).isEqualTo(2);
+        assertThat(first.getDocumentsImported()).isEqualTo(1);
+        assertThat(second.getSegmentsImported()).isZero();
+        assertThat(second.getSegmentsSkipped()).isEqualTo(2);
+        assertThat(second.getDocumentsImported()).isZero();
+
+        List<StoredSegment> imported = new ArrayList<>();
+        target.store.forEachBatch(10, imported::addAll);
+        assertThat(imported).extracting(StoredSegment::id).containsExactlyInAnyOrderElementsOf(ids);
+        StoredSegment refunds = imported.stream().filter(segment -> segment.id().equals(ids.get(0))).findFirst()
+                .orElseThrow();
+        assertThat(refunds.segment().text()).isEqualTo("refunds take five days");
+        assertThat(refunds.segment().metadata().get(SegmentFilter.DOCUMENT_ID)).isEqualTo("doc");
+        assertThat(refunds.embedding().vector()).containsExactly(1, 0);
+        assertThat(target.keywordIndex.search("invoices", 5)).extracting(KeywordIndex.Match::id)
+                .containsExactly(ids.get(1));
+
+        DocumentRecord record = target.repository.findById("doc").orElseThrow();
+        assertThat(record.getFilename()).isEqualTo("faq.txt");
+        assertThat(record.getSegmentCount()).isEqualTo(2);
+        try (Stream<DocumentSegment> manifest = target.repository.streamManifest(record)) {
+            assertThat(manifest.toList()).containsExactly(
+                    new DocumentSegment(A, ids.get(0)), new DocumentSegment(B, ids.get(1)));
+        }
+    }
+
+    @Test
+    void rejectsASnapshotOfAnotherDimensionBeforeWritingAnything() throws Exception {
+        Environment source = environment("source", 2);
+        source.store.addAll(List.of(Embedding.from(new float[]{1, 0})), List.of(segment("refunds take five days")));
+        source.repository.save(DocumentRecord.builder().documentId("doc").jobId("job").segmentCount(1).build());
+        Path snapshot = directory.resolve("export.snapshot");
+        source.snapshots.exportSnapshot(snapshot);
+
+        Environment target = environment("target", 3);
+
+        assertThatThrownBy(() -> target.snapshots.importSnapshot(snapshot))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("2-dimensional");
+        assertThat(target.repository.findAll()).isEmpty();
+        List<StoredSegment> imported = new ArrayList<>();
+        target.store.forEachBatch(10, imported::addAll);
+        assertThat(imported).isEmpty();
+    }
+
+    private static TextSegment segment(String text) {
+        return TextSegment.from(text, Metadata.from(Map.of(SegmentFilter.DOCUMENT_ID, "doc")));
+    }
+
+    private Environment environment(String name) throws Exception {
+        return environment(name, 2);
+    }
+
+    private Environment environment(String name, int dimension) throws Exception {
+        Path root = directory.resolve(name);
+        HnswEmbeddingStore store = new HnswEmbeddingStore(root.resolve("vectors"), dimension, 16, 200, 64, 10_000, "none",
+                4, 0.9, 0);
+        opened.add(store::close);
+        KeywordIndex keywordIndex = new KeywordIndex(root.resolve("keywords"), 1.2, 0.75);
+        opened.add(keywordIndex::close);
+
+        DocumentRepository repository = new DocumentRepository(objectMapper);
+        Field uploadDir = DocumentRepository.class.getDeclaredField("uploadDir");
+        uploadDir.setAccessible(true);
+        uploadDir.set(repository, root.toString());
+        Method load = DocumentRepository.class.getDeclaredMethod("load");
+        load.setAccessible(true);
+        load.invoke(repository);
+
+        VectorSnapshotService snapshots = new VectorSnapshotService(store, keywordIndex, repository, event -> {
+        }, objectMapper, 1);
+        return new Environment(store, keywordIndex, repository, snapshots);
+    }
+
+    private record Environment(HnswEmbeddingStore store, KeywordIndex keywordIndex, DocumentRepository repository,
+                               VectorSnapshotService snapshots) {
+    }
+}
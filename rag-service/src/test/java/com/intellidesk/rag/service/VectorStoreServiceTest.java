@@ -0,0 +1,45 @@
+package com.intellidesk.rag.service;
+
+import com.intellidesk.rag.dto.KeywordIndexReport;
+import com.intellidesk.rag.store.HnswEmbeddingStore;
+import com.intellidesk.rag.store.KeywordIndex;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VectorStoreServiceTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void rebuildAddsStoredSegmentsTheKeywordIndexIsMissing() throws IOException {
+        try (HnswEmbeddingStore store = new HnswEmbeddingStore(directory.resolve("vectors"), 2, 16, 100, 64, 1000,
+                "none", 4, 0.9, 0);
+             KeywordIndex keywordIndex = new KeywordIndex(directory.resolve("keywords"), 1.2, 0.75)) {
+            // Ingested before hybrid search existed, so only the last one reached the keyword index
+            List<String> ids = store.addAll(
+                    List.of(Embedding.from(new float[]{1, 0}), Embedding.from(new float[]{0, 1}),
+                            Embedding.from(new float[]{1, 1})),
+                    List.of(TextSegment.from("vacation policy"), TextSegment.from("travel policy"),
+                            TextSegment.from("expense policy")));
+            keywordIndex.addAll(ids.subList(2, 3), List.of(TextSegment.from("expense policy")));
+            VectorStoreService service = new VectorStoreService(store, keywordIndex);
+
+            KeywordIndexReport report = service.rebuildKeywordIndex();
+
+            assertThat(report.getSegments()).isEqualTo(3);
+            assertThat(report.getSegmentsAdded()).isEqualTo(2);
+            assertThat(report.getSegmentsSkipped()).isEqualTo(1);
+            assertThat(keywordIndex.search("vacation", 5)).extracting(KeywordIndex.Match::id).containsExactly(ids.get(0));
+            assertThat(service.rebuildKeywordIndex().getSegmentsAdded()).isZero();
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.intellidesk.rag.store;
+
+import com.intellidesk.rag.dto.VectorSearchReport;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HnswEmbeddingStoreTest {
+
+    private static final int DIMENSION = 32;
+    private static final int K = 10;
+
+    @TempDir
+    Path directory;
+
+    private final Random random = new Random(7);
+
+    @Test
+    void findsTheExactNearestNeighboursForMostQueries() throws IOException {
+        List<float[]> vectors = randomVectors(2000);
+        try (HnswEmbeddingStore store = store("none")) {
+            List<String> ids = store.addAll(embeddings(vectors), segments(vectors.size(), "doc"));
+
+            assertThat(recall(store, ids, vectors, new HashSet<>(ids))).isGreaterThanOrEqualTo(0.95);
+        }
+    }
+
+    @Test
+    void keepsReturningKLiveResultsAfterMostSegmentsAreRemoved() throws IOException {
+        List<float[]> vectors = randomVectors(2000);
+        try (HnswEmbeddingStore store = store("none")) {
+            List<String> ids = store.addAll(embeddings(vectors), segments(vectors.size(), "doc"));
+            // Remove nine out of ten, the way repeated re-versioning does
+            List<String> removed = IntStream.range(0, ids.size()).filter(i -> i % 10 != 0).mapToObj(ids::get).toList();
+            store.removeAll(removed);
+            Set<String> live = new HashSet<>(ids);
+            removed.forEach(live::remove);
+
+            for (int q = 0; q < 20; q++) {
+                List<EmbeddingMatch<TextSegment>> matches = store.findRelevant(Embedding.from(randomVector()), K, -1);
+                assertThat(matches).hasSize(K);
+                assertThat(matches).allMatch(match -> live.contains(match.embeddingId()));
+            }
+            assertThat(recall(store, ids, vectors, live)).isGreaterThanOrEqualTo(0.95);
+        }
+    }
+
+    @Test
+    void restrictsFilteredSearchesToTheRequestedDocument() throws IOException {
+        List<float[]> vectors = randomVectors(600);
+        try (HnswEmbeddingStore store = store("none")) {
+            store.addAll(embeddings(vectors.subList(0, 300)), segments(300, "a"));
+            store.addAll(embeddings(vectors.subList(300, 600)), segments(300, "b"));
+
+            List<EmbeddingMatch<TextSegment>> matches = store.findRelevant(Embedding.from(randomVector()), K, -1,
+                    SegmentFilter.of(List.of("b"), null));
+
+            assertThat(matches).hasSize(K);
+            assertThat(matches).allMatch(match -> "b".equals(match.embedded().metadata().get(SegmentFilter.DOCUMENT_ID)));
+        }
+    }
+
+    @Test
+    void replaysTheJournalOnRestart() throws IOException {
+        List<float[]> vectors = randomVectors(500);
+        List<String> ids;
+        List<String> removed;
+        float[] query = randomVector();
+        List<String> before;
+        try (HnswEmbeddingStore store = store("none")) {
+            ids = store.addAll(embeddings(vectors), segments(vectors.size(), "doc"));
+            removed = ids.subList(0, 100);
+            store.removeAll(removed);
+            before = matchIds(store.findRelevant(Embedding.from(query), K, -1));
+        }
+
+        try (HnswEmbeddingStore reopened = store("none")) {
+            assertThat(reopened.size()).isEqualTo(400);
+            List<EmbeddingMatch<TextSegment>> after = reopened.findRelevant(Embedding.from(query), K, -1);
+            assertThat(matchIds(after)).isEqualTo(before);
+            assertThat(after).noneMatch(match -> removed.contains(match.embeddingId()));
+            assertThat(after.get(0).embedded().text()).startsWith("segment ");
+        }
+    }
+
+    @Test
+    void rebuildsTheGraphFromTheJournalWhenTheSnapshotIsMissingOrTorn() throws IOException {
+        List<float[]> vectors = randomVectors(300);
+        List<String> ids;
+        try (HnswEmbeddingStore store = store("none")) {
+            ids = store.addAll(embeddings(vectors), segments(vectors.size(), "doc"));
+        }
+        Files.delete(directory.resolve("graph.bin"));
+        // A record torn by a crash at the end of the journal
+        Files.write(directory.resolve("segments.log"), new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (HnswEmbeddingStore reopened = store("none")) {
+            assertThat(reopened.size()).isEqualTo(300);
+            assertThat(recall(reopened, ids, vectors, new HashSet<>(ids))).isGreaterThanOrEqualTo(0.95);
+            // The torn tail was truncated, so new records append cleanly
+            reopened.addAll(embeddings(randomVectors(10)), segments(10, "doc"));
+        }
+        try (HnswEmbeddingStore reopened = store("none")) {
+            assertThat(reopened.size()).isEqualTo(310);
+        }
+    }
+
+    @Test
+    void compactsTombstonesOnceTheyOutnumberLiveSegments() throws IOException {
+        int removedCount = HnswEmbeddingStore.COMPACTION_MIN_TOMBSTONES + 100;
+        List<float[]> vectors = randomVectors(removedCount + 300);
+        List<String> ids;
+        Set<String> live;
+        long journalSize;
+        try (HnswEmbeddingStore store = store("none")) {
+            ids = store.addAll(embeddings(vectors), segments(vectors.size(), "doc"));
+            journalSize = Files.size(directory.resolve("segments.log"));
+            store.removeAll(ids.subList(0, removedCount));
+            live = new HashSet<>(ids.subList(removedCount, ids.size()));
+
+            assertThat(Files.size(directory.resolve("segments.log"))).isLessThan(journalSize / 2);
+            assertThat(store.size()).isEqualTo(300);
+            assertThat(recall(store, ids, vectors, live)).isGreaterThanOrEqualTo(0.95);
+            assertThat(store.findRelevant(Embedding.from(randomVector()), K, -1, SegmentFilter.of(List.of("doc"), null)))
+                    .hasSize(K).allMatch(match -> live.contains(match.embeddingId()));
+        }
+        // Files of a compaction that crashed before committing are discarded
+        Files.write(directory.resolve("vectors.bin.compact"), new byte[]{1, 2, 3});
+        Files.write(directory.resolve("segments.log.compact"), new byte[]{1, 2, 3});
+
+        try (HnswEmbeddingStore reopened = store("none")) {
+            assertThat(reopened.size()).isEqualTo(300);
+            assertThat(recall(reopened, ids, vectors, live)).isGreaterThanOrEqualTo(0.95);
+            assertThat(directory.resolve("vectors.bin.compact")).doesNotExist();
+            assertThat(directory.resolve("segments.log.compact")).doesNotExist();
+        }
+    }
+
+    @Test
+    void quantizedSearchesStayCloseToExactSearchAfterRescoring() throws IOException {
+        // Binary codes need enough dimensions to rank usefully, as with real embeddings
+        int dimension = 256;
+        List<float[]> vectors = randomVectors(1000, dimension);
+        for (String quantization : List.of("int8", "binary")) {
+            try (HnswEmbeddingStore store = new HnswEmbeddingStore(directory.resolve(quantization), dimension, 16, 100,
+                    64, 10_000, quantization, 1, 0.9, 0)) {
+                List<String> ids = store.addAll(embeddings(vectors), segments(vectors.size(), "doc"));
+                store.removeAll(ids.subList(0, 500));
+                Set<String> live = new HashSet<>(ids.subList(500, ids.size()));
+
+                VectorSearchReport report = store.calibrate(50, K);
+
+                assertThat(report.isMeetsRecallTarget()).as(quantization).isTrue();
+                assertThat(report.getLiveVectors()).isEqualTo(500);
+                assertThat(recall(store, ids, vectors, live)).as(quantization).isGreaterThanOrEqualTo(0.8);
+            }
+        }
+    }
+
+    private HnswEmbeddingStore store(String quantization) throws IOException {
+        return new HnswEmbeddingStore(directory, DIMENSION, 16, 200, 64, 10_000, quantization, 4, 0.9, 0);
+    }
+
+    /**
+     * Average overlap of the store's top {@value #K} with the exact top {@value #K} of the live
+     * vectors, over random queries.
+     */
+    private double recall(HnswEmbeddingStore store, List<String> ids, List<float[]> vectors, Set<String> live) {
+        int hits = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = Vectors.normalize(randomVector(vectors.get(0).length));
+            List<String> truth = IntStream.range(0, ids.size())
+                    .filter(i -> live.contains(ids.get(i)))
+                    .boxed()
+                    .sorted(Comparator.comparingDouble((Integer i) -> Vectors.dot(query, Vectors.normalize(vectors.get(i))))
+                            .reversed())
+                    .limit(K)
+                    .map(ids::get)
+                    .toList();
+            List<String> found = matchIds(store.findRelevant(Embedding.from(query), K, -1));
+            hits += (int) found.stream().filter(truth::contains).count();
+        }
+        return hits / (double) (queries * K);
+    }
+
+    private static List<String> matchIds(List<EmbeddingMatch<TextSegment>> matches) {
+        return matches.stream().map(EmbeddingMatch::embeddingId).toList();
+    }
+
+    private List<float[]> randomVectors(int count) {
+        return randomVectors(count, DIMENSION);
+    }
+
+    private List<float[]> randomVectors(int count, int dimension) {
+        List<float[]> vectors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            vectors.add(randomVector(dimension));
+        }
+        return vectors;
+    }
+
+    private float[] randomVector() {
+        return randomVector(DIMENSION);
+    }
+
+    private float[] randomVector(int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static List<Embedding> embeddings(List<float[]> vectors) {
+        return vectors.stream().map(Embedding::from).toList();
+    }
+
+    private static List<TextSegment> segments(int count, String documentId) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> TextSegment.from("segment " + i, Metadata.from(SegmentFilter.DOCUMENT_ID, documentId)))
+                .toList();
+    }
+}
@@ -0,0 +1,128 @@
+package com.intellidesk.rag.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeywordIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void ranksRareTermsAndShortSegmentsHigher() throws IOException {
+        try (KeywordIndex index = new KeywordIndex(directory, 1.2, 0.75)) {
+            index.addAll(List.of("policy", "handbook", "long"), List.of(
+                    segment("Parental leave policy: twelve weeks of paid leave"),
+                    segment("The handbook covers leave, travel and expenses"),
+                    segment("Leave requests go to your manager. " + "Unrelated filler text. ".repeat(30) + "leave")));
+
+            List<KeywordIndex.Match> matches = index.search("parental leave", 3);
+
+            assertThat(matches).extracting(KeywordIndex.Match::id).containsExactly("policy", "handbook", "long");
+            assertThat(matches.get(0).score()).isGreaterThan(matches.get(1).score());
+        }
+    }
+
+    @Test
+    void matchesIdentifiersWholeAndByTheirParts() throws IOException {
+        try (KeywordIndex index = new KeywordIndex(directory, 1.2, 0.75)) {
+            index.addAll(List.of("employee", "other"), List.of(
+                    segment("Record EMP-10442 was updated on Monday"),
+                    segment("Record EMP-20001 lists 10442 as a badge number")));
+
+            assertThat(index.search("EMP-10442", 2).get(0).id()).isEqualTo("employee");
+            assertThat(KeywordIndex.tokenize("POL/2023/17")).containsExactly("pol/2023/17", "pol", "2023", "17");
+        }
+    }
+
+    @Test
+    void skipsRemovedSegmentsAndRestrictsToTheFilter() throws IOException {
+        try (KeywordIndex index = new KeywordIndex(directory, 1.2, 0.75)) {
+            index.addAll(List.of("a1", "a2", "b1"), List.of(
+                    segment("expense report approval", "a"),
+                    segment("expense limits for travel", "a"),
+                    segment("expense report template", "b")));
+            index.removeAll(List.of("a1"));
+
+            assertThat(index.search("expense report", 5)).extracting(KeywordIndex.Match::id)
+                    .containsExactlyInAnyOrder("b1", "a2");
+            assertThat(index.search("expense report", 5, SegmentFilter.of(List.of("a"), null)))
+                    .extracting(KeywordIndex.Match::id).containsExactly("a2");
+            assertThat(index.size()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void replaysTheJournalOnRestart() throws IOException {
+        try (KeywordIndex index = new KeywordIndex(directory, 1.2, 0.75)) {
+            index.addAll(List.of("a", "b"), List.of(segment("vacation days"), segment("sick days")));
+            index.removeAll(List.of("b"));
+        }
+
+        try (KeywordIndex reopened = new KeywordIndex(directory, 1.2, 0.75)) {
+            assertThat(reopened.size()).isEqualTo(1);
+            assertThat(reopened.search("days", 5)).extracting(KeywordIndex.Match::id).containsExactly("a");
+        }
+    }
+
+    @Test
+    void addsOnlyMissingSegmentsWhenReplayingTheStore() throws IOException {
+        try (KeywordIndex index = new KeywordIndex(directory, 1.2, 0.75)) {
+            index.addAll(List.of("a"), List.of(segment("vacation days")));
+
+            int added = index.addMissing(List.of("a", "b", "bare"),
+                    Arrays.asList(segment("vacation days"), segment("sick days"), null));
+            int again = index.addMissing(List.of("a", "b"), List.of(segment("vacation days"), segment("sick days")));
+
+            assertThat(added).isEqualTo(1);
+            assertThat(again).isZero();
+            assertThat(index.size()).isEqualTo(2);
+            assertThat(index.search("vacation", 5)).hasSize(1);
+        }
+    }
+
+    @Test
+    void compactsTheJournalOnceRemovedSegmentsOutnumberLiveOnes() throws IOException {
+        int count = 2 * KeywordIndex.COMPACTION_MIN_TOMBSTONES;
+        List<String> ids = IntStream.range(0, count).mapToObj(i -> "s" + i).toList();
+        Path journal = directory.resolve("segments.log");
+        long fullSize;
+        try (KeywordIndex index = new KeywordIndex(directory, 1.2, 0.75)) {
+            index.addAll(ids, ids.stream().map(id -> segment("travel policy " + id)).toList());
+            fullSize = Files.size(journal);
+
+            index.removeAll(ids.subList(0, count - 10));
+            index.addAll(List.of("late"), List.of(segment("travel policy late")));
+
+            assertThat(Files.size(journal)).isLessThan(fullSize / 10);
+            assertThat(index.search("travel", count)).hasSize(11);
+        }
+
+        try (KeywordIndex reopened = new KeywordIndex(directory, 1.2, 0.75)) {
+            assertThat(reopened.size()).isEqualTo(11);
+            assertThat(reopened.search(ids.get(count - 1), 5)).extracting(KeywordIndex.Match::id)
+                    .containsExactly(ids.get(count - 1));
+            assertThat(reopened.search("late", 5)).extracting(KeywordIndex.Match::id).containsExactly("late");
+            assertThat(reopened.search(ids.get(0), 5)).isEmpty();
+        }
+    }
+
+    private static TextSegment segment(String text) {
+        return TextSegment.from(text);
+    }
+
+    private static TextSegment segment(String text, String documentId) {
+        return TextSegment.from(text, Metadata.from(SegmentFilter.DOCUMENT_ID, documentId));
+    }
+}
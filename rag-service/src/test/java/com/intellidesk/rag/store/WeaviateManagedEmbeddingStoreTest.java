@@ -0,0 +1,153 @@
+package com.intellidesk.rag.store;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the store against a stub of the Weaviate endpoints it uses.
+ */
+class WeaviateManagedEmbeddingStoreTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // Last request body per path, and canned responses
+    private final Map<String, String> requests = new ConcurrentHashMap<>();
+    private final Map<String, String> responses = new ConcurrentHashMap<>();
+    private HttpServer server;
+    private WeaviateManagedEmbeddingStore store;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        store = new WeaviateManagedEmbeddingStore("http", "localhost:" + server.getAddress().getPort(), "Default", 2);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void writesTextAndMetadataAsTopLevelProperties() throws IOException {
+        responses.put("POST /v1/batch/objects", "[{\"id\":\"ignored\",\"result\":{}}]");
+        TextSegment segment = TextSegment.from("hello",
+                Metadata.from(Map.of(SegmentFilter.DOCUMENT_ID, "doc-1", SegmentFilter.TENANT_ID, "acme")));
+
+        List<String> ids = store.addAll(List.of(Embedding.from(new float[]{1, 0})), List.of(segment));
+
+        JsonNode object = objectMapper.readTree(requests.get("POST /v1/batch/objects")).path("objects").get(0);
+        assertThat(object.path("id").asText()).isEqualTo(ids.get(0));
+        assertThat(object.path("properties").path("text").asText()).isEqualTo("hello");
+        assertThat(object.path("properties").path(SegmentFilter.DOCUMENT_ID).asText()).isEqualTo("doc-1");
+        assertThat(object.path("properties").path(SegmentFilter.TENANT_ID).asText()).isEqualTo("acme");
+    }
+
+    @Test
+    void passesTheFilterToWeaviateInsteadOfFilteringAfterwards() throws IOException {
+        responses.put("GET /v1/schema/Default", """
+                {"class":"Default","properties":[
+                 {"name":"text","dataType":["text"]},
+                 {"name":"document_id","dataType":["text"]},
+                 {"name":"tenant_id","dataType":["text"]},
+                 {"name":"_metadata","dataType":["object"]}]}""");
+        responses.put("POST /v1/graphql", """
+                {"data":{"Get":{"Default":[{"text":"hello","document_id":"doc-1","tenant_id":"acme","_metadata":null,
+                 "_additional":{"id":"id-1","certainty":0.9,"vector":[1.0,0.0]}}]}}}""");
+
+        List<EmbeddingMatch<TextSegment>> matches = store.findRelevant(Embedding.from(new float[]{1, 0}), 3, 0.5,
+                SegmentFilter.of(List.of("doc-1"), "acme"));
+
+        String query = objectMapper.readTree(requests.get("POST /v1/graphql")).path("query").asText();
+        assertThat(query).contains("limit: 3", "certainty: 0.5",
+                "where: {operator: And, operands: [{path: [\"document_id\"], operator: Equal, valueText: \"doc-1\"}, "
+                        + "{path: [\"tenant_id\"], operator: Equal, valueText: \"acme\"}]}");
+        // The nested object of the old layout cannot be selected without a sub-selection
+        assertThat(query).doesNotContain("_metadata");
+        assertThat(matches).hasSize(1);
+        EmbeddingMatch<TextSegment> match = matches.get(0);
+        assertThat(match.embeddingId()).isEqualTo("id-1");
+        assertThat(match.score()).isEqualTo(0.9);
+        assertThat(match.embedded().text()).isEqualTo("hello");
+        assertThat(match.embedded().metadata().get(SegmentFilter.DOCUMENT_ID)).isEqualTo("doc-1");
+        assertThat(match.embedded().metadata().get(SegmentFilter.TENANT_ID)).isEqualTo("acme");
+    }
+
+    @Test
+    void importsOnlyTheIdsTheClassDoesNotHoldYet() throws IOException {
+        String present = UUID.randomUUID().toString();
+        String missing = UUID.randomUUID().toString();
+        responses.put("GET /v1/schema/Default", "{\"class\":\"Default\",\"properties\":[{\"name\":\"text\",\"dataType\":[\"text\"]}]}");
+        responses.put("POST /v1/graphql", "{\"data\":{\"Get\":{\"Default\":[{\"_additional\":{\"id\":\"" + present + "\"}}]}}}");
+        responses.put("POST /v1/batch/objects", "[{\"id\":\"" + missing + "\",\"result\":{}}]");
+        TextSegment segment = TextSegment.from("hello", Metadata.from(Map.of(SegmentFilter.DOCUMENT_ID, "doc-1")));
+
+        List<String> imported = store.importAll(List.of(
+                new StoredSegment(present, Embedding.from(new float[]{1, 0}), segment),
+                new StoredSegment(missing, Embedding.from(new float[]{0, 1}), segment)));
+
+        assertThat(imported).containsExactly(missing);
+        String query = objectMapper.readTree(requests.get("POST /v1/graphql")).path("query").asText();
+        assertThat(query).contains("operator: ContainsAny, valueTextArray: [\"" + present + "\", \"" + missing + "\"]");
+        JsonNode objects = objectMapper.readTree(requests.get("POST /v1/batch/objects")).path("objects");
+        assertThat(objects).hasSize(1);
+        assertThat(objects.get(0).path("id").asText()).isEqualTo(missing);
+        // Same layout as regular writes
+        assertThat(objects.get(0).path("properties").path(SegmentFilter.DOCUMENT_ID).asText()).isEqualTo("doc-1");
+    }
+
+    @Test
+    void importsEverythingIntoAClassThatDoesNotExistYet() {
+        String id = UUID.randomUUID().toString();
+        responses.put("POST /v1/batch/objects", "[{\"id\":\"" + id + "\",\"result\":{}}]");
+
+        List<String> imported = store.importAll(List.of(
+                new StoredSegment(id, Embedding.from(new float[]{1, 0}), TextSegment.from("hello"))));
+
+        assertThat(imported).containsExactly(id);
+        assertThat(requests).doesNotContainKey("POST /v1/graphql");
+    }
+
+    @Test
+    void findsNothingWhenNoObjectCarriesTheFilteredProperty() {
+        responses.put("GET /v1/schema/Default", "{\"class\":\"Default\",\"properties\":[{\"name\":\"text\",\"dataType\":[\"text\"]}]}");
+
+        List<EmbeddingMatch<TextSegment>> matches = store.findRelevant(Embedding.from(new float[]{1, 0}), 3, 0,
+                SegmentFilter.of(List.of(), "acme"));
+
+        assertThat(matches).isEmpty();
+        assertThat(requests).doesNotContainKey("POST /v1/graphql");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String key = exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath();
+        requests.put(key, new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        String response = responses.get(key);
+        byte[] body = (response != null ? response : "{}").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(response != null ? 200 : 404, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -7,10 +7,31 @@ export interface Document {
 
 export interface DocumentUploadResponse {
   documentId: string;
+  jobId: string;
+  status: string;
   filename: string;
   size: number;
   message: string;
-  segmentsCreated: number;
+  segmentsCreated?: number;
+}
+
+export type IngestionJobStatus = 'QUEUED' | 'RUNNING' | 'COMPLETED' | 'FAILED' | 'CANCELLED';
+
+export interface IngestionJob {
+  jobId: string;
+  documentId: string;
+  filename: string;
+  size: number;
+  priority: number;
+  status: IngestionJobStatus;
+  currentSegment: number;
+  totalSegments: number;
+  progressPercentage: number;
+  message?: string;
+  error?: string;
+  createdAt: string;
+  startedAt?: string;
+  completedAt?: string;
 }
 
 export interface QuestionRequest {
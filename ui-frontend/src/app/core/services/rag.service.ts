@@ -2,7 +2,7 @@ import { Injectable, inject } from '@angular/core';
 import { HttpClient } from '@angular/common/http';
 import { Observable } from 'rxjs';
 import { environment } from '../../../environments/environment';
-import { DocumentUploadResponse, QuestionRequest, QuestionResponse } from '../models/rag.model';
+import { DocumentUploadResponse, IngestionJob, QuestionRequest, QuestionResponse } from '../models/rag.model';
 
 @Injectable({
   providedIn: 'root'
@@ -17,6 +17,14 @@ export class RagService {
     return this.http.post<DocumentUploadResponse>(`${this.apiUrl}/documents/upload`, formData);
   }
 
+  getIngestionJob(jobId: string): Observable<IngestionJob> {
+    return this.http.get<IngestionJob>(`${this.apiUrl}/documents/jobs/${jobId}`);
+  }
+
+  cancelIngestionJob(jobId: string): Observable<IngestionJob> {
+    return this.http.delete<IngestionJob>(`${this.apiUrl}/documents/jobs/${jobId}`);
+  }
+
   askQuestion(request: QuestionRequest): Observable<QuestionResponse> {
     return this.http.post<QuestionResponse>(`${this.apiUrl}/question`, request);
   }
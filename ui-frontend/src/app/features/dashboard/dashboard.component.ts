@@ -51,7 +51,7 @@ import { RagService } from '../../core/services/rag.service';
             <mat-card-title>Upload Document</mat-card-title>
           </mat-card-header>
           <mat-card-content>
-            <input type="file" (change)="onFileSelected($event)" accept=".pdf,.doc,.docx">
+            <input type="file" (change)="onFileSelected($event)" accept=".pdf,.doc,.docx,.txt,.md">
             <button mat-raised-button color="primary" (click)="uploadDocument()" [disabled]="!selectedFile">
               Upload
             </button>
@@ -183,7 +183,7 @@ export class DashboardComponent {
     if (this.selectedFile) {
       this.ragService.uploadDocument(this.selectedFile).subscribe({
         next: (response) => {
-          this.uploadMessage = `${response.message} (${response.segmentsCreated} segments created)`;
+          this.uploadMessage = `${response.message} (job ${response.jobId})`;
           this.selectedFile = null;
         },
         error: (error) => {